@@ -2,6 +2,8 @@ package com.ctriposs.blacksmith;
 
 import java.util.Map;
 
+import com.ctriposs.blacksmith.utils.ThreadPlacement;
+
 /**
  * A stressor performs operations on a cache wrapper and returns the results of performing these operations as a Map.
  *
@@ -17,4 +19,26 @@ public interface CacheWrapperStressor {
    void destroy() throws Exception;
 
    boolean isSysMonitorEnabled();
+
+   /**
+    * @return sampling period of the system monitor in milliseconds
+    */
+   long getSysMonitorInterval();
+
+   /**
+    * @return CPUs of the threads of the system monitor and the other monitors of the stressor
+    */
+   ThreadPlacement getMonitorPlacement();
+
+   boolean isFlightRecorderEnabled();
+
+   /**
+    * @return name of the JFR settings used for the recording
+    */
+   String getFlightRecorderSettings();
+
+   /**
+    * @return port of the live metrics endpoint, 0 if it should not be started
+    */
+   int getMetricsPort();
 }
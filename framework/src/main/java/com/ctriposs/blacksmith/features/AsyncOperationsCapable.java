@@ -0,0 +1,34 @@
+package com.ctriposs.blacksmith.features;
+
+import java.util.Map;
+import java.util.Set;
+
+import com.ctriposs.blacksmith.utils.NotifyingFuture;
+
+/**
+ * The cachewrapper supports non-blocking operations. The methods should return as soon as the request
+ * is submitted, failures of the request itself are reported through the returned future.
+ *
+ * @author bulldog
+ */
+public interface AsyncOperationsCapable {
+   NotifyingFuture<Object> getAsync(String bucket, Object key) throws Exception;
+
+   NotifyingFuture<Void> putAsync(String bucket, Object key, Object value) throws Exception;
+
+   NotifyingFuture<Object> removeAsync(String bucket, Object key) throws Exception;
+
+   NotifyingFuture<Map<Object, Object>> getAllAsync(String bucket, Set<Object> keys) throws Exception;
+
+   /**
+    * Returning previous entries from the cache is optional - if the cache
+    * is not capable of that the future should return null.
+    */
+   NotifyingFuture<Map<Object, Object>> putAllAsync(String bucket, Map<Object, Object> entries) throws Exception;
+
+   /**
+    * Returning previous entries from the cache is optional - if the cache
+    * is not capable of that the future should return null.
+    */
+   NotifyingFuture<Map<Object, Object>> removeAllAsync(String bucket, Set<Object> keys) throws Exception;
+}
@@ -0,0 +1,15 @@
+package com.ctriposs.blacksmith.features;
+
+/**
+ * The cachewrapper keeps (part of) the data in files and can tell how much space they take, so that the stored
+ * data can be related to the memory and disk needed for them.
+ *
+ * @author bulldog
+ */
+public interface DiskUsageCapable {
+
+   /**
+    * @return bytes taken on disk by the data of this cache wrapper, -1 if not known
+    */
+   long getDiskUsage();
+}
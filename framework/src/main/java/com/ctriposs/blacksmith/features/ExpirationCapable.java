@@ -0,0 +1,32 @@
+package com.ctriposs.blacksmith.features;
+
+/**
+ * The cachewrapper supports entries with limited lifespan. Expired entries must not be returned by get, but may be
+ * reclaimed later by the cache; the wrapper reports the reclamation to the listener so that the expiration lag can
+ * be measured.
+ *
+ * @author bulldog
+ */
+public interface ExpirationCapable {
+
+   interface ExpirationListener {
+      /**
+       * Called when an expired entry is removed from the cache, possibly from the cache's own threads.
+       *
+       * @param deadlineMillis time when the entry has expired, milliseconds since epoch
+       */
+      void expired(Object key, Object value, long deadlineMillis);
+   }
+
+   void put(String bucket, Object key, Object value, long lifespanMillis) throws Exception;
+
+   /**
+    * @param listener null to stop the notifications
+    */
+   void setExpirationListener(ExpirationListener listener);
+
+   /**
+    * @return CPU time in nanoseconds consumed by the expiration of entries since the wrapper was set up, -1 if not known
+    */
+   long getExpirationCpuNanos();
+}
@@ -0,0 +1,20 @@
+package com.ctriposs.blacksmith.features;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The cachewrapper can iterate over its entries. A scan can be split into partitions executed in parallel; a key
+ * belongs to partition {@link com.ctriposs.blacksmith.utils.PartitionedIterator#isInPartition(Object, int, int)}.
+ * The iteration is weakly consistent, entries written or removed during the scan may or may not be returned.
+ *
+ * @author bulldog
+ */
+public interface IterationCapable {
+   /**
+    * @param partition index of the scanned partition, 0 <= partition < partitions
+    * @param partitions number of partitions, 1 for a full scan
+    * @param keysOnly the values are not needed (key-only projection), the returned entries may have null values
+    */
+   Iterator<Map.Entry<Object, Object>> iterate(String bucket, int partition, int partitions, boolean keysOnly) throws Exception;
+}
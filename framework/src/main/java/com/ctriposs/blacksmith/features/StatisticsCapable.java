@@ -0,0 +1,19 @@
+package com.ctriposs.blacksmith.features;
+
+import java.util.Map;
+
+/**
+ * The cache wrapper keeps its own internal statistics (hit ratios, queue depths, write amplification...).
+ * These are reset before each stressor and added to the benchmark results after it finishes.
+ *
+ * @author bulldog
+ */
+public interface StatisticsCapable {
+
+   /**
+    * @return statistics collected since the last {@link #resetStatistics()}, keyed by the report column name
+    */
+   Map<String, Object> getStatistics();
+
+   void resetStatistics();
+}
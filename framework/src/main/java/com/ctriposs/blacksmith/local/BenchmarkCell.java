@@ -0,0 +1,93 @@
+package com.ctriposs.blacksmith.local;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.ctriposs.blacksmith.CacheWrapperStressor;
+
+/**
+ * One cell of the {@link ParameterMatrix}: the stressors of the benchmark with the matrix attributes set to the
+ * values of this cell. A benchmark without matrix has single cell with no values.
+ *
+ * @author bulldog
+ */
+public class BenchmarkCell {
+
+   private final int index;
+   private final Map<String, String> values;
+   private final List<CacheWrapperStressor> stressors = new ArrayList<CacheWrapperStressor>();
+
+   public BenchmarkCell(int index, Map<String, String> values) {
+      this.index = index;
+      this.values = Collections.unmodifiableMap(values);
+   }
+
+   public int getIndex() {
+      return index;
+   }
+
+   /**
+    * @return matrix dimension to value, empty without matrix
+    */
+   public Map<String, String> getValues() {
+      return values;
+   }
+
+   public List<CacheWrapperStressor> getStressors() {
+      return stressors;
+   }
+
+   public void addStressor(CacheWrapperStressor stressor) {
+      stressors.add(stressor);
+   }
+
+   /**
+    * @return name of the config in reports, with the values of this cell, e.g. default[numThreads=4;entrySize=1024]
+    */
+   public String getRunName(String config) {
+      if (values.isEmpty()) return config;
+      StringBuilder sb = new StringBuilder(config).append('[');
+      for (Map.Entry<String, String> entry : values.entrySet()) {
+         if (sb.charAt(sb.length() - 1) != '[') sb.append(';');
+         // the name is a column of the CSV report
+         sb.append(entry.getKey()).append('=').append(entry.getValue().replace(',', '/'));
+      }
+      return sb.append(']').toString();
+   }
+
+   /**
+    * @return the run name usable in names of report files, e.g. default[entrySize=50%-100+50%-10000] for
+    *         default[entrySize=50%:100/50%:10000]; values such as entry sizes or CPU lists contain characters
+    *         which are not allowed in file names
+    */
+   public static String getFileName(String runName) {
+      StringBuilder sb = new StringBuilder(runName.length());
+      for (int i = 0; i < runName.length(); ++i) {
+         char c = runName.charAt(i);
+         switch (c) {
+            case '/':
+            case ',':
+               sb.append('+');
+               break;
+            case ':':
+               sb.append('-');
+               break;
+            case ';':
+            case '\\':
+            case '*':
+            case '?':
+            case '"':
+            case '<':
+            case '>':
+            case '|':
+               sb.append('_');
+               break;
+            default:
+               sb.append(c);
+         }
+      }
+      return sb.toString();
+   }
+}
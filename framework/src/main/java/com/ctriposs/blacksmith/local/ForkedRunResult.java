@@ -0,0 +1,49 @@
+package com.ctriposs.blacksmith.local;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import com.ctriposs.blacksmith.stressors.Statistics;
+import com.ctriposs.blacksmith.sysmonitor.LocalJmxMonitor;
+
+/**
+ * Results of a product/config processed in a forked JVM, passed to the parent through a file.
+ *
+ * @author bulldog
+ */
+public class ForkedRunResult implements Serializable {
+
+   /** The serialVersionUID */
+   private static final long serialVersionUID = -6017934851742690233L;
+
+   private final Map<String, Object> results;
+   private final LocalJmxMonitor monitor;
+   private final Statistics statistics;
+
+   public ForkedRunResult(Map<String, Object> results, LocalJmxMonitor monitor, Statistics statistics) {
+      this.results = results;
+      this.monitor = monitor;
+      this.statistics = statistics;
+   }
+
+   /**
+    * @return results of the last stressor, or null if the run failed
+    */
+   public Map<String, Object> getResults() {
+      return results;
+   }
+
+   /**
+    * @return the monitor of the last monitored stressor, or null
+    */
+   public LocalJmxMonitor getMonitor() {
+      return monitor;
+   }
+
+   /**
+    * @return merged statistics of the last stressor, or null if it does not provide them
+    */
+   public Statistics getStatistics() {
+      return statistics;
+   }
+}
@@ -1,5 +1,7 @@
 package com.ctriposs.blacksmith.local;
 
+import java.io.File;
+
 import com.ctriposs.blacksmith.ShutDownHook;
 
 /**
@@ -10,7 +12,16 @@ public class LaunchLocal {
       String config = getConfigOrExit(args);
       LocalConfigParser parser = new LocalConfigParser();
       LocalBenchmark benchmark = parser.parse(config);
-      benchmark.benchmark();
+      String[] fork = getForkArguments(args);
+      if (fork != null) {
+         String[] node = getNodeArguments(args);
+         if (node != null) {
+            benchmark.setNode(Integer.parseInt(node[0]), Integer.parseInt(node[1]), Integer.parseInt(node[2]));
+         }
+         benchmark.benchmarkForkedRun(fork[0], fork[1], getCellArgument(args), fork[2], new File(fork[3]));
+      } else {
+         benchmark.benchmark();
+      }
       ShutDownHook.exit(0);
    }
 
@@ -28,6 +39,51 @@ public class LaunchLocal {
       return config;
    }
 
+   /**
+    * @return product, config, run name and result file of the run in forked JVM, or null
+    */
+   private static String[] getForkArguments(String[] args) {
+      for (int i = 0; i < args.length; i++) {
+         if (args[i].equals("-fork")) {
+            if (i + 4 >= args.length) {
+               printUsageAndExit();
+            }
+            return new String[] { args[i + 1], args[i + 2], args[i + 3], args[i + 4] };
+         }
+      }
+      return null;
+   }
+
+   /**
+    * @return index of the benchmark matrix cell run in forked JVM, 0 if not given
+    */
+   private static int getCellArgument(String[] args) {
+      for (int i = 0; i < args.length; i++) {
+         if (args[i].equals("-cell")) {
+            if (i + 1 >= args.length) {
+               printUsageAndExit();
+            }
+            return Integer.parseInt(args[i + 1]);
+         }
+      }
+      return 0;
+   }
+
+   /**
+    * @return index of the client JVM, number of the clients and port of the coordinator, or null
+    */
+   private static String[] getNodeArguments(String[] args) {
+      for (int i = 0; i < args.length; i++) {
+         if (args[i].equals("-node")) {
+            if (i + 3 >= args.length) {
+               printUsageAndExit();
+            }
+            return new String[] { args[i + 1], args[i + 2], args[i + 3] };
+         }
+      }
+      return null;
+   }
+
    private static void printUsageAndExit() {
       System.out.println("Usage: local.sh  -config <config-file.xml>");
       System.out.println("       -config : xml file containing local benchmark's configuration");
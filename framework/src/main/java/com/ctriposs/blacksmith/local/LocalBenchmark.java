@@ -1,16 +1,32 @@
 package com.ctriposs.blacksmith.local;
 
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
-import java.net.URLClassLoader;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,10 +34,27 @@ import org.slf4j.LoggerFactory;
 import com.ctriposs.blacksmith.CacheWrapper;
 import com.ctriposs.blacksmith.CacheWrapperStressor;
 import com.ctriposs.blacksmith.ShutDownHook;
+import com.ctriposs.blacksmith.features.StatisticsCapable;
+import com.ctriposs.blacksmith.reporting.ExpirationReport;
+import com.ctriposs.blacksmith.reporting.GcLatencyReport;
 import com.ctriposs.blacksmith.reporting.LocalSystemMonitorChart;
+import com.ctriposs.blacksmith.reporting.MemoryFillReport;
+import com.ctriposs.blacksmith.reporting.SlowOperationsReport;
+import com.ctriposs.blacksmith.state.NodeBarrier;
+import com.ctriposs.blacksmith.state.NodeCoordinator;
 import com.ctriposs.blacksmith.state.SlaveState;
 import com.ctriposs.blacksmith.stressors.AbstractCacheWrapperStressor;
+import com.ctriposs.blacksmith.stressors.ExpirationTimeline;
+import com.ctriposs.blacksmith.stressors.FillCurve;
+import com.ctriposs.blacksmith.stressors.LatencyTimeline;
+import com.ctriposs.blacksmith.stressors.SlowOperations;
+import com.ctriposs.blacksmith.stressors.Statistics;
+import com.ctriposs.blacksmith.stressors.StressTestStressor;
+import com.ctriposs.blacksmith.sysmonitor.FlightRecording;
 import com.ctriposs.blacksmith.sysmonitor.LocalJmxMonitor;
+import com.ctriposs.blacksmith.sysmonitor.MemoryFootprint;
+import com.ctriposs.blacksmith.utils.CpuSets;
+import com.ctriposs.blacksmith.utils.CpuTopology;
 import com.ctriposs.blacksmith.utils.TypedProperties;
 import com.ctriposs.blacksmith.utils.Utils;
 
@@ -36,16 +69,42 @@ public class LocalBenchmark {
    private static final String REPORTS_DIR = "reports";
    private static final boolean SKIP_FREE_MEMORY_CHECK = Boolean.getBoolean("blacksmith.skip_free_memory_check");
 
-   private List<CacheWrapperStressor> stressors = new ArrayList<CacheWrapperStressor>();
+   /**
+    * Attribute of the config with JVM arguments of its forked JVM.
+    */
+   public static final String JVM_ARGS = "jvmArgs";
+
+   private static final long CLIENT_CONNECT_TIMEOUT = 60000;
+
+   private List<BenchmarkCell> cells = new ArrayList<BenchmarkCell>();
    private LinkedHashMap<String, List<Properties>> product2Config = new LinkedHashMap<String, List<Properties>>();
-   private boolean headerGenerted = false;
    private List<ReportDesc> reportDescs = new ArrayList<ReportDesc>();
 
    private long initialFreeMemory = freeMememory();
 
-   private StringBuilder reportCsvContent = new StringBuilder();
-
-   private Map<String, LocalJmxMonitor> sysMonitors = new HashMap<String, LocalJmxMonitor>();
+   // products may report different columns (e.g. wrapper statistics), the header is the union of all of them
+   private Set<String> reportColumns = new LinkedHashSet<String>();
+   private List<Map<String, Object>> reportRows = new ArrayList<Map<String, Object>>();
+
+   // written by concurrently forked runs
+   private Map<String, LocalJmxMonitor> sysMonitors = Collections.synchronizedMap(new HashMap<String, LocalJmxMonitor>());
+
+   private String configFile;
+   // run each product/config (and repetition) in a new JVM
+   private boolean fork = false;
+   private int repetitions = 1;
+   private String jvmArgs;
+   // number of client JVMs running each product/config concurrently
+   private int clients = 1;
+   // number of forked runs executed concurrently
+   private int parallel = 1;
+   // CPU lists separated by semicolons, one for each concurrent run
+   private String cpuSets;
+   // compact or scatter, how the CPUs are divided among the pinned runs
+   private String placement;
+   // set in a client JVM
+   private NodeBarrier nodeBarrier;
+   private Statistics lastStatistics;
 
    public LocalBenchmark() {
       Runtime.getRuntime().addShutdownHook(new ShutDownHook("Local benchmark process"));
@@ -53,43 +112,43 @@ public class LocalBenchmark {
 
    public void benchmark() throws Exception {
       log.info("Starting benchmark with " + Utils.kb(initialFreeMemory) + " kb initial free memory.");
-      for (Map.Entry<String, List<Properties>> product : product2Config.entrySet()) {
-         for (Properties configProps : product.getValue()) {
-            final String config = configProps.getProperty("name");
-            log.info("Processing " + product.getKey() + "-" + config);
-            CacheWrapper wrapper = getCacheWrapper(product.getKey(), configProps.getProperty("wrapper"));
-            try {
-               wrapper.setUp(config, true, -1, new TypedProperties(configProps));
-
-               Map<String, Object> results = null;
-               SlaveState slaveState = new SlaveState();
-               for (CacheWrapperStressor stressor : stressors) {
-                  LocalJmxMonitor monitor = null;
-                  if (stressor.isSysMonitorEnabled()) {
-                     monitor = new LocalJmxMonitor();
-                     monitor.startMonitoringLocal();
-                     sysMonitors.put(product.getKey() + "(" + config + ")", monitor);
-                     monitor.setConfigName(config);
-                     monitor.setProductName(product.getKey());
-                  }
-                  ((AbstractCacheWrapperStressor)stressor).setSlaveState(slaveState);
-
-                  results = stressor.stress(wrapper);
-                  if (monitor != null) {
-                     monitor.stopMonitoringLocal();
+      log.info("CPU topology: " + CpuTopology.get());
+      boolean forked = fork || clients > 1 || parallel > 1;
+      boolean pinned = forked && (parallel > 1 || cpuSets != null || placement != null);
+      // forked JVMs start their own endpoint
+      MetricsServer metricsServer = forked ? null : startMetricsServer();
+      try {
+         List<PlannedRun> plan = new ArrayList<PlannedRun>();
+         for (Map.Entry<String, List<Properties>> product : product2Config.entrySet()) {
+            for (Properties configProps : product.getValue()) {
+               for (BenchmarkCell cell : cells) {
+                  String config = cell.getRunName(configProps.getProperty("name"));
+                  for (int repetition = 1; repetition <= repetitions; ++repetition) {
+                     String run = repetitions > 1 ? config + "#" + repetition : config;
+                     plan.add(new PlannedRun(product.getKey(), configProps, cell, run));
                   }
-                  stressor.destroy();
-                  wrapper.clear(true);
                }
-               generateReport(results, product.getKey(), config);
-               wrapper.tearDown();
-               wrapper = null;
-               gc();
-            } catch (Exception e) {
-               log.error("Error processing " + product.getKey() + "-" + config, e);
-               wrapper.tearDown();
             }
          }
+         if (pinned) {
+            benchmarkParallel(plan);
+         } else {
+            for (PlannedRun planned : plan) {
+               Map<String, Object> results;
+               if (forked) {
+                  results = benchmarkForked(planned, null);
+               } else {
+                  results = benchmark(planned.product, planned.configProps, planned.cell, planned.run, metricsServer);
+               }
+               if (results != null) {
+                  generateReport(results, planned);
+               }
+            }
+         }
+      } finally {
+         if (metricsServer != null) {
+            metricsServer.stop();
+         }
       }
       createOutputFile();
 
@@ -98,6 +157,478 @@ public class LocalBenchmark {
       generateMonitorReports();
    }
 
+   /**
+    * Product/config, matrix cell and repetition processed as one run.
+    */
+   private static class PlannedRun {
+      private final String product;
+      private final Properties configProps;
+      private final BenchmarkCell cell;
+      private final String run;
+      // set when the run has been pinned
+      private volatile String cpuSet;
+
+      private PlannedRun(String product, Properties configProps, BenchmarkCell cell, String run) {
+         this.product = product;
+         this.configProps = configProps;
+         this.cell = cell;
+         this.run = run;
+      }
+   }
+
+   /**
+    * Executes the runs in forked JVMs, parallel of them at once. When taskset or numactl is available, each
+    * concurrent JVM is pinned to its own set of CPUs, so that the runs do not compete for the cores; a set within
+    * one NUMA node binds the memory to that node as well. The results are reported in the order of the plan.
+    */
+   private void benchmarkParallel(List<PlannedRun> plan) throws Exception {
+      List<String> sets = parallelCpuSets();
+      final BlockingQueue<String> freeCpuSets = sets == null ? null : new LinkedBlockingQueue<String>(sets);
+      log.info("Executing " + plan.size() + " runs, " + parallel + " at once"
+            + (sets == null ? "" : " pinned to CPUs " + sets));
+      ExecutorService executor = Executors.newFixedThreadPool(parallel);
+      List<Future<Map<String, Object>>> futures = new ArrayList<Future<Map<String, Object>>>(plan.size());
+      try {
+         for (final PlannedRun planned : plan) {
+            futures.add(executor.submit(new Callable<Map<String, Object>>() {
+               @Override
+               public Map<String, Object> call() throws Exception {
+                  if (freeCpuSets == null) {
+                     return benchmarkForked(planned, null);
+                  }
+                  String cpuSet = freeCpuSets.take();
+                  planned.cpuSet = cpuSet;
+                  try {
+                     return benchmarkForked(planned, cpuSet);
+                  } finally {
+                     freeCpuSets.put(cpuSet);
+                  }
+               }
+            }));
+         }
+         for (int i = 0; i < plan.size(); ++i) {
+            Map<String, Object> results = futures.get(i).get();
+            if (results != null) {
+               generateReport(results, plan.get(i));
+            }
+         }
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   /**
+    * @return CPU list for each concurrent run, or null if the runs are not pinned
+    */
+   private List<String> parallelCpuSets() {
+      if (CpuSets.findTaskset() == null && CpuSets.findNumactl() == null) {
+         log.warn("Neither taskset nor numactl was found, the runs are not pinned to CPUs.");
+         return null;
+      }
+      List<String> sets = new ArrayList<String>();
+      if (cpuSets != null) {
+         for (String set : cpuSets.split(";")) {
+            if (!set.trim().isEmpty()) sets.add(CpuSets.format(CpuSets.parse(set)));
+         }
+         if (sets.size() < parallel) {
+            throw new IllegalArgumentException("Only " + sets.size() + " CPU sets defined for " + parallel + " concurrent runs.");
+         }
+         return sets;
+      }
+      // compact sets keep each run within a socket, scatter sets spread each run across the sockets
+      CpuTopology topology = CpuTopology.get();
+      List<Integer> allowed = CpuSets.allowedCpus();
+      boolean scatter = "scatter".equalsIgnoreCase(placement);
+      List<List<Integer>> split = CpuSets.split(scatter ? topology.scatter(allowed) : topology.compact(allowed), parallel);
+      if (split == null) {
+         log.warn("There are fewer CPUs than concurrent runs, the runs are not pinned to CPUs.");
+         return null;
+      }
+      for (List<Integer> set : split) {
+         Collections.sort(set);
+         sets.add(CpuSets.format(set));
+      }
+      return sets;
+   }
+
+   /**
+    * Entry point of a forked JVM: runs single product/config and writes the results for the parent.
+    *
+    * @param run name of the run in reports, the config name with repetition and node number
+    */
+   public void benchmarkForkedRun(String product, String config, int cellIndex, String run, File resultFile) throws Exception {
+      Properties configProps = null;
+      if (product2Config.containsKey(product)) {
+         for (Properties props : product2Config.get(product)) {
+            if (config.equals(props.getProperty("name"))) {
+               configProps = props;
+            }
+         }
+      }
+      if (configProps == null) {
+         throw new IllegalArgumentException("Config " + config + " of product " + product + " is not defined.");
+      }
+      if (cellIndex < 0 || cellIndex >= cells.size()) {
+         throw new IllegalArgumentException("Benchmark matrix has no cell " + cellIndex);
+      }
+      // only one of the client JVMs can listen on the port
+      MetricsServer metricsServer = nodeBarrier == null || nodeBarrier.getNodeIndex() == 0 ? startMetricsServer() : null;
+      Map<String, Object> results;
+      try {
+         results = benchmark(product, configProps, cells.get(cellIndex), run, metricsServer);
+      } finally {
+         if (metricsServer != null) {
+            metricsServer.stop();
+         }
+         if (nodeBarrier != null) {
+            nodeBarrier.close();
+         }
+      }
+      ForkedRunResult result = new ForkedRunResult(results, sysMonitors.get(product + "(" + run + ")"), lastStatistics);
+      ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(resultFile));
+      try {
+         out.writeObject(result);
+      } finally {
+         out.close();
+      }
+   }
+
+   /**
+    * Runs the product/config in new JVM, or in several client JVMs synchronized by a {@link NodeCoordinator},
+    * with the JVM arguments of the benchmark and the config.
+    *
+    * @param cpuSet CPUs to which the JVMs are pinned by taskset, null if not pinned
+    * @return the results, merged from all clients, or null if the run failed
+    */
+   private Map<String, Object> benchmarkForked(PlannedRun planned, String cpuSet) {
+      String product = planned.product;
+      String run = planned.run;
+      log.info("Processing " + product + "-" + run + (clients > 1 ? " in " + clients + " client JVMs" : " in forked JVM")
+            + (cpuSet == null ? "" : " on CPUs " + cpuSet));
+      NodeCoordinator coordinator = null;
+      File[] resultFiles = new File[clients];
+      try {
+         if (clients > 1) {
+            coordinator = new NodeCoordinator(clients, CLIENT_CONNECT_TIMEOUT);
+            coordinator.start();
+         }
+         Process[] processes = new Process[clients];
+         Thread[] pumps = new Thread[clients];
+         for (int node = 0; node < clients; ++node) {
+            resultFiles[node] = File.createTempFile("blacksmith-fork", ".result");
+            String nodeRun = clients > 1 ? run + "@" + node : run;
+            List<String> command = forkCommand(product, planned.configProps, planned.cell, nodeRun, resultFiles[node], cpuSet);
+            if (coordinator != null) {
+               command.add("-node");
+               command.add(String.valueOf(node));
+               command.add(String.valueOf(clients));
+               command.add(String.valueOf(coordinator.getPort()));
+            }
+            log.debug("Forking " + command);
+            processes[node] = new ProcessBuilder(command).redirectErrorStream(true).start();
+            processes[node].getOutputStream().close();
+            pumps[node] = new OutputPump(processes[node].getInputStream(), product + "-" + nodeRun,
+                  clients > 1 || parallel > 1 ? "[" + nodeRun + "] " : "");
+            pumps[node].start();
+         }
+         List<ForkedRunResult> nodeResults = new ArrayList<ForkedRunResult>();
+         for (int node = 0; node < clients; ++node) {
+            int exitCode = processes[node].waitFor();
+            pumps[node].join();
+            if (exitCode != 0 || resultFiles[node].length() == 0) {
+               log.error("Forked JVM processing " + product + "-" + run + " failed with exit code " + exitCode);
+               continue;
+            }
+            ForkedRunResult result = readForkedResult(resultFiles[node]);
+            if (result.getMonitor() != null) {
+               sysMonitors.put(product + "(" + (clients > 1 ? run + "@" + node : run) + ")", result.getMonitor());
+            }
+            if (result.getResults() != null) {
+               nodeResults.add(result);
+            }
+         }
+         if (nodeResults.size() < clients) {
+            log.error("Only " + nodeResults.size() + " of " + clients + " JVMs processing " + product + "-" + run
+                  + " have finished successfully, the results are discarded.");
+            return null;
+         }
+         return clients > 1 ? mergeNodeResults(nodeResults) : nodeResults.get(0).getResults();
+      } catch (Exception e) {
+         log.error("Error processing " + product + "-" + run + " in forked JVM", e);
+         return null;
+      } finally {
+         if (coordinator != null) {
+            coordinator.close();
+         }
+         for (File resultFile : resultFiles) {
+            if (resultFile != null && !resultFile.delete()) {
+               resultFile.deleteOnExit();
+            }
+         }
+      }
+   }
+
+   private List<String> forkCommand(String product, Properties configProps, BenchmarkCell cell, String run,
+                                    File resultFile, String cpuSet) {
+      List<String> command = new ArrayList<String>();
+      if (cpuSet != null) {
+         command.addAll(CpuSets.launcherCommand(cpuSet));
+      }
+      command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+      command.addAll(forkJvmArgs(configProps.getProperty(JVM_ARGS)));
+      command.add("-classpath");
+      command.add(System.getProperty("java.class.path"));
+      command.add(LaunchLocal.class.getName());
+      command.add("-config");
+      command.add(configFile);
+      command.add("-fork");
+      command.add(product);
+      command.add(configProps.getProperty("name"));
+      command.add(run);
+      command.add(resultFile.getAbsolutePath());
+      command.add("-cell");
+      command.add(String.valueOf(cell.getIndex()));
+      return command;
+   }
+
+   private ForkedRunResult readForkedResult(File resultFile) throws IOException, ClassNotFoundException {
+      ObjectInputStream in = new ObjectInputStream(new FileInputStream(resultFile));
+      try {
+         return (ForkedRunResult) in.readObject();
+      } finally {
+         in.close();
+      }
+   }
+
+   /**
+    * Merges the statistics of the client JVMs into one report. As the clients run concurrently, the request rate
+    * of the cluster is the sum of their rates.
+    */
+   private Map<String, Object> mergeNodeResults(List<ForkedRunResult> nodeResults) {
+      Statistics merged = null;
+      int threads = 0;
+      double requestsPerSecond = 0;
+      for (ForkedRunResult result : nodeResults) {
+         if (result.getStatistics() == null) {
+            log.warn("The stressor does not provide statistics, reporting results of the first client JVM only.");
+            return nodeResults.get(0).getResults();
+         }
+         if (merged == null) {
+            merged = result.getStatistics().copy();
+         } else {
+            merged.merge(result.getStatistics());
+         }
+         Object nodeThreads = result.getResults().get("THREADS");
+         threads += nodeThreads instanceof Number ? ((Number) nodeThreads).intValue() : 1;
+         Object nodeRequestsPerSecond = result.getResults().get(Statistics.REQ_PER_SEC);
+         if (nodeRequestsPerSecond instanceof Number) {
+            requestsPerSecond += ((Number) nodeRequestsPerSecond).doubleValue();
+         }
+      }
+      Map<String, Object> results = merged.getResultsMap(threads, "");
+      results.put(Statistics.REQ_PER_SEC, requestsPerSecond);
+      results.put("NODES", nodeResults.size());
+      for (int node = 0; node < nodeResults.size(); ++node) {
+         results.put("NODE" + node + "_" + Statistics.REQ_PER_SEC, nodeResults.get(node).getResults().get(Statistics.REQ_PER_SEC));
+      }
+      return results;
+   }
+
+   /**
+    * The JVM arguments of the benchmark followed by those of the config, so that the config can override them;
+    * without any, the forked JVM gets the same arguments as this one.
+    */
+   private List<String> forkJvmArgs(String configJvmArgs) {
+      List<String> args = new ArrayList<String>();
+      if (jvmArgs == null && configJvmArgs == null) {
+         args.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+         return args;
+      }
+      for (String value : new String[] { jvmArgs, configJvmArgs }) {
+         if (value != null && value.trim().length() > 0) {
+            args.addAll(Arrays.asList(value.trim().split("\\s+")));
+         }
+      }
+      return args;
+   }
+
+   /**
+    * Copies output of the forked JVM into the output of this one.
+    */
+   private static class OutputPump extends Thread {
+      private final InputStream input;
+      private final String prefix;
+
+      private OutputPump(InputStream input, String run, String prefix) {
+         super("Fork-" + run);
+         this.input = input;
+         this.prefix = prefix;
+         setDaemon(true);
+      }
+
+      @Override
+      public void run() {
+         BufferedReader reader = new BufferedReader(new InputStreamReader(input));
+         try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+               System.out.println(prefix + line);
+            }
+         } catch (IOException e) {
+            log.warn("Failed to read output of forked JVM", e);
+         } finally {
+            try {
+               reader.close();
+            } catch (IOException e) {
+               // ignore
+            }
+         }
+      }
+   }
+
+   /**
+    * Runs the stressors on the product/config in this JVM.
+    *
+    * @return results of the last stressor, or null if the run failed
+    */
+   private Map<String, Object> benchmark(String product, Properties configProps, BenchmarkCell cell, String run,
+                                         MetricsServer metricsServer) throws Exception {
+      List<CacheWrapperStressor> stressors = cell.getStressors();
+      // the run name can contain matrix values which are not allowed in file names
+      String fileName = BenchmarkCell.getFileName(run);
+      final String config = configProps.getProperty("name");
+      log.info("Processing " + product + "-" + run);
+      CacheWrapper wrapper = getCacheWrapper(product, configProps.getProperty("wrapper"));
+      FlightRecording recording = null;
+      try {
+         wrapper.setUp(config, true, -1, new TypedProperties(configProps));
+
+         Map<String, Object> results = null;
+         SlaveState slaveState = new SlaveState();
+         if (nodeBarrier != null) {
+            slaveState.put(NodeBarrier.NODE_BARRIER, nodeBarrier);
+         }
+         recording = startFlightRecording(stressors, product, fileName);
+         if (metricsServer != null) {
+            metricsServer.setRun(product, run, wrapper, slaveState);
+         }
+         for (CacheWrapperStressor stressor : stressors) {
+            LocalJmxMonitor monitor = null;
+            MemoryFootprint footprintBefore = null;
+            if (stressor.isSysMonitorEnabled()) {
+               footprintBefore = liveFootprint();
+               monitor = new LocalJmxMonitor();
+               monitor.setMeasuringInterval(stressor.getSysMonitorInterval());
+               monitor.setPlacement(stressor.getMonitorPlacement());
+               monitor.startMonitoringLocal();
+               sysMonitors.put(product + "(" + run + ")", monitor);
+               monitor.setConfigName(run);
+               monitor.setProductName(product);
+            }
+            if (monitor != null) {
+               slaveState.put(LocalJmxMonitor.LOCAL_JMX_MONITOR, monitor);
+            } else {
+               slaveState.remove(LocalJmxMonitor.LOCAL_JMX_MONITOR);
+            }
+            ((AbstractCacheWrapperStressor)stressor).setSlaveState(slaveState);
+            if (wrapper instanceof StatisticsCapable) {
+               ((StatisticsCapable) wrapper).resetStatistics();
+            }
+            if (nodeBarrier != null) {
+               nodeBarrier.await("stressor-" + stressors.indexOf(stressor));
+            }
+
+            results = stressor.stress(wrapper);
+            lastStatistics = (Statistics) slaveState.get(StressTestStressor.STATISTICS);
+            if (monitor != null) {
+               monitor.stopMonitoringLocal();
+               GcLatencyReport gcReport = new GcLatencyReport(product, fileName, monitor.getGcPauseMonitor(),
+                     (LatencyTimeline) slaveState.get(LatencyTimeline.LATENCY_TIMELINE));
+               gcReport.generate();
+               if (results != null) {
+                  results.putAll(gcReport.getSummary());
+                  results.putAll(liveFootprint().getBytesPerEntry(footprintBefore, wrapper.getLocalSize()));
+               }
+            }
+            SlowOperations slowOperations = (SlowOperations) slaveState.get(SlowOperations.SLOW_OPERATIONS);
+            if (slowOperations != null) {
+               SlowOperationsReport slowReport = new SlowOperationsReport(product, fileName, slowOperations,
+                     monitor == null ? null : monitor.getGcPauseMonitor());
+               slowReport.generate();
+               if (results != null) {
+                  results.putAll(slowReport.getSummary());
+               }
+            }
+            ExpirationTimeline expirationTimeline = (ExpirationTimeline) slaveState.get(ExpirationTimeline.EXPIRATION_TIMELINE);
+            if (expirationTimeline != null) {
+               new ExpirationReport(product, fileName, expirationTimeline).generate();
+               slaveState.remove(ExpirationTimeline.EXPIRATION_TIMELINE);
+            }
+            FillCurve fillCurve = (FillCurve) slaveState.get(FillCurve.FILL_CURVE);
+            if (fillCurve != null) {
+               new MemoryFillReport(product, fileName, fillCurve).generate();
+               slaveState.remove(FillCurve.FILL_CURVE);
+            }
+            if (results != null && wrapper instanceof StatisticsCapable) {
+               results.putAll(((StatisticsCapable) wrapper).getStatistics());
+            }
+            stressor.destroy();
+            wrapper.clear(true);
+         }
+         if (recording != null) {
+            recording.stop();
+            recording = null;
+         }
+         if (metricsServer != null) {
+            metricsServer.clearRun();
+         }
+         wrapper.tearDown();
+         wrapper = null;
+         gc();
+         return results;
+      } catch (Exception e) {
+         log.error("Error processing " + product + "-" + run, e);
+         if (recording != null) {
+            recording.stop();
+         }
+         if (metricsServer != null) {
+            metricsServer.clearRun();
+         }
+         wrapper.tearDown();
+         return null;
+      }
+   }
+
+   /**
+    * Starts the endpoint on the port requested by the first stressor that has one.
+    */
+   private MetricsServer startMetricsServer() {
+      for (CacheWrapperStressor stressor : cells.get(0).getStressors()) {
+         if (stressor.getMetricsPort() > 0) {
+            return MetricsServer.start(stressor.getMetricsPort());
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Starts one recording for all stressors of the product/config, if any of them requests it.
+    */
+   private FlightRecording startFlightRecording(List<CacheWrapperStressor> stressors, String product, String config) {
+      for (CacheWrapperStressor stressor : stressors) {
+         if (stressor.isFlightRecorderEnabled()) {
+            File parentDir = new File(REPORTS_DIR);
+            if (!parentDir.exists() && !parentDir.mkdirs()) {
+               log.warn(parentDir.getAbsolutePath() + " does not exist and could not be created, not recording.");
+               return null;
+            }
+            String name = product + "(" + config + ")";
+            return FlightRecording.start(name, stressor.getFlightRecorderSettings(), new File(parentDir, name + ".jfr"));
+         }
+      }
+      return null;
+   }
+
    private void generateMonitorReports() {
       if (sysMonitors.isEmpty()) {
          return;
@@ -132,6 +663,14 @@ public class LocalBenchmark {
       log.info(Utils.printMemoryFootprint(false));
    }
 
+   /**
+    * Collects the garbage first, so that the heap usage is not distorted by it.
+    */
+   private MemoryFootprint liveFootprint() {
+      System.gc();
+      return MemoryFootprint.current();
+   }
+
    private boolean freeMemoryOkay() {
       return !SKIP_FREE_MEMORY_CHECK && (freeMememory() + 0.1 * freeMememory() >= initialFreeMemory);
    }
@@ -147,6 +686,18 @@ public class LocalBenchmark {
       if (!reportFile.exists()) {
          throw new IllegalStateException(reportFile.getAbsolutePath() + " was deleted? Not allowed to delete report file during test run!");
       }
+      StringBuilder reportCsvContent = new StringBuilder();
+      reportCsvContent.append('\n').append("PRODUCT, CONFIG");
+      for (String column : reportColumns) {
+         reportCsvContent.append(",").append(column);
+      }
+      for (Map<String, Object> row : reportRows) {
+         reportCsvContent.append('\n').append(row.get("PRODUCT")).append(",").append(row.get("CONFIG"));
+         for (String column : reportColumns) {
+            reportCsvContent.append(",");
+            if (row.containsKey(column)) reportCsvContent.append(row.get(column));
+         }
+      }
       PrintWriter writer = null;
       try {
          writer = new PrintWriter(reportFile);
@@ -157,61 +708,121 @@ public class LocalBenchmark {
 
    }
 
-   private void generateReport(Map<String, Object> results, String product, String config) throws IOException {
-      generateHeader(results);
-      StringBuilder line = new StringBuilder();
-      line.append(product).append(",").append(config);
-      for (String key : results.keySet()) {
-         line.append(",").append(results.get(key));
+   private void generateReport(Map<String, Object> results, PlannedRun planned) throws IOException {
+      String product = planned.product;
+      String config = planned.run;
+      Map<String, Object> row = new LinkedHashMap<String, Object>();
+      row.put("PRODUCT", product);
+      row.put("CONFIG", config);
+      for (Map.Entry<String, String> value : planned.cell.getValues().entrySet()) {
+         // values with commas would break the CSV
+         row.put(value.getKey(), value.getValue().replace(',', '/'));
       }
-      writeLine(line.toString());
+      reportColumns.addAll(planned.cell.getValues().keySet());
+      // the results depend on the machine the benchmark runs on
+      CpuTopology topology = CpuTopology.get();
+      row.put("CPU_SOCKETS", topology.getSocketCount());
+      row.put("CPU_CORES", topology.getCoreCount());
+      row.put("CPUS", topology.getCpuCount());
+      row.put("NUMA_NODES", topology.getNodeCount());
+      row.put("CPU_SET", planned.cpuSet == null ? "" : planned.cpuSet.replace(',', '/'));
+      reportColumns.addAll(Arrays.asList("CPU_SOCKETS", "CPU_CORES", "CPUS", "NUMA_NODES", "CPU_SET"));
+      row.putAll(results);
+      reportColumns.addAll(results.keySet());
+      reportRows.add(row);
       for (ReportDesc reportDesc : reportDescs) {
          if(results.get("READS_PER_SEC") != null && results.get("WRITE_COUNT") != null) {
             long readsPerSec = (long) (double) (Double) results.get("READS_PER_SEC");
             long noReads = (Long) results.get("READ_COUNT");
             long writesPerSec = (long) (double) (Double) results.get("WRITES_PER_SEC");
             long noWrites = (Long) results.get("WRITE_COUNT");
-            reportDesc.updateData(product, config, readsPerSec, noReads, writesPerSec, noWrites);
+            reportDesc.updateData(product, planned.configProps.getProperty("name"), config, readsPerSec, noReads,
+                                  writesPerSec, noWrites);
          }
       }
    }
 
-   private void generateHeader(Map<String, Object> results) throws FileNotFoundException {
-      if (!headerGenerted) {
-         StringBuilder header = new StringBuilder();
-         header.append("PRODUCT, CONFIG");
-         for (String key : results.keySet()) {
-            header.append(",").append(key);
-         }
-         writeLine(header.toString());
-         headerGenerted = true;
-      }
+   private CacheWrapper getCacheWrapper(String product, String fqnClass) throws Exception {
+      CacheWrapper wrapper = Utils.createCacheWrapper(product, fqnClass, getClass().getClassLoader());
+      Thread.currentThread().setContextClassLoader(wrapper.getClass().getClassLoader());
+      return wrapper;
    }
 
-   private void writeLine(String line) throws FileNotFoundException {
-      reportCsvContent.append('\n').append(line);
+   public void addCell(BenchmarkCell cell) {
+      cells.add(cell);
    }
 
-   private CacheWrapper getCacheWrapper(String product, String fqnClass) throws Exception {
-      if(fqnClass == null) {
-         fqnClass = Utils.getCacheWrapperFqnClass(product);
+   public void addProductConfig(String productName, List<Properties> configs) {
+      product2Config.put(productName, configs);
+   }
+
+   public void addReportDesc(ReportDesc reportDesc) {
+      reportDescs.add(reportDesc);
+   }
+
+   public void setConfigFile(String configFile) {
+      this.configFile = configFile;
+   }
+
+   public void setFork(boolean fork) {
+      this.fork = fork;
+   }
+
+   public void setRepetitions(int repetitions) {
+      if (repetitions < 1) throw new IllegalArgumentException("Repetitions must be positive: " + repetitions);
+      this.repetitions = repetitions;
+   }
+
+   public void setClients(int clients) {
+      if (clients < 1) throw new IllegalArgumentException("Number of clients must be positive: " + clients);
+      this.clients = clients;
+   }
+
+   /**
+    * Makes this JVM one of the client JVMs, synchronized with the others by the coordinator on given port.
+    */
+   public void setNode(int nodeIndex, int numNodes, int coordinatorPort) throws IOException {
+      nodeBarrier = new NodeBarrier(coordinatorPort, nodeIndex, numNodes);
+      for (BenchmarkCell cell : cells) {
+         for (CacheWrapperStressor stressor : cell.getStressors()) {
+            if (stressor instanceof StressTestStressor) {
+               // each client works with its own keys
+               ((StressTestStressor) stressor).setNodeIndex(nodeIndex, numNodes);
+            }
+         }
       }
+   }
 
-      URLClassLoader loader = Utils.buildProductSpecificClassLoader(product, getClass().getClassLoader());
-      Thread.currentThread().setContextClassLoader(loader);
-      return (CacheWrapper) loader.loadClass(fqnClass).newInstance();
+   /**
+    * @param parallel number of runs executed concurrently, each in its own forked JVM
+    */
+   public void setParallel(int parallel) {
+      if (parallel < 1) throw new IllegalArgumentException("Number of concurrent runs must be positive: " + parallel);
+      this.parallel = parallel;
    }
 
-   public void addStressor(CacheWrapperStressor stressor) {
-      stressors.add(stressor);
+   /**
+    * @param cpuSets CPU lists for the concurrent runs separated by semicolons, e.g. 0-3;4-7
+    */
+   public void setCpuSets(String cpuSets) {
+      this.cpuSets = cpuSets;
    }
 
-   public void addProductConfig(String productName, List<Properties> configs) {
-      product2Config.put(productName, configs);
+   /**
+    * @param placement compact (each run on the cores of one socket) or scatter (each run spread across the sockets)
+    */
+   public void setPlacement(String placement) {
+      if (!"compact".equalsIgnoreCase(placement) && !"scatter".equalsIgnoreCase(placement)) {
+         throw new IllegalArgumentException("Placement must be compact or scatter: " + placement);
+      }
+      this.placement = placement;
    }
 
-   public void addReportDesc(ReportDesc reportDesc) {
-      reportDescs.add(reportDesc);
+   /**
+    * @param jvmArgs arguments of all forked JVMs, separated by whitespace
+    */
+   public void setJvmArgs(String jvmArgs) {
+      this.jvmArgs = jvmArgs;
    }
 
    private long freeMememory() {
@@ -1,7 +1,9 @@
 package com.ctriposs.blacksmith.local;
 
+import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -10,8 +12,13 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import com.ctriposs.blacksmith.CacheWrapperStressor;
 import com.ctriposs.blacksmith.config.ConfigHelper;
+import com.ctriposs.blacksmith.config.DefaultConverter;
 import com.ctriposs.blacksmith.config.DomConfigParser;
+import com.ctriposs.blacksmith.config.Property;
+import com.ctriposs.blacksmith.config.PropertyHelper;
+import com.ctriposs.blacksmith.config.SizeConverter;
 import com.ctriposs.blacksmith.config.StressorHelper;
+import com.ctriposs.blacksmith.config.TimeConverter;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +49,7 @@ public class LocalConfigParser {
       }
 
       LocalBenchmark result = new LocalBenchmark();
+      result.setConfigFile(config);
       Element configRoot = (Element) document.getElementsByTagName("local-bench-config").item(0);
       parseBenchmarkElement(result, configRoot);
       parseProductsElement(configRoot, result);
@@ -51,20 +59,92 @@ public class LocalConfigParser {
 
    private void parseBenchmarkElement(LocalBenchmark result, Element configRoot) throws InstantiationException, IllegalAccessException, ClassNotFoundException {
       Element benchmark = (Element) configRoot.getElementsByTagName("benchmark").item(0);
+      if (benchmark.hasAttribute("fork")) {
+         result.setFork(Boolean.parseBoolean(ConfigHelper.getStrAttribute(benchmark, "fork")));
+      }
+      if (benchmark.hasAttribute("repetitions")) {
+         result.setRepetitions(ConfigHelper.getIntAttribute(benchmark, "repetitions"));
+      }
+      if (benchmark.hasAttribute("clients")) {
+         result.setClients(ConfigHelper.getIntAttribute(benchmark, "clients"));
+      }
+      if (benchmark.hasAttribute(LocalBenchmark.JVM_ARGS)) {
+         result.setJvmArgs(ConfigHelper.getStrAttribute(benchmark, LocalBenchmark.JVM_ARGS));
+      }
+      if (benchmark.hasAttribute("parallel")) {
+         result.setParallel(ConfigHelper.getIntAttribute(benchmark, "parallel"));
+      }
+      if (benchmark.hasAttribute("cpuSets")) {
+         result.setCpuSets(ConfigHelper.getStrAttribute(benchmark, "cpuSets"));
+      }
+      if (benchmark.hasAttribute("placement")) {
+         result.setPlacement(ConfigHelper.getStrAttribute(benchmark, "placement"));
+      }
+      List<String> stressorNames = new ArrayList<String>();
+      List<Map<String, String>> stressorAttributes = new ArrayList<Map<String, String>>();
+      // stressor index and attribute name of each matrix dimension
+      Map<String, Object[]> dimensionAttributes = new LinkedHashMap<String, Object[]>();
+      ParameterMatrix matrix = new ParameterMatrix();
       for (int i = 0; i < benchmark.getChildNodes().getLength(); i++) {
          Node node = benchmark.getChildNodes().item(i);
          if (node instanceof Element) {
             Element nodeEl = (Element) node;
-            CacheWrapperStressor stressor = StressorHelper.getStressor(nodeEl.getNodeName());
-            Map<String, String> attrValues = new HashMap<String, String>();
+            Class<?> stressorClass = StressorHelper.getStressor(nodeEl.getNodeName()).getClass();
+            Map<String, String> attrValues = new LinkedHashMap<String, String>();
             for (int j = 0; j < nodeEl.getAttributes().getLength(); j++) {
                Attr attr = (Attr) nodeEl.getAttributes().item(j);
-               attrValues.put(attr.getName(), attr.getValue());
+               List<String> values = ParameterMatrix.parseValues(attr.getValue(),
+                     isSingleValued(stressorClass, attr.getName()));
+               if (values.size() > 1) {
+                  String label = attr.getName();
+                  if (dimensionAttributes.containsKey(label)) {
+                     label = nodeEl.getNodeName() + stressorNames.size() + "." + label;
+                  }
+                  matrix.addDimension(label, values);
+                  dimensionAttributes.put(label, new Object[] { stressorNames.size(), attr.getName() });
+               } else {
+                  attrValues.put(attr.getName(), values.get(0));
+               }
             }
+            stressorNames.add(nodeEl.getNodeName());
+            stressorAttributes.add(attrValues);
+         }
+      }
+      if (!matrix.isEmpty()) {
+         log.info("Benchmark matrix has " + matrix.size() + " cells");
+      }
+      for (int cellIndex = 0; cellIndex < matrix.size(); ++cellIndex) {
+         Map<String, String> cellValues = matrix.getCell(cellIndex);
+         BenchmarkCell cell = new BenchmarkCell(cellIndex, cellValues);
+         for (int i = 0; i < stressorNames.size(); ++i) {
+            Map<String, String> attrValues = new HashMap<String, String>(stressorAttributes.get(i));
+            for (Map.Entry<String, String> value : cellValues.entrySet()) {
+               Object[] attribute = dimensionAttributes.get(value.getKey());
+               if (attribute[0].equals(i)) {
+                  attrValues.put((String) attribute[1], value.getValue());
+               }
+            }
+            CacheWrapperStressor stressor = StressorHelper.getStressor(stressorNames.get(i));
             ConfigHelper.setValues(stressor, attrValues, true);
-            result.addStressor(stressor);
+            cell.addStressor(stressor);
          }
+         result.addCell(cell);
+      }
+   }
+
+   /**
+    * @return true if the property holds a single number, boolean or enum, so that commas in its value separate
+    *         values of the matrix
+    */
+   private static boolean isSingleValued(Class<?> stressorClass, String propertyName) {
+      Field field = PropertyHelper.getProperties(stressorClass).get(propertyName);
+      if (field == null) return false;
+      Class<?> converter = field.getAnnotation(Property.class).converter();
+      if (converter != DefaultConverter.class && converter != TimeConverter.class && converter != SizeConverter.class) {
+         return false;
       }
+      Class<?> type = field.getType();
+      return type.isPrimitive() || Number.class.isAssignableFrom(type) || type == Boolean.class || type.isEnum();
    }
 
    private void parseProductsElement(Element configRoot, LocalBenchmark localBenchmark) {
@@ -0,0 +1,306 @@
+package com.ctriposs.blacksmith.local;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctriposs.blacksmith.CacheWrapper;
+import com.ctriposs.blacksmith.state.SlaveState;
+import com.ctriposs.blacksmith.stressors.LatencyHistogram;
+import com.ctriposs.blacksmith.stressors.LiveStatistics;
+import com.ctriposs.blacksmith.stressors.Statistics;
+import com.ctriposs.blacksmith.sysmonitor.AbstractActivityMonitor;
+import com.ctriposs.blacksmith.sysmonitor.LocalJmxMonitor;
+import com.ctriposs.blacksmith.sysmonitor.ThreadCpuMonitor;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP endpoint on localhost exposing the state of the running benchmark: product and config, stressor phase,
+ * throughput, response time percentiles, cache size and the latest readings of the JVM monitor. The response
+ * times are read from {@link LiveStatistics}; throughput and percentiles are computed over the interval since
+ * the previous request to the endpoint, the operation counts are totals since the stressor started.
+ * <p/>
+ * /metrics is in Prometheus text format, /metrics.json in JSON.
+ *
+ * @author bulldog
+ */
+public class MetricsServer {
+
+   private static Logger log = LoggerFactory.getLogger(MetricsServer.class);
+
+   private static final String CONTENT_TYPE_PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+   private static final String CONTENT_TYPE_JSON = "application/json; charset=utf-8";
+   private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+   private static final String[] QUANTILE_LABELS = { "0.5", "0.9", "0.99", "0.999" };
+   private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p999" };
+   private static final double MB = 1024 * 1024;
+
+   private final HttpServer server;
+   private final ExecutorService executor;
+
+   private String product;
+   private String config;
+   private CacheWrapper wrapper;
+   private SlaveState slaveState;
+   private LiveStatistics lastStatistics;
+   private LiveStatistics.Snapshot lastSnapshot;
+
+   private MetricsServer(HttpServer server, ExecutorService executor) {
+      this.server = server;
+      this.executor = executor;
+   }
+
+   /**
+    * @return the running server, or null if it could not be started
+    */
+   public static MetricsServer start(int port) {
+      HttpServer server;
+      try {
+         server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("localhost"), port), 0);
+      } catch (IOException e) {
+         log.warn("Cannot start metrics endpoint on port " + port + ": " + e);
+         return null;
+      }
+      ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+         @Override
+         public Thread newThread(Runnable r) {
+            // scrapes are served here; the prefix puts their CPU into the MONITOR group of the cost per operation
+            Thread thread = new Thread(r, ThreadCpuMonitor.MONITOR_THREAD_PREFIX + "Metrics");
+            thread.setDaemon(true);
+            return thread;
+         }
+      });
+      final MetricsServer metricsServer = new MetricsServer(server, executor);
+      server.createContext("/metrics", new HttpHandler() {
+         @Override
+         public void handle(HttpExchange exchange) throws IOException {
+            metricsServer.respond(exchange, CONTENT_TYPE_PROMETHEUS, metricsServer.toPrometheus(metricsServer.read()));
+         }
+      });
+      server.createContext("/metrics.json", new HttpHandler() {
+         @Override
+         public void handle(HttpExchange exchange) throws IOException {
+            metricsServer.respond(exchange, CONTENT_TYPE_JSON, metricsServer.toJson(metricsServer.read()));
+         }
+      });
+      server.setExecutor(executor);
+      server.start();
+      log.info("Metrics are available on http://localhost:" + port + "/metrics and /metrics.json");
+      return metricsServer;
+   }
+
+   /**
+    * Sets the product/config which is being benchmarked.
+    *
+    * @param slaveState the state in which the stressors publish their live statistics and the monitor
+    */
+   public synchronized void setRun(String product, String config, CacheWrapper wrapper, SlaveState slaveState) {
+      this.product = product;
+      this.config = config;
+      this.wrapper = wrapper;
+      this.slaveState = slaveState;
+   }
+
+   /**
+    * Called when the product/config has finished, before the wrapper is torn down.
+    */
+   public synchronized void clearRun() {
+      setRun(null, null, null, null);
+   }
+
+   public void stop() {
+      server.stop(0);
+      executor.shutdownNow();
+   }
+
+   private void respond(HttpExchange exchange, String contentType, String body) throws IOException {
+      byte[] bytes = body.getBytes("UTF-8");
+      exchange.getResponseHeaders().set("Content-Type", contentType);
+      exchange.sendResponseHeaders(200, bytes.length);
+      OutputStream out = exchange.getResponseBody();
+      try {
+         out.write(bytes);
+      } finally {
+         out.close();
+      }
+   }
+
+   /**
+    * One reading of all metrics. Sizes are in bytes, times in nanoseconds; NaN marks unknown values.
+    */
+   private static class Reading {
+      String product;
+      String config;
+      String phase;
+      long operations;
+      long responseTimeSum;
+      double throughput = Double.NaN;
+      double meanResponseTime = Double.NaN;
+      long[] percentiles;
+      long maxResponseTime;
+      long cacheSize = -1;
+      Map<String, Double> monitor = new LinkedHashMap<String, Double>();
+   }
+
+   private synchronized Reading read() {
+      Reading reading = new Reading();
+      reading.product = product;
+      reading.config = config;
+      if (slaveState == null) return reading;
+
+      LiveStatistics statistics = (LiveStatistics) slaveState.get(LiveStatistics.LIVE_STATISTICS);
+      if (statistics != null) {
+         LiveStatistics.Snapshot snapshot = statistics.snapshot();
+         LiveStatistics.Snapshot previous = statistics == lastStatistics ? lastSnapshot : null;
+         LatencyHistogram interval = snapshot.since(previous);
+         reading.phase = statistics.getPhase();
+         reading.operations = snapshot.getOperations();
+         reading.responseTimeSum = snapshot.getResponseTimeSum();
+         if (previous != null && snapshot.getNanoTime() > previous.getNanoTime()) {
+            reading.throughput = (double) (Statistics.NS_IN_SEC * interval.getCount())
+                  / (snapshot.getNanoTime() - previous.getNanoTime());
+         }
+         if (interval.getCount() > 0) {
+            reading.meanResponseTime = interval.getMean();
+            reading.percentiles = new long[PERCENTILES.length];
+            for (int i = 0; i < PERCENTILES.length; ++i) {
+               reading.percentiles[i] = interval.getPercentile(PERCENTILES[i]);
+            }
+            reading.maxResponseTime = interval.getMax();
+         }
+         lastStatistics = statistics;
+         lastSnapshot = snapshot;
+      }
+      if (wrapper != null) {
+         try {
+            reading.cacheSize = wrapper.getLocalSize();
+         } catch (RuntimeException e) {
+            log.trace("Cannot read cache size", e);
+         }
+      }
+      LocalJmxMonitor monitor = (LocalJmxMonitor) slaveState.get(LocalJmxMonitor.LOCAL_JMX_MONITOR);
+      if (monitor != null) {
+         addReading(reading, "cpu_usage_percent", monitor.getCpuMonitor(), 1);
+         addReading(reading, "gc_usage_percent", monitor.getGcMonitor(), 1);
+         addReading(reading, "heap_used_bytes", monitor.getMemoryMonitor(), 1);
+         addReading(reading, "rss_bytes", monitor.getNativeMemoryMonitor().getRssMonitor(), MB);
+         addReading(reading, "direct_memory_bytes", monitor.getNativeMemoryMonitor().getDirectMonitor(), MB);
+         addReading(reading, "jit_compilation_percent", monitor.getJitMonitor().getCompilationMonitor(), 1);
+         addReading(reading, "safepoint_percent", monitor.getJitMonitor().getSafepointMonitor(), 1);
+         reading.monitor.put("gc_pauses", (double) monitor.getGcPauseMonitor().getPauses().size());
+      }
+      return reading;
+   }
+
+   private static void addReading(Reading reading, String name, AbstractActivityMonitor monitor, double factor) {
+      double value = monitor.getLastMeasurement();
+      if (!Double.isNaN(value)) {
+         reading.monitor.put(name, value * factor);
+      }
+   }
+
+   private String toPrometheus(Reading reading) {
+      StringBuilder sb = new StringBuilder();
+      if (reading.product == null) return sb.toString();
+      String labels = "product=\"" + escape(reading.product) + "\",config=\"" + escape(reading.config) + "\"";
+      if (reading.phase != null) {
+         gauge(sb, "blacksmith_phase", "Current phase of the stressor.",
+               labels + ",phase=\"" + escape(reading.phase) + "\"", 1);
+         sb.append("# HELP blacksmith_response_time_seconds Response time, quantiles since the previous scrape.\n")
+               .append("# TYPE blacksmith_response_time_seconds summary\n");
+         if (reading.percentiles != null) {
+            for (int i = 0; i < PERCENTILES.length; ++i) {
+               sample(sb, "blacksmith_response_time_seconds",
+                     labels + ",quantile=\"" + QUANTILE_LABELS[i] + "\"", seconds(reading.percentiles[i]));
+            }
+         }
+         sample(sb, "blacksmith_response_time_seconds_sum", labels, seconds(reading.responseTimeSum));
+         sample(sb, "blacksmith_response_time_seconds_count", labels, reading.operations);
+         if (!Double.isNaN(reading.throughput)) {
+            gauge(sb, "blacksmith_throughput_ops", "Operations per second since the previous scrape.", labels,
+                  reading.throughput);
+         }
+      }
+      if (reading.cacheSize >= 0) {
+         gauge(sb, "blacksmith_cache_entries", "Number of entries in the local cache.", labels, reading.cacheSize);
+      }
+      for (Map.Entry<String, Double> entry : reading.monitor.entrySet()) {
+         gauge(sb, "blacksmith_jvm_" + entry.getKey(), "Latest reading of the JVM monitor.", labels, entry.getValue());
+      }
+      return sb.toString();
+   }
+
+   private static void gauge(StringBuilder sb, String name, String help, String labels, double value) {
+      sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+      sb.append("# TYPE ").append(name).append(" gauge\n");
+      sample(sb, name, labels, value);
+   }
+
+   private static void sample(StringBuilder sb, String name, String labels, double value) {
+      sb.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+   }
+
+   private static double seconds(long nanos) {
+      return (double) nanos / Statistics.NS_IN_SEC;
+   }
+
+   private static String escape(String value) {
+      return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+   }
+
+   private String toJson(Reading reading) {
+      StringBuilder sb = new StringBuilder("{");
+      sb.append("\"product\":").append(jsonString(reading.product));
+      sb.append(",\"config\":").append(jsonString(reading.config));
+      sb.append(",\"phase\":").append(jsonString(reading.phase));
+      sb.append(",\"operations\":").append(reading.operations);
+      sb.append(",\"throughput\":").append(jsonNumber(reading.throughput));
+      sb.append(",\"responseTimeNanos\":{\"mean\":").append(jsonNumber(reading.meanResponseTime));
+      for (int i = 0; i < PERCENTILES.length; ++i) {
+         sb.append(",\"").append(PERCENTILE_NAMES[i]).append("\":")
+               .append(reading.percentiles == null ? "null" : String.valueOf(reading.percentiles[i]));
+      }
+      sb.append(",\"max\":").append(reading.percentiles == null ? "null" : String.valueOf(reading.maxResponseTime));
+      sb.append("},\"cacheEntries\":").append(reading.cacheSize < 0 ? "null" : String.valueOf(reading.cacheSize));
+      sb.append(",\"jvm\":{");
+      boolean first = true;
+      for (Map.Entry<String, Double> entry : reading.monitor.entrySet()) {
+         if (!first) sb.append(',');
+         first = false;
+         sb.append(jsonString(entry.getKey())).append(':').append(jsonNumber(entry.getValue()));
+      }
+      sb.append("}}\n");
+      return sb.toString();
+   }
+
+   private static String jsonString(String value) {
+      if (value == null) return "null";
+      StringBuilder sb = new StringBuilder("\"");
+      for (int i = 0; i < value.length(); ++i) {
+         char c = value.charAt(i);
+         if (c == '"' || c == '\\') {
+            sb.append('\\').append(c);
+         } else if (c < 0x20) {
+            sb.append(String.format("\\u%04x", (int) c));
+         } else {
+            sb.append(c);
+         }
+      }
+      return sb.append('"').toString();
+   }
+
+   private static String jsonNumber(double value) {
+      return Double.isNaN(value) || Double.isInfinite(value) ? "null" : String.valueOf(value);
+   }
+}
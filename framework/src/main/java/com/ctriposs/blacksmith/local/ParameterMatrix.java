@@ -0,0 +1,139 @@
+package com.ctriposs.blacksmith.local;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ctriposs.blacksmith.config.SizeConverter;
+
+/**
+ * Parameter matrix of the benchmark: stressor attributes with several values, each combination of the values is
+ * run as one cell. An attribute takes several values written as
+ * <ul>
+ * <li>a comma-separated list, e.g. {@code numThreads="1,2,4,8,16"}, for attributes holding a single number,
+ * boolean or enum (other attributes, e.g. entry sizes, use commas in their own syntax)</li>
+ * <li>{@code values(a | b | c)} for any attribute, e.g. {@code entrySize="values(100 | 50%:100,50%:10000)"}</li>
+ * <li>{@code range(from..to)}, {@code range(from..to, +step)} or {@code range(from..to, xfactor)}, e.g.
+ * {@code entrySize="range(64..64kB, x4)"}; the bounds may have size suffixes and are included</li>
+ * </ul>
+ * The first dimension changes slowest in the order of the cells.
+ *
+ * @author bulldog
+ */
+public class ParameterMatrix {
+
+   private static final String VALUES = "values(";
+   private static final String RANGE = "range(";
+   // protects from sweeps which would never finish
+   private static final int MAX_RANGE_VALUES = 1000;
+
+   private final List<String> labels = new ArrayList<String>();
+   private final List<List<String>> dimensions = new ArrayList<List<String>>();
+
+   /**
+    * @param commaSeparated whether a plain comma-separated list is expanded, false when the attribute itself
+    *                       accepts commas
+    * @return values of the attribute, single one if it is not a matrix
+    */
+   public static List<String> parseValues(String value, boolean commaSeparated) {
+      String trimmed = value.trim();
+      if (trimmed.startsWith(VALUES) && trimmed.endsWith(")")) {
+         List<String> values = new ArrayList<String>();
+         for (String part : trimmed.substring(VALUES.length(), trimmed.length() - 1).split("\\|")) {
+            if (!part.trim().isEmpty()) values.add(part.trim());
+         }
+         if (values.isEmpty()) throw new IllegalArgumentException("No values in " + value);
+         return values;
+      } else if (trimmed.startsWith(RANGE) && trimmed.endsWith(")")) {
+         return parseRange(trimmed.substring(RANGE.length(), trimmed.length() - 1), value);
+      } else if (commaSeparated && trimmed.indexOf(',') >= 0) {
+         List<String> values = new ArrayList<String>();
+         for (String part : trimmed.split(",")) {
+            if (part.trim().isEmpty()) throw new IllegalArgumentException("Empty value in " + value);
+            values.add(part.trim());
+         }
+         return values;
+      }
+      return Collections.singletonList(value);
+   }
+
+   private static List<String> parseRange(String definition, String value) {
+      String bounds = definition;
+      String step = "+1";
+      int comma = definition.indexOf(',');
+      if (comma >= 0) {
+         bounds = definition.substring(0, comma);
+         step = definition.substring(comma + 1).trim();
+      }
+      int dots = bounds.indexOf("..");
+      if (dots < 0 || step.length() < 2) {
+         throw new IllegalArgumentException("Expected range(from..to[, +step|xfactor]): " + value);
+      }
+      SizeConverter converter = new SizeConverter();
+      long from, to, increment;
+      try {
+         from = converter.convert(bounds.substring(0, dots), Long.class);
+         to = converter.convert(bounds.substring(dots + 2), Long.class);
+         increment = converter.convert(step.substring(1), Long.class);
+      } catch (NumberFormatException e) {
+         throw new IllegalArgumentException("Cannot parse " + value, e);
+      }
+      boolean multiply;
+      if (step.charAt(0) == 'x' || step.charAt(0) == '*') {
+         multiply = true;
+         if (increment < 2 || from <= 0) throw new IllegalArgumentException("Factor must be at least 2 and start positive: " + value);
+      } else if (step.charAt(0) == '+') {
+         multiply = false;
+         if (increment < 1) throw new IllegalArgumentException("Step must be positive: " + value);
+      } else {
+         throw new IllegalArgumentException("Expected step as +step or xfactor: " + value);
+      }
+      if (from > to) throw new IllegalArgumentException("Empty range: " + value);
+      List<String> values = new ArrayList<String>();
+      for (long current = from; current <= to; current = multiply ? current * increment : current + increment) {
+         values.add(String.valueOf(current));
+         if (values.size() > MAX_RANGE_VALUES) {
+            throw new IllegalArgumentException("Range has more than " + MAX_RANGE_VALUES + " values: " + value);
+         }
+      }
+      return values;
+   }
+
+   public void addDimension(String label, List<String> values) {
+      if (labels.contains(label)) throw new IllegalArgumentException("Duplicate matrix dimension " + label);
+      labels.add(label);
+      dimensions.add(new ArrayList<String>(values));
+   }
+
+   public boolean isEmpty() {
+      return dimensions.isEmpty();
+   }
+
+   /**
+    * @return number of cells, 1 without any dimension
+    */
+   public int size() {
+      int size = 1;
+      for (List<String> values : dimensions) {
+         size *= values.size();
+      }
+      return size;
+   }
+
+   /**
+    * @return value of each dimension in given cell, in order of the dimensions
+    */
+   public Map<String, String> getCell(int index) {
+      if (index < 0 || index >= size()) throw new IndexOutOfBoundsException("Cell " + index + " of " + size());
+      Map<String, String> cell = new LinkedHashMap<String, String>();
+      int divisor = size();
+      for (int i = 0; i < dimensions.size(); ++i) {
+         List<String> values = dimensions.get(i);
+         divisor /= values.size();
+         cell.put(labels.get(i), values.get(index / divisor % values.size()));
+      }
+      return cell;
+   }
+}
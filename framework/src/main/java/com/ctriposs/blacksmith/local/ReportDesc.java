@@ -32,12 +32,14 @@ public class ReportDesc {
       return includeAll;
    }
 
-   public void updateData(String product, String config, long readsPerSec, long noReads, long writesPerSec, long noWrites) {
+   public void updateData(String product, String config, String run, long readsPerSec, long noReads,
+                          long writesPerSec, long noWrites) {
       if (includeAll) {
-         ReportItem item = new ReportItem(product, config);
+         ReportItem item = new ReportItem(product, run);
          updateItem(readsPerSec, noReads, writesPerSec, noWrites, item);
          items.add(item);
       } else {
+         // the items name the configuration, not its runs with the matrix values or the repetition
          for (ReportItem item : items) {
             if (item.matches(product, config)) {
                updateItem(readsPerSec, noReads, writesPerSec, noWrites, item);
@@ -1,9 +1,7 @@
 package com.ctriposs.blacksmith.reporting;
 
-import java.math.BigDecimal;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
-import java.util.List;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
@@ -64,7 +62,7 @@ public class ClusterTimeSeriesReport extends AbstractClusterReport {
 
       TimeSeries newSeries = new TimeSeries(seriesName, timePeriod);
 
-      List<BigDecimal> measurements = monitor.getMeasurements();
+      double[] measurements = monitor.getMeasurements();
 
       RegularTimePeriod timeScale = null;
       int counter = 1;
@@ -74,7 +72,9 @@ public class ClusterTimeSeriesReport extends AbstractClusterReport {
       date.set(Calendar.MINUTE, 0);
       date.set(Calendar.SECOND, 0);
       date.set(Calendar.MILLISECOND, 0);
-      for (BigDecimal value : measurements) {
+      // the oldest measurements may have been overwritten
+      date.add(dateUnit, (int) (monitor.getDroppedCount() * chartFrequency));
+      for (double value : measurements) {
          timeScale = RegularTimePeriod.createInstance(timePeriod, date.getTime(), TimeZone.getDefault());
          newSeries.add(timeScale, value);
          date.add(dateUnit, chartFrequency);
@@ -0,0 +1,58 @@
+package com.ctriposs.blacksmith.reporting;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctriposs.blacksmith.stressors.ExpirationTimeline;
+import com.ctriposs.blacksmith.stressors.Statistics;
+import com.ctriposs.blacksmith.utils.Utils;
+
+/**
+ * Writes the expiration timeline as CSV with the entries expired and memory reclaimed in each interval, so that
+ * bursts of expiration can be lined up with the heap usage and the cost of the sweeper.
+ *
+ * @author bulldog
+ */
+public class ExpirationReport {
+
+   private static Logger log = LoggerFactory.getLogger(ExpirationReport.class);
+
+   private static final double MB = 1024 * 1024;
+
+   private final String reportPrefix;
+   private final List<ExpirationTimeline.Sample> samples;
+
+   public ExpirationReport(String product, String config, ExpirationTimeline timeline) {
+      this.reportPrefix = product + "(" + config + ")";
+      this.samples = timeline.getSamples();
+   }
+
+   public void generate() {
+      StringBuilder csv = new StringBuilder("TIMESTAMP, EXPIRED_ENTRIES, RECLAIMED_MB, CACHE_ENTRIES, HEAP_USED_MB, " +
+            "EXPIRATION_CPU_PERCENT\n");
+      for (int i = 1; i < samples.size(); ++i) {
+         ExpirationTimeline.Sample previous = samples.get(i - 1);
+         ExpirationTimeline.Sample sample = samples.get(i);
+         long interval = sample.getTimestamp() - previous.getTimestamp();
+         csv.append(sample.getTimestamp()).append(',')
+               .append(sample.getExpiredEntries() - previous.getExpiredEntries()).append(',')
+               .append(String.format(Locale.ENGLISH, "%.3f", (sample.getReclaimedBytes() - previous.getReclaimedBytes()) / MB)).append(',')
+               .append(sample.getCacheSize()).append(',')
+               .append(String.format(Locale.ENGLISH, "%.1f", sample.getHeapUsed() / MB)).append(',');
+         if (interval > 0 && sample.getExpirationCpuNanos() >= 0 && previous.getExpirationCpuNanos() >= 0) {
+            double cpu = (double) (sample.getExpirationCpuNanos() - previous.getExpirationCpuNanos()) / (interval * Statistics.NS_IN_MS);
+            csv.append(String.format(Locale.ENGLISH, "%.2f", 100 * cpu));
+         }
+         csv.append('\n');
+      }
+      try {
+         Utils.createOutputFile(reportPrefix + "-expiration.csv", csv.toString());
+      } catch (IOException e) {
+         log.error("Failed to write CSV file", e);
+      }
+   }
+}
@@ -0,0 +1,124 @@
+package com.ctriposs.blacksmith.reporting;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctriposs.blacksmith.stressors.LatencyHistogram;
+import com.ctriposs.blacksmith.stressors.LatencyTimeline;
+import com.ctriposs.blacksmith.stressors.Statistics;
+import com.ctriposs.blacksmith.sysmonitor.GcPauseMonitor;
+import com.ctriposs.blacksmith.utils.Utils;
+
+/**
+ * Writes the GC pauses recorded during a stressor and the latency timeline of the stressor with the pauses which
+ * occurred in each interval, so that latency outliers can be attributed to GC (or ruled out).
+ *
+ * @author bulldog
+ */
+public class GcLatencyReport {
+
+   private static Logger log = LoggerFactory.getLogger(GcLatencyReport.class);
+
+   public static final String GC_PAUSE_COUNT = "GC_PAUSE_COUNT";
+   public static final String GC_PAUSE_TOTAL_MS = "GC_PAUSE_TOTAL_MS";
+   public static final String GC_PAUSE_MAX_MS = "GC_PAUSE_MAX_MS";
+
+   private final String reportPrefix;
+   private final List<GcPauseMonitor.GcPause> pauses;
+   private final LatencyTimeline timeline;
+
+   /**
+    * @param timeline may be null when the stressor does not record it
+    */
+   public GcLatencyReport(String product, String config, GcPauseMonitor monitor, LatencyTimeline timeline) {
+      this.reportPrefix = product + "(" + config + ")";
+      this.pauses = monitor.getPauses();
+      this.timeline = timeline;
+   }
+
+   /**
+    * @return summary of the pauses to be added to the results
+    */
+   public Map<String, Object> getSummary() {
+      long total = 0, max = 0;
+      for (GcPauseMonitor.GcPause pause : pauses) {
+         total += pause.getDuration();
+         max = Math.max(max, pause.getDuration());
+      }
+      Map<String, Object> summary = new LinkedHashMap<String, Object>();
+      summary.put(GC_PAUSE_COUNT, pauses.size());
+      summary.put(GC_PAUSE_TOTAL_MS, total);
+      summary.put(GC_PAUSE_MAX_MS, max);
+      return summary;
+   }
+
+   public void generate() {
+      try {
+         Utils.createOutputFile(reportPrefix + "-gc_pauses.csv", generatePausesCSV());
+         if (timeline != null) {
+            Utils.createOutputFile(reportPrefix + "-latency_timeline.csv", generateTimelineCSV());
+         }
+      } catch (IOException e) {
+         log.error("Failed to write CSV file", e);
+      }
+   }
+
+   private String generatePausesCSV() {
+      StringBuilder csv = new StringBuilder("TIMESTAMP, COLLECTOR, ACTION, CAUSE, DURATION_MS, HEAP_BEFORE, HEAP_AFTER\n");
+      for (GcPauseMonitor.GcPause pause : pauses) {
+         csv.append(pause.getTimestamp()).append(',').append(pause.getCollector()).append(',')
+               .append(pause.getAction()).append(',').append(pause.getCause()).append(',')
+               .append(pause.getDuration()).append(',').append(pause.getHeapBefore()).append(',')
+               .append(pause.getHeapAfter()).append('\n');
+      }
+      return csv.toString();
+   }
+
+   private String generateTimelineCSV() {
+      StringBuilder csv = new StringBuilder("INTERVAL_START, REQUESTS, AVG_NANOS, P50_NANOS, P99_NANOS, P999_NANOS, " +
+            "MAX_NANOS, GC_PAUSES, GC_PAUSE_TOTAL_MS, GC_PAUSE_MAX_MS, GC_CAUSES\n");
+      List<LatencyHistogram> intervals = timeline.getIntervals();
+      long intervalStart = timeline.getStartMillis();
+      long worstIntervalPauses = -1, worstLatency = 0;
+      for (LatencyHistogram histogram : intervals) {
+         long intervalEnd = intervalStart + timeline.getIntervalMillis();
+         long pauseCount = 0, pauseTotal = 0, pauseMax = 0;
+         Set<String> causes = new LinkedHashSet<String>();
+         for (GcPauseMonitor.GcPause pause : pauses) {
+            // a pause started before the interval may still stall it
+            if (pause.getTimestamp() < intervalEnd && pause.getTimestamp() + pause.getDuration() >= intervalStart) {
+               pauseCount++;
+               pauseTotal += pause.getDuration();
+               pauseMax = Math.max(pauseMax, pause.getDuration());
+               causes.add(pause.getCause());
+            }
+         }
+         csv.append(intervalStart).append(',').append(histogram.getCount()).append(',')
+               .append((long) histogram.getMean()).append(',').append(histogram.getPercentile(50)).append(',')
+               .append(histogram.getPercentile(99)).append(',').append(histogram.getPercentile(99.9)).append(',')
+               .append(histogram.getMax()).append(',').append(pauseCount).append(',').append(pauseTotal).append(',')
+               .append(pauseMax).append(',');
+         for (String cause : causes) {
+            csv.append(cause).append(';');
+         }
+         csv.append('\n');
+         if (histogram.getMax() > worstLatency) {
+            worstLatency = histogram.getMax();
+            worstIntervalPauses = pauseCount;
+         }
+         intervalStart = intervalEnd;
+      }
+      if (worstIntervalPauses >= 0) {
+         log.info(reportPrefix + ": max response time " + worstLatency / Statistics.NS_IN_MS + " ms was in interval with "
+               + worstIntervalPauses + " GC pause(s), " + pauses.size() + " pauses in total");
+      }
+      return csv.toString();
+   }
+}
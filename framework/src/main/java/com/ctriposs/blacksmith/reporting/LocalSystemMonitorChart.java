@@ -15,9 +15,12 @@ import com.ctriposs.blacksmith.local.ReportDesc;
 import com.ctriposs.blacksmith.local.ReportItem;
 import com.ctriposs.blacksmith.sysmonitor.AbstractActivityMonitor;
 import com.ctriposs.blacksmith.sysmonitor.CpuUsageMonitor;
+import com.ctriposs.blacksmith.sysmonitor.DiskIoMonitor;
 import com.ctriposs.blacksmith.sysmonitor.GcMonitor;
+import com.ctriposs.blacksmith.sysmonitor.JitMonitor;
 import com.ctriposs.blacksmith.sysmonitor.LocalJmxMonitor;
 import com.ctriposs.blacksmith.sysmonitor.MemoryUsageMonitor;
+import com.ctriposs.blacksmith.sysmonitor.NativeMemoryMonitor;
 import com.ctriposs.blacksmith.sysmonitor.NetworkBytesMonitor;
 import com.ctriposs.blacksmith.utils.Utils;
 
@@ -70,6 +73,10 @@ public class LocalSystemMonitorChart {
       generateCpu();
       generateGc();
       generateMemory();
+      generateNativeMemory();
+      generatePageFaults();
+      generateDiskIo();
+      generateJit();
       if (hasNetworkStatistics) {
          generateNetwork();
       }
@@ -89,6 +96,118 @@ public class LocalSystemMonitorChart {
       generateReport(timeReport, "memory_usage");
    }
 
+   private void generateNativeMemory() {
+      reportHeader = new StringBuilder(chartTimeUnit.name());
+      reportStrings = null;
+      ClusterTimeSeriesReport timeReport = new ClusterTimeSeriesReport(chartFrequency, chartTimeUnit);
+      timeReport.init("Time(" + chartTimeUnit.name() + ")", "Memory(Mb)", "Heap and native memory", "");
+      for (String s : sysMonitors.keySet()) {
+         MemoryUsageMonitor memMonitor = sysMonitors.get(s).getMemoryMonitor();
+         memMonitor.convertToMb();
+         addNonEmptySeries(timeReport, "heap-" + s, memMonitor);
+         NativeMemoryMonitor nativeMonitor = sysMonitors.get(s).getNativeMemoryMonitor();
+         addNonEmptySeries(timeReport, "direct-" + s, nativeMonitor.getDirectMonitor());
+         addNonEmptySeries(timeReport, "mapped-" + s, nativeMonitor.getMappedMonitor());
+         addNonEmptySeries(timeReport, "rss-" + s, nativeMonitor.getRssMonitor());
+         addNonEmptySeries(timeReport, "pss-" + s, nativeMonitor.getPssMonitor());
+      }
+      generateReport(timeReport, "native_memory_usage");
+   }
+
+   private void generatePageFaults() {
+      reportHeader = new StringBuilder(chartTimeUnit.name());
+      reportStrings = null;
+      ClusterTimeSeriesReport timeReport = new ClusterTimeSeriesReport(chartFrequency, chartTimeUnit);
+      timeReport.init("Time(" + chartTimeUnit.name() + ")", "Page faults", "Page faults", "");
+      for (String s : sysMonitors.keySet()) {
+         NativeMemoryMonitor nativeMonitor = sysMonitors.get(s).getNativeMemoryMonitor();
+         addNonEmptySeries(timeReport, "minor-faults-" + s, nativeMonitor.getMinorFaultsMonitor());
+         addNonEmptySeries(timeReport, "major-faults-" + s, nativeMonitor.getMajorFaultsMonitor());
+      }
+      if (reportStrings != null) {
+         generateReport(timeReport, "page_faults");
+      }
+   }
+
+   private void generateDiskIo() {
+      reportHeader = new StringBuilder(chartTimeUnit.name());
+      reportStrings = null;
+      ClusterTimeSeriesReport timeReport = new ClusterTimeSeriesReport(chartFrequency, chartTimeUnit);
+      timeReport.init("Time(" + chartTimeUnit.name() + ")", "MB/s", "Disk and process I/O", "");
+      for (String s : sysMonitors.keySet()) {
+         DiskIoMonitor ioMonitor = sysMonitors.get(s).getDiskIoMonitor();
+         addNonEmptySeries(timeReport, "disk-read-" + s, ioMonitor.getDiskReadMonitor());
+         addNonEmptySeries(timeReport, "disk-write-" + s, ioMonitor.getDiskWriteMonitor());
+         addNonEmptySeries(timeReport, "rchar-" + s, ioMonitor.getProcessRcharMonitor());
+         addNonEmptySeries(timeReport, "read_bytes-" + s, ioMonitor.getProcessReadMonitor());
+         addNonEmptySeries(timeReport, "wchar-" + s, ioMonitor.getProcessWcharMonitor());
+         addNonEmptySeries(timeReport, "write_bytes-" + s, ioMonitor.getProcessWriteMonitor());
+      }
+      if (reportStrings != null) {
+         generateReport(timeReport, "disk_io");
+      }
+
+      reportHeader = new StringBuilder(chartTimeUnit.name());
+      reportStrings = null;
+      timeReport = new ClusterTimeSeriesReport(chartFrequency, chartTimeUnit);
+      timeReport.init("Time(" + chartTimeUnit.name() + ")", "IOPS", "Disk IOPS", "");
+      for (String s : sysMonitors.keySet()) {
+         DiskIoMonitor ioMonitor = sysMonitors.get(s).getDiskIoMonitor();
+         addNonEmptySeries(timeReport, "read-iops-" + s, ioMonitor.getReadIopsMonitor());
+         addNonEmptySeries(timeReport, "write-iops-" + s, ioMonitor.getWriteIopsMonitor());
+      }
+      if (reportStrings != null) {
+         generateReport(timeReport, "disk_iops");
+      }
+
+      reportHeader = new StringBuilder(chartTimeUnit.name());
+      reportStrings = null;
+      timeReport = new ClusterTimeSeriesReport(chartFrequency, chartTimeUnit);
+      timeReport.init("Time(" + chartTimeUnit.name() + ")", "ms", "Average I/O wait", "");
+      for (String s : sysMonitors.keySet()) {
+         addNonEmptySeries(timeReport, "await-" + s, sysMonitors.get(s).getDiskIoMonitor().getAwaitMonitor());
+      }
+      if (reportStrings != null) {
+         generateReport(timeReport, "disk_await");
+      }
+   }
+
+   private void generateJit() {
+      reportHeader = new StringBuilder(chartTimeUnit.name());
+      reportStrings = null;
+      ClusterTimeSeriesReport timeReport = new ClusterTimeSeriesReport(chartFrequency, chartTimeUnit);
+      timeReport.init("Time(" + chartTimeUnit.name() + ")", "Time (%)", "JIT compilation and safepoints", "");
+      for (String s : sysMonitors.keySet()) {
+         JitMonitor jitMonitor = sysMonitors.get(s).getJitMonitor();
+         addNonEmptySeries(timeReport, "compilation-" + s, jitMonitor.getCompilationMonitor());
+         addNonEmptySeries(timeReport, "safepoints-" + s, jitMonitor.getSafepointMonitor());
+      }
+      if (reportStrings != null) {
+         generateReport(timeReport, "jit_activity");
+      }
+
+      reportHeader = new StringBuilder(chartTimeUnit.name());
+      reportStrings = null;
+      timeReport = new ClusterTimeSeriesReport(chartFrequency, chartTimeUnit);
+      timeReport.init("Time(" + chartTimeUnit.name() + ")", "Classes", "Loaded classes", "");
+      for (String s : sysMonitors.keySet()) {
+         addNonEmptySeries(timeReport, "classes-" + s, sysMonitors.get(s).getJitMonitor().getClassesLoadedMonitor());
+      }
+      if (reportStrings != null) {
+         generateReport(timeReport, "class_loading");
+      }
+   }
+
+   /**
+    * Values not supported by the platform have no measurements and are left out from the chart.
+    */
+   private void addNonEmptySeries(ClusterTimeSeriesReport timeReport, String s, AbstractActivityMonitor activityMonitor) {
+      if (activityMonitor.getMeasurementCount() > 0) {
+         reportHeader.append(", " + s);
+         populateGraph(timeReport, s, activityMonitor);
+      }
+   }
+
    private void generateCpu() {
       reportHeader = new StringBuilder(chartTimeUnit.name());
       reportStrings = null;
@@ -135,9 +254,10 @@ public class LocalSystemMonitorChart {
       int counter = 0;
       if (reportStrings == null) {
          reportStrings = new ArrayList<String>();
+         long first = activityMonitor.getDroppedCount();
          for (Object item : monitorData.getItems()) {
             TimeSeriesDataItem tsdi = (TimeSeriesDataItem) item;
-            reportStrings.add(counter++ + "," + tsdi.getValue());
+            reportStrings.add(first + counter++ + "," + tsdi.getValue());
          }
       } else {
          for (Object item : monitorData.getItems()) {
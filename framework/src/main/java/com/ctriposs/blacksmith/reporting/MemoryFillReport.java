@@ -0,0 +1,61 @@
+package com.ctriposs.blacksmith.reporting;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctriposs.blacksmith.stressors.FillCurve;
+import com.ctriposs.blacksmith.utils.Utils;
+
+/**
+ * Writes the fill curve as CSV with one row per fill step, so that throughput and response times can be plotted
+ * against the amount of data stored and the memory and disk used for them.
+ *
+ * @author bulldog
+ */
+public class MemoryFillReport {
+
+   private static Logger log = LoggerFactory.getLogger(MemoryFillReport.class);
+
+   private static final double MB = 1024 * 1024;
+
+   private final String reportPrefix;
+   private final List<FillCurve.Step> steps;
+
+   public MemoryFillReport(String product, String config, FillCurve curve) {
+      this.reportPrefix = product + "(" + config + ")";
+      this.steps = curve.getSteps();
+   }
+
+   public void generate() {
+      StringBuilder csv = new StringBuilder("STORED_MB, ENTRIES, FILL_MB_PER_SEC, HEAP_USED_MB, RSS_MB, DISK_MB, " +
+            "REQ_PER_SEC, RESPONSE_TIME_MEAN, RESPONSE_TIME_P99, RESPONSE_TIME_P999, RESPONSE_TIME_MAX, MISSES, ERRORS\n");
+      for (FillCurve.Step step : steps) {
+         csv.append(String.format(Locale.ENGLISH, "%.1f", step.getStoredBytes() / MB)).append(',')
+               .append(step.getEntries()).append(',')
+               .append(String.format(Locale.ENGLISH, "%.1f", step.getFillBytesPerSecond() / MB)).append(',')
+               .append(megabytes(step.getHeapUsed())).append(',')
+               .append(megabytes(step.getRss())).append(',')
+               .append(megabytes(step.getDiskUsage())).append(',')
+               .append(String.format(Locale.ENGLISH, "%.0f", step.getRequestsPerSecond())).append(',')
+               .append(String.format(Locale.ENGLISH, "%.0f", step.getLatency().getMean())).append(',')
+               .append(step.getLatency().getPercentile(99)).append(',')
+               .append(step.getLatency().getPercentile(99.9)).append(',')
+               .append(step.getLatency().getMax()).append(',')
+               .append(step.getMisses()).append(',')
+               .append(step.getErrors()).append('\n');
+      }
+      try {
+         Utils.createOutputFile(reportPrefix + "-fill.csv", csv.toString());
+      } catch (IOException e) {
+         log.error("Failed to write CSV file", e);
+      }
+   }
+
+   private static String megabytes(long bytes) {
+      return bytes < 0 ? "" : String.format(Locale.ENGLISH, "%.1f", bytes / MB);
+   }
+}
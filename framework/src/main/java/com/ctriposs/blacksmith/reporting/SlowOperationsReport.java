@@ -0,0 +1,104 @@
+package com.ctriposs.blacksmith.reporting;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctriposs.blacksmith.stressors.SlowOperations;
+import com.ctriposs.blacksmith.stressors.Statistics;
+import com.ctriposs.blacksmith.sysmonitor.GcPauseMonitor;
+import com.ctriposs.blacksmith.utils.Utils;
+
+/**
+ * Writes the slowest operations of a stressor with the GC pause each of them overlapped, if any.
+ *
+ * @author bulldog
+ */
+public class SlowOperationsReport {
+
+   private static Logger log = LoggerFactory.getLogger(SlowOperationsReport.class);
+
+   public static final String SLOW_OPS_IN_GC = "SLOW_OPS_IN_GC";
+   public static final String SLOW_OPS_DISTINCT_KEYS = "SLOW_OPS_DISTINCT_KEYS";
+
+   private final String reportPrefix;
+   private final List<SlowOperations.SlowOperation> slowest;
+   private final List<GcPauseMonitor.GcPause> pauses;
+
+   /**
+    * @param monitor may be null when the JVM was not monitored
+    */
+   public SlowOperationsReport(String product, String config, SlowOperations slowOperations, GcPauseMonitor monitor) {
+      this.reportPrefix = product + "(" + config + ")";
+      this.slowest = slowOperations.getSlowest();
+      this.pauses = monitor == null ? null : monitor.getPauses();
+   }
+
+   /**
+    * @return how many of the slowest operations overlapped a GC pause and on how many keys they were executed
+    */
+   public Map<String, Object> getSummary() {
+      Map<String, Object> summary = new LinkedHashMap<String, Object>();
+      Set<String> keys = new HashSet<String>();
+      int inGc = 0;
+      for (SlowOperations.SlowOperation operation : slowest) {
+         keys.add(operation.getKey());
+         if (findPause(operation) != null) inGc++;
+      }
+      if (pauses != null) {
+         summary.put(SLOW_OPS_IN_GC, inGc);
+      }
+      summary.put(SLOW_OPS_DISTINCT_KEYS, keys.size());
+      return summary;
+   }
+
+   public void generate() {
+      StringBuilder csv = new StringBuilder("RANK, TIMESTAMP, DURATION_NANOS, OPERATION, KEY, VALUE_SIZE, THREAD, " +
+            "GC_PAUSE_MS, GC_CAUSE\n");
+      int rank = 1;
+      for (SlowOperations.SlowOperation operation : slowest) {
+         GcPauseMonitor.GcPause pause = findPause(operation);
+         csv.append(rank++).append(',').append(operation.getTimestamp()).append(',').append(operation.getDuration())
+               .append(',').append(operation.getOperation()).append(',').append(quote(operation.getKey())).append(',')
+               .append(operation.getValueSize()).append(',').append(operation.getThread()).append(',');
+         if (pause != null) {
+            csv.append(pause.getDuration()).append(',').append(pause.getCause());
+         } else {
+            csv.append(',');
+         }
+         csv.append('\n');
+      }
+      try {
+         Utils.createOutputFile(reportPrefix + "-slow_operations.csv", csv.toString());
+      } catch (IOException e) {
+         log.error("Failed to write CSV file", e);
+      }
+   }
+
+   /**
+    * @return the longest GC pause which overlapped the operation, or null
+    */
+   private GcPauseMonitor.GcPause findPause(SlowOperations.SlowOperation operation) {
+      if (pauses == null) return null;
+      long end = operation.getTimestamp();
+      long start = end - operation.getDuration() / Statistics.NS_IN_MS;
+      GcPauseMonitor.GcPause longest = null;
+      for (GcPauseMonitor.GcPause pause : pauses) {
+         if (pause.getTimestamp() <= end && pause.getTimestamp() + pause.getDuration() >= start
+               && (longest == null || pause.getDuration() > longest.getDuration())) {
+            longest = pause;
+         }
+      }
+      return longest;
+   }
+
+   private static String quote(String value) {
+      return value == null ? "" : '"' + value.replace("\"", "\"\"") + '"';
+   }
+}
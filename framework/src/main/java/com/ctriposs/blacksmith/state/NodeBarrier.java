@@ -0,0 +1,75 @@
+package com.ctriposs.blacksmith.state;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Connection of a client JVM to the {@link NodeCoordinator}, published in the slave state so that the stressors can
+ * wait for the other nodes.
+ *
+ * @author bulldog
+ */
+public class NodeBarrier {
+
+   /**
+    * Key under which the barrier is stored in the slave state.
+    */
+   public static final String NODE_BARRIER = "NodeBarrier";
+
+   private final Socket socket;
+   private final BufferedReader reader;
+   private final Writer writer;
+   private final int nodeIndex;
+   private final int numNodes;
+
+   public NodeBarrier(int coordinatorPort, int nodeIndex, int numNodes) throws IOException {
+      this.socket = new Socket(InetAddress.getByName("localhost"), coordinatorPort);
+      this.socket.setTcpNoDelay(true);
+      this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+      this.writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+      this.nodeIndex = nodeIndex;
+      this.numNodes = numNodes;
+      writer.write(NodeCoordinator.NODE + " " + nodeIndex + "\n");
+      writer.flush();
+   }
+
+   /**
+    * Blocks until all nodes have reached the phase.
+    *
+    * @throws IllegalStateException if the coordination has been aborted, e.g. because other node has failed
+    */
+   public void await(String phase) {
+      String reply;
+      try {
+         writer.write(phase + "\n");
+         writer.flush();
+         reply = reader.readLine();
+      } catch (IOException e) {
+         throw new IllegalStateException("Lost connection to the node coordinator in phase " + phase, e);
+      }
+      if (!NodeCoordinator.GO.equals(reply)) {
+         throw new IllegalStateException("Node coordination aborted in phase " + phase);
+      }
+   }
+
+   public int getNodeIndex() {
+      return nodeIndex;
+   }
+
+   public int getNumNodes() {
+      return numNodes;
+   }
+
+   public void close() {
+      try {
+         socket.close();
+      } catch (IOException e) {
+         // the coordinator is gone
+      }
+   }
+}
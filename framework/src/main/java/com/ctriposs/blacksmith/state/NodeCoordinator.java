@@ -0,0 +1,155 @@
+package com.ctriposs.blacksmith.state;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Synchronizes phases of client JVMs running on the same machine over loopback sockets. Each node connects,
+ * announces its index and then for each phase sends the phase name and waits; when all nodes have reached the
+ * phase they are all released. If a node disconnects in the middle of the run the others are aborted, instead of
+ * waiting forever.
+ *
+ * @author bulldog
+ * @see NodeBarrier
+ */
+public class NodeCoordinator extends Thread {
+
+   private static Logger log = LoggerFactory.getLogger(NodeCoordinator.class);
+
+   static final String NODE = "NODE";
+   static final String GO = "GO";
+   static final String ABORT = "ABORT";
+
+   private final ServerSocket serverSocket;
+   private final int numNodes;
+   private final long connectTimeoutMillis;
+   private final Socket[] sockets;
+   private final BufferedReader[] readers;
+   private final Writer[] writers;
+
+   /**
+    * @param connectTimeoutMillis how long to wait until all nodes connect
+    */
+   public NodeCoordinator(int numNodes, long connectTimeoutMillis) throws IOException {
+      super("NodeCoordinator");
+      setDaemon(true);
+      this.serverSocket = new ServerSocket(0, numNodes, InetAddress.getByName("localhost"));
+      this.numNodes = numNodes;
+      this.connectTimeoutMillis = connectTimeoutMillis;
+      this.sockets = new Socket[numNodes];
+      this.readers = new BufferedReader[numNodes];
+      this.writers = new Writer[numNodes];
+   }
+
+   public int getPort() {
+      return serverSocket.getLocalPort();
+   }
+
+   @Override
+   public void run() {
+      try {
+         accept();
+         coordinate();
+      } catch (IOException e) {
+         log.error("Node coordination failed", e);
+         abort();
+      } finally {
+         close();
+      }
+   }
+
+   private void accept() throws IOException {
+      long deadline = System.currentTimeMillis() + connectTimeoutMillis;
+      for (int connected = 0; connected < numNodes; ) {
+         long timeout = deadline - System.currentTimeMillis();
+         if (timeout <= 0) throw new SocketTimeoutException("Only " + connected + " of " + numNodes + " nodes connected");
+         serverSocket.setSoTimeout((int) timeout);
+         Socket socket = serverSocket.accept();
+         socket.setTcpNoDelay(true);
+         BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+         String hello = reader.readLine();
+         int index = -1;
+         if (hello != null && hello.startsWith(NODE + " ")) {
+            index = Integer.parseInt(hello.substring(NODE.length() + 1).trim());
+         }
+         if (index < 0 || index >= numNodes || sockets[index] != null) {
+            log.warn("Rejecting connection from " + socket.getRemoteSocketAddress() + ": " + hello);
+            socket.close();
+            continue;
+         }
+         sockets[index] = socket;
+         readers[index] = reader;
+         writers[index] = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+         connected++;
+      }
+      log.info("All " + numNodes + " nodes connected");
+   }
+
+   private void coordinate() throws IOException {
+      for (;;) {
+         String phase = readers[0].readLine();
+         if (phase == null) {
+            // node 0 has finished, the others should finish as well
+            for (int i = 1; i < numNodes; ++i) {
+               String other = readers[i].readLine();
+               if (other != null) {
+                  throw new IOException("Node 0 has disconnected while node " + i + " reached phase " + other);
+               }
+            }
+            log.info("All nodes have finished");
+            return;
+         }
+         for (int i = 1; i < numNodes; ++i) {
+            String other = readers[i].readLine();
+            if (other == null) {
+               throw new IOException("Node " + i + " has disconnected before phase " + phase);
+            } else if (!phase.equals(other)) {
+               log.warn("Node 0 reached phase " + phase + " while node " + i + " reached phase " + other);
+            }
+         }
+         log.info("All nodes reached phase " + phase);
+         for (Writer writer : writers) {
+            writer.write(GO + "\n");
+            writer.flush();
+         }
+      }
+   }
+
+   private void abort() {
+      for (Writer writer : writers) {
+         if (writer == null) continue;
+         try {
+            writer.write(ABORT + "\n");
+            writer.flush();
+         } catch (IOException e) {
+            // the node is gone
+         }
+      }
+   }
+
+   public void close() {
+      try {
+         serverSocket.close();
+      } catch (IOException e) {
+         log.warn("Failed to close coordinator socket", e);
+      }
+      for (Socket socket : sockets) {
+         if (socket == null) continue;
+         try {
+            socket.close();
+         } catch (IOException e) {
+            // ignore
+         }
+      }
+   }
+}
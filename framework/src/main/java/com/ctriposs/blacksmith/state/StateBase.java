@@ -1,5 +1,6 @@
 package com.ctriposs.blacksmith.state;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.HashMap;
 
@@ -9,7 +10,8 @@ import java.util.HashMap;
  * @author bulldog
  */
 public class StateBase {
-   private Map<Object, Object> stateMap = new HashMap<Object, Object>();
+   // read by the metrics endpoint while the stressors run
+   private Map<Object, Object> stateMap = Collections.synchronizedMap(new HashMap<Object, Object>());
 
    public void remove(Object key) {
       stateMap.remove(key);
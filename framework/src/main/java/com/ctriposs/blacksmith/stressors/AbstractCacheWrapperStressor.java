@@ -3,7 +3,9 @@ package com.ctriposs.blacksmith.stressors;
 import com.ctriposs.blacksmith.CacheWrapperStressor;
 import com.ctriposs.blacksmith.config.Property;
 import com.ctriposs.blacksmith.config.Stressor;
+import com.ctriposs.blacksmith.config.TimeConverter;
 import com.ctriposs.blacksmith.state.SlaveState;
+import com.ctriposs.blacksmith.utils.ThreadPlacement;
 
 /**
  * @author bulldog
@@ -14,6 +16,27 @@ public abstract class AbstractCacheWrapperStressor implements CacheWrapperStress
    @Property(doc = "Should be the JVM monitored during this stressor run? Default is false.")
    private boolean sysMonitorEnabled = false;
 
+   @Property(doc = "Period of sampling by the JVM monitor in milliseconds, e.g. 100 to catch short stalls. Default is 1 second.",
+         converter = TimeConverter.class)
+   private long sysMonitorInterval = 1000;
+
+   @Property(doc = "Placement of the monitor threads on CPUs: none, compact, scatter or CPU list such as 0-1, " +
+         "e.g. to keep them off the CPUs of the stressor threads. Default is none.",
+         converter = ThreadPlacement.PlacementConverter.class)
+   private ThreadPlacement monitorPlacement = ThreadPlacement.NONE;
+
+   @Property(doc = "Should be a Java Flight Recorder recording of each product/config written into the reports " +
+         "directory? Requires JVM with JFR. Default is false.")
+   private boolean flightRecorderEnabled = false;
+
+   @Property(doc = "JFR settings used for the recording, e.g. default or profile. Default is profile.")
+   private String flightRecorderSettings = "profile";
+
+   @Property(doc = "Port of the HTTP endpoint on localhost exposing throughput, latency percentiles, phase, cache " +
+         "size and monitor readings of the running benchmark, in Prometheus text format on /metrics and " +
+         "as JSON on /metrics.json. Default is 0 (not started).")
+   private int metricsPort = 0;
+
    //The object which will store the state of the stressors.
    protected SlaveState slaveState;
 
@@ -22,6 +45,31 @@ public abstract class AbstractCacheWrapperStressor implements CacheWrapperStress
       return sysMonitorEnabled;
    }
 
+   @Override
+   public long getSysMonitorInterval() {
+      return sysMonitorInterval;
+   }
+
+   @Override
+   public ThreadPlacement getMonitorPlacement() {
+      return monitorPlacement;
+   }
+
+   @Override
+   public boolean isFlightRecorderEnabled() {
+      return flightRecorderEnabled;
+   }
+
+   @Override
+   public String getFlightRecorderSettings() {
+      return flightRecorderSettings;
+   }
+
+   @Override
+   public int getMetricsPort() {
+      return metricsPort;
+   }
+
    public void setSlaveState(SlaveState slaveState) {
       this.slaveState = slaveState;
    }
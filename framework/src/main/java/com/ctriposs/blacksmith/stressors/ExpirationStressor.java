@@ -0,0 +1,204 @@
+package com.ctriposs.blacksmith.stressors;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctriposs.blacksmith.CacheWrapper;
+import com.ctriposs.blacksmith.config.Property;
+import com.ctriposs.blacksmith.config.Stressor;
+import com.ctriposs.blacksmith.config.TimeConverter;
+import com.ctriposs.blacksmith.features.ExpirationCapable;
+import com.ctriposs.blacksmith.utils.Fuzzy;
+
+/**
+ * Writes new entries with native lifespans mixed with reads of recently written keys, the write pattern of caches
+ * where most entries leave by expiration. Besides the usual statistics the results contain the expiration lag
+ * (time from the deadline until the cache reclaimed the entry), the memory reclaimed, CPU time of the expiration and
+ * number of reads which returned an already expired entry. The expiration timeline is reported separately.
+ *
+ * @author bulldog
+ */
+@Stressor(doc = "Writes entries with native lifespans mixed with reads and measures the expiration lag and cost.")
+public class ExpirationStressor extends StressTestStressor {
+
+   private static final Logger log = LoggerFactory.getLogger(ExpirationStressor.class);
+
+   private static final double MB = 1024 * 1024;
+
+   @Property(doc = "Lifespan of the written entries in milliseconds, e.g. '50%:1000,50%:60000'. Default is 10 seconds.",
+         converter = Fuzzy.IntegerConverter.class)
+   private Fuzzy<Integer> lifespan = Fuzzy.always(10000);
+
+   @Property(doc = "Interval in which the expired entries, cache size and heap usage are sampled into the expiration " +
+         "timeline. Default is 1 second.", converter = TimeConverter.class)
+   private long expirationSampleInterval = 1000;
+
+   private volatile ExpirationCapable expirationWrapper;
+   private volatile ExpirationTimeline expirationTimeline;
+   private AtomicLong keyIndex = new AtomicLong();
+   private AtomicLong expiredEntries = new AtomicLong();
+   private AtomicLong reclaimedBytes = new AtomicLong();
+   private AtomicLong staleReads = new AtomicLong();
+   // in milliseconds, guarded by itself
+   private LatencyHistogram expirationLag = new LatencyHistogram();
+   private long expirationCpuStart;
+
+   @Override
+   protected void init(CacheWrapper wrapper) {
+      super.init(wrapper);
+      if (!(wrapper instanceof ExpirationCapable)) {
+         throw new IllegalArgumentException("Cache wrapper " + wrapper + " does not support expiration.");
+      }
+      expirationWrapper = (ExpirationCapable) wrapper;
+      expirationTimeline = null;
+      keyIndex = new AtomicLong();
+      expiredEntries = new AtomicLong();
+      reclaimedBytes = new AtomicLong();
+      staleReads = new AtomicLong();
+      expirationLag = new LatencyHistogram();
+      if (slaveState != null) {
+         slaveState.remove(ExpirationTimeline.EXPIRATION_TIMELINE);
+      }
+   }
+
+   @Override
+   public OperationLogic getLogic() {
+      if (sharedKeys || !fixedKeys || useAtomics || getNumEntries() < 1) {
+         throw new IllegalArgumentException("Expiration is tested on keys written by each thread, without atomics.");
+      }
+      log.info("using ExpiringOperationLogic");
+      return new ExpiringOperationLogic();
+   }
+
+   @Override
+   protected void executeOperations() throws InterruptedException {
+      expirationTimeline = new ExpirationTimeline();
+      if (slaveState != null) {
+         slaveState.put(ExpirationTimeline.EXPIRATION_TIMELINE, expirationTimeline);
+      }
+      expirationWrapper.setExpirationListener(new ExpirationCapable.ExpirationListener() {
+         @Override
+         public void expired(Object key, Object value, long deadlineMillis) {
+            long lag = Math.max(0, System.currentTimeMillis() - deadlineMillis);
+            synchronized (expirationLag) {
+               expirationLag.record(lag);
+            }
+            expiredEntries.incrementAndGet();
+            reclaimedBytes.addAndGet(valueSize(value));
+         }
+      });
+      expirationCpuStart = expirationWrapper.getExpirationCpuNanos();
+      Runnable sampler = new Runnable() {
+         @Override
+         public void run() {
+            sample();
+         }
+      };
+      sampler.run();
+      ScheduledExecutorService executor = createMonitorExecutor("Expiration");
+      executor.scheduleAtFixedRate(sampler, expirationSampleInterval, expirationSampleInterval, TimeUnit.MILLISECONDS);
+      try {
+         super.executeOperations();
+      } finally {
+         executor.shutdownNow();
+         sample();
+         expirationWrapper.setExpirationListener(null);
+      }
+   }
+
+   private void sample() {
+      try {
+         expirationTimeline.addSample(new ExpirationTimeline.Sample(System.currentTimeMillis(), expiredEntries.get(),
+               reclaimedBytes.get(), cacheWrapper.getLocalSize(),
+               ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(), expirationCpu()));
+      } catch (RuntimeException e) {
+         // a failed sample must not end the periodic sampling of the timeline
+         log.error("Failed to sample expiration", e);
+      }
+   }
+
+   private long expirationCpu() {
+      long cpu = expirationWrapper.getExpirationCpuNanos();
+      return cpu < 0 || expirationCpuStart < 0 ? -1 : cpu - expirationCpuStart;
+   }
+
+   @Override
+   protected Map<String, Object> processResults() {
+      Map<String, Object> results = super.processResults();
+      long expired = expiredEntries.get();
+      results.put("EXPIRED_ENTRIES", expired);
+      synchronized (expirationLag) {
+         results.put("EXPIRATION_LAG_MEAN_MS", expirationLag.getMean());
+         results.put("EXPIRATION_LAG_P99_MS", expirationLag.getPercentile(99));
+         results.put("EXPIRATION_LAG_MAX_MS", expirationLag.getMax());
+      }
+      results.put("RECLAIMED_MB", reclaimedBytes.get() / MB);
+      results.put("STALE_READS", staleReads.get());
+      long cpu = expirationCpu();
+      if (cpu >= 0) {
+         results.put("EXPIRATION_CPU_MS", TimeUnit.NANOSECONDS.toMillis(cpu));
+         results.put("EXPIRATION_CPU_NS_PER_ENTRY", expired > 0 ? (double) cpu / expired : 0d);
+      }
+      return results;
+   }
+
+   private int valueSize(Object value) {
+      try {
+         return getValueGenerator().sizeOf(value);
+      } catch (RuntimeException e) {
+         return 0;
+      }
+   }
+
+   /**
+    * Each thread writes new keys and reads the last numEntries keys it has written, some of which have already
+    * expired. A read is stale when it returns an entry after the deadline known to the thread, which is never
+    * earlier than the deadline computed by the wrapper.
+    */
+   protected class ExpiringOperationLogic implements OperationLogic {
+      private final Random random = new Random();
+      private final Object[] keys = new Object[getNumEntries()];
+      private final long[] deadlines = new long[getNumEntries()];
+      private long written;
+
+      @Override
+      public void init(String bucketId, int threadIndex) {
+      }
+
+      @Override
+      public Object run(StressTestStressor.Stressor stressor) throws RequestException {
+         if (written == 0 || random.nextInt(100) < activeWritePercentage) {
+            Object key = getKeyGenerator().generateKey(keyIndex.getAndIncrement());
+            long entryLifespan = lifespan.next(random);
+            stressor.makeRequest(Operation.PUT_WITH_LIFESPAN, key, generateValue(key, Integer.MAX_VALUE), entryLifespan);
+            int slot = (int) (written++ % keys.length);
+            keys[slot] = key;
+            deadlines[slot] = System.currentTimeMillis() + entryLifespan;
+            return null;
+         } else {
+            int slot = random.nextInt((int) Math.min(written, keys.length));
+            Object value = stressor.makeRequest(Operation.GET, keys[slot]);
+            if (value != null && System.currentTimeMillis() > deadlines[slot]) {
+               staleReads.incrementAndGet();
+            }
+            return value;
+         }
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "ExpirationStressor{" +
+            "lifespan=" + lifespan +
+            ", expirationSampleInterval=" + expirationSampleInterval +
+            ", " + super.toString() +
+            "}";
+   }
+}
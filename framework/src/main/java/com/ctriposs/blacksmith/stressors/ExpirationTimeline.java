@@ -0,0 +1,84 @@
+package com.ctriposs.blacksmith.stressors;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Periodic samples of expired entries, reclaimed bytes, cache size, heap usage and CPU time of the expiration taken
+ * while {@link ExpirationStressor} runs. The counters are cumulative since the start of the stressor.
+ *
+ * @author bulldog
+ */
+public class ExpirationTimeline implements Serializable {
+
+   /** The serialVersionUID */
+   private static final long serialVersionUID = 2838402468853601717L;
+
+   /**
+    * Key under which the expiration timeline of last stressor is stored in the slave state.
+    */
+   public static final String EXPIRATION_TIMELINE = "ExpirationTimeline";
+
+   public static class Sample implements Serializable {
+      /** The serialVersionUID */
+      private static final long serialVersionUID = -1315873207420591526L;
+
+      private final long timestamp;
+      private final long expiredEntries;
+      private final long reclaimedBytes;
+      private final int cacheSize;
+      private final long heapUsed;
+      private final long expirationCpuNanos;
+
+      public Sample(long timestamp, long expiredEntries, long reclaimedBytes, int cacheSize, long heapUsed,
+                    long expirationCpuNanos) {
+         this.timestamp = timestamp;
+         this.expiredEntries = expiredEntries;
+         this.reclaimedBytes = reclaimedBytes;
+         this.cacheSize = cacheSize;
+         this.heapUsed = heapUsed;
+         this.expirationCpuNanos = expirationCpuNanos;
+      }
+
+      /**
+       * @return milliseconds since epoch
+       */
+      public long getTimestamp() {
+         return timestamp;
+      }
+
+      public long getExpiredEntries() {
+         return expiredEntries;
+      }
+
+      public long getReclaimedBytes() {
+         return reclaimedBytes;
+      }
+
+      public int getCacheSize() {
+         return cacheSize;
+      }
+
+      public long getHeapUsed() {
+         return heapUsed;
+      }
+
+      /**
+       * @return -1 if not known
+       */
+      public long getExpirationCpuNanos() {
+         return expirationCpuNanos;
+      }
+   }
+
+   private final List<Sample> samples = new ArrayList<Sample>();
+
+   public synchronized void addSample(Sample sample) {
+      samples.add(sample);
+   }
+
+   public synchronized List<Sample> getSamples() {
+      return new ArrayList<Sample>(samples);
+   }
+}
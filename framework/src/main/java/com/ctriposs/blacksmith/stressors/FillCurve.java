@@ -0,0 +1,114 @@
+package com.ctriposs.blacksmith.stressors;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measurements taken by {@link MemoryFillStressor} after each fill step: amount of data stored, memory and disk used
+ * for them and the performance of reads and writes at that fill level. Unavailable values are -1.
+ *
+ * @author bulldog
+ */
+public class FillCurve implements Serializable {
+
+   /** The serialVersionUID */
+   private static final long serialVersionUID = -6052388301932847765L;
+
+   /**
+    * Key under which the fill curve of last stressor is stored in the slave state.
+    */
+   public static final String FILL_CURVE = "FillCurve";
+
+   public static class Step implements Serializable {
+      /** The serialVersionUID */
+      private static final long serialVersionUID = 3384651207749262916L;
+
+      private final long storedBytes;
+      private final long entries;
+      private final double fillBytesPerSecond;
+      private final long heapUsed;
+      private final long rss;
+      private final long diskUsage;
+      private final double requestsPerSecond;
+      private final LatencyHistogram latency;
+      private final long misses;
+      private final long errors;
+
+      public Step(long storedBytes, long entries, double fillBytesPerSecond, long heapUsed, long rss, long diskUsage,
+                  double requestsPerSecond, LatencyHistogram latency, long misses, long errors) {
+         this.storedBytes = storedBytes;
+         this.entries = entries;
+         this.fillBytesPerSecond = fillBytesPerSecond;
+         this.heapUsed = heapUsed;
+         this.rss = rss;
+         this.diskUsage = diskUsage;
+         this.requestsPerSecond = requestsPerSecond;
+         this.latency = latency;
+         this.misses = misses;
+         this.errors = errors;
+      }
+
+      /**
+       * @return sum of the value sizes written into the cache
+       */
+      public long getStoredBytes() {
+         return storedBytes;
+      }
+
+      public long getEntries() {
+         return entries;
+      }
+
+      /**
+       * @return rate of value bytes inserted during the fill step
+       */
+      public double getFillBytesPerSecond() {
+         return fillBytesPerSecond;
+      }
+
+      public long getHeapUsed() {
+         return heapUsed;
+      }
+
+      public long getRss() {
+         return rss;
+      }
+
+      public long getDiskUsage() {
+         return diskUsage;
+      }
+
+      public double getRequestsPerSecond() {
+         return requestsPerSecond;
+      }
+
+      /**
+       * @return response times of the measurement window, in nanoseconds
+       */
+      public LatencyHistogram getLatency() {
+         return latency;
+      }
+
+      /**
+       * @return number of reads which did not find a stored entry
+       */
+      public long getMisses() {
+         return misses;
+      }
+
+      public long getErrors() {
+         return errors;
+      }
+   }
+
+   private final List<Step> steps = new ArrayList<Step>();
+
+   public synchronized void addStep(Step step) {
+      steps.add(step);
+   }
+
+   public synchronized List<Step> getSteps() {
+      return new ArrayList<Step>(steps);
+   }
+}
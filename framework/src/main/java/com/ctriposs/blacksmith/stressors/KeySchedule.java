@@ -0,0 +1,196 @@
+package com.ctriposs.blacksmith.stressors;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Keys of the changing set together with the time when they should be removed. The keys are kept in a 4-ary
+ * min-heap ordered by the removal timestamp, so that the first key to remove is found in constant time and keys
+ * are added or removed in O(log n). Besides that each key belongs to a group (entry size), and a random key of the
+ * group can be picked in constant time.
+ * <p>
+ * All data are held in primitive arrays indexed by slot; slots are kept dense, so a slot returned by this class is
+ * valid only until the next modification. Not thread-safe, each stressor thread has its own schedule.
+ *
+ * @author bulldog
+ */
+public class KeySchedule {
+
+   private static final int ARITY = 4;
+
+   // indexed by slot
+   private Object[] keys;
+   private long[] removeTimestamps;
+   private int[] groups;
+   private int[] heapPositions;
+   private int[] groupPositions;
+   // indexed by heap position
+   private int[] heap;
+   // slots of each group
+   private final int[][] members;
+   private final int[] memberCounts;
+   private int size;
+
+   public KeySchedule(int groupCount, int initialCapacity) {
+      int capacity = Math.max(16, initialCapacity);
+      keys = new Object[capacity];
+      removeTimestamps = new long[capacity];
+      groups = new int[capacity];
+      heapPositions = new int[capacity];
+      groupPositions = new int[capacity];
+      heap = new int[capacity];
+      members = new int[groupCount][];
+      memberCounts = new int[groupCount];
+      for (int i = 0; i < groupCount; ++i) {
+         members[i] = new int[16];
+      }
+   }
+
+   public int size() {
+      return size;
+   }
+
+   public int size(int group) {
+      return memberCounts[group];
+   }
+
+   public boolean isEmpty() {
+      return size == 0;
+   }
+
+   /**
+    * @return slot of the key with the lowest removal timestamp, -1 if the schedule is empty
+    */
+   public int firstSlot() {
+      return size == 0 ? -1 : heap[0];
+   }
+
+   /**
+    * @return lowest removal timestamp, {@link Long#MAX_VALUE} if the schedule is empty
+    */
+   public long firstTimestamp() {
+      return size == 0 ? Long.MAX_VALUE : removeTimestamps[heap[0]];
+   }
+
+   /**
+    * @return slot of a uniformly chosen key of the group, -1 if the group is empty
+    */
+   public int randomSlot(int group, Random random) {
+      int count = memberCounts[group];
+      return count == 0 ? -1 : members[group][random.nextInt(count)];
+   }
+
+   public Object getKey(int slot) {
+      return keys[slot];
+   }
+
+   /**
+    * @return slot of the added key
+    */
+   public int add(Object key, long removeTimestamp, int group) {
+      if (size == keys.length) {
+         grow();
+      }
+      int slot = size++;
+      keys[slot] = key;
+      removeTimestamps[slot] = removeTimestamp;
+      groups[slot] = group;
+      if (memberCounts[group] == members[group].length) {
+         members[group] = Arrays.copyOf(members[group], members[group].length * 2);
+      }
+      groupPositions[slot] = memberCounts[group];
+      members[group][memberCounts[group]++] = slot;
+      heap[slot] = slot;
+      heapPositions[slot] = slot;
+      siftUp(slot);
+      return slot;
+   }
+
+   public void remove(int slot) {
+      if (slot < 0 || slot >= size) throw new IllegalArgumentException("Invalid slot " + slot + ", size is " + size);
+      // remove from the group
+      int group = groups[slot];
+      int lastMember = members[group][--memberCounts[group]];
+      members[group][groupPositions[slot]] = lastMember;
+      groupPositions[lastMember] = groupPositions[slot];
+      // remove from the heap
+      int position = heapPositions[slot];
+      int lastPosition = size - 1;
+      if (position != lastPosition) {
+         int moved = heap[lastPosition];
+         heap[position] = moved;
+         heapPositions[moved] = position;
+         if (removeTimestamps[moved] < removeTimestamps[slot]) {
+            siftUp(position);
+         } else {
+            siftDown(position);
+         }
+      }
+      // keep the slots dense by moving the last slot into the freed one
+      int last = size - 1;
+      if (slot != last) {
+         keys[slot] = keys[last];
+         removeTimestamps[slot] = removeTimestamps[last];
+         groups[slot] = groups[last];
+         heapPositions[slot] = heapPositions[last];
+         groupPositions[slot] = groupPositions[last];
+         heap[heapPositions[slot]] = slot;
+         members[groups[slot]][groupPositions[slot]] = slot;
+      }
+      keys[last] = null;
+      size--;
+   }
+
+   private void siftUp(int position) {
+      int slot = heap[position];
+      long timestamp = removeTimestamps[slot];
+      while (position > 0) {
+         int parentPosition = (position - 1) / ARITY;
+         int parent = heap[parentPosition];
+         if (removeTimestamps[parent] <= timestamp) break;
+         heap[position] = parent;
+         heapPositions[parent] = position;
+         position = parentPosition;
+      }
+      heap[position] = slot;
+      heapPositions[slot] = position;
+   }
+
+   private void siftDown(int position) {
+      int slot = heap[position];
+      long timestamp = removeTimestamps[slot];
+      // the slot being removed still counts in size, but it is never below the moved slot
+      int heapSize = size - 1;
+      for (;;) {
+         int firstChild = position * ARITY + 1;
+         if (firstChild >= heapSize) break;
+         int minPosition = firstChild;
+         long minTimestamp = removeTimestamps[heap[firstChild]];
+         int end = Math.min(firstChild + ARITY, heapSize);
+         for (int child = firstChild + 1; child < end; ++child) {
+            long childTimestamp = removeTimestamps[heap[child]];
+            if (childTimestamp < minTimestamp) {
+               minPosition = child;
+               minTimestamp = childTimestamp;
+            }
+         }
+         if (minTimestamp >= timestamp) break;
+         int child = heap[minPosition];
+         heap[position] = child;
+         heapPositions[child] = position;
+         position = minPosition;
+      }
+      heap[position] = slot;
+      heapPositions[slot] = position;
+   }
+
+   private void grow() {
+      int capacity = keys.length * 2;
+      keys = Arrays.copyOf(keys, capacity);
+      removeTimestamps = Arrays.copyOf(removeTimestamps, capacity);
+      groups = Arrays.copyOf(groups, capacity);
+      heapPositions = Arrays.copyOf(heapPositions, capacity);
+      groupPositions = Arrays.copyOf(groupPositions, capacity);
+      heap = Arrays.copyOf(heap, capacity);
+   }
+}
@@ -0,0 +1,106 @@
+package com.ctriposs.blacksmith.stressors;
+
+import java.io.Serializable;
+
+/**
+ * Fixed-size histogram of response times with logarithmic buckets: each power of two is split into
+ * {@link #SUB_BUCKETS} linear buckets, so the relative error of percentiles is below 25 %. Not thread-safe,
+ * each thread records into its own instance and these are merged.
+ *
+ * @author bulldog
+ */
+public class LatencyHistogram implements Serializable {
+
+   /** The serialVersionUID */
+   private static final long serialVersionUID = -2171963538498386543L;
+
+   private static final int SUB_BUCKET_BITS = 2;
+   static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+   static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+   private final int[] counts = new int[BUCKETS];
+   private long count;
+   private long sum;
+   private long max;
+
+   public LatencyHistogram() {
+   }
+
+   /**
+    * @param bucketCounts number of values in each bucket, as indexed by {@link #index(long)}
+    * @param sum sum of all values
+    */
+   LatencyHistogram(long[] bucketCounts, long sum) {
+      for (int i = 0; i < BUCKETS; ++i) {
+         if (bucketCounts[i] > 0) {
+            counts[i] = (int) Math.min(bucketCounts[i], Integer.MAX_VALUE);
+            count += counts[i];
+            max = upperBound(i);
+         }
+      }
+      this.sum = sum;
+   }
+
+   public void record(long nanos) {
+      if (nanos < 0) nanos = 0;
+      counts[index(nanos)]++;
+      count++;
+      sum += nanos;
+      if (nanos > max) max = nanos;
+   }
+
+   static int index(long value) {
+      if (value < SUB_BUCKETS) return (int) value;
+      int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+      int subBucket = (int) (value >>> magnitude) & (SUB_BUCKETS - 1);
+      return (magnitude + 1) * SUB_BUCKETS + subBucket;
+   }
+
+   /**
+    * @return the highest value that falls into bucket with given index
+    */
+   static long upperBound(int index) {
+      if (index < SUB_BUCKETS) return index;
+      int magnitude = index / SUB_BUCKETS - 1;
+      long subBucket = index % SUB_BUCKETS;
+      return ((SUB_BUCKETS + subBucket + 1) << magnitude) - 1;
+   }
+
+   public void merge(LatencyHistogram other) {
+      for (int i = 0; i < BUCKETS; ++i) {
+         counts[i] += other.counts[i];
+      }
+      count += other.count;
+      sum += other.sum;
+      if (other.max > max) max = other.max;
+   }
+
+   /**
+    * @param percentile e.g. 99.9
+    * @return upper bound of the bucket where the percentile falls, never more than the maximum recorded value
+    */
+   public long getPercentile(double percentile) {
+      if (count == 0) return 0;
+      long threshold = (long) Math.ceil(count * percentile / 100);
+      long accumulated = 0;
+      for (int i = 0; i < BUCKETS; ++i) {
+         accumulated += counts[i];
+         if (accumulated >= threshold && accumulated > 0) {
+            return Math.min(upperBound(i), max);
+         }
+      }
+      return max;
+   }
+
+   public long getCount() {
+      return count;
+   }
+
+   public double getMean() {
+      return count == 0 ? 0 : (double) sum / count;
+   }
+
+   public long getMax() {
+      return max;
+   }
+}
@@ -0,0 +1,87 @@
+package com.ctriposs.blacksmith.stressors;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Response times split into fixed time intervals, so that latency spikes can be correlated with other events
+ * (GC pauses, compactions...). Each stressor thread records into its own list of histograms, these are merged
+ * after the threads finish.
+ *
+ * @author bulldog
+ */
+public class LatencyTimeline implements Serializable {
+
+   /** The serialVersionUID */
+   private static final long serialVersionUID = 4416227359342919018L;
+
+   /**
+    * Key under which the timeline of last stressor is stored in the slave state.
+    */
+   public static final String LATENCY_TIMELINE = "LatencyTimeline";
+
+   private final long intervalMillis;
+   private final long startMillis;
+   private final transient long startNanos;
+   private final transient List<List<LatencyHistogram>> threadIntervals;
+   private List<LatencyHistogram> merged;
+
+   public LatencyTimeline(long intervalMillis, int threads) {
+      this.intervalMillis = intervalMillis;
+      this.startMillis = System.currentTimeMillis();
+      this.startNanos = System.nanoTime();
+      this.threadIntervals = new ArrayList<List<LatencyHistogram>>(threads);
+      for (int i = 0; i < threads; ++i) {
+         threadIntervals.add(new ArrayList<LatencyHistogram>());
+      }
+   }
+
+   /**
+    * Must be called only from the thread with given index.
+    */
+   public void record(int threadIndex, long nowNanos, long responseTime) {
+      int interval = (int) ((nowNanos - startNanos) / (intervalMillis * Statistics.NS_IN_MS));
+      List<LatencyHistogram> intervals = threadIntervals.get(threadIndex);
+      while (intervals.size() <= interval) {
+         intervals.add(null);
+      }
+      LatencyHistogram histogram = intervals.get(interval);
+      if (histogram == null) {
+         histogram = new LatencyHistogram();
+         intervals.set(interval, histogram);
+      }
+      histogram.record(responseTime);
+   }
+
+   /**
+    * Merges the threads' data; call after all threads have finished recording.
+    */
+   public synchronized List<LatencyHistogram> getIntervals() {
+      if (merged == null) {
+         merged = new ArrayList<LatencyHistogram>();
+         for (List<LatencyHistogram> intervals : threadIntervals) {
+            for (int i = 0; i < intervals.size(); ++i) {
+               while (merged.size() <= i) {
+                  merged.add(new LatencyHistogram());
+               }
+               if (intervals.get(i) != null) {
+                  merged.get(i).merge(intervals.get(i));
+               }
+            }
+         }
+      }
+      return merged;
+   }
+
+   /**
+    * @return wall-clock time of the beginning of the first interval, in milliseconds since epoch
+    */
+   public long getStartMillis() {
+      return startMillis;
+   }
+
+   public long getIntervalMillis() {
+      return intervalMillis;
+   }
+}
@@ -0,0 +1,115 @@
+package com.ctriposs.blacksmith.stressors;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Response times of a running stressor which can be read by other threads, e.g. by the metrics endpoint. Each
+ * stressor thread writes only into its own histogram counters with ordered stores, so recording costs no more than
+ * the per-thread statistics; readers sum the counters of all threads into a {@link Snapshot} and compute throughput
+ * and percentiles from the difference of two snapshots.
+ *
+ * @author bulldog
+ */
+public class LiveStatistics {
+
+   /**
+    * Key under which the live statistics of the running stressor are stored in the slave state.
+    */
+   public static final String LIVE_STATISTICS = "LiveStatistics";
+
+   // the histogram buckets are followed by the sum of response times
+   private static final int SUM = LatencyHistogram.BUCKETS;
+
+   private final AtomicLongArray[] threadCounters;
+   private volatile String phase = "init";
+
+   public LiveStatistics(int threads) {
+      threadCounters = new AtomicLongArray[threads];
+      for (int i = 0; i < threads; ++i) {
+         threadCounters[i] = new AtomicLongArray(SUM + 1);
+      }
+   }
+
+   /**
+    * Must be called only from the thread with given index.
+    */
+   public void record(int threadIndex, long responseTime) {
+      if (responseTime < 0) responseTime = 0;
+      AtomicLongArray counters = threadCounters[threadIndex];
+      int index = LatencyHistogram.index(responseTime);
+      // single writer, ordered store is enough
+      counters.lazySet(index, counters.get(index) + 1);
+      counters.lazySet(SUM, counters.get(SUM) + responseTime);
+   }
+
+   public Snapshot snapshot() {
+      long[] buckets = new long[SUM];
+      long sum = 0;
+      for (AtomicLongArray counters : threadCounters) {
+         for (int i = 0; i < SUM; ++i) {
+            buckets[i] += counters.get(i);
+         }
+         sum += counters.get(SUM);
+      }
+      return new Snapshot(System.nanoTime(), buckets, sum);
+   }
+
+   /**
+    * @return current phase of the stressor, e.g. preload, warmup, measure or finished
+    */
+   public String getPhase() {
+      return phase;
+   }
+
+   public void setPhase(String phase) {
+      this.phase = phase;
+   }
+
+   /**
+    * Totals of all stressor threads at one moment.
+    */
+   public static class Snapshot {
+      private final long nanoTime;
+      private final long[] buckets;
+      private final long operations;
+      private final long responseTimeSum;
+
+      private Snapshot(long nanoTime, long[] buckets, long responseTimeSum) {
+         this.nanoTime = nanoTime;
+         this.buckets = buckets;
+         long operations = 0;
+         for (long count : buckets) {
+            operations += count;
+         }
+         this.operations = operations;
+         this.responseTimeSum = responseTimeSum;
+      }
+
+      /**
+       * @return response times recorded since the previous snapshot, or since the start if it is null
+       */
+      public LatencyHistogram since(Snapshot previous) {
+         if (previous == null) return new LatencyHistogram(buckets, responseTimeSum);
+         long[] delta = new long[buckets.length];
+         for (int i = 0; i < buckets.length; ++i) {
+            delta[i] = buckets[i] - previous.buckets[i];
+         }
+         return new LatencyHistogram(delta, responseTimeSum - previous.responseTimeSum);
+      }
+
+      public long getNanoTime() {
+         return nanoTime;
+      }
+
+      public long getOperations() {
+         return operations;
+      }
+
+      /**
+       * @return sum of response times of all operations in nanoseconds
+       */
+      public long getResponseTimeSum() {
+         return responseTimeSum;
+      }
+   }
+}
@@ -0,0 +1,373 @@
+package com.ctriposs.blacksmith.stressors;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctriposs.blacksmith.CacheWrapper;
+import com.ctriposs.blacksmith.config.Property;
+import com.ctriposs.blacksmith.config.SizeConverter;
+import com.ctriposs.blacksmith.config.Stressor;
+import com.ctriposs.blacksmith.config.TimeConverter;
+import com.ctriposs.blacksmith.features.DiskUsageCapable;
+import com.ctriposs.blacksmith.sysmonitor.MemoryFootprint;
+import com.ctriposs.blacksmith.utils.Fuzzy;
+import com.ctriposs.blacksmith.utils.Utils;
+
+/**
+ * Fills the cache in steps of a fixed fraction of the target size and after each step measures reads and writes of
+ * the stored entries for a fixed time, until the cache holds the maximal size or a memory, disk or response time
+ * bound is exceeded. The curve of throughput and response times against the amount of data stored, heap, RSS and
+ * disk usage is reported separately; the results contain the capacity, i.e. the largest fill level which stayed
+ * within the bounds, and the performance there.
+ *
+ * @author bulldog
+ */
+@Stressor(doc = "Fills the cache in steps up to and past the target size and measures reads and writes after each step.")
+public class MemoryFillStressor extends AbstractCacheWrapperStressor {
+
+   private static Logger log = LoggerFactory.getLogger(MemoryFillStressor.class);
+
+   private static final String CLASS_LOADER = "AbstractDistStage.classLoader";
+   private static final double MB = 1024 * 1024;
+
+   @Property(optional = false, doc = "Amount of data (sum of value sizes) considered 100% fill, e.g. 4GB.",
+         converter = SizeConverter.class)
+   private long targetSize;
+
+   @Property(doc = "Amount of data inserted in each step, as percentage of the target size. Default is 10.")
+   private int stepPercentage = 10;
+
+   @Property(doc = "The fill stops at this percentage of the target size even if no bound has been exceeded. " +
+         "Default is 200.")
+   private int maxFillPercentage = 200;
+
+   @Property(doc = "Size of the entry in bytes. Default is 1000.", converter = Fuzzy.IntegerConverter.class)
+   private Fuzzy<Integer> entrySize = Fuzzy.always(1000);
+
+   @Property(doc = "The number of threads filling the cache and executing the measured operations. Default is 10.")
+   private int numThreads = 10;
+
+   @Property(doc = "Duration of the measurement after each fill step. Default is 10 seconds.",
+         converter = TimeConverter.class)
+   private long measurementDuration = 10000;
+
+   @Property(doc = "The frequency of writes (overwrites of stored keys) in the measurement (percentage). Default is 20%")
+   private int writePercentage = 20;
+
+   @Property(doc = "Stop when the used heap after GC exceeds this percentage of the maximal heap. Default is 90.")
+   private int maxHeapPercentage = 90;
+
+   @Property(doc = "Stop when the resident set size of the process exceeds this value. Default is 0 (not checked).",
+         converter = SizeConverter.class)
+   private long maxRss = 0;
+
+   @Property(doc = "Stop when the data of a cache wrapper supporting disk usage take more on disk. " +
+         "Default is 0 (not checked).", converter = SizeConverter.class)
+   private long maxDiskUsage = 0;
+
+   @Property(doc = "Stop when the 99th percentile of response time in the measurement exceeds this number of " +
+         "milliseconds, e.g. 0.5. Default is 0 (not checked).")
+   private double maxResponseTimeP99 = 0;
+
+   @Property(doc = "Bucket into which the entries are written. Default is none.")
+   private String bucket = null;
+
+   @Property(doc = "Full class name of the key generator. Default is com.ctriposs.blacksmith.stressors.StringKeyGenerator.")
+   private String keyGeneratorClass = StringKeyGenerator.class.getName();
+
+   @Property(doc = "Used to initialize the key generator. Null by default.")
+   private String keyGeneratorParam = null;
+
+   @Property(doc = "Full class name of the value generator. Default is com.ctriposs.blacksmith.stressors.ByteArrayValueGenerator.")
+   private String valueGeneratorClass = ByteArrayValueGenerator.class.getName();
+
+   @Property(doc = "Used to initialize the value generator. Null by default.")
+   private String valueGeneratorParam = null;
+
+   private CacheWrapper cacheWrapper;
+   private KeyGenerator keyGenerator;
+   private ValueGenerator valueGenerator;
+   private final AtomicLong storedBytes = new AtomicLong();
+   private final AtomicLong nextKeyIndex = new AtomicLong();
+   // entries whose put has succeeded; a failed put leaves its key index unused
+   private final AtomicLong storedEntries = new AtomicLong();
+
+   @Override
+   public Map<String, Object> stress(CacheWrapper wrapper) {
+      if (targetSize <= 0 || stepPercentage <= 0 || maxFillPercentage < stepPercentage) {
+         throw new IllegalArgumentException("Target size and step percentage must be positive and the maximal fill " +
+               "must be at least one step.");
+      }
+      cacheWrapper = wrapper;
+      ClassLoader classLoader = slaveState == null ? null : (ClassLoader) slaveState.get(CLASS_LOADER);
+      keyGenerator = (KeyGenerator) Utils.instantiate(keyGeneratorClass);
+      keyGenerator.init(keyGeneratorParam, classLoader);
+      valueGenerator = (ValueGenerator) Utils.instantiate(valueGeneratorClass);
+      valueGenerator.init(valueGeneratorParam, classLoader);
+      storedBytes.set(0);
+      nextKeyIndex.set(0);
+      storedEntries.set(0);
+      FillCurve curve = new FillCurve();
+      if (slaveState != null) {
+         slaveState.put(FillCurve.FILL_CURVE, curve);
+      }
+
+      long stepBytes = targetSize / 100 * stepPercentage;
+      long maxBytes = targetSize / 100 * maxFillPercentage;
+      String stopReason = "MAX_FILL";
+      FillCurve.Step first = null, capacity = null;
+      for (int step = 1; ; ++step) {
+         long stepTarget = Math.min(maxBytes, step * stepBytes);
+         long bytesBefore = storedBytes.get();
+         long start = System.nanoTime();
+         Throwable failure = runWorkers(new FillWorkerFactory(stepTarget));
+         double fillSeconds = (double) (System.nanoTime() - start) / Statistics.NS_IN_SEC;
+         if (failure != null) {
+            log.error("Fill step " + step + " failed", failure);
+            stopReason = failure instanceof OutOfMemoryError ? "OUT_OF_MEMORY" : "FILL_FAILED";
+            break;
+         }
+         double fillRate = fillSeconds > 0 ? (storedBytes.get() - bytesBefore) / fillSeconds : 0d;
+         FillCurve.Step result = measure(fillRate);
+         curve.addStep(result);
+         log.info(String.format("Step %d: stored %.1f MB in %d entries, %.0f reqs/s, p99 %d us, heap %.1f MB, " +
+               "RSS %.1f MB%s", step, result.getStoredBytes() / MB, result.getEntries(),
+               result.getRequestsPerSecond(), result.getLatency().getPercentile(99) / 1000,
+               result.getHeapUsed() / MB, result.getRss() / MB,
+               result.getDiskUsage() < 0 ? "" : String.format(", disk %.1f MB", result.getDiskUsage() / MB)));
+         if (first == null) first = result;
+         String exceeded = exceededBound(result);
+         if (exceeded != null) {
+            log.info("Stopping the fill, " + exceeded + " bound exceeded at " + result.getStoredBytes() + " bytes");
+            stopReason = exceeded;
+            break;
+         }
+         capacity = result;
+         if (stepTarget >= maxBytes) break;
+      }
+
+      Map<String, Object> results = new LinkedHashMap<String, Object>();
+      results.put("FILL_STEPS", curve.getSteps().size());
+      results.put("STOP_REASON", stopReason);
+      results.put("CAPACITY_BYTES", capacity == null ? 0 : capacity.getStoredBytes());
+      results.put("CAPACITY_ENTRIES", capacity == null ? 0 : capacity.getEntries());
+      results.put("CAPACITY_PERCENTAGE", capacity == null ? 0d : 100d * capacity.getStoredBytes() / targetSize);
+      if (capacity != null) {
+         results.put(Statistics.REQ_PER_SEC, capacity.getRequestsPerSecond());
+         results.put("RESPONSE_TIME_MEAN", capacity.getLatency().getMean());
+         results.put("RESPONSE_TIME_P99", capacity.getLatency().getPercentile(99));
+         results.put("DEGRADATION_THROUGHPUT", first.getRequestsPerSecond() > 0 ?
+               capacity.getRequestsPerSecond() / first.getRequestsPerSecond() : 0d);
+         results.put("DEGRADATION_P99", first.getLatency().getPercentile(99) > 0 ?
+               (double) capacity.getLatency().getPercentile(99) / first.getLatency().getPercentile(99) : 0d);
+      }
+      return results;
+   }
+
+   public void destroy() throws Exception {
+      cacheWrapper = null;
+   }
+
+   private FillCurve.Step measure(double fillRate) {
+      MeasureWorkerFactory factory = new MeasureWorkerFactory(System.currentTimeMillis() + measurementDuration);
+      long start = System.nanoTime();
+      Throwable failure = runWorkers(factory);
+      long duration = System.nanoTime() - start;
+      if (failure != null) {
+         log.error("Measurement failed", failure);
+      }
+      LatencyHistogram latency = new LatencyHistogram();
+      long requests = 0, misses = 0, errors = 0;
+      for (MeasureWorker worker : factory.workers) {
+         latency.merge(worker.latency);
+         requests += worker.latency.getCount();
+         misses += worker.misses;
+         errors += worker.errors;
+      }
+      // the heap usage is compared with the limit, garbage must not count
+      System.gc();
+      MemoryFootprint footprint = MemoryFootprint.current();
+      long diskUsage = cacheWrapper instanceof DiskUsageCapable ? ((DiskUsageCapable) cacheWrapper).getDiskUsage() : -1;
+      return new FillCurve.Step(storedBytes.get(), storedEntries.get(), fillRate, footprint.getHeapUsed(),
+            footprint.getRss(), diskUsage, duration > 0 ? (double) requests * Statistics.NS_IN_SEC / duration : 0d,
+            latency, misses, errors);
+   }
+
+   private String exceededBound(FillCurve.Step step) {
+      long maxHeap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax();
+      if (maxHeap > 0 && step.getHeapUsed() * 100 > maxHeap * maxHeapPercentage) {
+         return "HEAP";
+      } else if (maxRss > 0 && step.getRss() > maxRss) {
+         return "RSS";
+      } else if (maxDiskUsage > 0 && step.getDiskUsage() > maxDiskUsage) {
+         return "DISK";
+      } else if (maxResponseTimeP99 > 0 && step.getLatency().getPercentile(99) > maxResponseTimeP99 * Statistics.NS_IN_MS) {
+         return "RESPONSE_TIME";
+      }
+      return null;
+   }
+
+   /**
+    * Runs numThreads workers until all of them finish.
+    *
+    * @return first failure of a worker or null
+    */
+   private Throwable runWorkers(WorkerFactory factory) {
+      List<Worker> workers = new ArrayList<Worker>(numThreads);
+      for (int i = 0; i < numThreads; ++i) {
+         Worker worker = factory.create(i);
+         workers.add(worker);
+         worker.start();
+      }
+      Throwable failure = null;
+      for (Worker worker : workers) {
+         try {
+            worker.join();
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + worker.getName(), e);
+         }
+         if (failure == null) failure = worker.failure;
+      }
+      return failure;
+   }
+
+   private interface WorkerFactory {
+      Worker create(int threadIndex);
+   }
+
+   private abstract class Worker extends Thread {
+      protected final Random random = new Random();
+      protected volatile Throwable failure;
+
+      private Worker(String name) {
+         super(name);
+      }
+
+      @Override
+      public void run() {
+         try {
+            work();
+         } catch (Throwable t) {
+            failure = t;
+         }
+      }
+
+      protected abstract void work() throws Exception;
+   }
+
+   private class FillWorkerFactory implements WorkerFactory {
+      private final long stepTarget;
+      // the other workers stop once one of them fails
+      private volatile boolean failed;
+
+      private FillWorkerFactory(long stepTarget) {
+         this.stepTarget = stepTarget;
+      }
+
+      @Override
+      public Worker create(int threadIndex) {
+         return new Worker("Filler-" + threadIndex) {
+            @Override
+            protected void work() throws Exception {
+               boolean finished = false;
+               try {
+                  while (!failed && storedBytes.get() < stepTarget) {
+                     Object key = keyGenerator.generateKey(nextKeyIndex.getAndIncrement());
+                     Object value = valueGenerator.generateValue(key, entrySize.next(random), random);
+                     cacheWrapper.put(bucket, key, value);
+                     storedEntries.incrementAndGet();
+                     storedBytes.addAndGet(valueGenerator.sizeOf(value));
+                  }
+                  finished = true;
+               } finally {
+                  if (!finished) failed = true;
+               }
+            }
+         };
+      }
+   }
+
+   private class MeasureWorkerFactory implements WorkerFactory {
+      private final long endMillis;
+      private final List<MeasureWorker> workers = new ArrayList<MeasureWorker>();
+
+      private MeasureWorkerFactory(long endMillis) {
+         this.endMillis = endMillis;
+      }
+
+      @Override
+      public Worker create(int threadIndex) {
+         MeasureWorker worker = new MeasureWorker(threadIndex, endMillis);
+         workers.add(worker);
+         return worker;
+      }
+   }
+
+   /**
+    * Reads and overwrites uniformly chosen keys stored so far. The overwrites keep the distribution of entry sizes,
+    * therefore they do not change the amount of data stored.
+    */
+   private class MeasureWorker extends Worker {
+      private final long endMillis;
+      private final LatencyHistogram latency = new LatencyHistogram();
+      private long misses;
+      private long errors;
+
+      private MeasureWorker(int threadIndex, long endMillis) {
+         super("Stressor-" + threadIndex);
+         this.endMillis = endMillis;
+      }
+
+      @Override
+      protected void work() {
+         // the measurement follows only fill steps without a failed put, so the stored keys are dense
+         long entries = storedEntries.get();
+         if (entries == 0) return;
+         while (System.currentTimeMillis() < endMillis) {
+            Object key = keyGenerator.generateKey((long) (random.nextDouble() * entries));
+            boolean write = random.nextInt(100) < writePercentage;
+            Object value = write ? valueGenerator.generateValue(key, entrySize.next(random), random) : null;
+            long start = System.nanoTime();
+            try {
+               if (write) {
+                  cacheWrapper.put(bucket, key, value);
+               } else {
+                  value = cacheWrapper.get(bucket, key);
+               }
+               latency.record(System.nanoTime() - start);
+               if (value == null) misses++;
+            } catch (Exception e) {
+               errors++;
+               log.trace("Request failed", e);
+            }
+         }
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "MemoryFillStressor{" +
+            "targetSize=" + targetSize +
+            ", stepPercentage=" + stepPercentage +
+            ", maxFillPercentage=" + maxFillPercentage +
+            ", entrySize=" + entrySize +
+            ", numThreads=" + numThreads +
+            ", measurementDuration=" + measurementDuration +
+            ", writePercentage=" + writePercentage +
+            ", maxHeapPercentage=" + maxHeapPercentage +
+            ", maxRss=" + maxRss +
+            ", maxDiskUsage=" + maxDiskUsage +
+            ", maxResponseTimeP99=" + maxResponseTimeP99 +
+            ", bucket=" + bucket +
+            "}";
+   }
+}
@@ -0,0 +1,251 @@
+package com.ctriposs.blacksmith.stressors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctriposs.blacksmith.CacheWrapper;
+import com.ctriposs.blacksmith.config.ConfigHelper;
+import com.ctriposs.blacksmith.config.Property;
+import com.ctriposs.blacksmith.config.Stressor;
+import com.ctriposs.blacksmith.config.TimeConverter;
+import com.ctriposs.blacksmith.state.SlaveState;
+
+/**
+ * Runs several independent workload classes (tenants) at once against one cache wrapper, e.g. a bulk loading job
+ * next to a latency-sensitive reader. Each tenant is a {@link StressTestStressor} configured by its own properties,
+ * so it has its own threads, key space, entry sizes, operation mix and bucket. The tenants load their keys first and
+ * start the operations together; the results are reported per tenant, optionally compared with a run of each tenant
+ * alone to quantify the interference.
+ *
+ * @author bulldog
+ */
+@Stressor(doc = "Runs several workload classes with their own threads, keys, entry sizes, mix and bucket concurrently.")
+public class MultiTenantStressor extends AbstractCacheWrapperStressor {
+
+   private static Logger log = LoggerFactory.getLogger(MultiTenantStressor.class);
+
+   private static final String CLASS_LOADER = "AbstractDistStage.classLoader";
+
+   @Property(optional = false, doc = "Tenants separated by semicolons, each as 'name: property=value ...' with the " +
+         "properties of StressTest, e.g. 'loader: numThreads=2 numEntries=100000 entrySize=10000 " +
+         "writePercentage=100; reader: numThreads=8 numEntries=1000 entrySize=100 writePercentage=5'. " +
+         "The values must not contain whitespace. By default each tenant uses bucket and key prefix named after it.")
+   private String tenants;
+
+   @Property(doc = "Duration of the test for tenants which set neither durationMillis nor numRequests. " +
+         "Default is 1 minute.", converter = TimeConverter.class)
+   private long durationMillis = 60000;
+
+   @Property(doc = "Run each tenant alone before running them together, and report the ratio of throughput and " +
+         "response time percentiles of the shared run to the isolated one. Default is false.")
+   private boolean measureIsolated = false;
+
+   @Override
+   public Map<String, Object> stress(CacheWrapper wrapper) {
+      List<Tenant> tenantList = parseTenants();
+      log.info("Executing " + tenantList.size() + " tenants: " + tenants);
+      Map<String, TenantResult> isolated = new LinkedHashMap<String, TenantResult>();
+      if (measureIsolated) {
+         for (Tenant tenant : tenantList) {
+            log.info("Running tenant " + tenant.name + " alone");
+            isolated.putAll(runTenants(wrapper, Collections.singletonList(tenant)));
+         }
+      }
+      log.info("Running all tenants together");
+      Map<String, TenantResult> shared = runTenants(wrapper, tenantList);
+
+      Map<String, Object> results = new LinkedHashMap<String, Object>();
+      double requestsPerSecond = 0;
+      for (Tenant tenant : tenantList) {
+         TenantResult result = shared.get(tenant.name);
+         String prefix = tenant.name + ".";
+         for (Map.Entry<String, Object> entry : result.results.entrySet()) {
+            results.put(prefix + entry.getKey(), entry.getValue());
+         }
+         requestsPerSecond += result.getRequestsPerSecond();
+         if (result.latency != null) {
+            results.put(prefix + "RESPONSE_TIME_P99", result.latency.getPercentile(99));
+            results.put(prefix + "RESPONSE_TIME_P999", result.latency.getPercentile(99.9));
+         }
+         TenantResult alone = isolated.get(tenant.name);
+         if (alone != null) {
+            results.put(prefix + "ISOLATED_" + Statistics.REQ_PER_SEC, alone.getRequestsPerSecond());
+            results.put(prefix + "INTERFERENCE_THROUGHPUT", ratio(result.getRequestsPerSecond(), alone.getRequestsPerSecond()));
+            if (result.latency != null && alone.latency != null) {
+               results.put(prefix + "ISOLATED_RESPONSE_TIME_P99", alone.latency.getPercentile(99));
+               results.put(prefix + "INTERFERENCE_MEAN", ratio(result.latency.getMean(), alone.latency.getMean()));
+               results.put(prefix + "INTERFERENCE_P99", ratio(result.latency.getPercentile(99), alone.latency.getPercentile(99)));
+            }
+         }
+      }
+      results.put(Statistics.REQ_PER_SEC, requestsPerSecond);
+      return results;
+   }
+
+   public void destroy() throws Exception {
+   }
+
+   private static double ratio(double value, double base) {
+      return base > 0 ? value / base : 0d;
+   }
+
+   /**
+    * Runs the tenants concurrently, each with fresh stressor instance.
+    */
+   private Map<String, TenantResult> runTenants(final CacheWrapper wrapper, List<Tenant> tenantList) {
+      CyclicBarrier startBarrier = new CyclicBarrier(tenantList.size());
+      List<TenantThread> threads = new ArrayList<TenantThread>(tenantList.size());
+      for (Tenant tenant : tenantList) {
+         TenantThread thread = new TenantThread(tenant, wrapper, startBarrier);
+         threads.add(thread);
+         thread.start();
+      }
+      Map<String, TenantResult> results = new LinkedHashMap<String, TenantResult>();
+      for (TenantThread thread : threads) {
+         try {
+            thread.join();
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for tenant " + thread.tenant.name, e);
+         }
+         if (thread.failure != null) {
+            throw new IllegalStateException("Tenant " + thread.tenant.name + " has failed", thread.failure);
+         }
+         results.put(thread.tenant.name, thread.result);
+      }
+      return results;
+   }
+
+   private List<Tenant> parseTenants() {
+      if (tenants == null) {
+         throw new IllegalArgumentException("No tenants are defined.");
+      }
+      List<Tenant> tenantList = new ArrayList<Tenant>();
+      for (String tenantString : tenants.split(";")) {
+         tenantString = tenantString.trim();
+         if (tenantString.isEmpty()) continue;
+         int colon = tenantString.indexOf(':');
+         if (colon <= 0) {
+            throw new IllegalArgumentException("Expected 'name: property=value ...' for tenant: " + tenantString);
+         }
+         Tenant tenant = new Tenant(tenantString.substring(0, colon).trim());
+         for (Tenant other : tenantList) {
+            if (other.name.equals(tenant.name)) throw new IllegalArgumentException("Duplicate tenant " + tenant.name);
+         }
+         String definition = tenantString.substring(colon + 1).trim();
+         if (!definition.isEmpty()) {
+            for (String property : definition.split("\\s+")) {
+               int eq = property.indexOf('=');
+               if (eq <= 0) {
+                  throw new IllegalArgumentException("Expected property=value in tenant " + tenant.name + ": " + property);
+               }
+               tenant.properties.put(property.substring(0, eq), property.substring(eq + 1));
+            }
+         }
+         Map<String, String> properties = tenant.properties;
+         if (!properties.containsKey("durationMillis") && !properties.containsKey("numRequests")) {
+            properties.put("durationMillis", String.valueOf(durationMillis));
+         }
+         if (!properties.containsKey("bucketPolicy")) {
+            properties.put("bucketPolicy", "all:" + tenant.name);
+         }
+         if (!properties.containsKey("keyGeneratorClass") && !properties.containsKey("keyGeneratorParam")) {
+            // the tenants must not overwrite each other's keys when the wrapper ignores buckets
+            properties.put("keyGeneratorParam", tenant.name + "_key_%016X");
+         }
+         tenantList.add(tenant);
+      }
+      if (tenantList.isEmpty()) {
+         throw new IllegalArgumentException("No tenants are defined: " + tenants);
+      }
+      return tenantList;
+   }
+
+   private static class Tenant {
+      private final String name;
+      private final Map<String, String> properties = new LinkedHashMap<String, String>();
+
+      private Tenant(String name) {
+         this.name = name;
+      }
+   }
+
+   private static class TenantResult {
+      private final Map<String, Object> results;
+      // null when the tenant does not record the latency timeline
+      private final LatencyHistogram latency;
+
+      private TenantResult(Map<String, Object> results, LatencyHistogram latency) {
+         this.results = results;
+         this.latency = latency;
+      }
+
+      private double getRequestsPerSecond() {
+         Object requestsPerSecond = results.get(Statistics.REQ_PER_SEC);
+         return requestsPerSecond instanceof Number ? ((Number) requestsPerSecond).doubleValue() : 0d;
+      }
+   }
+
+   private class TenantThread extends Thread {
+      private final Tenant tenant;
+      private final CacheWrapper wrapper;
+      private final CyclicBarrier startBarrier;
+      private volatile TenantResult result;
+      private volatile Throwable failure;
+
+      private TenantThread(Tenant tenant, CacheWrapper wrapper, CyclicBarrier startBarrier) {
+         super("Tenant-" + tenant.name);
+         this.tenant = tenant;
+         this.wrapper = wrapper;
+         this.startBarrier = startBarrier;
+      }
+
+      @Override
+      public void run() {
+         try {
+            StressTestStressor stressor = new StressTestStressor();
+            ConfigHelper.setValues(stressor, tenant.properties, true);
+            // the timeline, statistics and other objects published by the stressor would clash with other tenants
+            SlaveState tenantState = new SlaveState();
+            if (slaveState != null) {
+               tenantState.setCacheWrapper(slaveState.getCacheWrapper());
+               tenantState.put(CLASS_LOADER, slaveState.get(CLASS_LOADER));
+            }
+            stressor.setSlaveState(tenantState);
+            stressor.setStartBarrier(startBarrier);
+            Map<String, Object> results = stressor.stress(wrapper);
+            stressor.destroy();
+            LatencyTimeline timeline = (LatencyTimeline) tenantState.get(LatencyTimeline.LATENCY_TIMELINE);
+            LatencyHistogram latency = null;
+            if (timeline != null) {
+               latency = new LatencyHistogram();
+               for (LatencyHistogram interval : timeline.getIntervals()) {
+                  latency.merge(interval);
+               }
+            }
+            result = new TenantResult(new LinkedHashMap<String, Object>(results), latency);
+         } catch (Throwable t) {
+            failure = t;
+            log.error("Tenant " + tenant.name + " has failed", t);
+            // do not let the other tenants wait for this one
+            startBarrier.reset();
+         }
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "MultiTenantStressor{" +
+            "tenants=" + tenants +
+            ", durationMillis=" + durationMillis +
+            ", measureIsolated=" + measureIsolated +
+            "}";
+   }
+}
@@ -9,6 +9,7 @@ public enum Operation {
    GET("READ"),
    GET_NULL("READ_NULL"),
    PUT("WRITE"),
+   PUT_WITH_LIFESPAN("WRITE_EXPIRING"),
    REMOVE,
    REMOVE_VALID,
    REMOVE_INVALID,
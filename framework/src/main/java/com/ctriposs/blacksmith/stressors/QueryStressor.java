@@ -0,0 +1,151 @@
+package com.ctriposs.blacksmith.stressors;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctriposs.blacksmith.CacheWrapper;
+import com.ctriposs.blacksmith.config.Property;
+import com.ctriposs.blacksmith.config.Stressor;
+import com.ctriposs.blacksmith.features.Queryable;
+
+/**
+ * Loads records into a queryable cache wrapper and then executes keyword and wildcard queries on their fields,
+ * mixed with puts of new records. Besides the query response time the results contain number of found entries.
+ *
+ * @author bulldog
+ */
+@Stressor(doc = "Executes keyword and wildcard queries mixed with puts against a queryable cache wrapper.")
+public class QueryStressor extends StressTestStressor {
+
+   private static final Logger log = LoggerFactory.getLogger(QueryStressor.class);
+
+   @Property(doc = "The frequency of wildcard queries among all queries (percentage). Default is 50%.")
+   private int wildcardPercentage = 50;
+
+   @Property(doc = "Number of characters of the word kept before the '*' in wildcard queries. Default is 2.")
+   private int wildcardPrefixLength = 2;
+
+   private AtomicLong keywordQueries = new AtomicLong();
+   private AtomicLong keywordResults = new AtomicLong();
+   private AtomicLong keywordNanos = new AtomicLong();
+   private AtomicLong wildcardQueries = new AtomicLong();
+   private AtomicLong wildcardResults = new AtomicLong();
+   private AtomicLong wildcardNanos = new AtomicLong();
+   private AtomicLong maxResults = new AtomicLong();
+
+   @Override
+   protected String getDefaultValueGeneratorClass() {
+      return RecordValueGenerator.class.getName();
+   }
+
+   @Override
+   protected void init(CacheWrapper wrapper) {
+      super.init(wrapper);
+      keywordQueries = new AtomicLong();
+      keywordResults = new AtomicLong();
+      keywordNanos = new AtomicLong();
+      wildcardQueries = new AtomicLong();
+      wildcardResults = new AtomicLong();
+      wildcardNanos = new AtomicLong();
+      maxResults = new AtomicLong();
+   }
+
+   @Override
+   public OperationLogic getLogic() {
+      if (!(cacheWrapper instanceof Queryable)) {
+         throw new IllegalArgumentException("Cache wrapper " + cacheWrapper.toString() + " does not support queries.");
+      } else if (!fixedKeys || useAtomics) {
+         throw new IllegalArgumentException("Queries can be executed only with fixed keys and without atomics.");
+      } else if (!(getValueGenerator() instanceof RecordValueGenerator)) {
+         throw new IllegalArgumentException("Queries require records generated by " + RecordValueGenerator.class.getName());
+      }
+      log.info("using QueryOperationLogic");
+      if (sharedKeys) {
+         return new QueryOperationLogic(new FixedSetSharedOperationLogic(sharedKeysPool));
+      } else {
+         return new QueryOperationLogic(new FixedSetPerThreadOperationLogic());
+      }
+   }
+
+   @Override
+   protected Map<String, Object> processResults() {
+      Map<String, Object> results = super.processResults();
+      results.put("KEYWORD_QUERY_COUNT", keywordQueries.get());
+      results.put("KEYWORD_QUERY_AVG_NANOS", average(keywordNanos, keywordQueries));
+      results.put("KEYWORD_QUERY_AVG_RESULTS", average(keywordResults, keywordQueries));
+      results.put("WILDCARD_QUERY_COUNT", wildcardQueries.get());
+      results.put("WILDCARD_QUERY_AVG_NANOS", average(wildcardNanos, wildcardQueries));
+      results.put("WILDCARD_QUERY_AVG_RESULTS", average(wildcardResults, wildcardQueries));
+      results.put("QUERY_MAX_RESULTS", maxResults.get());
+      return results;
+   }
+
+   private static double average(AtomicLong sum, AtomicLong count) {
+      return count.get() == 0 ? 0 : (double) sum.get() / count.get();
+   }
+
+   protected class QueryOperationLogic implements OperationLogic {
+      private final FixedSetOperationLogic initLogic;
+      private final Random r = new Random();
+
+      public QueryOperationLogic(FixedSetOperationLogic initLogic) {
+         this.initLogic = initLogic;
+      }
+
+      @Override
+      public void init(String bucketId, int threadIndex) {
+         initLogic.init(bucketId, threadIndex);
+      }
+
+      @Override
+      public Object run(StressTestStressor.Stressor stressor) throws RequestException {
+         if (r.nextInt(100) < activeWritePercentage) {
+            Object key = initLogic.getKey(r.nextInt(getNumEntries() - 1), stressor.getThreadIndex());
+            return stressor.makeRequest(Operation.PUT, key, generateValue(key, Integer.MAX_VALUE));
+         }
+         RecordValueGenerator generator = (RecordValueGenerator) getValueGenerator();
+         String word = generator.randomWord(r);
+         boolean wildcard = r.nextInt(100) < wildcardPercentage;
+         if (wildcard) {
+            word = word.substring(0, Math.min(word.length(), wildcardPrefixLength)) + "*";
+         }
+         Map<String, Object> query = new HashMap<String, Object>();
+         query.put(Queryable.QUERYABLE_FIELD, generator.getFieldName(r.nextInt(generator.getNumFields())));
+         query.put(Queryable.MATCH_STRING, word);
+         query.put(Queryable.IS_WILDCARD, wildcard);
+
+         long start = System.nanoTime();
+         Queryable.QueryResult result = (Queryable.QueryResult) stressor.makeRequest(Operation.QUERY, query);
+         long duration = System.nanoTime() - start;
+         int size = result == null ? 0 : result.size();
+         if (wildcard) {
+            wildcardQueries.incrementAndGet();
+            wildcardResults.addAndGet(size);
+            wildcardNanos.addAndGet(duration);
+         } else {
+            keywordQueries.incrementAndGet();
+            keywordResults.addAndGet(size);
+            keywordNanos.addAndGet(duration);
+         }
+         for (;;) {
+            long max = maxResults.get();
+            if (size <= max || maxResults.compareAndSet(max, size)) break;
+         }
+         return result;
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "QueryStressor{" +
+            "wildcardPercentage=" + wildcardPercentage +
+            ", wildcardPrefixLength=" + wildcardPrefixLength +
+            ", " + super.toString() +
+            "}";
+   }
+}
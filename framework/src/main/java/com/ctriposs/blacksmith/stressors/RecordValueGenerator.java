@@ -0,0 +1,75 @@
+package com.ctriposs.blacksmith.stressors;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.ctriposs.blacksmith.utils.Utils;
+
+/**
+ * Generates structured values (records) for querying: a map with several text fields, each containing a few words
+ * from a fixed vocabulary, and a binary payload of the requested size. The words are picked with skewed probability,
+ * so that some terms match many records and some only a few.
+ * <p/>
+ * Parameters (e.g. <code>fields:3;vocabulary:1000;words:2</code>): number of text fields, vocabulary size and number
+ * of words in each field.
+ *
+ * @author bulldog
+ */
+public class RecordValueGenerator implements ValueGenerator {
+
+   public static final String FIELD_PREFIX = "field";
+   public static final String PAYLOAD = "payload";
+
+   private int fields = 3;
+   private int vocabulary = 1000;
+   private int words = 2;
+
+   @Override
+   public void init(String param, ClassLoader classLoader) {
+      Map<String, String> params = Utils.parseParams(param);
+      if (params.containsKey("fields")) fields = Integer.parseInt(params.get("fields"));
+      if (params.containsKey("vocabulary")) vocabulary = Integer.parseInt(params.get("vocabulary"));
+      if (params.containsKey("words")) words = Integer.parseInt(params.get("words"));
+   }
+
+   @Override
+   public Object generateValue(Object key, int size, Random random) {
+      Map<String, Object> record = new HashMap<String, Object>(fields + 2);
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < fields; ++i) {
+         sb.setLength(0);
+         for (int j = 0; j < words; ++j) {
+            if (j > 0) sb.append(' ');
+            sb.append(randomWord(random));
+         }
+         record.put(getFieldName(i), sb.toString());
+      }
+      record.put(PAYLOAD, ByteArrayValueGenerator.generateArray(size, random));
+      return record;
+   }
+
+   @Override
+   public int sizeOf(Object value) {
+      return ((byte[]) ((Map<?, ?>) value).get(PAYLOAD)).length;
+   }
+
+   @Override
+   public boolean checkValue(Object value, int expectedSize) {
+      return value instanceof Map && ((Map<?, ?>) value).get(PAYLOAD) instanceof byte[]
+            && (expectedSize <= 0 || sizeOf(value) == expectedSize);
+   }
+
+   public String randomWord(Random random) {
+      double d = random.nextDouble();
+      return "w" + (int) (vocabulary * d * d);
+   }
+
+   public String getFieldName(int index) {
+      return FIELD_PREFIX + index;
+   }
+
+   public int getNumFields() {
+      return fields;
+   }
+}
@@ -0,0 +1,275 @@
+package com.ctriposs.blacksmith.stressors;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctriposs.blacksmith.CacheWrapper;
+import com.ctriposs.blacksmith.config.Property;
+import com.ctriposs.blacksmith.config.Stressor;
+import com.ctriposs.blacksmith.config.TimeConverter;
+import com.ctriposs.blacksmith.features.IterationCapable;
+
+/**
+ * Executes the point operations of {@link StressTestStressor} while other threads repeatedly scan the whole cache,
+ * as a batch job walking all entries would. Besides the scan throughput, the response times of point operations in
+ * the intervals of the latency timeline which overlapped a scan are compared with those which did not.
+ *
+ * @author bulldog
+ */
+@Stressor(doc = "Executes point operations concurrently with full scans of the cache.")
+public class ScanStressor extends StressTestStressor {
+
+   private static Logger log = LoggerFactory.getLogger(ScanStressor.class);
+
+   private static final double MB = 1024 * 1024;
+
+   @Property(doc = "Number of threads executing the scan, each scans one partition of the cache. Default is 1.")
+   private int scanThreads = 1;
+
+   @Property(doc = "Scan only the keys, without reading the values. Default is false.")
+   private boolean scanKeysOnly = false;
+
+   @Property(doc = "Pause between two scans, so that the point operations are measured also without a scan. " +
+         "Default is 5 seconds.", converter = TimeConverter.class)
+   private long scanPause = 5000;
+
+   @Property(doc = "Bucket which is scanned. Default is none.")
+   private String scanBucket = null;
+
+   private volatile boolean scanning;
+   private volatile Exception scanFailure;
+   // only scans which have covered all partitions
+   private final AtomicLong scannedEntries = new AtomicLong();
+   private final AtomicLong scannedBytes = new AtomicLong();
+   // wall-clock start and end of each scan, including the last one cut short by the end of the point operations
+   private final List<Scan> scans = new ArrayList<Scan>();
+
+   private static class Scan {
+      final long start;
+      final long end;
+      final boolean complete;
+
+      private Scan(long start, long end, boolean complete) {
+         this.start = start;
+         this.end = end;
+         this.complete = complete;
+      }
+   }
+
+   @Override
+   public Map<String, Object> stress(CacheWrapper wrapper) {
+      if (!(wrapper instanceof IterationCapable)) {
+         throw new IllegalArgumentException("Cache wrapper " + wrapper + " does not support iteration.");
+      }
+      if (getTimelineInterval() <= 0) {
+         log.warn("Latency timeline is disabled, the impact of scans on point operations will not be reported.");
+      }
+      IterationCapable iterable = (IterationCapable) wrapper;
+      CyclicBarrier startBarrier = new CyclicBarrier(2);
+      setStartBarrier(startBarrier);
+      scanning = true;
+      scanFailure = null;
+      scannedEntries.set(0);
+      scannedBytes.set(0);
+      synchronized (scans) {
+         scans.clear();
+      }
+      Scanner scanner = new Scanner(iterable, startBarrier);
+      scanner.start();
+      Map<String, Object> results;
+      try {
+         results = new LinkedHashMap<String, Object>(super.stress(wrapper));
+      } finally {
+         scanning = false;
+         // the stressor could fail before the scanner has been released
+         startBarrier.reset();
+         try {
+            scanner.join();
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      }
+      results.putAll(getScanResults());
+      return results;
+   }
+
+   private Map<String, Object> getScanResults() {
+      Map<String, Object> results = new LinkedHashMap<String, Object>();
+      List<Scan> scanTimes;
+      synchronized (scans) {
+         scanTimes = new ArrayList<Scan>(scans);
+      }
+      long scanMillis = 0;
+      int completeScans = 0;
+      for (Scan scan : scanTimes) {
+         if (scan.complete) {
+            scanMillis += scan.end - scan.start;
+            completeScans++;
+         }
+      }
+      results.put("SCANS", completeScans);
+      results.put("SCAN_ENTRIES", scannedEntries.get());
+      results.put("SCAN_MS", completeScans == 0 ? 0 : scanMillis / completeScans);
+      results.put("SCAN_ENTRIES_PER_SEC", scanMillis > 0 ? 1000d * scannedEntries.get() / scanMillis : 0d);
+      if (!scanKeysOnly) {
+         results.put("SCAN_MB_PER_SEC", scanMillis > 0 ? 1000d * scannedBytes.get() / MB / scanMillis : 0d);
+      }
+
+      LatencyTimeline timeline = slaveState == null ? null : (LatencyTimeline) slaveState.get(LatencyTimeline.LATENCY_TIMELINE);
+      if (timeline == null) return results;
+      LatencyHistogram duringScan = new LatencyHistogram();
+      LatencyHistogram withoutScan = new LatencyHistogram();
+      List<LatencyHistogram> intervals = timeline.getIntervals();
+      for (int i = 0; i < intervals.size(); ++i) {
+         long start = timeline.getStartMillis() + i * timeline.getIntervalMillis();
+         long end = start + timeline.getIntervalMillis();
+         boolean overlaps = false;
+         for (Scan scan : scanTimes) {
+            if (scan.start < end && scan.end > start) {
+               overlaps = true;
+               break;
+            }
+         }
+         (overlaps ? duringScan : withoutScan).merge(intervals.get(i));
+      }
+      results.put("DURING_SCAN_RESPONSE_TIME_MEAN", duringScan.getMean());
+      results.put("DURING_SCAN_RESPONSE_TIME_P99", duringScan.getPercentile(99));
+      results.put("WITHOUT_SCAN_RESPONSE_TIME_MEAN", withoutScan.getMean());
+      results.put("WITHOUT_SCAN_RESPONSE_TIME_P99", withoutScan.getPercentile(99));
+      if (duringScan.getCount() > 0 && withoutScan.getCount() > 0) {
+         results.put("SCAN_IMPACT_MEAN", duringScan.getMean() / withoutScan.getMean());
+         results.put("SCAN_IMPACT_P99", (double) duringScan.getPercentile(99) / withoutScan.getPercentile(99));
+      } else {
+         log.warn("Point operations were not measured both with and without a scan, set scanPause longer than the timeline interval.");
+      }
+      return results;
+   }
+
+   /**
+    * Waits until the point operations start and then scans the cache until they finish, with the partitions of each
+    * scan executed by scanThreads threads in parallel.
+    */
+   private class Scanner extends Thread {
+      private final IterationCapable iterable;
+      private final CyclicBarrier startBarrier;
+
+      private Scanner(IterationCapable iterable, CyclicBarrier startBarrier) {
+         super("Scanner");
+         this.iterable = iterable;
+         this.startBarrier = startBarrier;
+      }
+
+      @Override
+      public void run() {
+         try {
+            startBarrier.await();
+         } catch (InterruptedException e) {
+            return;
+         } catch (BrokenBarrierException e) {
+            return;
+         }
+         while (scanning && scanFailure == null) {
+            long start = System.currentTimeMillis();
+            List<PartitionScanner> partitions = new ArrayList<PartitionScanner>(scanThreads);
+            for (int i = 0; i < scanThreads; ++i) {
+               PartitionScanner thread = new PartitionScanner(iterable, i);
+               partitions.add(thread);
+               thread.start();
+            }
+            boolean complete = true;
+            long entries = 0, bytes = 0;
+            for (PartitionScanner thread : partitions) {
+               try {
+                  thread.join();
+               } catch (InterruptedException e) {
+                  return;
+               }
+               complete &= thread.complete;
+               entries += thread.entries;
+               bytes += thread.bytes;
+            }
+            long end = System.currentTimeMillis();
+            synchronized (scans) {
+               scans.add(new Scan(start, end, complete));
+            }
+            if (!complete) {
+               log.info("Scan stopped after " + (end - start) + " ms, it is not included in the scan results");
+               continue;
+            }
+            scannedEntries.addAndGet(entries);
+            scannedBytes.addAndGet(bytes);
+            log.info("Scan finished in " + (end - start) + " ms, " + scannedEntries.get() + " entries scanned so far");
+            long pauseEnd = end + scanPause;
+            while (scanning && System.currentTimeMillis() < pauseEnd) {
+               try {
+                  Thread.sleep(Math.min(100, pauseEnd - System.currentTimeMillis()));
+               } catch (InterruptedException e) {
+                  return;
+               }
+            }
+         }
+      }
+   }
+
+   private class PartitionScanner extends Thread {
+      private final IterationCapable iterable;
+      private final int partition;
+      // read after the thread has been joined
+      private long entries, bytes;
+      private boolean complete;
+
+      private PartitionScanner(IterationCapable iterable, int partition) {
+         super("Scanner-" + partition);
+         this.iterable = iterable;
+         this.partition = partition;
+      }
+
+      @Override
+      public void run() {
+         try {
+            Iterator<Map.Entry<Object, Object>> iterator = iterable.iterate(scanBucket, partition, scanThreads, scanKeysOnly);
+            // the scan is stopped together with the point operations
+            while (scanning && iterator.hasNext()) {
+               Map.Entry<Object, Object> entry = iterator.next();
+               entries++;
+               if (!scanKeysOnly && entry.getValue() != null) {
+                  bytes += valueSize(entry.getValue());
+               }
+            }
+            complete = !iterator.hasNext();
+         } catch (Exception e) {
+            log.error("Scan of partition " + partition + " failed, no more scans will be executed", e);
+            scanFailure = e;
+         }
+      }
+   }
+
+   private int valueSize(Object value) {
+      try {
+         return getValueGenerator().sizeOf(value);
+      } catch (RuntimeException e) {
+         // the wrapper returns values in other form than they were generated
+         return 0;
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "ScanStressor{" +
+            "scanThreads=" + scanThreads +
+            ", scanKeysOnly=" + scanKeysOnly +
+            ", scanPause=" + scanPause +
+            ", scanBucket=" + scanBucket +
+            ", " + super.toString() +
+            "}";
+   }
+}
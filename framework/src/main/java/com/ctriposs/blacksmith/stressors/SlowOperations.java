@@ -0,0 +1,233 @@
+package com.ctriposs.blacksmith.stressors;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The slowest operations of a stressor with the key, value size, time and thread, so that outliers can be
+ * attributed to specific keys (huge values, hot segments) or to GC pauses. Each stressor thread keeps its own
+ * bounded min-heap, the fastest of the retained operations is on top and most operations are rejected by single
+ * comparison with it. The heaps are merged after the threads finish.
+ *
+ * @author bulldog
+ */
+public class SlowOperations implements Serializable {
+
+   /** The serialVersionUID */
+   private static final long serialVersionUID = -3851097516290431357L;
+
+   /**
+    * Key under which the slow operations of last stressor are stored in the slave state.
+    */
+   public static final String SLOW_OPERATIONS = "SlowOperations";
+
+   public static class SlowOperation implements Serializable {
+      /** The serialVersionUID */
+      private static final long serialVersionUID = 6400127045829376214L;
+
+      private final Operation operation;
+      private final String key;
+      private final int valueSize;
+      private final long timestamp;
+      private final long duration;
+      private final String thread;
+
+      public SlowOperation(Operation operation, String key, int valueSize, long timestamp, long duration, String thread) {
+         this.operation = operation;
+         this.key = key;
+         this.valueSize = valueSize;
+         this.timestamp = timestamp;
+         this.duration = duration;
+         this.thread = thread;
+      }
+
+      public Operation getOperation() {
+         return operation;
+      }
+
+      public String getKey() {
+         return key;
+      }
+
+      /**
+       * @return size of the written or read value, -1 if not known
+       */
+      public int getValueSize() {
+         return valueSize;
+      }
+
+      /**
+       * @return end of the operation, milliseconds since epoch
+       */
+      public long getTimestamp() {
+         return timestamp;
+      }
+
+      /**
+       * @return response time in nanoseconds
+       */
+      public long getDuration() {
+         return duration;
+      }
+
+      public String getThread() {
+         return thread;
+      }
+   }
+
+   /**
+    * Binary min-heap ordered by duration, accessed only by the owning thread.
+    */
+   private static class ThreadHeap {
+      private final Operation[] operations;
+      private final Object[] keys;
+      private final int[] valueSizes;
+      private final long[] ends;
+      private final long[] durations;
+      private int size;
+
+      private ThreadHeap(int capacity) {
+         operations = new Operation[capacity];
+         keys = new Object[capacity];
+         valueSizes = new int[capacity];
+         ends = new long[capacity];
+         durations = new long[capacity];
+      }
+
+      private boolean accepts(long duration) {
+         return size < durations.length || duration > durations[0];
+      }
+
+      private void add(Operation operation, Object key, int valueSize, long end, long duration) {
+         int pos;
+         if (size < durations.length) {
+            // sift up from the new leaf
+            pos = size++;
+            while (pos > 0) {
+               int parent = (pos - 1) >>> 1;
+               if (durations[parent] <= duration) break;
+               move(parent, pos);
+               pos = parent;
+            }
+         } else {
+            // replace the root and sift down
+            pos = 0;
+            for (;;) {
+               int child = 2 * pos + 1;
+               if (child >= size) break;
+               if (child + 1 < size && durations[child + 1] < durations[child]) child++;
+               if (durations[child] >= duration) break;
+               move(child, pos);
+               pos = child;
+            }
+         }
+         operations[pos] = operation;
+         keys[pos] = key;
+         valueSizes[pos] = valueSize;
+         ends[pos] = end;
+         durations[pos] = duration;
+      }
+
+      private void move(int from, int to) {
+         operations[to] = operations[from];
+         keys[to] = keys[from];
+         valueSizes[to] = valueSizes[from];
+         ends[to] = ends[from];
+         durations[to] = durations[from];
+      }
+   }
+
+   private static final int MAX_KEY_LENGTH = 100;
+
+   private final int count;
+   private final long startMillis;
+   private final transient long startNanos;
+   private final transient ThreadHeap[] heaps;
+   private List<SlowOperation> merged;
+
+   /**
+    * @param count number of retained operations, per thread and in total
+    */
+   public SlowOperations(int count, int threads) {
+      this.count = count;
+      this.startMillis = System.currentTimeMillis();
+      this.startNanos = System.nanoTime();
+      this.heaps = new ThreadHeap[threads];
+      for (int i = 0; i < threads; ++i) {
+         heaps[i] = new ThreadHeap(count);
+      }
+   }
+
+   /**
+    * Cheap check whether {@link #record} would retain the operation. Must be called only from the thread with given
+    * index.
+    */
+   public boolean isSlow(int threadIndex, long duration) {
+      return heaps[threadIndex].accepts(duration);
+   }
+
+   /**
+    * Must be called only from the thread with given index.
+    *
+    * @param valueSize size of the value, -1 if not known
+    */
+   public void record(int threadIndex, Operation operation, Object key, int valueSize, long endNanos, long duration) {
+      ThreadHeap heap = heaps[threadIndex];
+      if (heap.accepts(duration)) {
+         heap.add(operation, key, valueSize, endNanos, duration);
+      }
+   }
+
+   /**
+    * Forgets operations recorded so far, e.g. during the warmup. Must be called only from the thread with given index.
+    */
+   public void reset(int threadIndex) {
+      heaps[threadIndex].size = 0;
+   }
+
+   /**
+    * Merges the threads' data; call after all threads have finished recording.
+    *
+    * @return the slowest operations, the slowest first
+    */
+   public synchronized List<SlowOperation> getSlowest() {
+      if (merged == null) {
+         merged = new ArrayList<SlowOperation>();
+         for (int thread = 0; thread < heaps.length; ++thread) {
+            ThreadHeap heap = heaps[thread];
+            for (int i = 0; i < heap.size; ++i) {
+               long timestamp = startMillis + (heap.ends[i] - startNanos) / Statistics.NS_IN_MS;
+               merged.add(new SlowOperation(heap.operations[i], keyString(heap.keys[i]), heap.valueSizes[i], timestamp,
+                     heap.durations[i], "Stressor-" + thread));
+            }
+         }
+         Collections.sort(merged, new Comparator<SlowOperation>() {
+            @Override
+            public int compare(SlowOperation o1, SlowOperation o2) {
+               return o1.duration < o2.duration ? 1 : (o1.duration > o2.duration ? -1 : 0);
+            }
+         });
+         if (merged.size() > count) {
+            merged = new ArrayList<SlowOperation>(merged.subList(0, count));
+         }
+      }
+      return merged;
+   }
+
+   private void writeObject(ObjectOutputStream out) throws IOException {
+      // the heaps are not serialized
+      getSlowest();
+      out.defaultWriteObject();
+   }
+
+   private static String keyString(Object key) {
+      if (key == null) return null;
+      String string = String.valueOf(key);
+      return string.length() > MAX_KEY_LENGTH ? string.substring(0, MAX_KEY_LENGTH) + "..." : string;
+   }
+}
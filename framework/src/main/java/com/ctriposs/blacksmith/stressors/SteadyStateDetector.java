@@ -0,0 +1,136 @@
+package com.ctriposs.blacksmith.stressors;
+
+/**
+ * Decides from the throughput and mean response time of consecutive intervals when the system under test has
+ * warmed up. Steady state is reached when in the last <code>window</code> intervals both throughput and response
+ * time have coefficient of variation under the limit and their least-squares trend does not drift more than the
+ * same limit over the window (a slowly rising throughput has low variation, but it is still warming up).
+ * <p/>
+ * After that the throughput of each interval is taken as one batch mean and the confidence interval of the mean
+ * throughput is computed from them; the measurement is precise enough when its half-width relative to the mean
+ * drops under the required value.
+ *
+ * @author bulldog
+ */
+public class SteadyStateDetector {
+
+   // two-sided 95% quantile of the normal distribution
+   private static final double Z_95 = 1.96;
+
+   private final int window;
+   private final double maxVariation;
+   private final double confidenceWidth;
+
+   private final double[] throughputs;
+   private final double[] responseTimes;
+   private int intervals;
+
+   private boolean steady;
+   private int measuredIntervals;
+   private double throughputSum;
+   private double throughputSquaresSum;
+
+   /**
+    * @param window number of intervals evaluated together
+    * @param maxVariation maximum coefficient of variation and relative drift over the window
+    * @param confidenceWidth required half-width of the 95% confidence interval of throughput relative to the mean,
+    *           0 if the measurement should not stop on precision
+    */
+   public SteadyStateDetector(int window, double maxVariation, double confidenceWidth) {
+      if (window < 2) throw new IllegalArgumentException("The window must contain at least 2 intervals: " + window);
+      this.window = window;
+      this.maxVariation = maxVariation;
+      this.confidenceWidth = confidenceWidth;
+      this.throughputs = new double[window];
+      this.responseTimes = new double[window];
+   }
+
+   /**
+    * Adds results of one interval.
+    *
+    * @return true if the steady state has been reached with this interval
+    */
+   public boolean addInterval(double throughput, double meanResponseTime) {
+      if (steady) {
+         measuredIntervals++;
+         throughputSum += throughput;
+         throughputSquaresSum += throughput * throughput;
+         return false;
+      }
+      throughputs[intervals % window] = throughput;
+      responseTimes[intervals % window] = meanResponseTime;
+      intervals++;
+      if (intervals >= window && isStable(throughputs) && isStable(responseTimes)) {
+         steady = true;
+         return true;
+      }
+      return false;
+   }
+
+   private boolean isStable(double[] values) {
+      double mean = 0;
+      for (double value : values) {
+         mean += value;
+      }
+      mean /= window;
+      if (mean == 0) return false;
+      double variance = 0;
+      for (double value : values) {
+         variance += (value - mean) * (value - mean);
+      }
+      variance /= window - 1;
+      if (Math.sqrt(variance) / mean > maxVariation) return false;
+      // slope of the least squares line, x being the order of the interval in the window
+      double xMean = (window - 1) / 2d;
+      double covariance = 0;
+      double xVariance = 0;
+      for (int i = 0; i < window; ++i) {
+         double value = values[(intervals + i) % window];
+         covariance += (i - xMean) * (value - mean);
+         xVariance += (i - xMean) * (i - xMean);
+      }
+      double drift = covariance / xVariance * (window - 1);
+      return Math.abs(drift) / mean <= maxVariation;
+   }
+
+   public boolean isSteady() {
+      return steady;
+   }
+
+   /**
+    * @return number of intervals before the steady state was reached
+    */
+   public int getWarmupIntervals() {
+      return steady ? intervals : -1;
+   }
+
+   /**
+    * @return number of intervals since the steady state was reached
+    */
+   public int getMeasuredIntervals() {
+      return measuredIntervals;
+   }
+
+   public double getMeanThroughput() {
+      return measuredIntervals == 0 ? 0 : throughputSum / measuredIntervals;
+   }
+
+   /**
+    * @return half-width of the 95% confidence interval of mean throughput relative to the mean, or NaN if it cannot
+    *         be computed yet
+    */
+   public double getRelativeConfidenceWidth() {
+      if (measuredIntervals < 2) return Double.NaN;
+      double mean = getMeanThroughput();
+      double variance = (throughputSquaresSum - measuredIntervals * mean * mean) / (measuredIntervals - 1);
+      double halfWidth = Z_95 * Math.sqrt(Math.max(variance, 0) / measuredIntervals);
+      return mean == 0 ? Double.NaN : halfWidth / mean;
+   }
+
+   /**
+    * @return true if the required precision has been reached; at least one window of intervals is measured
+    */
+   public boolean isPreciseEnough() {
+      return confidenceWidth > 0 && measuredIntervals >= window && getRelativeConfidenceWidth() <= confidenceWidth;
+   }
+}
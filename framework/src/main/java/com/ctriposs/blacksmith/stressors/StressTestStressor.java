@@ -4,14 +4,25 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,12 +33,21 @@ import com.ctriposs.blacksmith.config.Property;
 import com.ctriposs.blacksmith.config.SizeConverter;
 import com.ctriposs.blacksmith.config.Stressor;
 import com.ctriposs.blacksmith.config.TimeConverter;
+import com.ctriposs.blacksmith.features.AsyncOperationsCapable;
 import com.ctriposs.blacksmith.features.AtomicOperationsCapable;
 import com.ctriposs.blacksmith.features.BulkOperationsCapable;
+import com.ctriposs.blacksmith.features.ExpirationCapable;
 import com.ctriposs.blacksmith.features.Queryable;
+import com.ctriposs.blacksmith.utils.FutureListener;
 import com.ctriposs.blacksmith.utils.Fuzzy;
+import com.ctriposs.blacksmith.utils.NotifyingFuture;
+import com.ctriposs.blacksmith.utils.ThreadPlacement;
 import com.ctriposs.blacksmith.utils.Utils;
+import com.ctriposs.blacksmith.sysmonitor.FlightRecorderEvents;
+import com.ctriposs.blacksmith.sysmonitor.LocalJmxMonitor;
+import com.ctriposs.blacksmith.sysmonitor.ThreadCpuMonitor;
 import com.ctriposs.blacksmith.stages.helpers.BucketPolicy;
+import com.ctriposs.blacksmith.state.NodeBarrier;
 
 /**
  * On multiple threads executes put and get operations against the CacheWrapper, and returns the result as an Map.
@@ -39,6 +59,11 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
 
    private static final Logger log = LoggerFactory.getLogger(StressTestStressor.class);
 
+   /**
+    * Key under which the merged statistics of last stressor are stored in the slave state.
+    */
+   public static final String STATISTICS = "Statistics";
+
    @Property(doc = "After how many operations should be log written. Default is 5000.")
    private int opsCountStatusLog = 5000;
 
@@ -57,7 +82,7 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
    private Fuzzy<Integer> entrySize = Fuzzy.always(1000);
 
    @Property(doc = "The frequency of writes (percentage). Default is 20%")
-   private int writePercentage = 20;
+   protected int writePercentage = 20;
 
    @Property(doc = "The frequency of removes (percentage). Default is 0%")
    private int removePercentage = 0;
@@ -74,6 +99,11 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
    @Property(doc = "The number of threads that will work on this cache wrapper. Default is 10.")
    private int numThreads = 10;
 
+   @Property(doc = "Placement of the stressor threads on CPUs: none (left to the OS), compact (sharing cores and " +
+         "socket), scatter (spread across sockets and cores) or CPU list such as 0-3,8, the n-th thread is pinned " +
+         "to the n-th CPU. Default is none.", converter = ThreadPlacement.PlacementConverter.class)
+   private ThreadPlacement threadPlacement = ThreadPlacement.NONE;
+
    @Property(doc = "Number of requests in one transaction. By default transactions are off.")
    private int transactionSize = 1;
 
@@ -84,6 +114,50 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
    @Property(doc = "When executing bulk operations, prefer version with multiple async operations over native implementation. Default is false.")
    private boolean preferAsyncOperations = false;
 
+   @Property(doc = "Maximum number of asynchronous operations in flight per thread. Applicable only when the cache " +
+         "wrapper supports async operations; the response time is measured from submit to completion. " +
+         "Default is 0 (blocking operations).")
+   private int asyncInFlight = 0;
+
+   @Property(doc = "Length of the interval for which the response times are aggregated in the latency timeline " +
+         "(used to correlate latency spikes with GC pauses). Zero disables the timeline. Default is 1 second.",
+         converter = TimeConverter.class)
+   private long timelineInterval = 1000;
+
+   @Property(doc = "Length of the interval in which throughput and mean response time are evaluated by the steady " +
+         "state detection. When the steady state is reached, statistics gathered so far are discarded as warmup. " +
+         "Zero disables the detection. Default is 0.", converter = TimeConverter.class)
+   private long steadyStateInterval = 0;
+
+   @Property(doc = "Number of consecutive intervals evaluated by the steady state detection. Default is 5.")
+   private int steadyStateWindow = 5;
+
+   @Property(doc = "Maximum coefficient of variation of throughput and response time in the window, and maximum " +
+         "relative drift of their trend over the window, to consider the system warmed up. Default is 0.1.")
+   private double steadyStateMaxVariation = 0.1;
+
+   @Property(doc = "When steady state detection is on, stop the measurement once the half-width of the 95% " +
+         "confidence interval of throughput is within this fraction of the mean, e.g. 0.01. " +
+         "The number of requests or duration still limits the test. Default is 0 (do not stop).")
+   private double steadyStateConfidence = 0;
+
+   @Property(doc = "Operations slower than this are recorded as events into the flight recording when " +
+         "flightRecorderEnabled=true. Default is 1 ms.", converter = TimeConverter.class)
+   private long slowOperationThreshold = 1;
+
+   @Property(doc = "Number of the slowest operations reported with their key, value size, time and thread. " +
+         "Zero disables the report. Default is 20.")
+   private int slowOperationsCount = 20;
+
+   @Property(doc = "Phases of the workload separated by semicolons, each as '[name:] duration [rate=..] [threads=..] " +
+         "[writes=..] [removes=..] [hotKeys=..]', e.g. 'base: 1m rate=10000; spike: 30s rate=50000; recovery: 2m " +
+         "rate=10000'. The rate can be constant, a linear ramp 'a..b' or a wave 'a~b'; hotKeys=10%/90% directs 90% " +
+         "of operations to 10% of keys. Omitted values are taken from the stressor properties. The phases are " +
+         "executed by the same threads on the same keys and replace durationMillis and numRequests, the statistics " +
+         "are reported also per phase. By default there is no schedule.",
+         converter = WorkloadSchedule.Converter.class)
+   private WorkloadSchedule workloadSchedule = null;
+
    @Property(doc = "Specifies if the requests should be explicitely wrapped in transactions. By default" +
          "the cachewrapper is queried whether it does support the transactions, if it does," +
          "transactions are used, otherwise these are not.")
@@ -136,11 +210,15 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
    @Init
    public void init() {
       if (valueGeneratorClass == null) {
-         if (useAtomics) valueGeneratorClass = WrappedArrayValueGenerator.class.getName();
-         else valueGeneratorClass = ByteArrayValueGenerator.class.getName();
+         valueGeneratorClass = getDefaultValueGeneratorClass();
       }
    }
 
+   protected String getDefaultValueGeneratorClass() {
+      if (useAtomics) return WrappedArrayValueGenerator.class.getName();
+      else return ByteArrayValueGenerator.class.getName();
+   }
+
    /**
     * Number of slaves that participate in this test
     */
@@ -159,14 +237,43 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
    protected CacheWrapper cacheWrapper;
    protected AtomicOperationsCapable atomicCacheWrapper;
    protected BulkOperationsCapable bulkCacheWrapper;
-   private ArrayList<Object> sharedKeysPool = new ArrayList<Object>();
+   protected AsyncOperationsCapable asyncCacheWrapper;
+   protected ArrayList<Object> sharedKeysPool = new ArrayList<Object>();
    private static final Random r = new Random();
+   // longest sleep of a paced or idle thread, so that it notices the next phase
+   private static final long MAX_PACING_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+   // a paced thread which falls behind more than this does not burst to catch up
+   private static final long MAX_PACING_LAG_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
    private volatile long startNanos;
    private PhaseSynchronizer synchronizer = new PhaseSynchronizer();
    private volatile StressorCompletion completion;
    private volatile boolean finished = false;
    private volatile boolean terminated = false;
    private AtomicLong keysLoaded = new AtomicLong(0);
+   private AtomicLong asyncCompleted = new AtomicLong(0);
+   private AtomicInteger pinnedThreads = new AtomicInteger(0);
+   private volatile long operationsStartNanos;
+   private volatile long operationsEndNanos;
+   private volatile LatencyTimeline latencyTimeline;
+   private volatile SlowOperations slowOperations;
+   private volatile LiveStatistics liveStatistics;
+   private volatile LocalJmxMonitor sysMonitor;
+   private volatile SteadyStateDetector steadyStateDetector;
+   // incremented when the statistics gathered by stressor threads should be discarded
+   private volatile int statisticsEpoch;
+   private volatile boolean measurementComplete;
+   private volatile long warmupNanos;
+   // negative when the slow operations are not recorded
+   private volatile long slowOperationNanos;
+   private volatile Object flightPhase;
+   // the mix and key distribution can be changed by the workload schedule
+   protected volatile int activeWritePercentage;
+   private volatile int activeRemovePercentage;
+   private volatile WorkloadSchedule.Phase activePhase;
+   private volatile int activePhaseIndex;
+   private volatile long activePhaseStartNanos;
+   // shared by stressors which run concurrently in this JVM, see MultiTenantStressor
+   private CyclicBarrier startBarrier;
    
    protected List<Stressor> stressors = new ArrayList<Stressor>(numThreads);
    private Statistics statisticsPrototype = new SimpleStatistics();
@@ -179,8 +286,10 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       if (wrapper instanceof BulkOperationsCapable) {
          bulkCacheWrapper = (BulkOperationsCapable) wrapper;
       }
+      if (wrapper instanceof AsyncOperationsCapable) {
+         asyncCacheWrapper = (AsyncOperationsCapable) wrapper;
+      }
       
-      numNodes = 1;
       txCount = new AtomicInteger(0);
       keyGenerator = null;
       valueGenerator = null;
@@ -189,6 +298,33 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       finished = false;
       terminated = false;
       keysLoaded = new AtomicLong(0);
+      asyncCompleted = new AtomicLong(0);
+      pinnedThreads = new AtomicInteger(0);
+      latencyTimeline = null;
+      slowOperations = null;
+      liveStatistics = getMetricsPort() > 0 ? new LiveStatistics(numThreads) : null;
+      sysMonitor = null;
+      steadyStateDetector = null;
+      statisticsEpoch = 0;
+      measurementComplete = false;
+      warmupNanos = -1;
+      slowOperationNanos = isFlightRecorderEnabled() && FlightRecorderEvents.isAvailable()
+            ? TimeUnit.MILLISECONDS.toNanos(slowOperationThreshold) : -1;
+      flightPhase = null;
+      activeWritePercentage = writePercentage;
+      activeRemovePercentage = removePercentage;
+      activePhase = null;
+      activePhaseIndex = 0;
+      if (slaveState != null) {
+         slaveState.remove(LatencyTimeline.LATENCY_TIMELINE);
+         slaveState.remove(SlowOperations.SLOW_OPERATIONS);
+         slaveState.remove(STATISTICS);
+         if (liveStatistics != null) {
+            slaveState.put(LiveStatistics.LIVE_STATISTICS, liveStatistics);
+         } else {
+            slaveState.remove(LiveStatistics.LIVE_STATISTICS);
+         }
+      }
       stressors = new ArrayList<Stressor>(numThreads);
       statisticsPrototype = new SimpleStatistics();
       
@@ -199,7 +335,18 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
    public Map<String, Object> stress(CacheWrapper wrapper) {
       init(wrapper);
       StressorCompletion completion;
-      if (durationMillis > 0) {
+      if (workloadSchedule != null) {
+         if (steadyStateInterval > 0) {
+            throw new IllegalArgumentException("Steady state detection cannot be used with workload schedule.");
+         }
+         for (WorkloadSchedule.Phase phase : workloadSchedule.getPhases()) {
+            if (phase.getThreads() > numThreads) {
+               throw new IllegalArgumentException("Phase " + phase.getName() + " uses " + phase.getThreads()
+                     + " threads but the stressor has only numThreads=" + numThreads);
+            }
+         }
+         completion = new TimeStressorCompletion(workloadSchedule.getDurationMillis());
+      } else if (durationMillis > 0) {
          completion = new TimeStressorCompletion(durationMillis);
       } else {
          completion = new OperationCountCompletion(new AtomicInteger(numRequests));
@@ -230,6 +377,7 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
    public void destroy() throws Exception {
       cacheWrapper = null;
       bulkCacheWrapper = null;
+      asyncCacheWrapper = null;
    }
 
    protected boolean isTerminated() {
@@ -238,18 +386,80 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
 
    protected Map<String, Object> processResults() {
       Statistics stats = createStatistics();
+      long operations = 0;
 
       for (Stressor stressor : stressors) {
          stats.merge(stressor.getStats());
+         operations += stressor.operations;
       }
 
+      if (slaveState != null) {
+         slaveState.put(STATISTICS, stats);
+      }
       Map<String, Object> results = stats.getResultsMap(numThreads, "");
-      results.put(Statistics.REQ_PER_SEC, numThreads * stats.getOperationsPerSecond(true));
+      if (asyncInFlight > 0) {
+         // response times of concurrent async operations overlap, the throughput has to be computed from wall-clock time
+         long duration = operationsEndNanos - operationsStartNanos;
+         results.put(Statistics.REQ_PER_SEC, duration > 0 ? (double) (Statistics.NS_IN_SEC * asyncCompleted.get()) / duration : 0d);
+      } else if (workloadSchedule != null) {
+         // the operations are paced, the throughput is the delivered rate rather than what the threads could do
+         long duration = operationsEndNanos - operationsStartNanos;
+         results.put(Statistics.REQ_PER_SEC, duration > 0 ? (double) (Statistics.NS_IN_SEC * operations) / duration : 0d);
+      } else {
+         results.put(Statistics.REQ_PER_SEC, numThreads * stats.getOperationsPerSecond(true));
+      }
+      if (workloadSchedule != null) {
+         results.putAll(getPhaseResults());
+      }
+      if (!threadPlacement.isNone()) {
+         // CPU lists contain commas
+         results.put("THREAD_PLACEMENT", threadPlacement.toString().replace(',', '/'));
+         results.put("PINNED_THREADS", pinnedThreads.get());
+      }
+      if (sysMonitor != null) {
+         // the stressor threads are still alive, their CPU time can be read
+         results.putAll(sysMonitor.getCostPerOperation(operations));
+      }
+      if (steadyStateDetector != null) {
+         results.put("WARMUP_MS", warmupNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(warmupNanos));
+         results.put("MEASURED_INTERVALS", steadyStateDetector.getMeasuredIntervals());
+         results.put("THROUGHPUT_CONFIDENCE", steadyStateDetector.getRelativeConfidenceWidth());
+         if (!steadyStateDetector.isSteady()) {
+            log.warn("Steady state has not been reached, the results include the warmup.");
+         }
+      }
 
       log.info("Finished generating report. Test duration is: " + Utils.getNanosDurationString(System.nanoTime() - startNanos));
       return results;
    }
 
+   /**
+    * @return throughput, errors and response times of each phase of the workload schedule
+    */
+   private Map<String, Object> getPhaseResults() {
+      Map<String, Object> results = new LinkedHashMap<String, Object>();
+      long measured = operationsEndNanos - operationsStartNanos;
+      for (int i = 0; i < workloadSchedule.size(); ++i) {
+         WorkloadSchedule.Phase phase = workloadSchedule.getPhase(i);
+         LatencyHistogram histogram = new LatencyHistogram();
+         long errors = 0;
+         for (Stressor stressor : stressors) {
+            histogram.merge(stressor.phaseLatencies[i]);
+            errors += stressor.phaseErrors[i];
+         }
+         long start = TimeUnit.MILLISECONDS.toNanos(workloadSchedule.getStartMillis(i));
+         long duration = Math.min(measured, start + TimeUnit.MILLISECONDS.toNanos(phase.getDurationMillis())) - start;
+         String prefix = "PHASE_" + phase.getName().toUpperCase(Locale.ENGLISH) + "_";
+         results.put(prefix + Statistics.REQ_PER_SEC, duration > 0 ? (double) (Statistics.NS_IN_SEC * histogram.getCount()) / duration : 0d);
+         results.put(prefix + "ERRORS", errors);
+         results.put(prefix + "RESPONSE_TIME_MEAN", histogram.getMean());
+         results.put(prefix + "RESPONSE_TIME_P99", histogram.getPercentile(99));
+         results.put(prefix + "RESPONSE_TIME_P999", histogram.getPercentile(99.9));
+         results.put(prefix + "RESPONSE_TIME_MAX", histogram.getMax());
+      }
+      return results;
+   }
+
    protected Statistics createStatistics() {
       return statisticsPrototype.copy();
    }
@@ -262,14 +472,195 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
          stressor.start();
       }
       log.info("Cache wrapper info is: " + cacheWrapper.getInfo());
+      Object preloadPhase = beginPhase("preload");
       synchronizer.masterPhaseEnd();
       // wait until all slaves have initialized keys
       synchronizer.masterPhaseStart();
+      FlightRecorderEvents.endPhase(preloadPhase);
+      NodeBarrier nodeBarrier = slaveState == null ? null : (NodeBarrier) slaveState.get(NodeBarrier.NODE_BARRIER);
+      if (nodeBarrier != null) {
+         // the nodes start the operations at once
+         nodeBarrier.await("loaded");
+      }
+      if (startBarrier != null) {
+         try {
+            startBarrier.await();
+         } catch (BrokenBarrierException e) {
+            throw new IllegalStateException("Concurrently running stressor has failed", e);
+         }
+      }
       // nothing to do here
+      if (timelineInterval > 0) {
+         latencyTimeline = new LatencyTimeline(timelineInterval, numThreads);
+         if (slaveState != null) {
+            slaveState.put(LatencyTimeline.LATENCY_TIMELINE, latencyTimeline);
+         }
+      }
+      if (slowOperationsCount > 0) {
+         slowOperations = new SlowOperations(slowOperationsCount, numThreads);
+         if (slaveState != null) {
+            slaveState.put(SlowOperations.SLOW_OPERATIONS, slowOperations);
+         }
+      }
+      sysMonitor = slaveState == null ? null : (LocalJmxMonitor) slaveState.get(LocalJmxMonitor.LOCAL_JMX_MONITOR);
+      if (sysMonitor != null) {
+         // the key loading is not accounted
+         sysMonitor.markOperationsStart();
+      }
+      if (workloadSchedule == null) {
+         flightPhase = beginPhase(steadyStateInterval > 0 ? "warmup" : "measure");
+      }
+      operationsStartNanos = System.nanoTime();
+      if (workloadSchedule != null) {
+         activatePhase(0);
+      }
       synchronizer.masterPhaseEnd();
       log.info("Started " + stressors.size() + " stressor threads.");
+      ScheduledExecutorService executor = null;
+      if (steadyStateInterval > 0) {
+         steadyStateDetector = new SteadyStateDetector(steadyStateWindow, steadyStateMaxVariation, steadyStateConfidence);
+         executor = createMonitorExecutor("SteadyState");
+         executor.scheduleAtFixedRate(new SteadyStateSampler(), steadyStateInterval, steadyStateInterval,
+               TimeUnit.MILLISECONDS);
+      } else if (workloadSchedule != null) {
+         executor = createMonitorExecutor("Schedule");
+         for (int i = 1; i < workloadSchedule.size(); ++i) {
+            final int phaseIndex = i;
+            long phaseStart = operationsStartNanos + TimeUnit.MILLISECONDS.toNanos(workloadSchedule.getStartMillis(i));
+            executor.schedule(new Runnable() {
+               @Override
+               public void run() {
+                  activatePhase(phaseIndex);
+               }
+            }, phaseStart - System.nanoTime(), TimeUnit.NANOSECONDS);
+         }
+      }
       // wait until all threads have finished
-      synchronizer.masterPhaseStart();
+      try {
+         synchronizer.masterPhaseStart();
+      } finally {
+         if (executor != null) {
+            executor.shutdownNow();
+         }
+      }
+      operationsEndNanos = System.nanoTime();
+      FlightRecorderEvents.endPhase(flightPhase);
+      flightPhase = null;
+      if (liveStatistics != null) {
+         liveStatistics.setPhase("finished");
+      }
+   }
+
+   protected ScheduledExecutorService createMonitorExecutor(final String name) {
+      return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+         @Override
+         public Thread newThread(final Runnable r) {
+            final ThreadPlacement placement = getMonitorPlacement();
+            Runnable task = r;
+            if (!placement.isNone()) {
+               task = new Runnable() {
+                  @Override
+                  public void run() {
+                     placement.pin(0);
+                     r.run();
+                  }
+               };
+            }
+            // named as monitor thread, its CPU usage is not attributed to the wrapper
+            Thread thread = new Thread(task, ThreadCpuMonitor.MONITOR_THREAD_PREFIX + name);
+            thread.setDaemon(true);
+            return thread;
+         }
+      });
+   }
+
+   /**
+    * Switches the mix, key distribution and pacing of the stressor threads to given phase of the workload schedule.
+    */
+   private void activatePhase(int index) {
+      WorkloadSchedule.Phase phase = workloadSchedule.getPhase(index);
+      activeWritePercentage = phase.getWritePercentage(writePercentage);
+      activeRemovePercentage = phase.getRemovePercentage(removePercentage);
+      activePhaseStartNanos = operationsStartNanos + TimeUnit.MILLISECONDS.toNanos(workloadSchedule.getStartMillis(index));
+      activePhase = phase;
+      activePhaseIndex = index;
+      FlightRecorderEvents.endPhase(flightPhase);
+      flightPhase = beginPhase(phase.getName());
+      log.info("Started workload phase " + (index + 1) + "/" + workloadSchedule.size() + ": " + phase);
+   }
+
+   private int nextKeyIndex(Random random) {
+      WorkloadSchedule.Phase phase = activePhase;
+      return phase == null ? random.nextInt(numEntries - 1) : phase.nextKeyIndex(random, numEntries - 1);
+   }
+
+   /**
+    * @return the flight recorder event of the phase, or null
+    */
+   private Object beginPhase(String phase) {
+      if (liveStatistics != null) {
+         liveStatistics.setPhase(phase);
+      }
+      return slowOperationNanos >= 0 ? FlightRecorderEvents.beginPhase(phase) : null;
+   }
+
+   /**
+    * Evaluates throughput and response time of the last interval. When the steady state is reached the stressor
+    * threads are told to start new statistics, and when the throughput is known precisely enough they are stopped.
+    */
+   private class SteadyStateSampler implements Runnable {
+      private long lastNanos = System.nanoTime();
+      private long lastOperations;
+      private long lastResponseTime;
+
+      @Override
+      public void run() {
+         if (measurementComplete) return;
+         try {
+            evaluateInterval();
+         } catch (RuntimeException e) {
+            // an exception would silently cancel further executions
+            log.error("Steady state detection failed", e);
+         }
+      }
+
+      private void evaluateInterval() {
+         long now = System.nanoTime();
+         long operations = 0;
+         long responseTime = 0;
+         for (Stressor stressor : stressors) {
+            operations += stressor.completedOperations.get();
+            responseTime += stressor.completedResponseTime.get();
+         }
+         long intervalOperations = operations - lastOperations;
+         double throughput = (double) (Statistics.NS_IN_SEC * intervalOperations) / (now - lastNanos);
+         double meanResponseTime = intervalOperations == 0 ? 0 : (double) (responseTime - lastResponseTime) / intervalOperations;
+         lastNanos = now;
+         lastOperations = operations;
+         lastResponseTime = responseTime;
+
+         if (log.isTraceEnabled()) {
+            log.trace(String.format("Interval throughput %.0f ops/s, mean response time %.0f ns", throughput, meanResponseTime));
+         }
+         if (steadyStateDetector.addInterval(throughput, meanResponseTime)) {
+            warmupNanos = now - operationsStartNanos;
+            log.info("Steady state reached after " + Utils.getNanosDurationString(warmupNanos)
+                  + ", statistics of the warmup are discarded.");
+            operationsStartNanos = now;
+            asyncCompleted.set(0);
+            if (sysMonitor != null) {
+               sysMonitor.markOperationsStart();
+            }
+            statisticsEpoch++;
+            FlightRecorderEvents.endPhase(flightPhase);
+            flightPhase = beginPhase("measure");
+         } else if (steadyStateDetector.isPreciseEnough()) {
+            log.info(String.format("Throughput %.0f +- %.2f%% after %d intervals, stopping the measurement.",
+                  steadyStateDetector.getMeanThroughput(), 100 * steadyStateDetector.getRelativeConfidenceWidth(),
+                  steadyStateDetector.getMeasuredIntervals()));
+            measurementComplete = true;
+         }
+      }
    }
    
    protected void finishOperations() {
@@ -302,14 +693,37 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
          if (!poolKeys) {
             throw new IllegalArgumentException("Keys have to be pooled with changing set.");
          }
-         if (bulkSize != 1 || useAtomics) {
-            throw new IllegalArgumentException("Replace/bulk operations on changing set not supported.");
+         if (bulkSize != 1 || useAtomics || asyncInFlight > 0) {
+            throw new IllegalArgumentException("Replace/bulk/async operations on changing set not supported.");
          }
          if (removePercentage > 0) {
             throw new IllegalArgumentException("Removes cannot be configured in when using non-fixed keys");
          }
+         if (workloadSchedule != null) {
+            for (WorkloadSchedule.Phase phase : workloadSchedule.getPhases()) {
+               if (phase.getRemovePercentage(0) > 0) {
+                  throw new IllegalArgumentException("Removes cannot be configured in when using non-fixed keys");
+               }
+            }
+         }
          log.info("using ChangingSetOperationLogic");
          return new ChangingSetOperationLogic();
+      } else if (asyncInFlight > 0) {
+         if (!(cacheWrapper instanceof AsyncOperationsCapable)) {
+            throw new IllegalArgumentException("Cache wrapper " + cacheWrapper.toString() + " does not support async operations.");
+         } else if (useAtomics) {
+            throw new IllegalArgumentException("Atomic operations cannot be executed asynchronously.");
+         } else if (isUseTransactions()) {
+            throw new IllegalArgumentException("Async operations cannot be executed in transactions.");
+         } else if (bulkSize < 1 || bulkSize > numEntries) {
+            throw new IllegalArgumentException("Invalid bulk size, must be 1 <= bulkSize(" + bulkSize + ") < numEntries(" + numEntries + ")");
+         }
+         log.info("using AsyncOperationLogic");
+         if (sharedKeys) {
+            return new AsyncOperationLogic(new FixedSetSharedOperationLogic(sharedKeysPool));
+         } else {
+            return new AsyncOperationLogic(new FixedSetPerThreadOperationLogic());
+         }
       } else if (bulkSize != 1) {
          if (bulkSize > 1 && bulkSize <= numEntries) {
             if (cacheWrapper instanceof BulkOperationsCapable) {
@@ -346,6 +760,13 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       }
    }
 
+   /**
+    * The operations are started when all parties of the barrier have loaded their keys.
+    */
+   void setStartBarrier(CyclicBarrier startBarrier) {
+      this.startBarrier = startBarrier;
+   }
+
    public void setStatisticsPrototype(Statistics statisticsPrototype) {
       this.statisticsPrototype = statisticsPrototype;
    }
@@ -369,12 +790,12 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       @Override
       public Object run(Stressor stressor) throws RequestException {
          int randomAction = r.nextInt(100);
-         int randomKeyInt = r.nextInt(numEntries - 1);
+         int randomKeyInt = nextKeyIndex(r);
          Object key = getKey(randomKeyInt, stressor.threadIndex);
 
-         if (randomAction < writePercentage) {
+         if (randomAction < activeWritePercentage) {
             return stressor.makeRequest(Operation.PUT, key, generateValue(key, Integer.MAX_VALUE));
-         } else if (randomAction < writePercentage + removePercentage) {
+         } else if (randomAction < activeWritePercentage + activeRemovePercentage) {
             return stressor.makeRequest(Operation.REMOVE, key);
          } else {
             return stressor.makeRequest(Operation.GET, key);
@@ -526,7 +947,7 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       @Override
       public Object run(Stressor stressor) throws RequestException {
          int randomAction = r.nextInt(100);
-         Object key = getKey(r.nextInt(numEntries - 1), stressor.threadIndex);
+         Object key = getKey(nextKeyIndex(r), stressor.threadIndex);
          Object lastValue = lastValues.get(key);
 
          Object newValue = generateValue(key, Integer.MAX_VALUE);
@@ -534,9 +955,9 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
          if (lastValue == null) {
             lastValues.put(key, newValue);
             return stressor.makeRequest(Operation.PUT_IF_ABSENT_IS_ABSENT, key, newValue);
-         } else if (randomAction < (probability += writePercentage)) {
+         } else if (randomAction < (probability += activeWritePercentage)) {
             return stressor.makeRequest(Operation.PUT_IF_ABSENT_NOT_ABSENT, key, newValue, lastValue);
-         } else if (randomAction < (probability += removePercentage)) {
+         } else if (randomAction < (probability += activeRemovePercentage)) {
             lastValues.remove(key);
             return stressor.makeRequest(Operation.REMOVE_VALID, key, lastValue);
          } else if (randomAction < (probability += removeInvalidPercentage)) {
@@ -583,10 +1004,10 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       @Override
       public Object run(Stressor stressor) throws RequestException {
          int randomAction = r.nextInt(100);
-         if (randomAction < writePercentage) {
+         if (randomAction < activeWritePercentage) {
             Map<Object, Object> map = new HashMap<Object, Object>(bulkSize);
             for (int i = 0; i < bulkSize;) {
-               Object key = initLogic.getKey(r.nextInt(numEntries - 1), stressor.threadIndex);
+               Object key = initLogic.getKey(nextKeyIndex(r), stressor.threadIndex);
                if (!map.containsKey(key)) {
                   map.put(key, generateValue(key, Integer.MAX_VALUE));
                   ++i;
@@ -596,13 +1017,13 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
          } else {
             Set<Object> set = new HashSet<Object>(bulkSize);
             for (int i = 0; i < bulkSize; ) {
-               Object key = initLogic.getKey(r.nextInt(numEntries - 1), stressor.threadIndex);
+               Object key = initLogic.getKey(nextKeyIndex(r), stressor.threadIndex);
                if (!set.contains(key)) {
                   set.add(key);
                   ++i;
                }
             }
-            if (randomAction < writePercentage + removePercentage) {
+            if (randomAction < activeWritePercentage + activeRemovePercentage) {
                return stressor.makeRequest(removeOperation, set);
             } else {
                return stressor.makeRequest(getOperation, set);
@@ -611,39 +1032,203 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       }
    }
 
-   private static class KeyWithRemovalTime implements Comparable<KeyWithRemovalTime> {
-      public final Object key;
-      public final long removeTimestamp;
-
-      public KeyWithRemovalTime(Object key, long removeTimestamp) {
+   private static class AsyncCompletion {
+      final Operation operation;
+      final long end;
+      final long duration;
+      final boolean successful;
+      final Object key;
+      // written or returned value
+      final Object value;
+
+      private AsyncCompletion(Operation operation, long end, long duration, boolean successful, Object key, Object value) {
+         this.operation = operation;
+         this.end = end;
+         this.duration = duration;
+         this.successful = successful;
          this.key = key;
-         this.removeTimestamp = removeTimestamp;
+         this.value = value;
+      }
+   }
+
+   /**
+    * Keeps up to asyncInFlight operations submitted. The completions are reported by wrapper's threads, these
+    * are queued and registered into statistics by the stressor thread.
+    */
+   protected class AsyncOperationLogic implements OperationLogic {
+      private final FixedSetOperationLogic initLogic;
+      private final Semaphore inFlight = new Semaphore(asyncInFlight);
+      private final ConcurrentLinkedQueue<AsyncCompletion> completions = new ConcurrentLinkedQueue<AsyncCompletion>();
+
+      public AsyncOperationLogic(FixedSetOperationLogic initLogic) {
+         this.initLogic = initLogic;
+      }
+
+      @Override
+      public void init(String bucketId, int threadIndex) {
+         initLogic.init(bucketId, threadIndex);
       }
 
       @Override
-      public int compareTo(KeyWithRemovalTime o) {
-         if (removeTimestamp < o.removeTimestamp) return -1;
-         if (removeTimestamp > o.removeTimestamp) return 1;
-         if (key == null || o.key == null) return 0;
-         if (key.equals(o.key)) return 0;
-         return -1;
+      public Object run(Stressor stressor) throws RequestException {
+         registerCompletions(stressor);
+         inFlight.acquireUninterruptibly();
+         int randomAction = r.nextInt(100);
+         if (bulkSize == 1) {
+            Object key = initLogic.getKey(nextKeyIndex(r), stressor.threadIndex);
+            if (randomAction < activeWritePercentage) {
+               return submit(stressor, Operation.PUT, key, generateValue(key, Integer.MAX_VALUE));
+            } else if (randomAction < activeWritePercentage + activeRemovePercentage) {
+               return submit(stressor, Operation.REMOVE, key);
+            } else {
+               return submit(stressor, Operation.GET, key);
+            }
+         } else if (randomAction < activeWritePercentage) {
+            Map<Object, Object> map = new HashMap<Object, Object>(bulkSize);
+            while (map.size() < bulkSize) {
+               Object key = initLogic.getKey(nextKeyIndex(r), stressor.threadIndex);
+               if (!map.containsKey(key)) {
+                  map.put(key, generateValue(key, Integer.MAX_VALUE));
+               }
+            }
+            return submit(stressor, Operation.PUT_ALL, map);
+         } else {
+            Set<Object> set = new HashSet<Object>(bulkSize);
+            while (set.size() < bulkSize) {
+               set.add(initLogic.getKey(nextKeyIndex(r), stressor.threadIndex));
+            }
+            if (randomAction < activeWritePercentage + activeRemovePercentage) {
+               return submit(stressor, Operation.REMOVE_ALL, set);
+            } else {
+               return submit(stressor, Operation.GET_ALL, set);
+            }
+         }
+      }
+
+      @SuppressWarnings("unchecked")
+      private Object submit(Stressor stressor, Operation operation, Object... keysAndValues) throws RequestException {
+         long start = System.nanoTime();
+         try {
+            switch (operation) {
+               case GET:
+                  listen(asyncCacheWrapper.getAsync(stressor.bucketId, keysAndValues[0]), operation, start, keysAndValues);
+                  break;
+               case PUT:
+                  listen(asyncCacheWrapper.putAsync(stressor.bucketId, keysAndValues[0], keysAndValues[1]), operation, start, keysAndValues);
+                  break;
+               case REMOVE:
+                  listen(asyncCacheWrapper.removeAsync(stressor.bucketId, keysAndValues[0]), operation, start, keysAndValues);
+                  break;
+               case GET_ALL:
+                  listen(asyncCacheWrapper.getAllAsync(stressor.bucketId, (Set<Object>) keysAndValues[0]), operation, start, keysAndValues);
+                  break;
+               case PUT_ALL:
+                  listen(asyncCacheWrapper.putAllAsync(stressor.bucketId, (Map<Object, Object>) keysAndValues[0]), operation, start, keysAndValues);
+                  break;
+               case REMOVE_ALL:
+                  listen(asyncCacheWrapper.removeAllAsync(stressor.bucketId, (Set<Object>) keysAndValues[0]), operation, start, keysAndValues);
+                  break;
+               default:
+                  throw new IllegalArgumentException();
+            }
+         } catch (Exception e) {
+            // the operation was not even submitted
+            inFlight.release();
+            log.warn("Error in request", e);
+            stressor.stats.registerError(System.nanoTime() - start, 0, operation);
+            throw new RequestException(e);
+         }
+         // the result is not known yet
+         return null;
+      }
+
+      private <T> void listen(NotifyingFuture<T> future, final Operation operation, final long start,
+                              final Object[] keysAndValues) {
+         future.attachListener(new FutureListener<T>() {
+            @Override
+            public void futureDone(NotifyingFuture<T> future) {
+               long end = System.nanoTime();
+               long duration = end - start;
+               boolean successful = false;
+               Operation completed = operation;
+               Object value = operation == Operation.PUT ? keysAndValues[1] : null;
+               try {
+                  Object result = future.get();
+                  if (operation != Operation.PUT) {
+                     value = result;
+                  }
+                  if (operation == Operation.GET && result == null) {
+                     completed = Operation.GET_NULL;
+                  }
+                  successful = true;
+               } catch (ExecutionException e) {
+                  log.warn("Error in request", e.getCause());
+               } catch (CancellationException e) {
+                  log.warn("Request was cancelled");
+               } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+               }
+               completions.offer(new AsyncCompletion(completed, end, duration, successful, keysAndValues[0], value));
+               inFlight.release();
+            }
+         });
+      }
+
+      private void registerCompletions(Stressor stressor) {
+         AsyncCompletion completion;
+         while ((completion = completions.poll()) != null) {
+            if (latencyTimeline != null) {
+               latencyTimeline.record(stressor.threadIndex, completion.end, completion.duration);
+            }
+            if (liveStatistics != null) {
+               liveStatistics.record(stressor.threadIndex, completion.duration);
+            }
+            if (stressor.phaseLatencies != null) {
+               stressor.recordPhase(completion.duration, completion.successful);
+            }
+            if (steadyStateDetector != null) {
+               stressor.registerCompleted(completion.duration);
+            }
+            if (slowOperations != null && slowOperations.isSlow(stressor.threadIndex, completion.duration)) {
+               slowOperations.record(stressor.threadIndex, completion.operation, completion.key,
+                     stressor.valueSize(completion.value), completion.end, completion.duration);
+            }
+            if (slowOperationNanos >= 0 && completion.duration > slowOperationNanos) {
+               FlightRecorderEvents.slowOperation(completion.operation.name(), completion.key.hashCode(), completion.duration);
+            }
+            if (completion.successful) {
+               stressor.stats.registerRequest(completion.duration, 0, completion.operation);
+            } else {
+               stressor.stats.registerError(completion.duration, 0, completion.operation);
+            }
+            asyncCompleted.incrementAndGet();
+         }
+      }
+
+      /**
+       * Waits until all submitted operations complete.
+       */
+      public void drain(Stressor stressor) {
+         inFlight.acquireUninterruptibly(asyncInFlight);
+         inFlight.release(asyncInFlight);
+         registerCompletions(stressor);
       }
    }
 
    private static class Load {
-      public long max;
-      public TreeSet<KeyWithRemovalTime> scheduledKeys = new TreeSet<KeyWithRemovalTime>();
+      public final int group;
+      public final long max;
 
-      private Load(long max) {
+      private Load(int group, long max) {
+         this.group = group;
          this.max = max;
       }
    }
 
    protected class ChangingSetOperationLogic implements OperationLogic {
       private Random r = new Random();
-      private long minRemoveTimestamp = Long.MAX_VALUE;
-      private int minRemoveSize = 0;
       private HashMap<Integer, Load> loadForSize = new HashMap<Integer, Load>();
+      private KeySchedule schedule;
 
       @Override
       public void init(String bucketId, int threadIndex) {
@@ -663,49 +1248,46 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
          for (Map.Entry<Integer, Double> entry : probabilityMap.entrySet()) {
             long valuesForSize = (long) (entries * entry.getValue());
             expectedMax += valuesForSize * entry.getKey();
-            loadForSize.put(entry.getKey(), new Load(valuesForSize));
+            loadForSize.put(entry.getKey(), new Load(loadForSize.size(), valuesForSize));
          }
+         schedule = new KeySchedule(loadForSize.size(), (int) Math.min(entries, 1 << 20));
          log.info("Expecting maximal load of " + new SizeConverter().convertToString(expectedMax));
       }
 
       @Override
       public Object run(Stressor stressor) throws RequestException {
-         KeyWithRemovalTime pair;
          long timestamp = System.currentTimeMillis();
-         if (minRemoveTimestamp <= timestamp) {
-            Load load = loadForSize.get(minRemoveSize);
-            pair = load.scheduledKeys.pollFirst();
+         if (schedule.firstTimestamp() <= timestamp) {
+            int slot = schedule.firstSlot();
+            Object key = schedule.getKey(slot);
             Object value;
             try {
-               value = stressor.makeRequest(Operation.REMOVE, pair.key);
+               value = stressor.makeRequest(Operation.REMOVE, key);
             } catch (RequestException e) {
-               load.scheduledKeys.add(pair);
+               // the key stays scheduled and its removal is retried
                return null;
             }
-            updateMin();
+            schedule.remove(slot);
             if (value == null && !expectLostKeys) {
-               log.error("REMOVE: Value for key " + pair.key + " is null!");
+               log.error("REMOVE: Value for key " + key + " is null!");
             }
             return value;
-         } else if (r.nextInt(100) >= writePercentage && minRemoveTimestamp < Long.MAX_VALUE) {
-            // we cannot get random access to PriorityQueue and there is no SortedList or another appropriate structure
-            Load load = null;
-            for (int attempt = 0; attempt < 100; ++attempt) {
-               load = loadForSize.get(entrySize.next(r));
-               if (!load.scheduledKeys.isEmpty()) break;
+         } else if (r.nextInt(100) >= activeWritePercentage && !schedule.isEmpty()) {
+            int slot = -1;
+            for (int attempt = 0; attempt < 100 && slot < 0; ++attempt) {
+               slot = schedule.randomSlot(loadForSize.get(entrySize.next(r)).group, r);
             }
-            if (load.scheduledKeys.isEmpty()) {
-               log.error("Current load seems to be null but timestamp is " + minRemoveTimestamp);
+            if (slot < 0) {
+               log.error("No keys loaded for the chosen entry sizes, but " + schedule.size() + " keys are scheduled");
                return null;
             }
-            pair = getRandomPair(load.scheduledKeys, timestamp);
-            Object value = stressor.makeRequest(Operation.GET, pair.key);
+            Object key = schedule.getKey(slot);
+            Object value = stressor.makeRequest(Operation.GET, key);
             if (value == null) {
                if (expectLostKeys) {
-                  load.scheduledKeys.remove(pair);
-                  updateMin();
+                  schedule.remove(slot);
                } else {
-                  log.error("GET: Value for key " + pair.key + " is null!");
+                  log.error("GET: Value for key " + key + " is null!");
                }
             }
             return value;
@@ -713,21 +1295,21 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
             Object value = generateValue(null, Integer.MAX_VALUE);
             int size = getValueGenerator().sizeOf(value);
             Load load = loadForSize.get(size);
-            if (load.scheduledKeys.size() < load.max) {
+            int slot;
+            if (schedule.size(load.group) < load.max) {
                long keyIndex = keysLoaded.getAndAdd(numNodes);
-               pair = new KeyWithRemovalTime(getKeyGenerator().generateKey(keyIndex), getRandomTimestamp(timestamp));
-               load.scheduledKeys.add(pair);
-               updateMin();
+               slot = schedule.add(getKeyGenerator().generateKey(keyIndex), getRandomTimestamp(timestamp), load.group);
             } else {
-               pair = getRandomPair(load.scheduledKeys, timestamp);
+               slot = schedule.randomSlot(load.group, r);
             }
+            Object key = schedule.getKey(slot);
             try {
-               return stressor.makeRequest(Operation.PUT, pair.key, value);
+               return stressor.makeRequest(Operation.PUT, key, value);
             } catch (RequestException e) {
-               load.scheduledKeys.remove(pair);
+               schedule.remove(slot);
                for (;;) {
                   try {
-                     return stressor.makeRequest(Operation.REMOVE, pair.key);
+                     return stressor.makeRequest(Operation.REMOVE, key);
                   } catch (RequestException e1) {
                   }
                }
@@ -735,30 +1317,12 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
          }
       }
 
-      private void updateMin() {
-         minRemoveTimestamp = Long.MAX_VALUE;
-         for (Map.Entry<Integer, Load> entry : loadForSize.entrySet()) {
-            if (!entry.getValue().scheduledKeys.isEmpty()) {
-               long min = entry.getValue().scheduledKeys.first().removeTimestamp;
-               if (min < minRemoveTimestamp) {
-                  minRemoveTimestamp = min;
-                  minRemoveSize = entry.getKey();
-               }
-            }
-         }
-      }
-
       private long getRandomTimestamp(long current) {
          // ~sqrt probability for 1 - maxRoot^2
          final long maxRoot = (long) Math.sqrt((double) entryLifespan);
          long rand = r.nextLong() % maxRoot;
          return current + rand * rand + r.nextLong() % (2*maxRoot - 2) + 1;
       }
-
-      private KeyWithRemovalTime getRandomPair(TreeSet<KeyWithRemovalTime> scheduledKeys, long timestamp) {
-         KeyWithRemovalTime pair = scheduledKeys.floor(new KeyWithRemovalTime(null, getRandomTimestamp(timestamp)));
-         return pair != null ? pair : scheduledKeys.first();
-      }
    }
 
    protected class Stressor extends Thread {
@@ -767,8 +1331,18 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       private int txRemainingOperations = 0;
       private long transactionDuration = 0;
       private Statistics stats;
+      private long operations;
       private OperationLogic logic;
       private boolean useTransactions = isUseTransactions();
+      private int epoch = statisticsEpoch;
+      // read by the steady state detection, written only by this thread
+      private final AtomicLong completedOperations = new AtomicLong();
+      private final AtomicLong completedResponseTime = new AtomicLong();
+      // used only with workload schedule
+      private int schedulePhase;
+      private long lastOperationNanos;
+      private LatencyHistogram[] phaseLatencies;
+      private long[] phaseErrors;
 
       public Stressor(int threadIndex, OperationLogic logic) {
          super("Stressor-" + threadIndex);         
@@ -779,6 +1353,9 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
 
       @Override
       public void run() {
+         if (threadPlacement.pin(threadIndex)) {
+            pinnedThreads.incrementAndGet();
+         }
          try {
             for (;;) {
                synchronizer.slavePhaseStart();
@@ -811,7 +1388,19 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       
       private void runInternal() {
          int i = 0;
-         while (completion.moreToRun()) {
+         int warmupOperations = 0;
+         if (workloadSchedule != null) {
+            phaseLatencies = new LatencyHistogram[workloadSchedule.size()];
+            for (int phase = 0; phase < phaseLatencies.length; ++phase) {
+               phaseLatencies[phase] = new LatencyHistogram();
+            }
+            phaseErrors = new long[workloadSchedule.size()];
+            lastOperationNanos = 0;
+         }
+         while (!measurementComplete && completion.moreToRun()) {
+            if (workloadSchedule != null && !awaitScheduledOperation()) {
+               continue;
+            }
             Object result = null;
             try {
                result = logic.run(this);
@@ -819,8 +1408,21 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
                // the exception was already logged in makeRequest
             }
             i++;
+            if (epoch != statisticsEpoch) {
+               // the warmup has finished
+               epoch = statisticsEpoch;
+               stats = createStatistics();
+               warmupOperations = i;
+               if (slowOperations != null) {
+                  slowOperations.reset(threadIndex);
+               }
+            }
             completion.logProgress(i, result, threadIndex);
          }
+         operations = i - warmupOperations;
+         if (logic instanceof AsyncOperationLogic) {
+            ((AsyncOperationLogic) logic).drain(this);
+         }
 
          if (txRemainingOperations > 0) {
             try {
@@ -833,6 +1435,49 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
          }
       }
 
+      /**
+       * Paces the thread according to the active phase of the workload schedule. Threads above the number of
+       * threads of the phase stay idle.
+       *
+       * @return false if the thread should not execute an operation yet
+       */
+      private boolean awaitScheduledOperation() {
+         schedulePhase = activePhaseIndex;
+         WorkloadSchedule.Phase phase = workloadSchedule.getPhase(schedulePhase);
+         int activeThreads = phase.getThreads() > 0 ? phase.getThreads() : numThreads;
+         if (threadIndex >= activeThreads) {
+            lastOperationNanos = 0;
+            LockSupport.parkNanos(MAX_PACING_PARK_NANOS);
+            return false;
+         }
+         if (!phase.isRateLimited()) {
+            lastOperationNanos = 0;
+            return true;
+         }
+         long now = System.nanoTime();
+         // the interval is evaluated again after each sleep, this follows ramps and phase changes
+         double rate = Math.max(1d, phase.getRate(now - activePhaseStartNanos));
+         long interval = (long) (Statistics.NS_IN_SEC * activeThreads / rate);
+         if (lastOperationNanos == 0) {
+            lastOperationNanos = now;
+            return true;
+         }
+         long next = lastOperationNanos + interval;
+         if (next > now) {
+            LockSupport.parkNanos(Math.min(next - now, MAX_PACING_PARK_NANOS));
+            return false;
+         }
+         lastOperationNanos = now - next > MAX_PACING_LAG_NANOS ? now : next;
+         return true;
+      }
+
+      private void recordPhase(long responseTime, boolean successful) {
+         phaseLatencies[schedulePhase].record(responseTime);
+         if (!successful) {
+            phaseErrors[schedulePhase]++;
+         }
+      }
+
       public Object makeRequest(Operation operation, Object... keysAndValues) throws RequestException {
          long startTxTime = 0;
          if (useTransactions && txRemainingOperations <= 0) {
@@ -861,6 +1506,9 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
                case PUT:
                   cacheWrapper.put(bucketId, keysAndValues[0], keysAndValues[1]);
                   break;
+               case PUT_WITH_LIFESPAN:
+                  ((ExpirationCapable) cacheWrapper).put(bucketId, keysAndValues[0], keysAndValues[1], (Long) keysAndValues[2]);
+                  break;
                case QUERY:
                   result = ((Queryable) cacheWrapper).executeQuery((Map<String, Object>) keysAndValues[0]);
                   break;
@@ -923,6 +1571,26 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
                stats.registerError(transactionDuration + endTxTime, 0, Operation.TRANSACTION);
             }
          }
+         if (latencyTimeline != null) {
+            latencyTimeline.record(threadIndex, start + operationDuration, operationDuration);
+         }
+         if (liveStatistics != null) {
+            liveStatistics.record(threadIndex, operationDuration);
+         }
+         if (phaseLatencies != null) {
+            recordPhase(operationDuration, successfull);
+         }
+         if (steadyStateDetector != null) {
+            registerCompleted(operationDuration);
+         }
+         if (slowOperations != null && slowOperations.isSlow(threadIndex, operationDuration)) {
+            slowOperations.record(threadIndex, operation, keysAndValues.length == 0 ? null : keysAndValues[0],
+                  valueSize(operation, keysAndValues, result), start + operationDuration, operationDuration);
+         }
+         if (slowOperationNanos >= 0 && operationDuration > slowOperationNanos) {
+            FlightRecorderEvents.slowOperation(operation.name(), keysAndValues.length == 0 ? 0 : keysAndValues[0].hashCode(),
+                  operationDuration);
+         }
          if (successfull) {
             stats.registerRequest(operationDuration, startTxTime + endTxTime, operation);
          } else {
@@ -938,6 +1606,44 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
          return stats;
       }
 
+      /**
+       * @return size of the value written or read by the operation, -1 if not known
+       */
+      private int valueSize(Operation operation, Object[] keysAndValues, Object result) {
+         switch (operation) {
+            case PUT:
+            case PUT_WITH_LIFESPAN:
+            case PUT_IF_ABSENT_IS_ABSENT:
+            case PUT_IF_ABSENT_NOT_ABSENT:
+               return valueSize(keysAndValues[1]);
+            case REPLACE_VALID:
+            case REPLACE_INVALID:
+               return valueSize(keysAndValues[2]);
+            default:
+               return valueSize(result);
+         }
+      }
+
+      private int valueSize(Object value) {
+         if (value == null) return -1;
+         try {
+            return getValueGenerator().sizeOf(value);
+         } catch (RuntimeException e) {
+            // e.g. results of bulk operations
+            return -1;
+         }
+      }
+
+      private void registerCompleted(long responseTime) {
+         // single writer, ordered store is enough
+         completedOperations.lazySet(completedOperations.get() + 1);
+         completedResponseTime.lazySet(completedResponseTime.get() + responseTime);
+      }
+
+      public int getThreadIndex() {
+         return threadIndex;
+      }
+
       private class TransactionException extends Exception {
          private final long operationDuration;
 
@@ -969,7 +1675,12 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
             cacheWrapper.endTransaction(commitTransactions);
          } catch (Exception e) {
             long time = System.nanoTime() - start;
-            log.error("Failed to end transaction", e);
+            // failed commits are expected with optimistic locking, do not flood the log with stack traces
+            if (log.isDebugEnabled()) {
+               log.debug("Failed to end transaction", e);
+            } else {
+               log.warn("Failed to end transaction: " + e);
+            }
             throw new TransactionException(time, e);
          }
          return System.nanoTime() - start;
@@ -1040,6 +1751,10 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       this.durationMillis = durationMillis;
    }
 
+   public long getTimelineInterval() {
+      return timelineInterval;
+   }
+
    abstract class StressorCompletion {
  
       abstract boolean moreToRun();
@@ -1155,6 +1870,12 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
             ", transactionSize=" + transactionSize +
             ", commitTransactions=" + commitTransactions +
             ", durationMillis=" + durationMillis +
+            ", asyncInFlight=" + asyncInFlight +
+            ", timelineInterval=" + timelineInterval +
+            ", steadyStateInterval=" + steadyStateInterval +
+            ", slowOperationsCount=" + slowOperationsCount +
+            ", workloadSchedule=" + workloadSchedule +
+            ", metricsPort=" + getMetricsPort() +
             "}";
    }
 }
@@ -16,7 +16,8 @@ import com.ctriposs.blacksmith.config.Stressor;
  *
  * @author bulldog
  * @deprecated this should be replaced with the {@link StressTestStressor}. This is because that warmup mimics better the
- * access pattern of the the {@link StressTestStressor}, especially in the case of transactions.
+ * access pattern of the the {@link StressTestStressor}, especially in the case of transactions. With steadyStateInterval
+ * the {@link StressTestStressor} detects the end of warmup itself.
  */
 @Stressor(doc = "Deprecated warmup stressor.")
 public class WarmupStressor extends AbstractCacheWrapperStressor {
@@ -0,0 +1,279 @@
+package com.ctriposs.blacksmith.stressors;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.ctriposs.blacksmith.utils.Utils;
+
+/**
+ * Sequence of workload phases executed by the same stressor threads on the same keys, e.g. a steady load, a spike
+ * and the recovery after it. Each phase has a duration and optionally a target rate, number of active threads,
+ * write and remove percentage and a hot key set; what a phase does not set is taken from the stressor properties.
+ * <p>
+ * The schedule is written as phases separated by semicolons, each phase as {@code [name:] duration [key=value]*}:
+ * <pre>
+ * steady: 1m rate=10000; spike: 30s rate=50000 threads=20; recovery: 2m rate=10000;
+ * ramp: 5m rate=1000..20000; day: 10m rate=2000~10000 writes=5 removes=0 hotKeys=10%/90%
+ * </pre>
+ * The rate is the total number of operations per second, {@code a..b} changes it linearly during the phase and
+ * {@code a~b} follows a sine wave from a through b back to a (diurnal pattern); without the rate the threads run
+ * as fast as they can. {@code threads} may not exceed the number of stressor threads. {@code hotKeys=10%/90%}
+ * directs 90% of the operations to 10% of the keys.
+ *
+ * @author bulldog
+ */
+public class WorkloadSchedule implements Serializable {
+
+   /** The serialVersionUID */
+   private static final long serialVersionUID = 4219374930147253862L;
+
+   private enum Shape {
+      CONSTANT, RAMP, WAVE
+   }
+
+   public static class Phase implements Serializable {
+      /** The serialVersionUID */
+      private static final long serialVersionUID = -7709651736042715028L;
+
+      private final String name;
+      private final long durationMillis;
+      private double rateFrom;
+      private double rateTo;
+      private Shape shape = Shape.CONSTANT;
+      private int threads;
+      private int writePercentage = -1;
+      private int removePercentage = -1;
+      private double hotKeys;
+      private double hotProbability;
+
+      private Phase(String name, long durationMillis) {
+         this.name = name;
+         this.durationMillis = durationMillis;
+      }
+
+      public String getName() {
+         return name;
+      }
+
+      public long getDurationMillis() {
+         return durationMillis;
+      }
+
+      public boolean isRateLimited() {
+         return rateFrom > 0 || rateTo > 0;
+      }
+
+      /**
+       * @param elapsedNanos time since the start of the phase
+       * @return target number of operations per second of all threads, 0 if not limited
+       */
+      public double getRate(long elapsedNanos) {
+         if (shape == Shape.CONSTANT) return rateFrom;
+         double progress = Math.min(1d, Math.max(0d, (double) elapsedNanos / (durationMillis * Statistics.NS_IN_MS)));
+         if (shape == Shape.RAMP) {
+            return rateFrom + (rateTo - rateFrom) * progress;
+         } else {
+            return rateFrom + (rateTo - rateFrom) * Math.sin(Math.PI * progress);
+         }
+      }
+
+      /**
+       * @return number of threads executing operations, 0 if all threads do
+       */
+      public int getThreads() {
+         return threads;
+      }
+
+      public int getWritePercentage(int defaultPercentage) {
+         return writePercentage < 0 ? defaultPercentage : writePercentage;
+      }
+
+      public int getRemovePercentage(int defaultPercentage) {
+         return removePercentage < 0 ? defaultPercentage : removePercentage;
+      }
+
+      /**
+       * @return index of the key in range [0, keys), uniform unless the phase has hot keys
+       */
+      public int nextKeyIndex(Random random, int keys) {
+         if (hotKeys <= 0 || keys < 2) return random.nextInt(keys);
+         int hot = Math.max(1, Math.min(keys - 1, (int) (hotKeys * keys)));
+         if (random.nextDouble() < hotProbability) {
+            return random.nextInt(hot);
+         } else {
+            return hot + random.nextInt(keys - hot);
+         }
+      }
+
+      @Override
+      public String toString() {
+         StringBuilder sb = new StringBuilder(name).append(": ").append(formatDuration(durationMillis));
+         if (isRateLimited()) {
+            sb.append(" rate=").append(format(rateFrom));
+            if (shape == Shape.RAMP) sb.append("..").append(format(rateTo));
+            else if (shape == Shape.WAVE) sb.append('~').append(format(rateTo));
+         }
+         if (threads > 0) sb.append(" threads=").append(threads);
+         if (writePercentage >= 0) sb.append(" writes=").append(writePercentage);
+         if (removePercentage >= 0) sb.append(" removes=").append(removePercentage);
+         if (hotKeys > 0) {
+            sb.append(" hotKeys=").append(format(100 * hotKeys)).append("%/").append(format(100 * hotProbability)).append('%');
+         }
+         return sb.toString();
+      }
+
+      /**
+       * @return the duration in the syntax accepted by {@link Utils#string2Millis(String)}
+       */
+      private static String formatDuration(long millis) {
+         if (millis % 60000 == 0) return millis / 60000 + "m";
+         if (millis % 1000 == 0) return millis / 1000 + "s";
+         return String.valueOf(millis);
+      }
+
+      private static String format(double value) {
+         return value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value);
+      }
+   }
+
+   private final List<Phase> phases;
+   private final String definition;
+
+   private WorkloadSchedule(List<Phase> phases, String definition) {
+      this.phases = Collections.unmodifiableList(phases);
+      this.definition = definition;
+   }
+
+   public List<Phase> getPhases() {
+      return phases;
+   }
+
+   public int size() {
+      return phases.size();
+   }
+
+   public Phase getPhase(int index) {
+      return phases.get(index);
+   }
+
+   /**
+    * @return offset of the phase start from the start of the schedule
+    */
+   public long getStartMillis(int index) {
+      long start = 0;
+      for (int i = 0; i < index; ++i) {
+         start += phases.get(i).durationMillis;
+      }
+      return start;
+   }
+
+   public long getDurationMillis() {
+      return getStartMillis(phases.size());
+   }
+
+   @Override
+   public String toString() {
+      return definition;
+   }
+
+   public static WorkloadSchedule parse(String string) {
+      List<Phase> phases = new ArrayList<Phase>();
+      for (String phaseString : string.split(";")) {
+         phaseString = phaseString.trim();
+         if (phaseString.isEmpty()) continue;
+         String name = "phase" + phases.size();
+         int colon = phaseString.indexOf(':');
+         if (colon >= 0) {
+            name = phaseString.substring(0, colon).trim();
+            phaseString = phaseString.substring(colon + 1).trim();
+         }
+         String[] parts = phaseString.split("\\s+");
+         long duration = Utils.string2Millis(parts[0]);
+         if (duration <= 0) {
+            throw new IllegalArgumentException("Phase " + name + " must have positive duration: " + phaseString);
+         }
+         Phase phase = new Phase(name, duration);
+         for (int i = 1; i < parts.length; ++i) {
+            int eq = parts[i].indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("Expected key=value in phase " + name + ": " + parts[i]);
+            parseAttribute(phase, parts[i].substring(0, eq), parts[i].substring(eq + 1));
+         }
+         phases.add(phase);
+      }
+      if (phases.isEmpty()) {
+         throw new IllegalArgumentException("Workload schedule has no phases: " + string);
+      }
+      StringBuilder definition = new StringBuilder();
+      for (Phase phase : phases) {
+         if (definition.length() > 0) definition.append("; ");
+         definition.append(phase);
+      }
+      return new WorkloadSchedule(phases, definition.toString());
+   }
+
+   private static void parseAttribute(Phase phase, String key, String value) {
+      try {
+         if (key.equals("rate")) {
+            int range;
+            if ((range = value.indexOf("..")) >= 0) {
+               phase.shape = Shape.RAMP;
+               phase.rateFrom = Double.parseDouble(value.substring(0, range));
+               phase.rateTo = Double.parseDouble(value.substring(range + 2));
+            } else if ((range = value.indexOf('~')) >= 0) {
+               phase.shape = Shape.WAVE;
+               phase.rateFrom = Double.parseDouble(value.substring(0, range));
+               phase.rateTo = Double.parseDouble(value.substring(range + 1));
+            } else {
+               phase.rateFrom = phase.rateTo = Double.parseDouble(value);
+            }
+            if (phase.rateFrom < 0 || phase.rateTo < 0) throw new IllegalArgumentException("Negative rate: " + value);
+         } else if (key.equals("threads")) {
+            phase.threads = Integer.parseInt(value);
+            if (phase.threads <= 0) {
+               throw new IllegalArgumentException("Phase " + phase.name + " must have positive threads: " + value);
+            }
+         } else if (key.equals("writes")) {
+            phase.writePercentage = percentage(value);
+         } else if (key.equals("removes")) {
+            phase.removePercentage = percentage(value);
+         } else if (key.equals("hotKeys")) {
+            int slash = value.indexOf('/');
+            if (slash < 0) throw new IllegalArgumentException("Expected hotKeys=<keys>%/<operations>%: " + value);
+            phase.hotKeys = percentage(value.substring(0, slash)) / 100d;
+            phase.hotProbability = percentage(value.substring(slash + 1)) / 100d;
+         } else {
+            throw new IllegalArgumentException("Unknown attribute " + key + " in phase " + phase.name);
+         }
+      } catch (NumberFormatException e) {
+         throw new IllegalArgumentException("Cannot parse " + key + "=" + value + " in phase " + phase.name, e);
+      }
+   }
+
+   private static int percentage(String value) {
+      value = value.trim();
+      if (value.endsWith("%")) value = value.substring(0, value.length() - 1);
+      int percentage = Integer.parseInt(value);
+      if (percentage < 0 || percentage > 100) throw new IllegalArgumentException("Percentage out of range: " + value);
+      return percentage;
+   }
+
+   public static class Converter implements com.ctriposs.blacksmith.config.Converter<WorkloadSchedule> {
+      @Override
+      public WorkloadSchedule convert(String string, java.lang.reflect.Type type) {
+         return parse(string);
+      }
+
+      @Override
+      public String convertToString(WorkloadSchedule value) {
+         return value == null ? "" : value.definition;
+      }
+
+      @Override
+      public String allowedPattern(java.lang.reflect.Type type) {
+         return "[^;]+(;[^;]*)*";
+      }
+   }
+}
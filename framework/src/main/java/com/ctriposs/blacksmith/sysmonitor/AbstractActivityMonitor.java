@@ -4,9 +4,7 @@ import java.io.Serializable;
 import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
 import java.text.NumberFormat;
-import java.util.ArrayList;
 import java.util.LinkedHashMap;
-import java.util.List;
 
 import javax.management.AttributeNotFoundException;
 import javax.management.MBeanServerConnection;
@@ -14,10 +12,17 @@ import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 
 /**
+ * Base of the monitors sampled by {@link LocalJmxMonitor}. The measurements are kept in a ring buffer of doubles
+ * which grows up to the capacity and then overwrites the oldest values, so that the sampling does not allocate
+ * nor retain unbounded memory.
+ *
  * @author bulldog
  */
 public abstract class AbstractActivityMonitor implements Runnable, Serializable {
 
+   /** The serialVersionUID */
+   private static final long serialVersionUID = -4045209373225497185L;
+
    static final ObjectName OS_NAME = getOSName();
 
    static final String PROCESSING_CAPACITY_ATTR = "ProcessingCapacity";
@@ -25,7 +30,19 @@ public abstract class AbstractActivityMonitor implements Runnable, Serializable
    static final ObjectName RUNTIME_NAME = getRuntimeName();
    static final NumberFormat PERCENT_FORMATTER = NumberFormat.getPercentInstance();
 
-   protected final List<BigDecimal> measurements = new ArrayList<BigDecimal>();
+   /**
+    * Default maximum number of measurements, one hour of samples taken each 100 ms.
+    */
+   public static final int DEFAULT_CAPACITY = 36000;
+   private static final int INITIAL_CAPACITY = 256;
+
+   private int capacity = DEFAULT_CAPACITY;
+   private double[] measurements = new double[INITIAL_CAPACITY];
+   // index of the oldest measurement and number of measurements
+   private int head;
+   private int count;
+   // measurements overwritten after the buffer has filled up
+   private long dropped;
 
    private static ObjectName getRuntimeName() {
       try {
@@ -57,29 +74,90 @@ public abstract class AbstractActivityMonitor implements Runnable, Serializable
       return PERCENT_FORMATTER.format(value / 100);
    }
 
-   public final void addMeasurement(BigDecimal value) {
-      measurements.add(value);
+   /**
+    * Sets maximum number of retained measurements; must be called before the monitoring starts.
+    */
+   public synchronized void setCapacity(int capacity) {
+      if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+      this.capacity = capacity;
+      if (measurements.length > capacity) {
+         measurements = new double[capacity];
+         head = 0;
+         count = 0;
+         dropped = 0;
+      }
+   }
+
+   public final synchronized void addMeasurement(double value) {
+      if (count == measurements.length && count < capacity) {
+         double[] bigger = new double[Math.min(capacity, measurements.length * 2)];
+         for (int i = 0; i < count; ++i) {
+            bigger[i] = measurements[(head + i) % measurements.length];
+         }
+         measurements = bigger;
+         head = 0;
+      }
+      if (count < measurements.length) {
+         measurements[(head + count) % measurements.length] = value;
+         count++;
+      } else {
+         // full, overwrite the oldest
+         measurements[head] = value;
+         head = (head + 1) % measurements.length;
+         dropped++;
+      }
    }
 
    protected void addMeasurementAsPercentage(long v) {
-      addMeasurement(new BigDecimal(v).divide(new BigDecimal(10)));
+      addMeasurement(v / 10d);
    }
 
-   public LinkedHashMap<Integer, BigDecimal> formatForGraph(int interval, int xCount) {
-      int x = 0;
-      LinkedHashMap<Integer, BigDecimal> map = new LinkedHashMap<Integer, BigDecimal>(measurements.size());
-      for (BigDecimal y : measurements) {
-         map.put(x, y);
+   /**
+    * Multiplies all retained measurements by given factor, e.g. to convert units.
+    */
+   protected synchronized void scaleMeasurements(double factor) {
+      for (int i = 0; i < count; ++i) {
+         measurements[(head + i) % measurements.length] *= factor;
+      }
+   }
+
+   public synchronized LinkedHashMap<Integer, BigDecimal> formatForGraph(int interval, int xCount) {
+      // the oldest retained measurement was not the first one taken
+      int x = (int) (dropped * interval);
+      LinkedHashMap<Integer, BigDecimal> map = new LinkedHashMap<Integer, BigDecimal>(count);
+      for (double y : getMeasurements()) {
+         map.put(x, new BigDecimal(y));
          x += interval;
       }
       return map;
    }
 
-   public Integer getMeasurementCount() {
-      return measurements.size();
+   public synchronized Integer getMeasurementCount() {
+      return count;
+   }
+
+   /**
+    * @return number of the oldest measurements which have been overwritten, i.e. the index of the oldest retained one
+    */
+   public synchronized long getDroppedCount() {
+      return dropped;
    }
 
-   public List<BigDecimal> getMeasurements() {
-      return measurements;
+   /**
+    * @return the most recent measurement, NaN if there is none yet
+    */
+   public synchronized double getLastMeasurement() {
+      return count == 0 ? Double.NaN : measurements[(head + count - 1) % measurements.length];
+   }
+
+   /**
+    * @return copy of the retained measurements, from the oldest
+    */
+   public synchronized double[] getMeasurements() {
+      double[] copy = new double[count];
+      for (int i = 0; i < count; ++i) {
+         copy[i] = measurements[(head + i) % measurements.length];
+      }
+      return copy;
    }
 }
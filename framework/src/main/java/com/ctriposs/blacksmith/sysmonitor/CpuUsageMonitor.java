@@ -2,7 +2,6 @@ package com.ctriposs.blacksmith.sysmonitor;
 
 import java.io.Serializable;
 import java.lang.management.ManagementFactory;
-import java.lang.management.OperatingSystemMXBean;
 
 import javax.management.MBeanServerConnection;
 
@@ -27,6 +26,11 @@ public class CpuUsageMonitor extends AbstractActivityMonitor implements Serializ
    long upTime;
    long prevUpTime;
 
+   // looked up on the first sample only
+   private transient MBeanServerConnection con;
+   private transient long cpuTimeMultiplier;
+   private transient int procCount;
+
    static {
       PERCENT_FORMATTER.setMinimumFractionDigits(1);
       PERCENT_FORMATTER.setMaximumIntegerDigits(3);
@@ -42,20 +46,20 @@ public class CpuUsageMonitor extends AbstractActivityMonitor implements Serializ
             prevCpuTime = cpuTime;
             prevUpTime = upTime;
 
-            MBeanServerConnection con = ManagementFactory.getPlatformMBeanServer();
-            if (con == null)
-               throw new IllegalStateException("PlatformMBeanServer not started!");
-
-            long cpuTimeMultiplier = getCpuMultiplier(con);
-            OperatingSystemMXBean os = ManagementFactory.newPlatformMXBeanProxy(con,
-                  ManagementFactory.OPERATING_SYSTEM_MXBEAN_NAME, OperatingSystemMXBean.class);
-            int procCount = os.getAvailableProcessors();
+            if (con == null) {
+               MBeanServerConnection server = ManagementFactory.getPlatformMBeanServer();
+               if (server == null)
+                  throw new IllegalStateException("PlatformMBeanServer not started!");
+               cpuTimeMultiplier = getCpuMultiplier(server);
+               procCount = ManagementFactory.getOperatingSystemMXBean().getAvailableProcessors();
+               con = server;
+            }
 
             Long jmxCpuTime = (Long) con.getAttribute(OS_NAME, PROCESS_CPU_TIME_ATTR);
             cpuTime = jmxCpuTime * cpuTimeMultiplier;
-            Long jmxUpTime = (Long) con.getAttribute(RUNTIME_NAME, PROCESS_UP_TIME);
-            upTime = jmxUpTime;
-            long upTimeDiff = (upTime * 1000000) - (prevUpTime * 1000000);
+            // the JVM uptime has millisecond resolution only, too coarse for sub-second sampling
+            upTime = System.nanoTime();
+            long upTimeDiff = prevUpTime == 0 ? 0 : upTime - prevUpTime;
 
             long procTimeDiff = (cpuTime / procCount) - (prevCpuTime / procCount);
 
@@ -64,7 +68,9 @@ public class CpuUsageMonitor extends AbstractActivityMonitor implements Serializ
 
             addMeasurementAsPercentage(cpuUsage);
 
-            log.trace("Cpu usage: " + formatPercent(cpuUsage * 0.1d));
+            if (log.isTraceEnabled()) {
+               log.trace("Cpu usage: " + formatPercent(cpuUsage * 0.1d));
+            }
          } catch (Exception e) {
             log.error("Exception!", e);
          }
@@ -0,0 +1,282 @@
+package com.ctriposs.blacksmith.sysmonitor;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parses /proc/diskstats for the traffic of the block device (or all physical disks) and /proc/self/io for the I/O
+ * of this process. The charts contain throughput in MB/s, IOPS and average wait per I/O; rchar/wchar are the bytes
+ * passed through read/write calls, read_bytes/write_bytes those which really hit the storage, so their difference
+ * tells the page cache hits.
+ *
+ * @author bulldog
+ */
+public class DiskIoMonitor implements Runnable, Serializable {
+
+   /** The serialVersionUID */
+   private static final long serialVersionUID = -4472316390806548810L;
+
+   private static Logger log = LoggerFactory.getLogger(DiskIoMonitor.class);
+
+   private static final String DISKSTATS = "/proc/diskstats";
+   private static final String PROC_IO = "/proc/self/io";
+   private static final int SECTOR_SIZE = 512;
+   private static final double MB = 1024 * 1024;
+
+   // indices in the disk counters
+   private static final int READ_BYTES = 0;
+   private static final int WRITE_BYTES = 1;
+   private static final int READS = 2;
+   private static final int WRITES = 3;
+   private static final int IO_MILLIS = 4;
+   private static final int DISK_COUNTERS = 5;
+   // indices in the process counters
+   private static final int RCHAR = 0;
+   private static final int WCHAR = 1;
+   private static final int PROCESS_READ_BYTES = 2;
+   private static final int PROCESS_WRITE_BYTES = 3;
+   private static final String[] PROC_IO_KEYS = { "rchar:", "wchar:", "read_bytes:", "write_bytes:" };
+
+   /**
+    * One chart series of this monitor.
+    */
+   public static class Series extends AbstractActivityMonitor {
+      /** The serialVersionUID */
+      private static final long serialVersionUID = 3323839722812318155L;
+
+      @Override
+      public void run() {
+         // filled by the owning monitor
+      }
+   }
+
+   boolean running = true;
+   private final String disk;
+   private final Series diskRead = new Series();
+   private final Series diskWrite = new Series();
+   private final Series readIops = new Series();
+   private final Series writeIops = new Series();
+   private final Series await = new Series();
+   private final Series processRchar = new Series();
+   private final Series processWchar = new Series();
+   private final Series processRead = new Series();
+   private final Series processWrite = new Series();
+
+   private long[] lastDisk = new long[DISK_COUNTERS];
+   private long[] lastProcess = new long[PROC_IO_KEYS.length];
+   private long[] currentDisk = new long[DISK_COUNTERS];
+   private long[] currentProcess = new long[PROC_IO_KEYS.length];
+   private long lastNanos;
+   private long[] markDisk;
+   private long[] markProcess;
+
+   private transient ProcFile diskstats;
+   private transient ProcFile processIo;
+   private transient Map<String, Boolean> physicalDisks;
+
+   /**
+    * @param disk name of the block device in /proc/diskstats, null for sum of all physical disks
+    */
+   public DiskIoMonitor(String disk) {
+      this.disk = disk;
+   }
+
+   public synchronized void stop() {
+      running = false;
+      if (diskstats != null) {
+         diskstats.close();
+         processIo.close();
+      }
+   }
+
+   public synchronized void run() {
+      if (running) {
+         try {
+            long now = System.nanoTime();
+            long[] diskCounters = readDisk(currentDisk);
+            long[] processCounters = readProcess(currentProcess);
+            if (lastNanos != 0) {
+               double seconds = (now - lastNanos) / 1e9;
+               if (diskCounters != null) {
+                  addRate(diskRead, diskCounters[READ_BYTES] - lastDisk[READ_BYTES], seconds, MB);
+                  addRate(diskWrite, diskCounters[WRITE_BYTES] - lastDisk[WRITE_BYTES], seconds, MB);
+                  addRate(readIops, diskCounters[READS] - lastDisk[READS], seconds, 1);
+                  addRate(writeIops, diskCounters[WRITES] - lastDisk[WRITES], seconds, 1);
+                  long ios = diskCounters[READS] - lastDisk[READS] + diskCounters[WRITES] - lastDisk[WRITES];
+                  await.addMeasurement(ios == 0 ? 0 : (double) (diskCounters[IO_MILLIS] - lastDisk[IO_MILLIS]) / ios);
+               }
+               if (processCounters != null) {
+                  addRate(processRchar, processCounters[RCHAR] - lastProcess[RCHAR], seconds, MB);
+                  addRate(processWchar, processCounters[WCHAR] - lastProcess[WCHAR], seconds, MB);
+                  addRate(processRead, processCounters[PROCESS_READ_BYTES] - lastProcess[PROCESS_READ_BYTES], seconds, MB);
+                  addRate(processWrite, processCounters[PROCESS_WRITE_BYTES] - lastProcess[PROCESS_WRITE_BYTES], seconds, MB);
+               }
+            }
+            lastNanos = now;
+            // swap the buffers instead of allocating new ones
+            if (diskCounters != null) {
+               currentDisk = lastDisk;
+               lastDisk = diskCounters;
+            }
+            if (processCounters != null) {
+               currentProcess = lastProcess;
+               lastProcess = processCounters;
+            }
+         } catch (Exception e) {
+            log.error("Error in disk I/O stats retrieval", e);
+         }
+      }
+   }
+
+   private static void addRate(Series series, long delta, double seconds, double unit) {
+      series.addMeasurement(delta / seconds / unit);
+   }
+
+   private void init() {
+      diskstats = new ProcFile(DISKSTATS);
+      processIo = new ProcFile(PROC_IO);
+      physicalDisks = new HashMap<String, Boolean>();
+   }
+
+   /**
+    * Fills read bytes, written bytes, reads, writes and milliseconds spent by I/O.
+    *
+    * @return the counters, or null if not available
+    */
+   private long[] readDisk(long[] counters) {
+      if (diskstats == null) {
+         init();
+      }
+      if (!diskstats.exists() || !diskstats.refresh()) return null;
+      Arrays.fill(counters, 0);
+      boolean found = false;
+      for (int line = 0; line < diskstats.length(); line = diskstats.nextLine(line)) {
+         int name = diskstats.token(line, 2);
+         if (name < 0) continue;
+         if (disk == null ? !isPhysicalDisk(diskstats.tokenString(name)) : !diskstats.tokenEquals(name, disk)) continue;
+         counters[READS] += diskstats.parseLong(name, 1);
+         counters[READ_BYTES] += diskstats.parseLong(name, 3) * SECTOR_SIZE;
+         counters[IO_MILLIS] += diskstats.parseLong(name, 4);
+         counters[WRITES] += diskstats.parseLong(name, 5);
+         counters[WRITE_BYTES] += diskstats.parseLong(name, 7) * SECTOR_SIZE;
+         counters[IO_MILLIS] += diskstats.parseLong(name, 8);
+         found = true;
+      }
+      return found ? counters : null;
+   }
+
+   /**
+    * Partitions and virtual devices would count the same I/O several times.
+    */
+   private boolean isPhysicalDisk(String name) {
+      Boolean physical = physicalDisks.get(name);
+      if (physical == null) {
+         physical = new File("/sys/block/" + name).exists() && !name.startsWith("loop") && !name.startsWith("ram")
+               && !name.startsWith("zram") && !name.startsWith("dm-") && !name.startsWith("md");
+         physicalDisks.put(name, physical);
+      }
+      return physical;
+   }
+
+   /**
+    * Fills rchar, wchar, read_bytes and write_bytes of this process.
+    *
+    * @return the counters, or null if not available
+    */
+   private long[] readProcess(long[] counters) {
+      if (processIo == null) {
+         init();
+      }
+      if (!processIo.exists() || !processIo.refresh()) return null;
+      for (int i = 0; i < PROC_IO_KEYS.length; ++i) {
+         counters[i] = processIo.parseLong(processIo.findLine(PROC_IO_KEYS[i]), 0);
+      }
+      return counters;
+   }
+
+   /**
+    * Starts the interval for {@link #getBytesPerOperation(long)}.
+    */
+   public synchronized void mark() {
+      markDisk = readDisk(new long[DISK_COUNTERS]);
+      markProcess = readProcess(new long[PROC_IO_KEYS.length]);
+   }
+
+   /**
+    * @return I/O since {@link #mark()} divided by number of operations, and the ratios telling page cache hits
+    *         and write amplification
+    */
+   public synchronized Map<String, Object> getBytesPerOperation(long operations) {
+      Map<String, Object> results = new LinkedHashMap<String, Object>();
+      if (operations == 0) return results;
+      long[] diskCounters = readDisk(new long[DISK_COUNTERS]);
+      long[] processCounters = readProcess(new long[PROC_IO_KEYS.length]);
+      if (diskCounters != null && markDisk != null) {
+         results.put("IO_DISK_READ_BYTES_PER_OP", (double) (diskCounters[READ_BYTES] - markDisk[READ_BYTES]) / operations);
+         results.put("IO_DISK_WRITE_BYTES_PER_OP", (double) (diskCounters[WRITE_BYTES] - markDisk[WRITE_BYTES]) / operations);
+         results.put("IO_DISK_IOPS_PER_OP", (double) (diskCounters[READS] - markDisk[READS] + diskCounters[WRITES] - markDisk[WRITES]) / operations);
+      }
+      if (processCounters != null && markProcess != null) {
+         long rchar = processCounters[RCHAR] - markProcess[RCHAR];
+         long wchar = processCounters[WCHAR] - markProcess[WCHAR];
+         long read = processCounters[PROCESS_READ_BYTES] - markProcess[PROCESS_READ_BYTES];
+         long written = processCounters[PROCESS_WRITE_BYTES] - markProcess[PROCESS_WRITE_BYTES];
+         results.put("IO_RCHAR_PER_OP", (double) rchar / operations);
+         results.put("IO_WCHAR_PER_OP", (double) wchar / operations);
+         results.put("IO_READ_BYTES_PER_OP", (double) read / operations);
+         results.put("IO_WRITE_BYTES_PER_OP", (double) written / operations);
+         // mapped files are not read through read calls, the ratio is meaningful only for stores using them
+         results.put("IO_PAGE_CACHE_HIT_RATIO", rchar == 0 ? 0d : Math.max(0d, 1d - (double) read / rchar));
+         // the device level traffic would include other processes, compare with IO_DISK_WRITE_BYTES_PER_OP
+         results.put("IO_WRITE_AMPLIFICATION", wchar == 0 ? 0d : (double) written / wchar);
+      }
+      return results;
+   }
+
+   public Series getDiskReadMonitor() {
+      return diskRead;
+   }
+
+   public Series getDiskWriteMonitor() {
+      return diskWrite;
+   }
+
+   public Series getReadIopsMonitor() {
+      return readIops;
+   }
+
+   public Series getWriteIopsMonitor() {
+      return writeIops;
+   }
+
+   public Series getAwaitMonitor() {
+      return await;
+   }
+
+   public Series getProcessRcharMonitor() {
+      return processRchar;
+   }
+
+   public Series getProcessWcharMonitor() {
+      return processWchar;
+   }
+
+   public Series getProcessReadMonitor() {
+      return processRead;
+   }
+
+   public Series getProcessWriteMonitor() {
+      return processWrite;
+   }
+
+   public Integer getMeasurementCount() {
+      return processRchar.getMeasurementCount();
+   }
+}
@@ -0,0 +1,141 @@
+package com.ctriposs.blacksmith.sysmonitor;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Custom events emitted into a {@link FlightRecording}: slow operations and the phases of a stressor (preload,
+ * warmup, measure), so that the profile lines up with the benchmark in time. The event types are created through
+ * jdk.jfr.EventFactory by reflection, as the framework does not depend on JFR API; when it is not available the
+ * methods do nothing.
+ *
+ * @author bulldog
+ */
+public final class FlightRecorderEvents {
+
+   private static Logger log = LoggerFactory.getLogger(FlightRecorderEvents.class);
+
+   private static final String CATEGORY = "Blacksmith";
+   private static final String SLOW_OPERATION = "blacksmith.SlowOperation";
+   private static final String PHASE = "blacksmith.Phase";
+
+   private static final Object slowOperationFactory;
+   private static final Object phaseFactory;
+   private static final Method newEvent;
+   private static final Method set;
+   private static final Method begin;
+   private static final Method end;
+   private static final Method commit;
+
+   static {
+      Object slowOperation = null;
+      Object phase = null;
+      Method newEventMethod = null, setMethod = null, beginMethod = null, endMethod = null, commitMethod = null;
+      try {
+         ClassLoader loader = FlightRecorderEvents.class.getClassLoader();
+         Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory", true, loader);
+         Class<?> eventClass = Class.forName("jdk.jfr.Event", true, loader);
+         Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement", true, loader);
+         Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor", true, loader);
+         Constructor<?> annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+         Constructor<?> valueDescriptor = valueDescriptorClass.getConstructor(Class.class, String.class, List.class);
+         Method create = eventFactoryClass.getMethod("create", List.class, List.class);
+
+         Object timespan = annotationElement.newInstance(Class.forName("jdk.jfr.Timespan", true, loader), "NANOSECONDS");
+         List<Object> slowOperationFields = new ArrayList<Object>();
+         slowOperationFields.add(valueDescriptor.newInstance(String.class, "operation", Collections.emptyList()));
+         slowOperationFields.add(valueDescriptor.newInstance(int.class, "keyHash", Collections.emptyList()));
+         slowOperationFields.add(valueDescriptor.newInstance(long.class, "latency", Arrays.asList(timespan)));
+         slowOperation = create.invoke(null, eventAnnotations(annotationElement, loader, SLOW_OPERATION, "Slow Operation"),
+               slowOperationFields);
+
+         List<Object> phaseFields = new ArrayList<Object>();
+         phaseFields.add(valueDescriptor.newInstance(String.class, "phase", Collections.emptyList()));
+         phase = create.invoke(null, eventAnnotations(annotationElement, loader, PHASE, "Stressor Phase"), phaseFields);
+
+         newEventMethod = eventFactoryClass.getMethod("newEvent");
+         setMethod = eventClass.getMethod("set", int.class, Object.class);
+         beginMethod = eventClass.getMethod("begin");
+         endMethod = eventClass.getMethod("end");
+         commitMethod = eventClass.getMethod("commit");
+      } catch (Throwable t) {
+         log.debug("JFR event API is not available, custom events will not be recorded: " + t);
+         slowOperation = null;
+         phase = null;
+      }
+      slowOperationFactory = slowOperation;
+      phaseFactory = phase;
+      newEvent = newEventMethod;
+      set = setMethod;
+      begin = beginMethod;
+      end = endMethod;
+      commit = commitMethod;
+   }
+
+   private FlightRecorderEvents() {
+   }
+
+   private static List<Object> eventAnnotations(Constructor<?> annotationElement, ClassLoader loader, String name,
+                                                String label) throws Exception {
+      List<Object> annotations = new ArrayList<Object>();
+      annotations.add(annotationElement.newInstance(Class.forName("jdk.jfr.Name", true, loader), name));
+      annotations.add(annotationElement.newInstance(Class.forName("jdk.jfr.Label", true, loader), label));
+      annotations.add(annotationElement.newInstance(Class.forName("jdk.jfr.Category", true, loader), new String[] { CATEGORY }));
+      // the stack of the commit would show only the reflective calls
+      annotations.add(annotationElement.newInstance(Class.forName("jdk.jfr.StackTrace", true, loader), Boolean.FALSE));
+      return annotations;
+   }
+
+   public static boolean isAvailable() {
+      return slowOperationFactory != null;
+   }
+
+   /**
+    * Records an operation which took too long; the thread and time are recorded by JFR.
+    */
+   public static void slowOperation(String operation, int keyHash, long latencyNanos) {
+      if (slowOperationFactory == null) return;
+      try {
+         Object event = newEvent.invoke(slowOperationFactory);
+         set.invoke(event, 0, operation);
+         set.invoke(event, 1, keyHash);
+         set.invoke(event, 2, latencyNanos);
+         commit.invoke(event);
+      } catch (Exception e) {
+         log.warn("Failed to record slow operation event", e);
+      }
+   }
+
+   /**
+    * @return the started phase event, to be passed to {@link #endPhase(Object)}, or null if JFR is not available
+    */
+   public static Object beginPhase(String phase) {
+      if (phaseFactory == null) return null;
+      try {
+         Object event = newEvent.invoke(phaseFactory);
+         set.invoke(event, 0, phase);
+         begin.invoke(event);
+         return event;
+      } catch (Exception e) {
+         log.warn("Failed to record phase event", e);
+         return null;
+      }
+   }
+
+   public static void endPhase(Object event) {
+      if (event == null) return;
+      try {
+         end.invoke(event);
+         commit.invoke(event);
+      } catch (Exception e) {
+         log.warn("Failed to record phase event", e);
+      }
+   }
+}
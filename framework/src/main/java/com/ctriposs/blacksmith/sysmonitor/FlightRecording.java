@@ -0,0 +1,81 @@
+package com.ctriposs.blacksmith.sysmonitor;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Java Flight Recorder recording of this JVM, controlled through the DiagnosticCommand MBean (the same as
+ * <code>jcmd JFR.start</code>), so that it works on every JVM shipping JFR without compile time dependency.
+ *
+ * @author bulldog
+ */
+public class FlightRecording {
+
+   private static Logger log = LoggerFactory.getLogger(FlightRecording.class);
+
+   private static final String DIAGNOSTIC_COMMAND = "com.sun.management:type=DiagnosticCommand";
+   private static final String[] SIGNATURE = { String[].class.getName() };
+
+   private final MBeanServer server;
+   private final ObjectName diagnosticCommand;
+   private final String name;
+   private final File file;
+
+   private FlightRecording(MBeanServer server, ObjectName diagnosticCommand, String name, File file) {
+      this.server = server;
+      this.diagnosticCommand = diagnosticCommand;
+      this.name = name;
+      this.file = file;
+   }
+
+   /**
+    * @param name name of the recording
+    * @param settings JFR settings, e.g. default or profile
+    * @param file where the recording should be written when stopped
+    * @return the running recording, or null if the JVM does not support JFR
+    */
+   public static FlightRecording start(String name, String settings, File file) {
+      try {
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         ObjectName diagnosticCommand = new ObjectName(DIAGNOSTIC_COMMAND);
+         if (!server.isRegistered(diagnosticCommand)) {
+            log.warn("Diagnostic commands are not supported by this JVM, flight recording is not started.");
+            return null;
+         }
+         FlightRecording recording = new FlightRecording(server, diagnosticCommand, name, file);
+         String result = recording.execute("jfrStart", "name=" + name, "settings=" + settings);
+         log.info("Started flight recording " + name + ": " + result.trim());
+         return recording;
+      } catch (Exception e) {
+         log.warn("Cannot start flight recording " + name + ", JFR is probably not available: " + e);
+         return null;
+      }
+   }
+
+   /**
+    * Stops the recording and writes it into the file.
+    */
+   public void stop() {
+      try {
+         String result = execute("jfrStop", "name=" + name, "filename=" + file.getAbsolutePath());
+         log.info("Stopped flight recording " + name + ": " + result.trim());
+      } catch (Exception e) {
+         log.error("Failed to stop flight recording " + name, e);
+      }
+   }
+
+   private String execute(String command, String... arguments) throws Exception {
+      Object result = server.invoke(diagnosticCommand, command, new Object[] { arguments }, SIGNATURE);
+      return result == null ? "" : result.toString();
+   }
+
+   public File getFile() {
+      return file;
+   }
+}
@@ -0,0 +1,235 @@
+package com.ctriposs.blacksmith.sysmonitor;
+
+import static java.lang.management.ManagementFactory.GARBAGE_COLLECTOR_MXBEAN_DOMAIN_TYPE;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.Notification;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records every stop-the-world garbage collection reported by the GC notifications of the collector MBeans, with
+ * its collector, cause, duration and heap usage before and after. Unlike {@link GcMonitor} it does not sample, so
+ * short pauses are not averaged out. Concurrent cycles (CMS, ZGC and Shenandoah cycles) are not recorded, their
+ * duration is mostly spent beside the application threads; ZGC and Shenandoah report their pauses separately.
+ * After {@link #mark()} only the collections started since are kept, so that the key loading is not accounted.
+ * <p/>
+ * The notifications (com.sun.management.GarbageCollectionNotificationInfo) are available on HotSpot since Java 7;
+ * the data are parsed from the open-type CompositeData, so there is no compile time dependency on them. On older
+ * JVMs the monitor records nothing.
+ *
+ * @author bulldog
+ */
+public class GcPauseMonitor implements NotificationListener, Serializable {
+
+   /** The serialVersionUID */
+   private static final long serialVersionUID = -5386813016236245233L;
+
+   private static Logger log = LoggerFactory.getLogger(GcPauseMonitor.class);
+
+   static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+
+   private final List<GcPause> pauses = new ArrayList<GcPause>();
+   private transient List<ObjectName> registered;
+   private long jvmStartTime;
+   private volatile long markTime;
+   private Set<String> heapPools;
+
+   public static class GcPause implements Serializable {
+
+      /** The serialVersionUID */
+      private static final long serialVersionUID = 1811296616893225337L;
+
+      private final long timestamp;
+      private final long duration;
+      private final String collector;
+      private final String action;
+      private final String cause;
+      private final long heapBefore;
+      private final long heapAfter;
+
+      public GcPause(long timestamp, long duration, String collector, String action, String cause, long heapBefore, long heapAfter) {
+         this.timestamp = timestamp;
+         this.duration = duration;
+         this.collector = collector;
+         this.action = action;
+         this.cause = cause;
+         this.heapBefore = heapBefore;
+         this.heapAfter = heapAfter;
+      }
+
+      /**
+       * @return start of the collection in milliseconds since epoch
+       */
+      public long getTimestamp() {
+         return timestamp;
+      }
+
+      /**
+       * @return duration in milliseconds
+       */
+      public long getDuration() {
+         return duration;
+      }
+
+      public String getCollector() {
+         return collector;
+      }
+
+      public String getAction() {
+         return action;
+      }
+
+      public String getCause() {
+         return cause;
+      }
+
+      public long getHeapBefore() {
+         return heapBefore;
+      }
+
+      public long getHeapAfter() {
+         return heapAfter;
+      }
+   }
+
+   private static class GcNotificationFilter implements NotificationFilter, Serializable {
+      /** The serialVersionUID */
+      private static final long serialVersionUID = 2905744102862425004L;
+
+      @Override
+      public boolean isNotificationEnabled(Notification notification) {
+         return GC_NOTIFICATION.equals(notification.getType());
+      }
+   }
+
+   public void start() {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      jvmStartTime = ManagementFactory.getRuntimeMXBean().getStartTime();
+      registered = new ArrayList<ObjectName>();
+      heapPools = new HashSet<String>();
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+         if (pool.getType() == MemoryType.HEAP) {
+            heapPools.add(pool.getName());
+         }
+      }
+      try {
+         Set<ObjectName> names = server.queryNames(new ObjectName(GARBAGE_COLLECTOR_MXBEAN_DOMAIN_TYPE + ",*"), null);
+         for (ObjectName name : names) {
+            if (server.isInstanceOf(name, "javax.management.NotificationEmitter")) {
+               server.addNotificationListener(name, this, new GcNotificationFilter(), null);
+               registered.add(name);
+            }
+         }
+      } catch (Exception e) {
+         log.error("Failed to register GC notification listener", e);
+      }
+      if (registered.isEmpty()) {
+         log.warn("GC notifications are not supported by this JVM, GC pauses will not be recorded.");
+      }
+   }
+
+   /**
+    * Discards the collections recorded so far, the later ones belong to the measured operations.
+    */
+   public void mark() {
+      markTime = System.currentTimeMillis();
+      synchronized (pauses) {
+         pauses.clear();
+      }
+   }
+
+   public void stop() {
+      if (registered == null) return;
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      for (ObjectName name : registered) {
+         try {
+            server.removeNotificationListener(name, this);
+         } catch (Exception e) {
+            log.warn("Failed to unregister GC notification listener from " + name, e);
+         }
+      }
+      registered = null;
+   }
+
+   @Override
+   public void handleNotification(Notification notification, Object handback) {
+      try {
+         CompositeData data = (CompositeData) notification.getUserData();
+         String gcName = (String) data.get("gcName");
+         String gcAction = (String) data.get("gcAction");
+         if (!isPause(gcName, gcAction)) return;
+         CompositeData info = (CompositeData) data.get("gcInfo");
+         long startTime = jvmStartTime + (Long) info.get("startTime");
+         // started during the key loading
+         if (startTime < markTime) return;
+         GcPause pause = new GcPause(startTime, (Long) info.get("duration"), gcName, gcAction, (String) data.get("gcCause"),
+               totalUsed((TabularData) info.get("memoryUsageBeforeGc")), totalUsed((TabularData) info.get("memoryUsageAfterGc")));
+         synchronized (pauses) {
+            pauses.add(pause);
+         }
+         if (log.isTraceEnabled()) {
+            log.trace("GC " + pause.getCollector() + " (" + pause.getCause() + ") took " + pause.getDuration() + " ms");
+         }
+      } catch (Exception e) {
+         log.warn("Cannot parse GC notification", e);
+      }
+   }
+
+   /**
+    * @return false for the notifications of concurrent cycles: the "end of GC cycle" of ZGC and Shenandoah, and any
+    *         collection of CMS, whose notification covers the whole cycle including the concurrent phases
+    */
+   static boolean isPause(String gcName, String gcAction) {
+      if (gcAction != null && gcAction.endsWith("cycle")) return false;
+      if (gcName == null) return true;
+      return !gcName.equals("ConcurrentMarkSweep") && !gcName.endsWith("Cycles");
+   }
+
+   /**
+    * Sums used memory of heap pools in the TabularData of pool name -> MemoryUsage.
+    */
+   private long totalUsed(TabularData usageByPool) {
+      long used = 0;
+      for (Object row : usageByPool.values()) {
+         if (!heapPools.contains(((CompositeData) row).get("key"))) continue;
+         CompositeData usage = (CompositeData) ((CompositeData) row).get("value");
+         used += (Long) usage.get("used");
+      }
+      return used;
+   }
+
+   public List<GcPause> getPauses() {
+      synchronized (pauses) {
+         return new ArrayList<GcPause>(pauses);
+      }
+   }
+
+   /**
+    * @return pauses which started in given time window (milliseconds since epoch)
+    */
+   public List<GcPause> getPauses(long from, long to) {
+      List<GcPause> result = new ArrayList<GcPause>();
+      for (GcPause pause : getPauses()) {
+         if (pause.getTimestamp() >= from && pause.getTimestamp() < to) {
+            result.add(pause);
+         }
+      }
+      return result;
+   }
+}
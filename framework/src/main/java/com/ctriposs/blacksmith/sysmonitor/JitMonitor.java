@@ -0,0 +1,261 @@
+package com.ctriposs.blacksmith.sysmonitor;
+
+import java.io.Serializable;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks JIT compilation, class loading and (on HotSpot) safepoint activity. Compilation and safepoint time are
+ * charted as percentage of the measuring period and periods where these are significant are flagged. The run is
+ * not at steady state until compilation time stays under the threshold and no class is loaded for the whole
+ * {@link #STEADY_STATE_WINDOW_MILLIS}; this gives a warmup cutoff measured on the JVM instead of a guessed number of
+ * warmup operations. Occasional recompilations later do not revert the steady state.
+ * <p/>
+ * Safepoint counters are read from the internal HotSpot runtime bean, which is accessible on Java 8 and older
+ * only; elsewhere the safepoint series stay empty.
+ *
+ * @author bulldog
+ */
+public class JitMonitor implements Runnable, Serializable {
+
+   /** The serialVersionUID */
+   private static final long serialVersionUID = -2360347788315720375L;
+
+   private static Logger log = LoggerFactory.getLogger(JitMonitor.class);
+
+   /**
+    * Period without significant compilation and class loading needed to reach steady state.
+    */
+   public static final long STEADY_STATE_WINDOW_MILLIS = 3000;
+   /**
+    * Compilation time (in percent of the period) which is considered significant.
+    */
+   public static final double COMPILATION_THRESHOLD = 1;
+   /**
+    * Safepoint time (in percent of the period) which is considered significant.
+    */
+   public static final double SAFEPOINT_THRESHOLD = 5;
+
+   private static final String HOTSPOT_HELPER = "sun.management.ManagementFactoryHelper";
+   private static final String HOTSPOT_RUNTIME = "sun.management.HotspotRuntimeMBean";
+
+   /**
+    * One chart series of this monitor.
+    */
+   public static class Series extends AbstractActivityMonitor {
+      /** The serialVersionUID */
+      private static final long serialVersionUID = 5436000469207125101L;
+
+      @Override
+      public void run() {
+         // filled by the owning monitor
+      }
+   }
+
+   boolean running = true;
+   private final Series compilation = new Series();
+   private final Series safepoints = new Series();
+   private final Series classesLoaded = new Series();
+
+   private long lastNanos;
+   private long lastCompilationMillis;
+   private long lastSafepointMillis;
+   private long lastClasses;
+
+   private long markNanos;
+   private long markCompilationMillis;
+   private long markSafepointMillis;
+   private long markSafepointCount;
+   private long markClasses;
+   private long windowNanos;
+   private long windowCompilationMillis;
+   private long windowClasses;
+   private int flaggedPeriods;
+   private volatile boolean steadyState;
+   private long steadyStateNanos = -1;
+
+   private transient CompilationMXBean compilationBean;
+   private transient ClassLoadingMXBean classLoadingBean;
+   private transient Object hotspotRuntime;
+   private transient Method safepointTime;
+   private transient Method safepointCount;
+   private transient boolean initialized;
+
+   public void stop() {
+      running = false;
+   }
+
+   private void init() {
+      compilationBean = ManagementFactory.getCompilationMXBean();
+      if (compilationBean != null && !compilationBean.isCompilationTimeMonitoringSupported()) {
+         log.info("Compilation time monitoring is not supported by this JVM.");
+         compilationBean = null;
+      }
+      classLoadingBean = ManagementFactory.getClassLoadingMXBean();
+      try {
+         hotspotRuntime = Class.forName(HOTSPOT_HELPER).getMethod("getHotspotRuntimeMBean").invoke(null);
+         Class<?> runtimeClass = Class.forName(HOTSPOT_RUNTIME);
+         safepointTime = runtimeClass.getMethod("getTotalSafepointTime");
+         safepointCount = runtimeClass.getMethod("getSafepointCount");
+         safepointTime.invoke(hotspotRuntime);
+      } catch (Throwable t) {
+         log.info("Safepoint statistics are not available on this JVM: " + t);
+         hotspotRuntime = null;
+      }
+      initialized = true;
+   }
+
+   private long compilationMillis() {
+      return compilationBean == null ? 0 : compilationBean.getTotalCompilationTime();
+   }
+
+   private long safepointMillis() {
+      return hotspotValue(safepointTime);
+   }
+
+   private long safepointCount() {
+      return hotspotValue(safepointCount);
+   }
+
+   private long hotspotValue(Method method) {
+      if (hotspotRuntime == null) return 0;
+      try {
+         return ((Number) method.invoke(hotspotRuntime)).longValue();
+      } catch (Exception e) {
+         log.warn("Failed to read safepoint statistics, these will not be reported", e);
+         hotspotRuntime = null;
+         return 0;
+      }
+   }
+
+   public synchronized void run() {
+      if (running) {
+         try {
+            if (!initialized) {
+               init();
+            }
+            long now = System.nanoTime();
+            long compilationNow = compilationMillis();
+            long safepointNow = safepointMillis();
+            long classesNow = classLoadingBean.getTotalLoadedClassCount();
+            if (lastNanos != 0) {
+               double periodMillis = (now - lastNanos) / 1e6;
+               double compilationPercent = 100 * (compilationNow - lastCompilationMillis) / periodMillis;
+               double safepointPercent = 100 * (safepointNow - lastSafepointMillis) / periodMillis;
+               long classes = classesNow - lastClasses;
+               if (compilationBean != null) {
+                  compilation.addMeasurement(compilationPercent);
+               }
+               if (hotspotRuntime != null) {
+                  safepoints.addMeasurement(safepointPercent);
+               }
+               classesLoaded.addMeasurement(classes);
+               if (compilationPercent > COMPILATION_THRESHOLD || classes > 0 || safepointPercent > SAFEPOINT_THRESHOLD) {
+                  flaggedPeriods++;
+                  if (log.isDebugEnabled()) {
+                     log.debug(String.format("JVM activity in last %.0f ms: compilation %.1f%%, safepoints %.1f%%, %d classes loaded",
+                           periodMillis, compilationPercent, safepointPercent, classes));
+                  }
+               }
+               // single periods are too noisy, whole windows are evaluated
+               if (!steadyState && now - windowNanos >= TimeUnit.MILLISECONDS.toNanos(STEADY_STATE_WINDOW_MILLIS)) {
+                  double windowCompilationPercent = 100 * (compilationNow - windowCompilationMillis) / ((now - windowNanos) / 1e6);
+                  // safepoints include the GC pauses, these do not delay the steady state
+                  if (windowCompilationPercent <= COMPILATION_THRESHOLD && classesNow == windowClasses) {
+                     steadyState = true;
+                     steadyStateNanos = windowNanos;
+                     log.info("JIT compilation and class loading settled, steady state reached "
+                           + TimeUnit.NANOSECONDS.toMillis(steadyStateNanos - markNanos) + " ms after the start of operations");
+                  } else {
+                     startWindow(now, compilationNow, classesNow);
+                  }
+               }
+            } else if (windowNanos == 0) {
+               startWindow(now, compilationNow, classesNow);
+            }
+            lastNanos = now;
+            lastCompilationMillis = compilationNow;
+            lastSafepointMillis = safepointNow;
+            lastClasses = classesNow;
+         } catch (Exception e) {
+            log.error("Error in JIT stats retrieval", e);
+         }
+      }
+   }
+
+   private void startWindow(long now, long compilationNow, long classesNow) {
+      windowNanos = now;
+      windowCompilationMillis = compilationNow;
+      windowClasses = classesNow;
+   }
+
+   /**
+    * Starts the interval reported by {@link #getSummary()}; the activity before does not delay the steady state.
+    */
+   public synchronized void mark() {
+      if (!initialized) {
+         init();
+      }
+      markNanos = System.nanoTime();
+      markCompilationMillis = compilationMillis();
+      markSafepointMillis = safepointMillis();
+      markSafepointCount = safepointCount();
+      markClasses = classLoadingBean.getTotalLoadedClassCount();
+      flaggedPeriods = 0;
+      startWindow(markNanos, markCompilationMillis, markClasses);
+      steadyState = false;
+      steadyStateNanos = -1;
+   }
+
+   /**
+    * @return the activity since {@link #mark()}, whether steady state has been reached and when
+    */
+   public synchronized Map<String, Object> getSummary() {
+      Map<String, Object> results = new LinkedHashMap<String, Object>();
+      if (!initialized) return results;
+      results.put("JIT_COMPILATION_MS", compilationMillis() - markCompilationMillis);
+      results.put("CLASSES_LOADED", classLoadingBean.getTotalLoadedClassCount() - markClasses);
+      if (hotspotRuntime != null) {
+         results.put("SAFEPOINT_MS", safepointMillis() - markSafepointMillis);
+         results.put("SAFEPOINT_COUNT", safepointCount() - markSafepointCount);
+      }
+      results.put("JIT_FLAGGED_PERIODS", flaggedPeriods);
+      results.put("STEADY_STATE", steadyState);
+      results.put("STEADY_STATE_AFTER_MS", steadyStateNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(steadyStateNanos - markNanos));
+      if (!steadyState) {
+         log.warn("Compilation activity has not settled during the run, the results include the warmup.");
+      }
+      return results;
+   }
+
+   /**
+    * @return true if compilation and class loading have settled since {@link #mark()}
+    */
+   public boolean isSteadyState() {
+      return steadyState;
+   }
+
+   public Series getCompilationMonitor() {
+      return compilation;
+   }
+
+   public Series getSafepointMonitor() {
+      return safepoints;
+   }
+
+   public Series getClassesLoadedMonitor() {
+      return classesLoaded;
+   }
+
+   public Integer getMeasurementCount() {
+      return classesLoaded.getMeasurementCount();
+   }
+}
@@ -1,13 +1,22 @@
 package com.ctriposs.blacksmith.sysmonitor;
 
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.ctriposs.blacksmith.utils.ThreadPlacement;
+
 /**
  * This program is designed to show how remote JMX calls can be used to retrieve metrics of remote
  * JVMs. To monitor other JVMs, make sure these are started with:
@@ -24,55 +33,179 @@ public class LocalJmxMonitor implements Serializable {
    /** The serialVersionUID */
    private static final long serialVersionUID = 2530981300271084693L;
 
+   /**
+    * Key under which the monitor running during a stressor is published in the slave state.
+    */
+   public static final String LOCAL_JMX_MONITOR = "LocalJmxMonitor";
+
    private String productName;
    private String configName;
    private String interfaceName;
+   private String diskName;
 
    private static Logger log = LoggerFactory.getLogger(LocalJmxMonitor.class);
    private int measuringFrequency = 1;
    private TimeUnit measuringUnit = TimeUnit.SECONDS;
+   private static final long THREAD_CPU_SAMPLE_NANOS = TimeUnit.SECONDS.toNanos(1);
 
    private volatile CpuUsageMonitor cpuMonitor;
    private volatile MemoryUsageMonitor memoryMonitor;
    private volatile GcMonitor gcMonitor;
+   private volatile GcPauseMonitor gcPauseMonitor;
+   private volatile ThreadCpuMonitor threadCpuMonitor;
+   private volatile NativeMemoryMonitor nativeMemoryMonitor;
+   private volatile DiskIoMonitor diskIoMonitor;
+   private volatile JitMonitor jitMonitor;
    private volatile NetworkBytesMonitor netInMonitor;
    private volatile NetworkBytesMonitor netOutMonitor;
 
-   ScheduledExecutorService exec = Executors.newScheduledThreadPool(1);
+   // not serialized, the monitor is sent only with the collected data
+   private transient ScheduledExecutorService exec;
+   private transient Sampler sampler;
+   private transient ThreadPlacement placement = ThreadPlacement.NONE;
+
+   /**
+    * Names the threads, so that their CPU usage is not attributed to the cache wrapper, and pins them to the CPUs
+    * of the placement.
+    */
+   private static class MonitorThreadFactory implements ThreadFactory {
+      private final ThreadPlacement placement;
+      private int counter;
+
+      private MonitorThreadFactory(ThreadPlacement placement) {
+         this.placement = placement;
+      }
+
+      @Override
+      public synchronized Thread newThread(final Runnable r) {
+         final int index = counter++;
+         Runnable task = r;
+         if (!placement.isNone()) {
+            task = new Runnable() {
+               @Override
+               public void run() {
+                  placement.pin(index);
+                  r.run();
+               }
+            };
+         }
+         Thread thread = new Thread(task, ThreadCpuMonitor.MONITOR_THREAD_PREFIX + index);
+         thread.setDaemon(true);
+         return thread;
+      }
+   }
+
+   /**
+    * Samples all monitors in one task, so that they run in the same tick and the benchmark is interrupted once
+    * per period, whatever the number of monitors is.
+    */
+   private class Sampler implements Runnable {
+      private final Runnable[] monitors;
+      private long lastThreadCpuSample;
+      private long samples;
+      private long samplingNanos;
+      private long firstSampleNanos;
+      private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+      private Sampler(Runnable[] monitors) {
+         this.monitors = monitors;
+      }
+
+      @Override
+      public void run() {
+         long start = System.nanoTime();
+         // wall clock time would include the time when the benchmark threads do not let the sampler run
+         long startCpu = threadBean.getCurrentThreadCpuTime();
+         for (Runnable monitor : monitors) {
+            monitor.run();
+         }
+         // thread CPU is needed only for threads which die before the end, once per second is enough
+         if (start - lastThreadCpuSample >= THREAD_CPU_SAMPLE_NANOS) {
+            threadCpuMonitor.run();
+            lastThreadCpuSample = start;
+         }
+         long duration = threadBean.getCurrentThreadCpuTime() - startCpu;
+         // the first sample initializes the MBeans, it would distort the average
+         if (samples == 0) {
+            firstSampleNanos = duration;
+         } else {
+            samplingNanos += duration;
+         }
+         samples++;
+      }
+   }
 
    public void startMonitoringLocal() {
 
       log.info("Gathering statistics every " + measuringFrequency + " " + measuringUnit.name());
       try {
          cpuMonitor = new CpuUsageMonitor();
-         exec.scheduleAtFixedRate(cpuMonitor, 0, measuringFrequency, measuringUnit);
          memoryMonitor = new MemoryUsageMonitor();
-         exec.scheduleAtFixedRate(memoryMonitor, 0, measuringFrequency, measuringUnit);
          gcMonitor = new GcMonitor();
-         exec.scheduleAtFixedRate(gcMonitor, 0, measuringFrequency, measuringUnit);
+         nativeMemoryMonitor = new NativeMemoryMonitor();
+         diskIoMonitor = new DiskIoMonitor(diskName);
+         jitMonitor = new JitMonitor();
+         gcPauseMonitor = new GcPauseMonitor();
+         gcPauseMonitor.start();
+         threadCpuMonitor = new ThreadCpuMonitor();
+         List<Runnable> monitors = new ArrayList<Runnable>();
+         monitors.add(cpuMonitor);
+         monitors.add(memoryMonitor);
+         monitors.add(gcMonitor);
+         monitors.add(nativeMemoryMonitor);
+         monitors.add(diskIoMonitor);
+         monitors.add(jitMonitor);
          if (interfaceName != null) {
             netInMonitor = NetworkBytesMonitor.createReceiveMonitor(interfaceName);
-            exec.scheduleAtFixedRate(netInMonitor, 0, measuringFrequency, measuringUnit);
+            monitors.add(netInMonitor);
             netOutMonitor = NetworkBytesMonitor.createTransmitMonitor(interfaceName);
-            exec.scheduleAtFixedRate(netOutMonitor, 0, measuringFrequency, measuringUnit);
+            monitors.add(netOutMonitor);
          }
+         sampler = new Sampler(monitors.toArray(new Runnable[monitors.size()]));
+         exec = Executors.newSingleThreadScheduledExecutor(new MonitorThreadFactory(placement));
+         exec.scheduleAtFixedRate(sampler, 0, measuringFrequency, measuringUnit);
       } catch (Exception e) {
          log.error(e.getMessage(), e);
       }
    }
    
    public void stopMonitoringLocal() {
+      if (exec == null) {
+         log.warn("Monitoring has not been started");
+         return;
+      }
+      exec.shutdown();
+      try {
+         // let the last sample finish before the monitors release their resources
+         if (!exec.awaitTermination(10, TimeUnit.SECONDS)) {
+            exec.shutdownNow();
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      this.exec = null;
       cpuMonitor.stop();
       memoryMonitor.stop();
       gcMonitor.stop();
+      nativeMemoryMonitor.stop();
+      diskIoMonitor.stop();
+      jitMonitor.stop();
+      gcPauseMonitor.stop();
       if (interfaceName != null) {
          netInMonitor.stop();
          netOutMonitor.stop();
       }
-      exec.shutdownNow();
-      this.exec = null;
+      if (sampler.samples > 1) {
+         log.info("Taken " + sampler.samples + " samples, first took " + sampler.firstSampleNanos / 1000
+               + " us of CPU, the others " + sampler.samplingNanos / (sampler.samples - 1) / 1000 + " us on average");
+      }
       StringBuffer result = new StringBuffer("Cpu measurements = " + cpuMonitor.getMeasurementCount() + ", memory measurements = "
-            + memoryMonitor.getMeasurementCount() + ", gc measurements = " + gcMonitor.getMeasurementCount());
+            + memoryMonitor.getMeasurementCount() + ", gc measurements = " + gcMonitor.getMeasurementCount()
+            + ", native memory measurements = " + nativeMemoryMonitor.getMeasurementCount()
+            + ", disk I/O measurements = " + diskIoMonitor.getMeasurementCount()
+            + ", JIT measurements = " + jitMonitor.getMeasurementCount()
+            + ", gc pauses = " + gcPauseMonitor.getPauses().size()
+            + ", thread cpu measurements = " + threadCpuMonitor.getMeasurementCount());
       if (interfaceName != null) {
          result.append(", network inbound measurements = " + netInMonitor.getMeasurementCount());
          result.append(", network outbound measurements = " + netOutMonitor.getMeasurementCount());
@@ -80,6 +213,30 @@ public class LocalJmxMonitor implements Serializable {
       log.trace(result.toString());
    }
 
+   /**
+    * Called by the stressor when the measured operations start.
+    */
+   public void markOperationsStart() {
+      threadCpuMonitor.mark();
+      diskIoMonitor.mark();
+      jitMonitor.mark();
+      gcPauseMonitor.mark();
+   }
+
+   /**
+    * Called by the stressor when the measured operations have finished, before its threads terminate.
+    *
+    * @return CPU time, allocations and I/O since {@link #markOperationsStart()} per operation, and the JIT
+    *         activity with the steady state flag
+    */
+   public Map<String, Object> getCostPerOperation(long operations) {
+      Map<String, Object> results = new LinkedHashMap<String, Object>();
+      results.putAll(threadCpuMonitor.getCostPerOperation(operations));
+      results.putAll(diskIoMonitor.getBytesPerOperation(operations));
+      results.putAll(jitMonitor.getSummary());
+      return results;
+   }
+
    public CpuUsageMonitor getCpuMonitor() {
       return cpuMonitor;
    }
@@ -92,6 +249,26 @@ public class LocalJmxMonitor implements Serializable {
       return gcMonitor;
    }
 
+   public NativeMemoryMonitor getNativeMemoryMonitor() {
+      return nativeMemoryMonitor;
+   }
+
+   public DiskIoMonitor getDiskIoMonitor() {
+      return diskIoMonitor;
+   }
+
+   public JitMonitor getJitMonitor() {
+      return jitMonitor;
+   }
+
+   public GcPauseMonitor getGcPauseMonitor() {
+      return gcPauseMonitor;
+   }
+
+   public ThreadCpuMonitor getThreadCpuMonitor() {
+      return threadCpuMonitor;
+   }
+
    public NetworkBytesMonitor getNetworkBytesInMonitor() {
       return netInMonitor;
    }
@@ -124,10 +301,28 @@ public class LocalJmxMonitor implements Serializable {
       this.interfaceName = interfaceName;
    }
 
+   public String getDiskName() {
+      return diskName;
+   }
+
+   /**
+    * @param diskName block device to monitor, by default all physical disks are summed
+    */
+   public void setDiskName(String diskName) {
+      this.diskName = diskName;
+   }
+
    public TimeUnit getMeasuringUnit() {
       return measuringUnit;
    }
 
+   /**
+    * @param placement CPUs of the sampling thread, set before the monitoring is started
+    */
+   public void setPlacement(ThreadPlacement placement) {
+      this.placement = placement;
+   }
+
    public void setMeasuringUnit(TimeUnit measuringUnit) {
       this.measuringUnit = measuringUnit;
    }
@@ -139,4 +334,17 @@ public class LocalJmxMonitor implements Serializable {
    public void setMeasuringFrequency(int measuringFrequency) {
       this.measuringFrequency = measuringFrequency;
    }
+
+   /**
+    * Sets the sampling period, whole seconds are charted in seconds, anything else in milliseconds.
+    */
+   public void setMeasuringInterval(long millis) {
+      if (millis % 1000 == 0) {
+         setMeasuringUnit(TimeUnit.SECONDS);
+         setMeasuringFrequency((int) (millis / 1000));
+      } else {
+         setMeasuringUnit(TimeUnit.MILLISECONDS);
+         setMeasuringFrequency((int) millis);
+      }
+   }
 }
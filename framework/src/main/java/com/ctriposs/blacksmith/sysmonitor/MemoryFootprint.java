@@ -0,0 +1,114 @@
+package com.ctriposs.blacksmith.sysmonitor;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Memory used by the process at one moment: heap, NIO direct and mapped buffers (BufferPool MBeans, Java 7+)
+ * and the resident set size and proportional set size from /proc (Linux only). Unavailable values are -1.
+ *
+ * @author bulldog
+ */
+public class MemoryFootprint implements Serializable {
+
+   /** The serialVersionUID */
+   private static final long serialVersionUID = -2797135237604209167L;
+
+   private static Logger log = LoggerFactory.getLogger(MemoryFootprint.class);
+
+   private final long heapUsed;
+   private final long directUsed;
+   private final long mappedUsed;
+   private final long rss;
+   private final long pss;
+
+   private MemoryFootprint(long heapUsed, long directUsed, long mappedUsed, long rss, long pss) {
+      this.heapUsed = heapUsed;
+      this.directUsed = directUsed;
+      this.mappedUsed = mappedUsed;
+      this.rss = rss;
+      this.pss = pss;
+   }
+
+   public static MemoryFootprint current() {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      return new MemoryFootprint(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(),
+            bufferPoolUsed(server, NativeMemoryMonitor.DIRECT_POOL), bufferPoolUsed(server, NativeMemoryMonitor.MAPPED_POOL),
+            procKbValue("/proc/self/status", "VmRSS:"), procKbValue("/proc/self/smaps_rollup", "Pss:"));
+   }
+
+   private static long bufferPoolUsed(MBeanServer server, String name) {
+      try {
+         ObjectName objectName = new ObjectName(name);
+         if (!server.isRegistered(objectName)) return -1;
+         return ((Number) server.getAttribute(objectName, "MemoryUsed")).longValue();
+      } catch (Exception e) {
+         log.trace("Cannot read " + name, e);
+         return -1;
+      }
+   }
+
+   /**
+    * Reads line 'key value kB' from given file.
+    *
+    * @return the value in bytes or -1 if the file or line does not exist
+    */
+   static long procKbValue(String path, String key) {
+      ProcFile file = new ProcFile(path);
+      try {
+         if (!file.exists() || !file.refresh()) return -1;
+         long kb = file.parseLong(file.findLine(key), 0);
+         return kb < 0 ? -1 : kb * 1024;
+      } finally {
+         file.close();
+      }
+   }
+
+   /**
+    * @return growth of each kind of memory since given footprint, divided by number of entries
+    */
+   public Map<String, Object> getBytesPerEntry(MemoryFootprint before, int entries) {
+      Map<String, Object> results = new LinkedHashMap<String, Object>();
+      if (entries <= 0) return results;
+      putPerEntry(results, "BYTES_PER_ENTRY_HEAP", before.heapUsed, heapUsed, entries);
+      putPerEntry(results, "BYTES_PER_ENTRY_DIRECT", before.directUsed, directUsed, entries);
+      putPerEntry(results, "BYTES_PER_ENTRY_MAPPED", before.mappedUsed, mappedUsed, entries);
+      putPerEntry(results, "BYTES_PER_ENTRY_RSS", before.rss, rss, entries);
+      putPerEntry(results, "BYTES_PER_ENTRY_PSS", before.pss, pss, entries);
+      return results;
+   }
+
+   private static void putPerEntry(Map<String, Object> results, String name, long before, long after, int entries) {
+      if (before >= 0 && after >= 0) {
+         results.put(name, (double) (after - before) / entries);
+      }
+   }
+
+   public long getHeapUsed() {
+      return heapUsed;
+   }
+
+   public long getDirectUsed() {
+      return directUsed;
+   }
+
+   public long getMappedUsed() {
+      return mappedUsed;
+   }
+
+   public long getRss() {
+      return rss;
+   }
+
+   public long getPss() {
+      return pss;
+   }
+}
@@ -1,7 +1,5 @@
 package com.ctriposs.blacksmith.sysmonitor;
 
-import javax.management.MBeanServerConnection;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -9,10 +7,7 @@ import java.io.Serializable;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.lang.management.MemoryUsage;
-import java.math.BigDecimal;
 import java.text.NumberFormat;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * @author bulldog
@@ -25,11 +20,13 @@ public class MemoryUsageMonitor extends AbstractActivityMonitor implements Seria
    private static Logger log = LoggerFactory.getLogger(MemoryUsageMonitor.class);
 
    boolean running = true;
+   private boolean convertedToMb;
 
    static final NumberFormat DECIMAL_FORMATTER = NumberFormat.getNumberInstance();
    long genUsed;
    long genCapacity;
    long genMaxCapacity;
+   private transient MemoryMXBean memMbean;
 
    static {
       DECIMAL_FORMATTER.setGroupingUsed(true);
@@ -43,21 +40,20 @@ public class MemoryUsageMonitor extends AbstractActivityMonitor implements Seria
    public void run() {
       if (running) {
          try {
-            MBeanServerConnection con = ManagementFactory.getPlatformMBeanServer();
-            if (con == null)
-               throw new IllegalStateException("PlatformMBeanServer not started!");
-
-            MemoryMXBean memMbean = ManagementFactory.newPlatformMXBeanProxy(con, ManagementFactory.MEMORY_MXBEAN_NAME,
-                  MemoryMXBean.class);
+            if (memMbean == null) {
+               memMbean = ManagementFactory.getMemoryMXBean();
+            }
             MemoryUsage mem = memMbean.getHeapMemoryUsage();
             genUsed = mem.getUsed();
             genCapacity = mem.getCommitted();
             genMaxCapacity = mem.getMax();
 
-            addMeasurement(new BigDecimal(genUsed));
+            addMeasurement(genUsed);
 
-            log.trace("Memory usage: used=" + formatDecimal(genUsed) + " B, size=" + formatDecimal(genCapacity)
-                  + " B, max=" + formatDecimal(genMaxCapacity));
+            if (log.isTraceEnabled()) {
+               log.trace("Memory usage: used=" + formatDecimal(genUsed) + " B, size=" + formatDecimal(genCapacity)
+                     + " B, max=" + formatDecimal(genMaxCapacity));
+            }
          } catch (Exception e) {
             log.error("Error in JMX memory stats retrieval", e);
          }
@@ -69,11 +65,9 @@ public class MemoryUsageMonitor extends AbstractActivityMonitor implements Seria
    }
 
    public void convertToMb() {
-      List<BigDecimal> mbs = new ArrayList<BigDecimal>(measurements.size());
-      for (BigDecimal v : measurements) {
-         mbs.add(v.divide(new BigDecimal(1024 * 1024)));
-      }
-      measurements.clear();
-      measurements.addAll(mbs);
+      // the charts of all reports share the monitor
+      if (convertedToMb) return;
+      convertedToMb = true;
+      scaleMeasurements(1d / (1024 * 1024));
    }
 }
@@ -0,0 +1,162 @@
+package com.ctriposs.blacksmith.sysmonitor;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Samples the memory which is not on the heap: direct and mapped NIO buffers, resident and proportional set size
+ * of the process (in megabytes), and the minor and major page faults per measuring period. Off-heap stores are
+ * compared by these rather than by the heap usage.
+ *
+ * @author bulldog
+ */
+public class NativeMemoryMonitor implements Runnable, Serializable {
+
+   /** The serialVersionUID */
+   private static final long serialVersionUID = 7306046418981862710L;
+
+   private static Logger log = LoggerFactory.getLogger(NativeMemoryMonitor.class);
+
+   // shared with MemoryFootprint
+   static final String DIRECT_POOL = "java.nio:type=BufferPool,name=direct";
+   static final String MAPPED_POOL = "java.nio:type=BufferPool,name=mapped";
+   // indices in /proc/self/stat after the command name
+   private static final int MINOR_FAULTS_INDEX = 7;
+   private static final int MAJOR_FAULTS_INDEX = 9;
+   private static final double MB = 1024 * 1024;
+
+   /**
+    * One chart series of this monitor.
+    */
+   public static class Series extends AbstractActivityMonitor {
+      /** The serialVersionUID */
+      private static final long serialVersionUID = -5139808106325466016L;
+
+      @Override
+      public void run() {
+         // filled by the owning monitor
+      }
+   }
+
+   boolean running = true;
+   private final Series direct = new Series();
+   private final Series mapped = new Series();
+   private final Series rss = new Series();
+   private final Series pss = new Series();
+   private final Series minorFaults = new Series();
+   private final Series majorFaults = new Series();
+   private long lastMinorFaults = -1;
+   private long lastMajorFaults = -1;
+
+   private transient MBeanServer server;
+   private transient ObjectName directPool;
+   private transient ObjectName mappedPool;
+   private transient ProcFile status;
+   private transient ProcFile smapsRollup;
+   private transient ProcFile stat;
+
+   public void stop() {
+      running = false;
+      if (status != null) {
+         status.close();
+         smapsRollup.close();
+         stat.close();
+      }
+   }
+
+   private void init() {
+      server = ManagementFactory.getPlatformMBeanServer();
+      directPool = registeredName(DIRECT_POOL);
+      mappedPool = registeredName(MAPPED_POOL);
+      status = new ProcFile("/proc/self/status");
+      smapsRollup = new ProcFile("/proc/self/smaps_rollup");
+      stat = new ProcFile("/proc/self/stat");
+   }
+
+   private ObjectName registeredName(String name) {
+      try {
+         ObjectName objectName = new ObjectName(name);
+         return server.isRegistered(objectName) ? objectName : null;
+      } catch (Exception e) {
+         return null;
+      }
+   }
+
+   public void run() {
+      if (running) {
+         try {
+            if (server == null) {
+               init();
+            }
+            addMb(direct, bufferPoolUsed(directPool));
+            addMb(mapped, bufferPoolUsed(mappedPool));
+            if (status.exists() && status.refresh()) {
+               addMb(rss, status.parseLong(status.findLine("VmRSS:"), 0) * 1024);
+            }
+            if (smapsRollup.exists() && smapsRollup.refresh()) {
+               addMb(pss, smapsRollup.parseLong(smapsRollup.findLine("Pss:"), 0) * 1024);
+            }
+            if (stat.exists() && stat.refresh()) {
+               // the command name in parentheses may contain spaces
+               int fields = stat.afterLast(')');
+               long minor = stat.parseLong(fields, MINOR_FAULTS_INDEX);
+               long major = stat.parseLong(fields, MAJOR_FAULTS_INDEX);
+               if (minor >= 0 && major >= 0) {
+                  if (lastMinorFaults >= 0) {
+                     minorFaults.addMeasurement(minor - lastMinorFaults);
+                     majorFaults.addMeasurement(major - lastMajorFaults);
+                  }
+                  lastMinorFaults = minor;
+                  lastMajorFaults = major;
+               }
+            }
+         } catch (Exception e) {
+            log.error("Error in native memory stats retrieval", e);
+         }
+      }
+   }
+
+   private long bufferPoolUsed(ObjectName pool) throws Exception {
+      return pool == null ? -1 : ((Number) server.getAttribute(pool, "MemoryUsed")).longValue();
+   }
+
+   private static void addMb(Series series, long bytes) {
+      if (bytes >= 0) {
+         series.addMeasurement(bytes / MB);
+      }
+   }
+
+   public Series getDirectMonitor() {
+      return direct;
+   }
+
+   public Series getMappedMonitor() {
+      return mapped;
+   }
+
+   public Series getRssMonitor() {
+      return rss;
+   }
+
+   public Series getPssMonitor() {
+      return pss;
+   }
+
+   public Series getMinorFaultsMonitor() {
+      return minorFaults;
+   }
+
+   public Series getMajorFaultsMonitor() {
+      return majorFaults;
+   }
+
+   public Integer getMeasurementCount() {
+      return rss.getMeasurementCount();
+   }
+}
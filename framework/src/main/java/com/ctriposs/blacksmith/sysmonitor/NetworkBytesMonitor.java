@@ -1,12 +1,6 @@
 package com.ctriposs.blacksmith.sysmonitor;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.Serializable;
-import java.math.BigDecimal;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,10 +20,13 @@ public class NetworkBytesMonitor extends AbstractActivityMonitor implements Seri
 
    private static Logger log = LoggerFactory.getLogger(NetworkBytesMonitor.class);
 
+   private static final String NET_DEV = "/proc/net/dev";
+
    boolean running = true;
    String iface;
    int valueIndex = -1;
-   BigDecimal initialValue;
+   long initialValue = -1;
+   private transient ProcFile netDev;
 
    public static NetworkBytesMonitor createReceiveMonitor(String iface) {
       return new NetworkBytesMonitor(iface, RECEIVE_BYTES_INDEX);
@@ -47,45 +44,30 @@ public class NetworkBytesMonitor extends AbstractActivityMonitor implements Seri
 
    public void stop() {
       running = false;
+      if (netDev != null) {
+         netDev.close();
+      }
    }
 
    public void run() {
       if (running) {
-         FileInputStream inputStream;
+         if (netDev == null) {
+            netDev = new ProcFile(NET_DEV);
+            if (!netDev.exists()) {
+               log.error("File " + NET_DEV + " was not found!");
+            }
+         }
          try {
-            inputStream = new FileInputStream("/proc/net/dev");
-            BufferedReader br = new BufferedReader(new InputStreamReader(inputStream));
-            try {
-               String line = br.readLine();
-               while (line != null) {
-                  line = line.trim();
-                  if (line.startsWith(iface)) {
-                     String[] vals = line.split(":")[1].trim().split("\\s+");
-                     // Start monitoring from zero and then increase
-                     if (initialValue == null) {
-                        initialValue = new BigDecimal(vals[valueIndex]);
-                        this.addMeasurement(new BigDecimal(0));
-                     } else {
-                        this.addMeasurement(new BigDecimal(vals[valueIndex]).subtract(initialValue));
-                     }
-                     break;
-                  }
-                  line = br.readLine();
-               }
-               br.close();
-            } catch (Exception e) {
-               log.error("Exception occurred while reading /proc/net/dev.", e);
-            } finally {
-               if (inputStream != null) {
-                  try {
-                     inputStream.close();
-                  } catch (IOException e) {
-                     log.error("Exception occurred while closing /proc/net/dev.", e);
-                  }
-               }
+            if (!netDev.refresh()) return;
+            long value = netDev.parseLong(netDev.findLine(iface + ":"), valueIndex);
+            if (value < 0) return;
+            // Start monitoring from zero and then increase
+            if (initialValue < 0) {
+               initialValue = value;
             }
-         } catch (FileNotFoundException e) {
-            log.error("File /proc/net/dev was not found!", e);
+            addMeasurement(value - initialValue);
+         } catch (Exception e) {
+            log.error("Exception occurred while reading " + NET_DEV + ".", e);
          }
       }
    }
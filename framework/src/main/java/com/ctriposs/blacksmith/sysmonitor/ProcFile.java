@@ -0,0 +1,180 @@
+package com.ctriposs.blacksmith.sysmonitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A file in /proc which is kept open and re-read into the same buffer on each sample, so that the monitors do not
+ * open files and allocate lines and strings several times per second. Values are parsed directly from the buffer.
+ *
+ * @author bulldog
+ */
+class ProcFile {
+
+   private static Logger log = LoggerFactory.getLogger(ProcFile.class);
+
+   private final String path;
+   private RandomAccessFile file;
+   private byte[] buffer = new byte[4096];
+   private int length;
+   private boolean failed;
+   private Boolean exists;
+
+   ProcFile(String path) {
+      this.path = path;
+   }
+
+   boolean exists() {
+      if (exists == null) {
+         exists = new File(path).exists();
+      }
+      return !failed && exists;
+   }
+
+   /**
+    * Reads current content of the file.
+    *
+    * @return false if the file cannot be read
+    */
+   boolean refresh() {
+      if (failed) return false;
+      try {
+         if (file == null) {
+            file = new RandomAccessFile(path, "r");
+         }
+         file.seek(0);
+         length = 0;
+         for (;;) {
+            int read = file.read(buffer, length, buffer.length - length);
+            if (read < 0) break;
+            length += read;
+            if (length == buffer.length) {
+               byte[] bigger = new byte[buffer.length * 2];
+               System.arraycopy(buffer, 0, bigger, 0, length);
+               buffer = bigger;
+            }
+         }
+         return true;
+      } catch (IOException e) {
+         log.warn("Cannot read " + path + ", it will not be monitored", e);
+         failed = true;
+         close();
+         return false;
+      }
+   }
+
+   void close() {
+      if (file != null) {
+         try {
+            file.close();
+         } catch (IOException e) {
+            log.error("Exception occurred while closing " + path, e);
+         }
+         file = null;
+      }
+   }
+
+   int length() {
+      return length;
+   }
+
+   /**
+    * @return position after the prefix on the first line (from given position) starting with it, or -1
+    */
+   int findLine(String prefix, int from) {
+      int pos = from;
+      while (pos < length) {
+         int start = skipSpaces(pos);
+         if (matches(start, prefix)) {
+            return start + prefix.length();
+         }
+         pos = nextLine(pos);
+      }
+      return -1;
+   }
+
+   int findLine(String prefix) {
+      return findLine(prefix, 0);
+   }
+
+   /**
+    * @return position of the beginning of next line, or length of the content
+    */
+   int nextLine(int pos) {
+      while (pos < length && buffer[pos] != '\n') pos++;
+      return pos < length ? pos + 1 : length;
+   }
+
+   /**
+    * @return position after the last occurrence of given character, or -1
+    */
+   int afterLast(char c) {
+      for (int pos = length - 1; pos >= 0; --pos) {
+         if (buffer[pos] == c) return pos + 1;
+      }
+      return -1;
+   }
+
+   private boolean matches(int pos, String s) {
+      if (pos + s.length() > length) return false;
+      for (int i = 0; i < s.length(); ++i) {
+         if (buffer[pos + i] != s.charAt(i)) return false;
+      }
+      return true;
+   }
+
+   private int skipSpaces(int pos) {
+      while (pos < length && (buffer[pos] == ' ' || buffer[pos] == '\t')) pos++;
+      return pos;
+   }
+
+   /**
+    * @return position of the index-th whitespace separated token (on the same line) after given position, or -1
+    */
+   int token(int pos, int index) {
+      pos = skipSpaces(pos);
+      for (int i = 0; i < index; ++i) {
+         while (pos < length && buffer[pos] != ' ' && buffer[pos] != '\t' && buffer[pos] != '\n') pos++;
+         pos = skipSpaces(pos);
+      }
+      return pos < length && buffer[pos] != '\n' ? pos : -1;
+   }
+
+   /**
+    * @return the token at given position as a string
+    */
+   String tokenString(int pos) {
+      int end = pos;
+      while (end < length && buffer[end] != ' ' && buffer[end] != '\t' && buffer[end] != '\n' && buffer[end] != ':') end++;
+      return new String(buffer, pos, end - pos);
+   }
+
+   /**
+    * @return true if the token at given position is equal to given string
+    */
+   boolean tokenEquals(int pos, String s) {
+      if (!matches(pos, s)) return false;
+      int end = pos + s.length();
+      return end == length || buffer[end] == ' ' || buffer[end] == '\t' || buffer[end] == '\n' || buffer[end] == ':';
+   }
+
+   /**
+    * @return the index-th number on the line after given position, or -1
+    */
+   long parseLong(int pos, int index) {
+      if (pos < 0) return -1;
+      pos = token(pos, index);
+      if (pos < 0) return -1;
+      long value = 0;
+      boolean digits = false;
+      while (pos < length && buffer[pos] >= '0' && buffer[pos] <= '9') {
+         value = value * 10 + buffer[pos++] - '0';
+         digits = true;
+      }
+      return digits ? value : -1;
+   }
+}
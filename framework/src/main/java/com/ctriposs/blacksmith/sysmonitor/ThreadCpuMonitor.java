@@ -0,0 +1,227 @@
+package com.ctriposs.blacksmith.sysmonitor;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Samples CPU time and allocated bytes of each live thread and sums them by thread group: stressor threads,
+ * threads of the cache wrapper (everything not recognized otherwise), JVM service threads and the monitoring
+ * threads. The values of a thread are remembered after it dies, so the periodic sampling limits the lost time of
+ * short-lived threads to one measuring period.
+ * <p/>
+ * Allocated bytes are read through the getThreadAllocatedBytes operation of the Threading MBean, which is
+ * provided by HotSpot only; on other JVMs only the CPU time is reported.
+ *
+ * @author bulldog
+ */
+public class ThreadCpuMonitor implements Runnable, Serializable {
+
+   /** The serialVersionUID */
+   private static final long serialVersionUID = 6215474962302458731L;
+
+   private static Logger log = LoggerFactory.getLogger(ThreadCpuMonitor.class);
+
+   /**
+    * Prefix of names of the threads executing the system monitors.
+    */
+   public static final String MONITOR_THREAD_PREFIX = "SysMonitor-";
+
+   private static final String STRESSOR_THREAD_PREFIX = "Stressor-";
+   private static final Pattern JVM_THREADS = Pattern.compile(
+         "(Reference Handler|Finalizer|Signal Dispatcher|Attach Listener|Service Thread|Common-Cleaner|"
+               + "process reaper|DestroyJavaVM|.*CompilerThread.*|RMI .*|JMX .*|GC Daemon)");
+
+   public enum Group {
+      STRESSOR,
+      WRAPPER,
+      JVM,
+      MONITOR
+   }
+
+   private static class ThreadSample {
+      final Group group;
+      long cpuTime;
+      long allocatedBytes;
+
+      private ThreadSample(Group group) {
+         this.group = group;
+      }
+   }
+
+   private transient ThreadMXBean threadBean;
+   private transient MBeanServer server;
+   private transient ObjectName threadingName;
+   private transient boolean allocationSupported;
+
+   // thread id -> last values seen
+   private transient Map<Long, ThreadSample> samples = new HashMap<Long, ThreadSample>();
+   private transient Map<Long, ThreadSample> baseline = new HashMap<Long, ThreadSample>();
+   // consumed since mark() by the threads which have died, per group
+   private transient long[] retiredCpu = new long[Group.values().length];
+   private transient long[] retiredAllocation = new long[Group.values().length];
+   private int measurementCount;
+
+   private void initBeans() {
+      threadBean = ManagementFactory.getThreadMXBean();
+      if (threadBean.isThreadCpuTimeSupported() && !threadBean.isThreadCpuTimeEnabled()) {
+         threadBean.setThreadCpuTimeEnabled(true);
+      }
+      server = ManagementFactory.getPlatformMBeanServer();
+      try {
+         threadingName = new ObjectName(ManagementFactory.THREAD_MXBEAN_NAME);
+         allocationSupported = Boolean.TRUE.equals(server.getAttribute(threadingName, "ThreadAllocatedMemorySupported"));
+         if (allocationSupported && !Boolean.TRUE.equals(server.getAttribute(threadingName, "ThreadAllocatedMemoryEnabled"))) {
+            allocationSupported = false;
+         }
+      } catch (Exception e) {
+         allocationSupported = false;
+      }
+      if (!allocationSupported) {
+         log.info("Per-thread allocation is not supported by this JVM, only CPU time will be reported.");
+      }
+   }
+
+   public synchronized void run() {
+      sample();
+      measurementCount++;
+   }
+
+   /**
+    * Starts the measured interval: values consumed before this call are not reported.
+    */
+   public synchronized void mark() {
+      sample();
+      baseline = new HashMap<Long, ThreadSample>();
+      for (Map.Entry<Long, ThreadSample> entry : samples.entrySet()) {
+         ThreadSample copy = new ThreadSample(entry.getValue().group);
+         copy.cpuTime = entry.getValue().cpuTime;
+         copy.allocatedBytes = entry.getValue().allocatedBytes;
+         baseline.put(entry.getKey(), copy);
+      }
+      retiredCpu = new long[Group.values().length];
+      retiredAllocation = new long[Group.values().length];
+   }
+
+   private void sample() {
+      if (threadBean == null) {
+         initBeans();
+      }
+      if (samples == null) {
+         samples = new HashMap<Long, ThreadSample>();
+         baseline = new HashMap<Long, ThreadSample>();
+         retiredCpu = new long[Group.values().length];
+         retiredAllocation = new long[Group.values().length];
+      }
+      ThreadGroup root = Thread.currentThread().getThreadGroup();
+      while (root.getParent() != null) {
+         root = root.getParent();
+      }
+      Thread[] threads = new Thread[root.activeCount() * 2 + 16];
+      int count = root.enumerate(threads, true);
+      long[] ids = new long[count];
+      for (int i = 0; i < count; ++i) {
+         ids[i] = threads[i].getId();
+      }
+      long[] allocated = null;
+      if (allocationSupported) {
+         try {
+            allocated = (long[]) server.invoke(threadingName, "getThreadAllocatedBytes", new Object[] { ids }, new String[] { "[J" });
+         } catch (Exception e) {
+            log.warn("Failed to read allocated bytes, allocation will not be reported", e);
+            allocationSupported = false;
+         }
+      }
+      Set<Long> alive = new HashSet<Long>(count * 2);
+      for (int i = 0; i < count; ++i) {
+         long cpuTime = threadBean.getThreadCpuTime(ids[i]);
+         if (cpuTime < 0) continue; // the thread has died meanwhile
+         alive.add(ids[i]);
+         ThreadSample sample = samples.get(ids[i]);
+         if (sample == null) {
+            sample = new ThreadSample(classify(threads[i]));
+            samples.put(ids[i], sample);
+         }
+         sample.cpuTime = cpuTime;
+         if (allocated != null && allocated[i] >= 0) {
+            sample.allocatedBytes = allocated[i];
+         }
+      }
+      // dead threads are dropped, only what they consumed since mark() is kept
+      for (Iterator<Map.Entry<Long, ThreadSample>> it = samples.entrySet().iterator(); it.hasNext(); ) {
+         Map.Entry<Long, ThreadSample> entry = it.next();
+         if (alive.contains(entry.getKey())) continue;
+         ThreadSample sample = entry.getValue();
+         ThreadSample base = baseline.remove(entry.getKey());
+         retiredCpu[sample.group.ordinal()] += sample.cpuTime - (base == null ? 0 : base.cpuTime);
+         retiredAllocation[sample.group.ordinal()] += sample.allocatedBytes - (base == null ? 0 : base.allocatedBytes);
+         it.remove();
+      }
+   }
+
+   private static Group classify(Thread thread) {
+      String name = thread.getName();
+      if (name.startsWith(STRESSOR_THREAD_PREFIX)) {
+         return Group.STRESSOR;
+      } else if (name.startsWith(MONITOR_THREAD_PREFIX)) {
+         return Group.MONITOR;
+      } else if ((thread.getThreadGroup() != null && "system".equals(thread.getThreadGroup().getName()))
+            || JVM_THREADS.matcher(name).matches()) {
+         return Group.JVM;
+      }
+      return Group.WRAPPER;
+   }
+
+   /**
+    * Samples the threads and returns CPU time and allocated bytes per operation for each group of threads,
+    * consumed since {@link #mark()}.
+    */
+   public synchronized Map<String, Object> getCostPerOperation(long operations) {
+      sample();
+      long[] cpu = retiredCpu.clone();
+      long[] allocation = retiredAllocation.clone();
+      for (Map.Entry<Long, ThreadSample> entry : samples.entrySet()) {
+         ThreadSample sample = entry.getValue();
+         ThreadSample base = baseline.get(entry.getKey());
+         cpu[sample.group.ordinal()] += sample.cpuTime - (base == null ? 0 : base.cpuTime);
+         allocation[sample.group.ordinal()] += sample.allocatedBytes - (base == null ? 0 : base.allocatedBytes);
+      }
+      Map<String, Object> results = new LinkedHashMap<String, Object>();
+      long totalCpu = 0;
+      for (Group group : Group.values()) {
+         results.put("CPU_NANOS_PER_OP_" + group, perOperation(cpu[group.ordinal()], operations));
+         totalCpu += cpu[group.ordinal()];
+      }
+      results.put("CPU_NANOS_PER_OP", perOperation(totalCpu, operations));
+      if (allocationSupported) {
+         long totalAllocation = 0;
+         for (Group group : Group.values()) {
+            results.put("ALLOC_BYTES_PER_OP_" + group, perOperation(allocation[group.ordinal()], operations));
+            totalAllocation += allocation[group.ordinal()];
+         }
+         results.put("ALLOC_BYTES_PER_OP", perOperation(totalAllocation, operations));
+      }
+      return results;
+   }
+
+   private static double perOperation(long value, long operations) {
+      return operations == 0 ? 0 : (double) value / operations;
+   }
+
+   public synchronized int getMeasurementCount() {
+      return measurementCount;
+   }
+}
@@ -0,0 +1,163 @@
+package com.ctriposs.blacksmith.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sets of CPUs to which the forked JVMs and the benchmark threads are pinned with taskset or numactl, so that they
+ * do not compete for the same cores. The CPU lists use the taskset/cpuset syntax, e.g. {@code 0-3,8-11}.
+ *
+ * @author bulldog
+ */
+public class CpuSets {
+
+   private static Logger log = LoggerFactory.getLogger(CpuSets.class);
+
+   private static final String TASKSET = "taskset";
+   private static final String NUMACTL = "numactl";
+
+   /**
+    * @return path to the taskset executable, or null if it is not on the PATH
+    */
+   public static String findTaskset() {
+      return findExecutable(TASKSET);
+   }
+
+   /**
+    * @return path to the numactl executable, or null if it is not on the PATH
+    */
+   public static String findNumactl() {
+      return findExecutable(NUMACTL);
+   }
+
+   private static String findExecutable(String name) {
+      String path = System.getenv("PATH");
+      if (path == null) return null;
+      for (String dir : path.split(File.pathSeparator)) {
+         File file = new File(dir, name);
+         if (file.isFile() && file.canExecute()) {
+            return file.getAbsolutePath();
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Command prefix which starts a process on given CPUs. When the CPUs belong to single NUMA node of several ones
+    * and numactl is available, the memory of the process is bound to that node as well, so that it does not access
+    * memory of the other socket.
+    *
+    * @return the prefix, or null if neither taskset nor numactl is available
+    */
+   public static List<String> launcherCommand(String cpuSet) {
+      CpuTopology topology = CpuTopology.get();
+      int node = topology.getNode(parse(cpuSet));
+      if (node >= 0 && topology.getNodeCount() > 1 && findNumactl() != null) {
+         return Arrays.asList(NUMACTL, "--physcpubind=" + cpuSet, "--membind=" + node);
+      } else if (findTaskset() != null) {
+         return Arrays.asList(TASKSET, "-c", cpuSet);
+      } else if (findNumactl() != null) {
+         return Arrays.asList(NUMACTL, "--physcpubind=" + cpuSet);
+      }
+      return null;
+   }
+
+   /**
+    * @return CPUs this process may run on, according to /proc/self/status, or all available processors
+    */
+   public static List<Integer> allowedCpus() {
+      File status = new File("/proc/self/status");
+      if (status.exists()) {
+         BufferedReader reader = null;
+         try {
+            reader = new BufferedReader(new FileReader(status));
+            String line;
+            while ((line = reader.readLine()) != null) {
+               if (line.startsWith("Cpus_allowed_list:")) {
+                  return parse(line.substring("Cpus_allowed_list:".length()));
+               }
+            }
+         } catch (Exception e) {
+            log.trace("Cannot read " + status, e);
+         } finally {
+            if (reader != null) {
+               try {
+                  reader.close();
+               } catch (IOException e) {
+                  log.error("Exception occurred while closing " + status, e);
+               }
+            }
+         }
+      }
+      List<Integer> cpus = new ArrayList<Integer>();
+      for (int i = 0; i < Runtime.getRuntime().availableProcessors(); ++i) {
+         cpus.add(i);
+      }
+      return cpus;
+   }
+
+   /**
+    * Splits the CPUs into consecutive disjoint sets of equal size, the remainder is left unused.
+    *
+    * @return the sets, or null if there are fewer CPUs than sets
+    */
+   public static List<List<Integer>> split(List<Integer> cpus, int sets) {
+      int size = cpus.size() / sets;
+      if (size == 0) return null;
+      List<List<Integer>> result = new ArrayList<List<Integer>>(sets);
+      for (int i = 0; i < sets; ++i) {
+         result.add(new ArrayList<Integer>(cpus.subList(i * size, (i + 1) * size)));
+      }
+      return result;
+   }
+
+   /**
+    * @param list e.g. 0-3,8,10-11
+    */
+   public static List<Integer> parse(String list) {
+      List<Integer> cpus = new ArrayList<Integer>();
+      for (String part : list.trim().split(",")) {
+         part = part.trim();
+         if (part.isEmpty()) continue;
+         int dash = part.indexOf('-');
+         try {
+            if (dash < 0) {
+               cpus.add(Integer.parseInt(part));
+            } else {
+               int to = Integer.parseInt(part.substring(dash + 1).trim());
+               for (int cpu = Integer.parseInt(part.substring(0, dash).trim()); cpu <= to; ++cpu) {
+                  cpus.add(cpu);
+               }
+            }
+         } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cannot parse CPU list " + list, e);
+         }
+      }
+      if (cpus.isEmpty()) throw new IllegalArgumentException("Empty CPU list: " + list);
+      return cpus;
+   }
+
+   /**
+    * @return the CPUs in the taskset syntax, with consecutive CPUs as ranges
+    */
+   public static String format(List<Integer> cpus) {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < cpus.size(); ) {
+         int j = i;
+         while (j + 1 < cpus.size() && cpus.get(j + 1) == cpus.get(j) + 1) j++;
+         if (sb.length() > 0) sb.append(',');
+         sb.append(cpus.get(i));
+         if (j > i) sb.append('-').append(cpus.get(j));
+         i = j + 1;
+      }
+      return sb.toString();
+   }
+}
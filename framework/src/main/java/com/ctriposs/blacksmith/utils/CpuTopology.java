@@ -0,0 +1,253 @@
+package com.ctriposs.blacksmith.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sockets, cores and NUMA nodes of the CPUs of this machine, read from /sys/devices/system. Without sysfs, each
+ * available processor is taken as its own core of single socket and NUMA node.
+ *
+ * @author bulldog
+ */
+public class CpuTopology {
+
+   private static Logger log = LoggerFactory.getLogger(CpuTopology.class);
+
+   private static final File CPU_DIR = new File("/sys/devices/system/cpu");
+   private static final File NODE_DIR = new File("/sys/devices/system/node");
+
+   private static volatile CpuTopology instance;
+
+   private final List<Cpu> cpus;
+   private final Map<Integer, Cpu> cpuById = new HashMap<Integer, Cpu>();
+
+   private static class Cpu {
+      private final int id;
+      private final int socket;
+      // unique only within the socket
+      private final int core;
+      private final int node;
+      // index among the hardware threads of the core
+      private int sibling;
+
+      private Cpu(int id, int socket, int core, int node) {
+         this.id = id;
+         this.socket = socket;
+         this.core = core;
+         this.node = node;
+      }
+   }
+
+   private CpuTopology(List<Cpu> cpus) {
+      this.cpus = cpus;
+      Map<String, Integer> siblings = new HashMap<String, Integer>();
+      for (Cpu cpu : cpus) {
+         cpuById.put(cpu.id, cpu);
+         String core = cpu.socket + ":" + cpu.core;
+         Integer count = siblings.get(core);
+         cpu.sibling = count == null ? 0 : count;
+         siblings.put(core, cpu.sibling + 1);
+      }
+   }
+
+   public static CpuTopology get() {
+      if (instance == null) {
+         instance = load();
+      }
+      return instance;
+   }
+
+   private static CpuTopology load() {
+      List<Cpu> cpus = new ArrayList<Cpu>();
+      String online = readLine(new File(CPU_DIR, "online"));
+      if (online != null) {
+         try {
+            Map<Integer, Integer> nodes = readNodes();
+            for (int id : CpuSets.parse(online)) {
+               File topology = new File(CPU_DIR, "cpu" + id + "/topology");
+               String socket = readLine(new File(topology, "physical_package_id"));
+               String core = readLine(new File(topology, "core_id"));
+               Integer node = nodes.get(id);
+               // physical_package_id is -1 on some virtual machines
+               cpus.add(new Cpu(id, socket == null ? 0 : Math.max(0, Integer.parseInt(socket)),
+                                core == null ? id : Integer.parseInt(core), node == null ? 0 : node));
+            }
+         } catch (RuntimeException e) {
+            log.warn("Cannot read CPU topology from " + CPU_DIR, e);
+            cpus.clear();
+         }
+      }
+      if (cpus.isEmpty()) {
+         for (int id = 0; id < Runtime.getRuntime().availableProcessors(); ++id) {
+            cpus.add(new Cpu(id, 0, id, 0));
+         }
+      }
+      return new CpuTopology(cpus);
+   }
+
+   private static Map<Integer, Integer> readNodes() {
+      Map<Integer, Integer> nodes = new HashMap<Integer, Integer>();
+      File[] files = NODE_DIR.listFiles();
+      if (files == null) return nodes;
+      for (File file : files) {
+         if (!file.getName().matches("node[0-9]+")) continue;
+         String cpulist = readLine(new File(file, "cpulist"));
+         // memory-only nodes have empty list
+         if (cpulist == null || cpulist.trim().isEmpty()) continue;
+         int node = Integer.parseInt(file.getName().substring("node".length()));
+         for (int cpu : CpuSets.parse(cpulist)) {
+            nodes.put(cpu, node);
+         }
+      }
+      return nodes;
+   }
+
+   private static String readLine(File file) {
+      if (!file.exists()) return null;
+      BufferedReader reader = null;
+      try {
+         reader = new BufferedReader(new FileReader(file));
+         return reader.readLine();
+      } catch (IOException e) {
+         log.trace("Cannot read " + file, e);
+         return null;
+      } finally {
+         if (reader != null) {
+            try {
+               reader.close();
+            } catch (IOException e) {
+               log.error("Exception occurred while closing " + file, e);
+            }
+         }
+      }
+   }
+
+   public int getCpuCount() {
+      return cpus.size();
+   }
+
+   public int getSocketCount() {
+      Set<Integer> sockets = new HashSet<Integer>();
+      for (Cpu cpu : cpus) {
+         sockets.add(cpu.socket);
+      }
+      return sockets.size();
+   }
+
+   public int getCoreCount() {
+      Set<String> cores = new HashSet<String>();
+      for (Cpu cpu : cpus) {
+         cores.add(cpu.socket + ":" + cpu.core);
+      }
+      return cores.size();
+   }
+
+   public int getNodeCount() {
+      Set<Integer> nodes = new HashSet<Integer>();
+      for (Cpu cpu : cpus) {
+         nodes.add(cpu.node);
+      }
+      return nodes.size();
+   }
+
+   /**
+    * @return NUMA node of all the CPUs, or -1 if they belong to different nodes or are unknown
+    */
+   public int getNode(Collection<Integer> ids) {
+      int node = -1;
+      for (int id : ids) {
+         Cpu cpu = cpuById.get(id);
+         if (cpu == null || (node >= 0 && cpu.node != node)) return -1;
+         node = cpu.node;
+      }
+      return node;
+   }
+
+   /**
+    * Orders the CPUs so that consecutive ones share the core and the socket: the hardware threads of one core come
+    * together and the cores of one socket are used before the next socket.
+    */
+   public List<Integer> compact(Collection<Integer> allowed) {
+      List<Cpu> ordered = filter(allowed);
+      Collections.sort(ordered, new Comparator<Cpu>() {
+         @Override
+         public int compare(Cpu a, Cpu b) {
+            if (a.node != b.node) return a.node < b.node ? -1 : 1;
+            if (a.socket != b.socket) return a.socket < b.socket ? -1 : 1;
+            if (a.core != b.core) return a.core < b.core ? -1 : 1;
+            return a.id < b.id ? -1 : (a.id == b.id ? 0 : 1);
+         }
+      });
+      return ids(ordered);
+   }
+
+   /**
+    * Orders the CPUs so that consecutive ones are as far apart as possible: the sockets alternate and each core is
+    * used once before the second hardware threads of the cores.
+    */
+   public List<Integer> scatter(Collection<Integer> allowed) {
+      Map<Integer, List<Cpu>> bySocket = new LinkedHashMap<Integer, List<Cpu>>();
+      List<Cpu> ordered = filter(allowed);
+      Collections.sort(ordered, new Comparator<Cpu>() {
+         @Override
+         public int compare(Cpu a, Cpu b) {
+            if (a.socket != b.socket) return a.socket < b.socket ? -1 : 1;
+            if (a.sibling != b.sibling) return a.sibling < b.sibling ? -1 : 1;
+            if (a.core != b.core) return a.core < b.core ? -1 : 1;
+            return a.id < b.id ? -1 : (a.id == b.id ? 0 : 1);
+         }
+      });
+      for (Cpu cpu : ordered) {
+         List<Cpu> socket = bySocket.get(cpu.socket);
+         if (socket == null) {
+            socket = new ArrayList<Cpu>();
+            bySocket.put(cpu.socket, socket);
+         }
+         socket.add(cpu);
+      }
+      List<Integer> ids = new ArrayList<Integer>(ordered.size());
+      for (int i = 0; ids.size() < ordered.size(); ++i) {
+         for (List<Cpu> socket : bySocket.values()) {
+            if (i < socket.size()) ids.add(socket.get(i).id);
+         }
+      }
+      return ids;
+   }
+
+   private List<Cpu> filter(Collection<Integer> allowed) {
+      List<Cpu> filtered = new ArrayList<Cpu>();
+      for (Cpu cpu : cpus) {
+         if (allowed == null || allowed.contains(cpu.id)) filtered.add(cpu);
+      }
+      return filtered;
+   }
+
+   private static List<Integer> ids(List<Cpu> cpus) {
+      List<Integer> ids = new ArrayList<Integer>(cpus.size());
+      for (Cpu cpu : cpus) {
+         ids.add(cpu.id);
+      }
+      return ids;
+   }
+
+   @Override
+   public String toString() {
+      return getSocketCount() + " sockets, " + getCoreCount() + " cores, " + getCpuCount() + " CPUs, "
+            + getNodeCount() + " NUMA nodes";
+   }
+}
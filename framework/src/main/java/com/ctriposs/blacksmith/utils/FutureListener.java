@@ -0,0 +1,11 @@
+package com.ctriposs.blacksmith.utils;
+
+/**
+ * Callback invoked when a {@link NotifyingFuture} completes, either with a value or with an exception.
+ * May be called from any thread, including the thread registering the listener if the future is already done.
+ *
+ * @author bulldog
+ */
+public interface FutureListener<T> {
+   void futureDone(NotifyingFuture<T> future);
+}
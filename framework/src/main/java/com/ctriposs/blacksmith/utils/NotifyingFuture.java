@@ -0,0 +1,16 @@
+package com.ctriposs.blacksmith.utils;
+
+import java.util.concurrent.Future;
+
+/**
+ * Future which notifies listeners upon completion, so that the caller does not have to block in {@link #get()}.
+ *
+ * @author bulldog
+ */
+public interface NotifyingFuture<T> extends Future<T> {
+
+   /**
+    * Registers the listener. If the future is already completed the listener is invoked immediately.
+    */
+   NotifyingFuture<T> attachListener(FutureListener<T> listener);
+}
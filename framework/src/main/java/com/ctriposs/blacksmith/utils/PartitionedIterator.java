@@ -0,0 +1,50 @@
+package com.ctriposs.blacksmith.utils;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only iterator which computes the next element lazily, usually by skipping elements of an underlying
+ * iterator that do not belong to the scanned partition.
+ *
+ * @author bulldog
+ */
+public abstract class PartitionedIterator<T> implements Iterator<T> {
+
+   private T next;
+
+   /**
+    * @return true if the key belongs to given partition of a partitioned scan
+    */
+   public static boolean isInPartition(Object key, int partition, int partitions) {
+      return partitions <= 1 || (key.hashCode() & Integer.MAX_VALUE) % partitions == partition;
+   }
+
+   /**
+    * @return next element, or null when there are no more elements
+    */
+   protected abstract T computeNext();
+
+   @Override
+   public boolean hasNext() {
+      if (next == null) {
+         next = computeNext();
+      }
+      return next != null;
+   }
+
+   @Override
+   public T next() {
+      if (!hasNext()) {
+         throw new NoSuchElementException();
+      }
+      T element = next;
+      next = null;
+      return element;
+   }
+
+   @Override
+   public void remove() {
+      throw new UnsupportedOperationException();
+   }
+}
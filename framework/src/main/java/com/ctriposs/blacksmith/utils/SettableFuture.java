@@ -0,0 +1,134 @@
+package com.ctriposs.blacksmith.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link NotifyingFuture} completed explicitly by calling {@link #set(Object)} or {@link #setException(Throwable)}.
+ * Cache wrappers can use it to adapt callback-based client APIs.
+ *
+ * @author bulldog
+ */
+public class SettableFuture<T> implements NotifyingFuture<T> {
+
+   private static final Logger log = LoggerFactory.getLogger(SettableFuture.class);
+
+   private final CountDownLatch latch = new CountDownLatch(1);
+   private List<FutureListener<T>> listeners;
+   private boolean done;
+   private boolean cancelled;
+   private T value;
+   private Throwable exception;
+
+   public static <T> SettableFuture<T> completed(T value) {
+      SettableFuture<T> future = new SettableFuture<T>();
+      future.set(value);
+      return future;
+   }
+
+   public static <T> SettableFuture<T> failed(Throwable exception) {
+      SettableFuture<T> future = new SettableFuture<T>();
+      future.setException(exception);
+      return future;
+   }
+
+   /**
+    * @return false if the future was already completed
+    */
+   public boolean set(T value) {
+      return complete(value, null, false);
+   }
+
+   /**
+    * @return false if the future was already completed
+    */
+   public boolean setException(Throwable exception) {
+      return complete(null, exception, false);
+   }
+
+   private boolean complete(T value, Throwable exception, boolean cancelled) {
+      List<FutureListener<T>> toNotify;
+      synchronized (this) {
+         if (done) return false;
+         this.value = value;
+         this.exception = exception;
+         this.cancelled = cancelled;
+         this.done = true;
+         toNotify = listeners;
+         listeners = null;
+      }
+      latch.countDown();
+      if (toNotify != null) {
+         for (FutureListener<T> listener : toNotify) {
+            notifyListener(listener);
+         }
+      }
+      return true;
+   }
+
+   private void notifyListener(FutureListener<T> listener) {
+      try {
+         listener.futureDone(this);
+      } catch (RuntimeException e) {
+         log.error("Future listener " + listener + " has thrown an exception", e);
+      }
+   }
+
+   @Override
+   public NotifyingFuture<T> attachListener(FutureListener<T> listener) {
+      synchronized (this) {
+         if (!done) {
+            if (listeners == null) {
+               listeners = new ArrayList<FutureListener<T>>(1);
+            }
+            listeners.add(listener);
+            return this;
+         }
+      }
+      notifyListener(listener);
+      return this;
+   }
+
+   @Override
+   public boolean cancel(boolean mayInterruptIfRunning) {
+      return complete(null, null, true);
+   }
+
+   @Override
+   public synchronized boolean isCancelled() {
+      return cancelled;
+   }
+
+   @Override
+   public synchronized boolean isDone() {
+      return done;
+   }
+
+   @Override
+   public T get() throws InterruptedException, ExecutionException {
+      latch.await();
+      return getValue();
+   }
+
+   @Override
+   public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+      if (!latch.await(timeout, unit)) {
+         throw new TimeoutException();
+      }
+      return getValue();
+   }
+
+   private synchronized T getValue() throws ExecutionException {
+      if (cancelled) throw new CancellationException();
+      if (exception != null) throw new ExecutionException(exception);
+      return value;
+   }
+}
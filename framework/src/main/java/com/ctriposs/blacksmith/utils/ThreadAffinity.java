@@ -0,0 +1,106 @@
+package com.ctriposs.blacksmith.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pins single threads to CPUs. Java has no API for that, so the Linux id of the thread is read from /proc/thread-self
+ * and passed to taskset, which changes the affinity of that thread only, not of the whole JVM.
+ *
+ * @author bulldog
+ */
+public class ThreadAffinity {
+
+   private static Logger log = LoggerFactory.getLogger(ThreadAffinity.class);
+
+   private static final File THREAD_STAT = new File("/proc/thread-self/stat");
+
+   // the failure is the same for all threads
+   private static final AtomicBoolean warned = new AtomicBoolean();
+
+   /**
+    * @return true if the current thread has been pinned
+    */
+   public static boolean pinCurrentThread(List<Integer> cpus) {
+      String taskset = CpuSets.findTaskset();
+      int tid = currentThreadId();
+      if (taskset == null || tid < 0) {
+         warnOnce("Threads cannot be pinned to CPUs, this requires taskset and /proc/thread-self.");
+         return false;
+      }
+      String cpuList = CpuSets.format(cpus);
+      try {
+         Process process = new ProcessBuilder(taskset, "-p", "-c", cpuList, String.valueOf(tid))
+               .redirectErrorStream(true).start();
+         String output = readOutput(process);
+         if (process.waitFor() != 0) {
+            warnOnce("Cannot pin thread to CPUs " + cpuList + ": " + output.trim());
+            return false;
+         }
+         log.trace("Pinned thread " + Thread.currentThread().getName() + " (" + tid + ") to CPUs " + cpuList);
+         return true;
+      } catch (IOException e) {
+         warnOnce("Cannot pin thread to CPUs " + cpuList + ": " + e);
+         return false;
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         return false;
+      }
+   }
+
+   /**
+    * @return id of the current thread in the operating system, or -1 if it is not known
+    */
+   public static int currentThreadId() {
+      // the first field of the stat file is the thread id; resolving the /proc/thread-self link instead would be
+      // served from the canonical path cache, which returns the thread that resolved it first
+      BufferedReader reader = null;
+      try {
+         reader = new BufferedReader(new FileReader(THREAD_STAT));
+         String line = reader.readLine();
+         if (line == null) return -1;
+         int end = line.indexOf(' ');
+         return Integer.parseInt(end < 0 ? line : line.substring(0, end));
+      } catch (IOException e) {
+         return -1;
+      } catch (NumberFormatException e) {
+         return -1;
+      } finally {
+         if (reader != null) {
+            try {
+               reader.close();
+            } catch (IOException e) {
+               log.error("Exception occurred while closing " + THREAD_STAT, e);
+            }
+         }
+      }
+   }
+
+   private static String readOutput(Process process) throws IOException {
+      StringBuilder sb = new StringBuilder();
+      BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+      try {
+         String line;
+         while ((line = reader.readLine()) != null) {
+            sb.append(line).append('\n');
+         }
+      } finally {
+         reader.close();
+      }
+      return sb.toString();
+   }
+
+   private static void warnOnce(String message) {
+      if (warned.compareAndSet(false, true)) {
+         log.warn(message);
+      }
+   }
+}
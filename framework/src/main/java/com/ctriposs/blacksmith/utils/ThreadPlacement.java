@@ -0,0 +1,101 @@
+package com.ctriposs.blacksmith.utils;
+
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import com.ctriposs.blacksmith.config.Converter;
+
+/**
+ * Placement of benchmark threads on CPUs: none (left to the operating system), compact (the threads share cores and
+ * one socket before using the next one), scatter (the threads are spread across the sockets and the cores) or an
+ * explicit CPU list, e.g. 0-3,8. The n-th thread is pinned to the n-th CPU of the placement, starting again when
+ * there are more threads than CPUs. Compact and scatter use only the CPUs this JVM may run on, so they stay within
+ * the CPU set of a pinned forked JVM.
+ *
+ * @author bulldog
+ */
+public class ThreadPlacement {
+
+   public static final ThreadPlacement NONE = new ThreadPlacement("none", null);
+
+   private static final String COMPACT = "compact";
+   private static final String SCATTER = "scatter";
+
+   private final String definition;
+   private final List<Integer> explicitCpus;
+   // resolved in the JVM running the threads
+   private volatile List<Integer> cpus;
+
+   private ThreadPlacement(String definition, List<Integer> explicitCpus) {
+      this.definition = definition;
+      this.explicitCpus = explicitCpus;
+   }
+
+   public static ThreadPlacement parse(String string) {
+      String definition = string.trim().toLowerCase(Locale.ENGLISH);
+      if (definition.equals(NONE.definition)) {
+         return NONE;
+      } else if (definition.equals(COMPACT) || definition.equals(SCATTER)) {
+         return new ThreadPlacement(definition, null);
+      }
+      List<Integer> cpus = CpuSets.parse(definition);
+      return new ThreadPlacement(CpuSets.format(cpus), cpus);
+   }
+
+   public boolean isNone() {
+      return this == NONE;
+   }
+
+   /**
+    * @return CPUs in the order in which they are assigned to the threads, empty for no placement
+    */
+   public List<Integer> getCpus() {
+      if (cpus == null) {
+         if (isNone()) {
+            cpus = Collections.emptyList();
+         } else if (explicitCpus != null) {
+            cpus = explicitCpus;
+         } else {
+            List<Integer> allowed = CpuSets.allowedCpus();
+            CpuTopology topology = CpuTopology.get();
+            cpus = definition.equals(COMPACT) ? topology.compact(allowed) : topology.scatter(allowed);
+         }
+      }
+      return cpus;
+   }
+
+   /**
+    * Pins the current thread to the CPU of given thread index.
+    *
+    * @return true if the thread has been pinned
+    */
+   public boolean pin(int threadIndex) {
+      List<Integer> cpus = getCpus();
+      if (cpus.isEmpty()) return false;
+      return ThreadAffinity.pinCurrentThread(cpus.subList(threadIndex % cpus.size(), threadIndex % cpus.size() + 1));
+   }
+
+   @Override
+   public String toString() {
+      return definition;
+   }
+
+   public static class PlacementConverter implements Converter<ThreadPlacement> {
+      @Override
+      public ThreadPlacement convert(String string, Type type) {
+         return parse(string);
+      }
+
+      @Override
+      public String convertToString(ThreadPlacement value) {
+         return value.toString();
+      }
+
+      @Override
+      public String allowedPattern(Type type) {
+         return "none|compact|scatter|[0-9,\\-\\s]+";
+      }
+   }
+}
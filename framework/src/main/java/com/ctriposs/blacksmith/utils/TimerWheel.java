@@ -0,0 +1,172 @@
+package com.ctriposs.blacksmith.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timer wheel for expiring entries of cache wrappers. A deadline is scheduled in constant time, without any
+ * lock, by handing it to the sweeper thread, which files it into the bucket of its tick; as only the sweeper touches
+ * the buckets, a deadline cannot land in a bucket just being swept. The sweeper visits one bucket per tick, expires
+ * the due keys and keeps those scheduled for later revolutions of the wheel. The keys expire at most one tick late,
+ * unless the sweeper falls behind.
+ *
+ * @author bulldog
+ */
+public class TimerWheel<K> {
+
+   private static final Logger log = LoggerFactory.getLogger(TimerWheel.class);
+
+   public interface Handler<K> {
+      /**
+       * Called from the sweeper thread when the deadline of the key has passed. The key may have been rescheduled
+       * or removed since, the handler must check that the deadline is still valid.
+       */
+      void expired(K key, long deadlineMillis);
+   }
+
+   private static class Timeout<K> {
+      private final K key;
+      private final long deadline;
+
+      private Timeout(K key, long deadline) {
+         this.key = key;
+         this.deadline = deadline;
+      }
+   }
+
+   private final long tickMillis;
+   private final int mask;
+   // accessed only by the sweeper
+   private final List<Timeout<K>>[] buckets;
+   private final ConcurrentLinkedQueue<Timeout<K>> scheduled = new ConcurrentLinkedQueue<Timeout<K>>();
+   private final Handler<K> handler;
+   private final AtomicLong pending = new AtomicLong();
+   private final long startMillis = System.currentTimeMillis();
+   // last tick processed by the sweeper
+   private long processedTick = -1;
+   private volatile boolean running;
+   private Thread sweeper;
+
+   /**
+    * @param wheelSize number of buckets, rounded up to power of two
+    */
+   @SuppressWarnings({"unchecked", "rawtypes"})
+   public TimerWheel(long tickMillis, int wheelSize, Handler<K> handler) {
+      if (tickMillis <= 0) throw new IllegalArgumentException("Tick must be positive: " + tickMillis);
+      int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+      this.tickMillis = tickMillis;
+      this.mask = size - 1;
+      this.buckets = new List[size];
+      for (int i = 0; i < size; ++i) {
+         buckets[i] = new ArrayList<Timeout<K>>();
+      }
+      this.handler = handler;
+   }
+
+   /**
+    * Thread-safe.
+    */
+   public void schedule(K key, long deadlineMillis) {
+      pending.incrementAndGet();
+      scheduled.offer(new Timeout<K>(key, deadlineMillis));
+   }
+
+   /**
+    * @return number of scheduled deadlines which have not been processed yet
+    */
+   public long getPending() {
+      return pending.get();
+   }
+
+   public synchronized void start(String threadName) {
+      if (sweeper != null) return;
+      running = true;
+      sweeper = new Thread(threadName) {
+         @Override
+         public void run() {
+            sweep();
+         }
+      };
+      sweeper.setDaemon(true);
+      sweeper.start();
+   }
+
+   public synchronized void stop() {
+      running = false;
+      if (sweeper != null) {
+         sweeper.interrupt();
+         try {
+            sweeper.join();
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+         sweeper = null;
+      }
+   }
+
+   /**
+    * @return CPU time consumed by the sweeper thread in nanoseconds, -1 if not known
+    */
+   public long getSweeperCpuNanos() {
+      Thread thread = sweeper;
+      ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+      if (thread == null || !threadMXBean.isThreadCpuTimeSupported()) return -1;
+      return threadMXBean.getThreadCpuTime(thread.getId());
+   }
+
+   private void sweep() {
+      List<Timeout<K>> later = new ArrayList<Timeout<K>>();
+      while (running) {
+         long now = System.currentTimeMillis();
+         // the tick which has completely passed
+         long currentTick = (now - startMillis) / tickMillis - 1;
+         for (long tick = processedTick + 1; tick <= currentTick; ++tick) {
+            fileScheduled(tick);
+            List<Timeout<K>> bucket = buckets[(int) (tick & mask)];
+            for (Timeout<K> timeout : bucket) {
+               if (timeout.deadline <= now) {
+                  pending.decrementAndGet();
+                  try {
+                     handler.expired(timeout.key, timeout.deadline);
+                  } catch (RuntimeException e) {
+                     log.error("Failed to expire " + timeout.key, e);
+                  }
+               } else {
+                  later.add(timeout);
+               }
+            }
+            bucket.clear();
+            bucket.addAll(later);
+            later.clear();
+            processedTick = tick;
+         }
+         long next = startMillis + (processedTick + 2) * tickMillis;
+         long sleep = next - System.currentTimeMillis();
+         if (sleep > 0) {
+            try {
+               Thread.sleep(sleep);
+            } catch (InterruptedException e) {
+               // stopped
+            }
+         }
+      }
+   }
+
+   /**
+    * Moves the newly scheduled deadlines into their buckets; those already due go to the bucket swept next.
+    */
+   private void fileScheduled(long nextTick) {
+      Timeout<K> timeout;
+      while ((timeout = scheduled.poll()) != null) {
+         long tick = Math.max((timeout.deadline - startMillis) / tickMillis, nextTick);
+         buckets[(int) (tick & mask)].add(timeout);
+      }
+   }
+}
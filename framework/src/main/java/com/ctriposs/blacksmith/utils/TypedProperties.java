@@ -45,6 +45,22 @@ public class TypedProperties extends Properties {
       return new TypedProperties(p);
    }
 
+   /**
+    * Returns properties starting with given prefix, with the prefix stripped. Used for passing configuration
+    * to cache wrappers embedded in another wrapper.
+    *
+    * @param prefix e.g. "l1."
+    */
+   public TypedProperties subset(String prefix) {
+      TypedProperties subset = new TypedProperties();
+      for (String name : stringPropertyNames()) {
+         if (name.startsWith(prefix) && name.length() > prefix.length()) {
+            subset.setProperty(name.substring(prefix.length()), getProperty(name));
+         }
+      }
+      return subset;
+   }
+
    public int getIntProperty(String key, int defaultValue) {
       String value = getProperty(key);
       if (value == null) return defaultValue;
@@ -23,6 +23,7 @@ import javax.management.MBeanServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.ctriposs.blacksmith.CacheWrapper;
 import com.sun.management.HotSpotDiagnosticMXBean;
 
 /**
@@ -192,6 +193,22 @@ public class Utils {
       return getCacheProviderProperty(productName, "com.ctriposs.blacksmith.wrapper");
    }
 
+   /**
+    * Loads the cache wrapper from the plugin directory of given product using its own class loader.
+    *
+    * @param fqnClass wrapper class, if null the class from plugin's cacheprovider.properties is used
+    */
+   public static CacheWrapper createCacheWrapper(String productName, String fqnClass, ClassLoader parent) throws Exception {
+      if (fqnClass == null) {
+         fqnClass = getCacheWrapperFqnClass(productName);
+      }
+      if (fqnClass == null) {
+         throw new IllegalArgumentException("No cache wrapper class configured for product " + productName);
+      }
+      URLClassLoader loader = buildProductSpecificClassLoader(productName, parent);
+      return (CacheWrapper) loader.loadClass(fqnClass).newInstance();
+   }
+
    public static File createOrReplaceFile(File parentDir, String actualFileName) throws IOException {
       File outputFile = new File(parentDir, actualFileName);
 
@@ -204,6 +221,22 @@ public class Utils {
       return outputFile;
    }
 
+   /**
+    * @return sum of lengths of all files in the directory and its subdirectories, -1 if it does not exist
+    */
+   public static long directorySize(File directory) {
+      if (!directory.exists()) return -1;
+      if (!directory.isDirectory()) return directory.length();
+      long size = 0;
+      File[] files = directory.listFiles();
+      if (files != null) {
+         for (File file : files) {
+            size += Math.max(0, directorySize(file));
+         }
+      }
+      return size;
+   }
+
    public static void backupFile(File outputFile) {
       if (outputFile.exists()) {
          int lastIndexOfDot = outputFile.getName().lastIndexOf('.');
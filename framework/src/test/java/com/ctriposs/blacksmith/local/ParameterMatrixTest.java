@@ -0,0 +1,128 @@
+package com.ctriposs.blacksmith.local;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+/**
+ * @author bulldog
+ */
+@Test
+public class ParameterMatrixTest {
+
+   public void testSingleValue() {
+      assertEquals(ParameterMatrix.parseValues("10", true), Collections.singletonList("10"));
+      // attributes using commas in their own syntax are not split
+      assertEquals(ParameterMatrix.parseValues("50%:100,50%:10000", false),
+            Collections.singletonList("50%:100,50%:10000"));
+   }
+
+   public void testCommaSeparated() {
+      assertEquals(ParameterMatrix.parseValues("1, 2,4 ,8", true), Arrays.asList("1", "2", "4", "8"));
+   }
+
+   public void testValues() {
+      assertEquals(ParameterMatrix.parseValues("values(100 | 50%:100,50%:10000 |)", false),
+            Arrays.asList("100", "50%:100,50%:10000"));
+   }
+
+   public void testRangeWithDefaultStep() {
+      assertEquals(ParameterMatrix.parseValues("range(1..4)", true), Arrays.asList("1", "2", "3", "4"));
+   }
+
+   public void testRangeWithIncrement() {
+      assertEquals(ParameterMatrix.parseValues("range(10..35, +10)", true), Arrays.asList("10", "20", "30"));
+   }
+
+   public void testRangeWithFactor() {
+      assertEquals(ParameterMatrix.parseValues("range(100..400, x2)", true), Arrays.asList("100", "200", "400"));
+      assertEquals(ParameterMatrix.parseValues("range(1..27, *3)", true), Arrays.asList("1", "3", "9", "27"));
+   }
+
+   public void testRangeWithSizeSuffixes() {
+      List<String> values = ParameterMatrix.parseValues("range(64..64kB, x4)", false);
+      assertEquals(values.get(0), "64");
+      assertEquals(values.get(values.size() - 1), "65536");
+      assertEquals(values.size(), 6);
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testEmptyRange() {
+      ParameterMatrix.parseValues("range(10..1)", true);
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testRangeWithoutBounds() {
+      ParameterMatrix.parseValues("range(10)", true);
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testFactorTooSmall() {
+      ParameterMatrix.parseValues("range(1..10, x1)", true);
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testZeroIncrement() {
+      ParameterMatrix.parseValues("range(1..10, +0)", true);
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testUnknownStep() {
+      ParameterMatrix.parseValues("range(1..10, -1)", true);
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testTooManyValues() {
+      ParameterMatrix.parseValues("range(1..100000)", true);
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testEmptyValues() {
+      ParameterMatrix.parseValues("values( | )", false);
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testEmptyCommaSeparatedValue() {
+      ParameterMatrix.parseValues("1,,2", true);
+   }
+
+   public void testCells() {
+      ParameterMatrix matrix = new ParameterMatrix();
+      assertTrue(matrix.isEmpty());
+      assertEquals(matrix.size(), 1);
+      matrix.addDimension("numThreads", Arrays.asList("1", "2"));
+      matrix.addDimension("entrySize", Arrays.asList("100", "200", "400"));
+      assertEquals(matrix.size(), 6);
+      // the first dimension changes slowest
+      Map<String, String> cell = matrix.getCell(0);
+      assertEquals(cell.get("numThreads"), "1");
+      assertEquals(cell.get("entrySize"), "100");
+      cell = matrix.getCell(2);
+      assertEquals(cell.get("numThreads"), "1");
+      assertEquals(cell.get("entrySize"), "400");
+      cell = matrix.getCell(3);
+      assertEquals(cell.get("numThreads"), "2");
+      assertEquals(cell.get("entrySize"), "100");
+      assertEquals(matrix.getCell(5).keySet().iterator().next(), "numThreads");
+   }
+
+   @Test(expectedExceptions = IndexOutOfBoundsException.class)
+   public void testCellOutOfRange() {
+      ParameterMatrix matrix = new ParameterMatrix();
+      matrix.addDimension("numThreads", Arrays.asList("1", "2"));
+      matrix.getCell(2);
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testDuplicateDimension() {
+      ParameterMatrix matrix = new ParameterMatrix();
+      matrix.addDimension("numThreads", Arrays.asList("1", "2"));
+      matrix.addDimension("numThreads", Arrays.asList("4"));
+   }
+}
@@ -0,0 +1,117 @@
+package com.ctriposs.blacksmith.stressors;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+/**
+ * @author bulldog
+ */
+@Test
+public class KeyScheduleTest {
+
+   public void testEmpty() {
+      KeySchedule schedule = new KeySchedule(2, 0);
+      assertTrue(schedule.isEmpty());
+      assertEquals(schedule.firstSlot(), -1);
+      assertEquals(schedule.firstTimestamp(), Long.MAX_VALUE);
+      assertEquals(schedule.randomSlot(0, new Random()), -1);
+   }
+
+   public void testRemovesInTimestampOrder() {
+      KeySchedule schedule = new KeySchedule(1, 4);
+      long[] timestamps = { 50, 10, 40, 30, 20, 60, 10 };
+      for (int i = 0; i < timestamps.length; ++i) {
+         schedule.add("key" + i, timestamps[i], 0);
+      }
+      assertEquals(schedule.size(), timestamps.length);
+      long previous = Long.MIN_VALUE;
+      while (!schedule.isEmpty()) {
+         long timestamp = schedule.firstTimestamp();
+         assertTrue(timestamp >= previous);
+         previous = timestamp;
+         schedule.remove(schedule.firstSlot());
+      }
+      assertEquals(previous, 60);
+   }
+
+   public void testGroups() {
+      KeySchedule schedule = new KeySchedule(2, 16);
+      for (int i = 0; i < 10; ++i) {
+         schedule.add("small" + i, i, 0);
+      }
+      for (int i = 0; i < 5; ++i) {
+         schedule.add("big" + i, i, 1);
+      }
+      assertEquals(schedule.size(0), 10);
+      assertEquals(schedule.size(1), 5);
+      Random random = new Random(0);
+      for (int i = 0; i < 100; ++i) {
+         assertTrue(((String) schedule.getKey(schedule.randomSlot(1, random))).startsWith("big"));
+      }
+      schedule.remove(schedule.randomSlot(1, random));
+      assertEquals(schedule.size(1), 4);
+      assertEquals(schedule.size(0), 10);
+   }
+
+   /**
+    * Compares the schedule with a plain map under random adds and removes, both of the first key and of random keys.
+    */
+   public void testRandomOperations() {
+      KeySchedule schedule = new KeySchedule(3, 16);
+      Map<Object, Long> expected = new HashMap<Object, Long>();
+      Map<Object, Integer> expectedGroups = new HashMap<Object, Integer>();
+      Random random = new Random(42);
+      int nextKey = 0;
+      for (int i = 0; i < 20000; ++i) {
+         int action = random.nextInt(3);
+         if (action == 0 || schedule.isEmpty()) {
+            String key = "key" + nextKey++;
+            long timestamp = random.nextInt(1000);
+            int group = random.nextInt(3);
+            int slot = schedule.add(key, timestamp, group);
+            assertEquals(schedule.getKey(slot), key);
+            expected.put(key, timestamp);
+            expectedGroups.put(key, group);
+         } else if (action == 1) {
+            long min = Long.MAX_VALUE;
+            for (long timestamp : expected.values()) {
+               min = Math.min(min, timestamp);
+            }
+            assertEquals(schedule.firstTimestamp(), min);
+            Object key = schedule.getKey(schedule.firstSlot());
+            assertEquals((long) expected.remove(key), min);
+            expectedGroups.remove(key);
+            schedule.remove(schedule.firstSlot());
+         } else {
+            int group = random.nextInt(3);
+            int slot = schedule.randomSlot(group, random);
+            if (slot < 0) continue;
+            Object key = schedule.getKey(slot);
+            assertEquals((int) expectedGroups.remove(key), group);
+            expected.remove(key);
+            schedule.remove(slot);
+         }
+         assertEquals(schedule.size(), expected.size());
+      }
+      int[] groupSizes = new int[3];
+      for (int group : expectedGroups.values()) {
+         groupSizes[group]++;
+      }
+      for (int group = 0; group < 3; ++group) {
+         assertEquals(schedule.size(group), groupSizes[group]);
+      }
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testRemoveInvalidSlot() {
+      KeySchedule schedule = new KeySchedule(1, 16);
+      schedule.add("key", 1, 0);
+      schedule.remove(1);
+   }
+}
@@ -0,0 +1,119 @@
+package com.ctriposs.blacksmith.stressors;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+/**
+ * @author bulldog
+ */
+@Test
+public class WorkloadScheduleTest {
+
+   public void testPhases() {
+      WorkloadSchedule schedule = WorkloadSchedule.parse(
+            "steady: 1m rate=10000; spike: 30s rate=50000 threads=20 writes=50 removes=5; 2m");
+      assertEquals(schedule.size(), 3);
+      WorkloadSchedule.Phase steady = schedule.getPhase(0);
+      assertEquals(steady.getName(), "steady");
+      assertEquals(steady.getDurationMillis(), 60000);
+      assertTrue(steady.isRateLimited());
+      assertEquals(steady.getRate(0), 10000d);
+      assertEquals(steady.getThreads(), 0);
+      assertEquals(steady.getWritePercentage(20), 20);
+      assertEquals(steady.getRemovePercentage(0), 0);
+
+      WorkloadSchedule.Phase spike = schedule.getPhase(1);
+      assertEquals(spike.getName(), "spike");
+      assertEquals(spike.getThreads(), 20);
+      assertEquals(spike.getWritePercentage(20), 50);
+      assertEquals(spike.getRemovePercentage(0), 5);
+
+      WorkloadSchedule.Phase unnamed = schedule.getPhase(2);
+      assertEquals(unnamed.getName(), "phase2");
+      assertFalse(unnamed.isRateLimited());
+      assertEquals(unnamed.getRate(0), 0d);
+
+      assertEquals(schedule.getStartMillis(0), 0);
+      assertEquals(schedule.getStartMillis(1), 60000);
+      assertEquals(schedule.getStartMillis(2), 90000);
+      assertEquals(schedule.getDurationMillis(), 210000);
+   }
+
+   public void testRamp() {
+      WorkloadSchedule.Phase ramp = WorkloadSchedule.parse("ramp: 10s rate=1000..2000").getPhase(0);
+      assertEquals(ramp.getRate(0), 1000d, 0.001);
+      assertEquals(ramp.getRate(5000 * Statistics.NS_IN_MS), 1500d, 0.001);
+      assertEquals(ramp.getRate(10000 * Statistics.NS_IN_MS), 2000d, 0.001);
+      // the rate stays at the end of the ramp when the phase overruns
+      assertEquals(ramp.getRate(20000 * Statistics.NS_IN_MS), 2000d, 0.001);
+   }
+
+   public void testWave() {
+      WorkloadSchedule.Phase wave = WorkloadSchedule.parse("day: 10s rate=2000~10000").getPhase(0);
+      assertEquals(wave.getRate(0), 2000d, 0.001);
+      assertEquals(wave.getRate(5000 * Statistics.NS_IN_MS), 10000d, 0.001);
+      assertEquals(wave.getRate(10000 * Statistics.NS_IN_MS), 2000d, 0.001);
+   }
+
+   public void testHotKeys() {
+      WorkloadSchedule.Phase phase = WorkloadSchedule.parse("hot: 1s hotKeys=10%/90%").getPhase(0);
+      Random random = new Random(0);
+      int hot = 0;
+      for (int i = 0; i < 10000; ++i) {
+         int index = phase.nextKeyIndex(random, 1000);
+         assertTrue(index >= 0 && index < 1000);
+         if (index < 100) hot++;
+      }
+      assertTrue(hot > 8500 && hot < 9500, "Hot keys were hit " + hot + " times");
+   }
+
+   public void testDefinitionRoundTrip() {
+      WorkloadSchedule schedule = WorkloadSchedule.parse(
+            "base: 4s rate=20000;ramp: 90s rate=1000..40000 threads=2; day: 2m rate=2000~10000 hotKeys=10%/90%; 1500");
+      assertEquals(schedule.toString(), "base: 4s rate=20000; ramp: 90s rate=1000..40000 threads=2; "
+            + "day: 2m rate=2000~10000 hotKeys=10%/90%; phase3: 1500");
+      WorkloadSchedule reparsed = WorkloadSchedule.parse(schedule.toString());
+      assertEquals(reparsed.toString(), schedule.toString());
+      assertEquals(reparsed.getDurationMillis(), schedule.getDurationMillis());
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testEmpty() {
+      WorkloadSchedule.parse(" ; ");
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testZeroDuration() {
+      WorkloadSchedule.parse("0s rate=100");
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testUnknownAttribute() {
+      WorkloadSchedule.parse("1s speed=100");
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testNegativeRate() {
+      WorkloadSchedule.parse("1s rate=-5");
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testNonPositiveThreads() {
+      WorkloadSchedule.parse("1s threads=0");
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testPercentageOutOfRange() {
+      WorkloadSchedule.parse("1s writes=120");
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testMalformedNumber() {
+      WorkloadSchedule.parse("1s rate=fast");
+   }
+}
@@ -0,0 +1,65 @@
+package com.ctriposs.blacksmith.utils;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+/**
+ * @author bulldog
+ */
+@Test
+public class CpuSetsTest {
+
+   public void testParse() {
+      assertEquals(CpuSets.parse("0-3,8,10-11"), Arrays.asList(0, 1, 2, 3, 8, 10, 11));
+      assertEquals(CpuSets.parse(" 5 "), Collections.singletonList(5));
+      assertEquals(CpuSets.parse("2 - 4, 7,"), Arrays.asList(2, 3, 4, 7));
+   }
+
+   public void testParseKeepsOrder() {
+      // explicit placements assign the CPUs to the threads in the given order
+      assertEquals(CpuSets.parse("8,0-1"), Arrays.asList(8, 0, 1));
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testParseEmpty() {
+      CpuSets.parse(" , ");
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testParseMalformed() {
+      CpuSets.parse("0-x");
+   }
+
+   public void testFormat() {
+      assertEquals(CpuSets.format(Arrays.asList(0, 1, 2, 3, 8, 10, 11)), "0-3,8,10-11");
+      assertEquals(CpuSets.format(Collections.singletonList(5)), "5");
+      assertEquals(CpuSets.format(Arrays.asList(3, 2, 1)), "3,2,1");
+      assertEquals(CpuSets.format(Collections.<Integer>emptyList()), "");
+   }
+
+   public void testRoundTrip() {
+      String list = "0-1,4,6-9,12";
+      assertEquals(CpuSets.format(CpuSets.parse(list)), list);
+   }
+
+   public void testFormatLargeIds() {
+      // Integer values above the cache of small boxed values must be compared by value
+      assertEquals(CpuSets.format(Arrays.asList(1000, 1001, 1002)), "1000-1002");
+   }
+
+   public void testSplit() {
+      List<Integer> cpus = CpuSets.parse("0-6");
+      List<List<Integer>> sets = CpuSets.split(cpus, 3);
+      assertEquals(sets.size(), 3);
+      assertEquals(sets.get(0), Arrays.asList(0, 1));
+      assertEquals(sets.get(1), Arrays.asList(2, 3));
+      assertEquals(sets.get(2), Arrays.asList(4, 5));
+      assertNull(CpuSets.split(cpus, 8));
+   }
+}
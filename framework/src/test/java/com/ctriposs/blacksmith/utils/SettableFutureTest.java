@@ -0,0 +1,137 @@
+package com.ctriposs.blacksmith.utils;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+/**
+ * @author bulldog
+ */
+@Test
+public class SettableFutureTest {
+
+   public void testSet() throws Exception {
+      SettableFuture<String> future = new SettableFuture<String>();
+      assertFalse(future.isDone());
+      assertTrue(future.set("value"));
+      assertTrue(future.isDone());
+      assertFalse(future.isCancelled());
+      assertEquals(future.get(), "value");
+      assertEquals(future.get(1, TimeUnit.SECONDS), "value");
+   }
+
+   public void testCompletesOnlyOnce() throws Exception {
+      SettableFuture<String> future = new SettableFuture<String>();
+      assertTrue(future.set("first"));
+      assertFalse(future.set("second"));
+      assertFalse(future.setException(new IllegalStateException()));
+      assertFalse(future.cancel(true));
+      assertEquals(future.get(), "first");
+   }
+
+   public void testException() throws Exception {
+      IllegalStateException cause = new IllegalStateException("failed");
+      SettableFuture<String> future = SettableFuture.failed(cause);
+      assertTrue(future.isDone());
+      try {
+         future.get();
+         fail("Expected ExecutionException");
+      } catch (ExecutionException e) {
+         assertSame(e.getCause(), cause);
+      }
+   }
+
+   public void testCancel() throws Exception {
+      SettableFuture<String> future = new SettableFuture<String>();
+      assertTrue(future.cancel(false));
+      assertTrue(future.isDone());
+      assertTrue(future.isCancelled());
+      try {
+         future.get();
+         fail("Expected CancellationException");
+      } catch (CancellationException e) {
+         // expected
+      }
+   }
+
+   @Test(expectedExceptions = TimeoutException.class)
+   public void testTimeout() throws Exception {
+      new SettableFuture<String>().get(10, TimeUnit.MILLISECONDS);
+   }
+
+   public void testListenerAttachedBefore() {
+      final AtomicInteger notified = new AtomicInteger();
+      final SettableFuture<String> future = new SettableFuture<String>();
+      future.attachListener(new FutureListener<String>() {
+         @Override
+         public void futureDone(NotifyingFuture<String> done) {
+            assertSame(done, future);
+            notified.incrementAndGet();
+         }
+      });
+      assertEquals(notified.get(), 0);
+      future.set("value");
+      future.set("again");
+      assertEquals(notified.get(), 1);
+   }
+
+   public void testListenerAttachedAfter() {
+      final AtomicInteger notified = new AtomicInteger();
+      SettableFuture<String> future = SettableFuture.completed("value");
+      future.attachListener(new FutureListener<String>() {
+         @Override
+         public void futureDone(NotifyingFuture<String> done) {
+            notified.incrementAndGet();
+         }
+      });
+      assertEquals(notified.get(), 1);
+   }
+
+   public void testFailingListenerDoesNotStopOthers() throws Exception {
+      final AtomicInteger notified = new AtomicInteger();
+      SettableFuture<String> future = new SettableFuture<String>();
+      future.attachListener(new FutureListener<String>() {
+         @Override
+         public void futureDone(NotifyingFuture<String> done) {
+            throw new IllegalStateException("listener failure");
+         }
+      });
+      future.attachListener(new FutureListener<String>() {
+         @Override
+         public void futureDone(NotifyingFuture<String> done) {
+            notified.incrementAndGet();
+         }
+      });
+      assertTrue(future.set("value"));
+      assertEquals(notified.get(), 1);
+      assertEquals(future.get(), "value");
+   }
+
+   public void testGetBlocksUntilSet() throws Exception {
+      final SettableFuture<String> future = new SettableFuture<String>();
+      Thread setter = new Thread() {
+         @Override
+         public void run() {
+            try {
+               Thread.sleep(50);
+            } catch (InterruptedException e) {
+               return;
+            }
+            future.set("value");
+         }
+      };
+      setter.start();
+      assertEquals(future.get(5, TimeUnit.SECONDS), "value");
+      setter.join();
+   }
+}
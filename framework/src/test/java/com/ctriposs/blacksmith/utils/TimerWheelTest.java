@@ -0,0 +1,111 @@
+package com.ctriposs.blacksmith.utils;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * @author bulldog
+ */
+@Test
+public class TimerWheelTest {
+
+   private static final long TICK = 10;
+
+   private TimerWheel<String> wheel;
+
+   @AfterMethod
+   public void stopWheel() {
+      if (wheel != null) {
+         wheel.stop();
+         wheel = null;
+      }
+   }
+
+   private Map<String, Long> startWheel(int wheelSize, final CountDownLatch latch) {
+      final Map<String, Long> expired = new ConcurrentHashMap<String, Long>();
+      wheel = new TimerWheel<String>(TICK, wheelSize, new TimerWheel.Handler<String>() {
+         @Override
+         public void expired(String key, long deadlineMillis) {
+            expired.put(key, System.currentTimeMillis());
+            latch.countDown();
+         }
+      });
+      wheel.start("TimerWheelTest");
+      return expired;
+   }
+
+   public void testExpiresAfterDeadline() throws Exception {
+      CountDownLatch latch = new CountDownLatch(3);
+      Map<String, Long> expired = startWheel(64, latch);
+      long now = System.currentTimeMillis();
+      wheel.schedule("a", now + 50);
+      wheel.schedule("b", now + 100);
+      wheel.schedule("c", now + 150);
+      assertEquals(wheel.getPending(), 3);
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+      assertEquals(expired.size(), 3);
+      assertTrue(expired.get("a") >= now + 50);
+      assertTrue(expired.get("b") >= now + 100);
+      assertTrue(expired.get("c") >= now + 150);
+      assertEquals(wheel.getPending(), 0);
+   }
+
+   public void testPastDeadlineExpiresSoon() throws Exception {
+      CountDownLatch latch = new CountDownLatch(1);
+      Map<String, Long> expired = startWheel(64, latch);
+      // let the sweeper pass a few ticks, so that the bucket of the deadline has been swept already
+      Thread.sleep(5 * TICK);
+      long now = System.currentTimeMillis();
+      wheel.schedule("late", now - 3 * TICK);
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+      assertTrue(expired.get("late") - now < 64 * TICK, "Expired after " + (expired.get("late") - now) + " ms");
+   }
+
+   public void testDeadlineBeyondOneRevolution() throws Exception {
+      CountDownLatch latch = new CountDownLatch(1);
+      // one revolution of the wheel takes 4 ticks
+      Map<String, Long> expired = startWheel(4, latch);
+      long now = System.currentTimeMillis();
+      wheel.schedule("far", now + 20 * TICK);
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+      assertTrue(expired.get("far") >= now + 20 * TICK);
+   }
+
+   public void testConcurrentSchedule() throws Exception {
+      final int threads = 4, keys = 1000;
+      CountDownLatch latch = new CountDownLatch(threads * keys);
+      Map<String, Long> expired = startWheel(16, latch);
+      Thread[] schedulers = new Thread[threads];
+      for (int t = 0; t < threads; ++t) {
+         final int thread = t;
+         schedulers[t] = new Thread() {
+            @Override
+            public void run() {
+               for (int i = 0; i < keys; ++i) {
+                  wheel.schedule(thread + "-" + i, System.currentTimeMillis() + i % 50);
+               }
+            }
+         };
+         schedulers[t].start();
+      }
+      for (Thread scheduler : schedulers) {
+         scheduler.join();
+      }
+      assertTrue(latch.await(10, TimeUnit.SECONDS), "Not expired: " + latch.getCount());
+      assertEquals(expired.size(), threads * keys);
+      assertEquals(wheel.getPending(), 0);
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testInvalidTick() {
+      new TimerWheel<String>(0, 16, null);
+   }
+}
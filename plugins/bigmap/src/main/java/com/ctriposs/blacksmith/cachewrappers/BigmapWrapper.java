@@ -1,27 +1,45 @@
 package com.ctriposs.blacksmith.cachewrappers;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.ctriposs.blacksmith.CacheWrapper;
 import com.ctriposs.blacksmith.features.AtomicOperationsCapable;
+import com.ctriposs.blacksmith.features.DiskUsageCapable;
+import com.ctriposs.blacksmith.features.IterationCapable;
 import com.ctriposs.blacksmith.stressors.WrappedArrayValueGenerator.ByteArrayWrapper;
+import com.ctriposs.blacksmith.utils.PartitionedIterator;
 import com.ctriposs.blacksmith.utils.TypedProperties;
+import com.ctriposs.blacksmith.utils.Utils;
 import com.ctriposs.bigmap.*;
 
-public class BigmapWrapper implements CacheWrapper, AtomicOperationsCapable {
+public class BigmapWrapper implements CacheWrapper, AtomicOperationsCapable, IterationCapable, DiskUsageCapable {
 
    public BigConcurrentHashMapImpl bigmap;
+   // the map cannot be iterated, the keys are tracked here when track_keys=true
+   private Set<Object> keys;
+   private File mapDir;
 
    @Override
    public void setUp(String configuration, boolean isLocal, int nodeIndex, TypedProperties confAttributes) throws Exception {
 	   String mapDir = confAttributes.getProperty("map_dir", "/bigmap_test");
 	   String mapName = confAttributes.getProperty("map_name", "bigmap");
 	   bigmap = new BigConcurrentHashMapImpl(mapDir, mapName);
+	   this.mapDir = new File(mapDir);
 	   bigmap.removeAll();
+	   if (Boolean.parseBoolean(confAttributes.getProperty("track_keys", "false"))) {
+	      keys = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+	   }
    }
 
    public void tearDown() throws Exception {
@@ -73,6 +91,7 @@ public class BigmapWrapper implements CacheWrapper, AtomicOperationsCapable {
    @Override
    public void put(String bucket, Object key, Object value) throws Exception {
       bigmap.put(getBytes(key), getBytes(value));
+      if (keys != null) keys.add(key);
    }
 
    @Override
@@ -82,7 +101,9 @@ public class BigmapWrapper implements CacheWrapper, AtomicOperationsCapable {
    
    @Override
    public Object remove(String bucket, Object key) throws Exception {
-      return bigmap.remove(getBytes(key));
+      Object value = bigmap.remove(getBytes(key));
+      if (keys != null) keys.remove(key);
+      return value;
    }
 
    @Override
@@ -94,6 +115,7 @@ public class BigmapWrapper implements CacheWrapper, AtomicOperationsCapable {
    public Object putIfAbsent(String bucket, Object key, Object value) throws Exception {
 	   boolean isByteArrayWrapper = value instanceof ByteArrayWrapper;
       Object o = bigmap.putIfAbsent(getBytes(key), getBytes(value));
+      if (keys != null && o == null) keys.add(key);
       if (o != null && isByteArrayWrapper) { 
     	  return new ByteArrayWrapper((byte[])o);// needed for StressTestStressor equals check
       } else {
@@ -103,12 +125,38 @@ public class BigmapWrapper implements CacheWrapper, AtomicOperationsCapable {
 
    @Override
    public boolean remove(String bucket, Object key, Object oldValue) throws Exception {
-      return bigmap.remove(getBytes(key), getBytes(oldValue));
+      boolean removed = bigmap.remove(getBytes(key), getBytes(oldValue));
+      if (keys != null && removed) keys.remove(key);
+      return removed;
    }
 
    @Override
    public void clear(boolean local) throws Exception {
       bigmap.clear();
+      if (keys != null) keys.clear();
+   }
+
+   @Override
+   public Iterator<Map.Entry<Object, Object>> iterate(String bucket, final int partition, final int partitions,
+                                                     final boolean keysOnly) throws Exception {
+      if (keys == null) {
+         throw new IllegalStateException("Iteration requires the wrapper to be configured with track_keys=true");
+      }
+      final Iterator<Object> keyIterator = keys.iterator();
+      return new PartitionedIterator<Map.Entry<Object, Object>>() {
+         @Override
+         protected Map.Entry<Object, Object> computeNext() {
+            while (keyIterator.hasNext()) {
+               Object key = keyIterator.next();
+               if (!PartitionedIterator.isInPartition(key, partition, partitions)) continue;
+               if (keysOnly) return new AbstractMap.SimpleImmutableEntry<Object, Object>(key, null);
+               byte[] value = bigmap.get(getBytes(key));
+               // removed since the key was added
+               if (value != null) return new AbstractMap.SimpleImmutableEntry<Object, Object>(key, value);
+            }
+            return null;
+         }
+      };
    }
 
    public int getNumMembers() {
@@ -145,4 +193,10 @@ public class BigmapWrapper implements CacheWrapper, AtomicOperationsCapable {
    public int getTotalSize() {
       return bigmap.size();
    }
+
+   @Override
+   public long getDiskUsage() {
+      // the map is backed by memory-mapped files in its directory
+      return Utils.directorySize(mapDir);
+   }
 }
@@ -1,18 +1,26 @@
 package com.ctriposs.blacksmith.cachewrappers;
 
+import java.util.AbstractMap;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import com.ctriposs.blacksmith.CacheWrapper;
+import com.ctriposs.blacksmith.features.AsyncOperationsCapable;
 import com.ctriposs.blacksmith.features.AtomicOperationsCapable;
 import com.ctriposs.blacksmith.features.BulkOperationsCapable;
+import com.ctriposs.blacksmith.features.IterationCapable;
+import com.ctriposs.blacksmith.utils.NotifyingFuture;
+import com.ctriposs.blacksmith.utils.PartitionedIterator;
+import com.ctriposs.blacksmith.utils.SettableFuture;
 import com.ctriposs.blacksmith.utils.TypedProperties;
 
-public class ChmWrapper implements CacheWrapper, BulkOperationsCapable, AtomicOperationsCapable {
+public class ChmWrapper implements CacheWrapper, BulkOperationsCapable, AtomicOperationsCapable, AsyncOperationsCapable,
+      IterationCapable {
 
-   public final ConcurrentHashMap chm = new ConcurrentHashMap();
+   public final ConcurrentHashMap<Object, Object> chm = new ConcurrentHashMap<Object, Object>();
 
    @Override
    public void setUp(String configuration, boolean isLocal, int nodeIndex, TypedProperties confAttributes) throws Exception {
@@ -80,6 +88,57 @@ public class ChmWrapper implements CacheWrapper, BulkOperationsCapable, AtomicOp
       return values;
    }
 
+   // the map never blocks for long, so the async operations are executed in the caller thread
+
+   @Override
+   public NotifyingFuture<Object> getAsync(String bucket, Object key) throws Exception {
+      return SettableFuture.completed(chm.get(key));
+   }
+
+   @Override
+   public NotifyingFuture<Void> putAsync(String bucket, Object key, Object value) throws Exception {
+      chm.put(key, value);
+      return SettableFuture.completed(null);
+   }
+
+   @Override
+   public NotifyingFuture<Object> removeAsync(String bucket, Object key) throws Exception {
+      return SettableFuture.completed(chm.remove(key));
+   }
+
+   @Override
+   public NotifyingFuture<Map<Object, Object>> getAllAsync(String bucket, Set<Object> keys) throws Exception {
+      return SettableFuture.completed(getAll(bucket, keys, true));
+   }
+
+   @Override
+   public NotifyingFuture<Map<Object, Object>> putAllAsync(String bucket, Map<Object, Object> entries) throws Exception {
+      return SettableFuture.completed(putAll(bucket, entries, true));
+   }
+
+   @Override
+   public NotifyingFuture<Map<Object, Object>> removeAllAsync(String bucket, Set<Object> keys) throws Exception {
+      return SettableFuture.completed(removeAll(bucket, keys, true));
+   }
+
+   @Override
+   public Iterator<Map.Entry<Object, Object>> iterate(String bucket, final int partition, final int partitions,
+                                                     final boolean keysOnly) throws Exception {
+      final Iterator<Map.Entry<Object, Object>> entries = chm.entrySet().iterator();
+      return new PartitionedIterator<Map.Entry<Object, Object>>() {
+         @Override
+         protected Map.Entry<Object, Object> computeNext() {
+            while (entries.hasNext()) {
+               Map.Entry<Object, Object> entry = entries.next();
+               if (PartitionedIterator.isInPartition(entry.getKey(), partition, partitions)) {
+                  return keysOnly ? new AbstractMap.SimpleImmutableEntry<Object, Object>(entry.getKey(), null) : entry;
+               }
+            }
+            return null;
+         }
+      };
+   }
+
    @Override
    public void clear(boolean local) throws Exception {
       chm.clear();
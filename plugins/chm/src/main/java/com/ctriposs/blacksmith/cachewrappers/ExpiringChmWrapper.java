@@ -0,0 +1,195 @@
+package com.ctriposs.blacksmith.cachewrappers;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import com.ctriposs.blacksmith.features.ExpirationCapable;
+import com.ctriposs.blacksmith.utils.NotifyingFuture;
+import com.ctriposs.blacksmith.utils.PartitionedIterator;
+import com.ctriposs.blacksmith.utils.SettableFuture;
+import com.ctriposs.blacksmith.utils.TimerWheel;
+import com.ctriposs.blacksmith.utils.TypedProperties;
+
+/**
+ * Concurrent hash map with entries expired by a timer wheel. A value put with lifespan is stored together with its
+ * deadline, so all operations treat an expired entry as absent even before the sweeper removes it, and the sweeper
+ * removes only the very entry it was scheduled for, not a value written later. Configured by attributes
+ * expiration_tick (milliseconds, default 10) and expiration_wheel_size (default 1024).
+ *
+ * @author bulldog
+ */
+public class ExpiringChmWrapper extends ChmWrapper implements ExpirationCapable {
+
+   private TimerWheel<Expiring> timerWheel;
+   private volatile ExpirationListener listener;
+
+   /**
+    * Value put with lifespan; values without lifespan are stored as they are.
+    */
+   private static final class Expiring {
+      final Object key;
+      final Object value;
+      final long deadline;
+
+      private Expiring(Object key, Object value, long deadline) {
+         this.key = key;
+         this.value = value;
+         this.deadline = deadline;
+      }
+   }
+
+   @Override
+   public void setUp(String configuration, boolean isLocal, int nodeIndex, TypedProperties confAttributes) throws Exception {
+      super.setUp(configuration, isLocal, nodeIndex, confAttributes);
+      long tick = Long.parseLong(confAttributes.getProperty("expiration_tick", "10"));
+      int wheelSize = Integer.parseInt(confAttributes.getProperty("expiration_wheel_size", "1024"));
+      timerWheel = new TimerWheel<Expiring>(tick, wheelSize, new TimerWheel.Handler<Expiring>() {
+         @Override
+         public void expired(Expiring entry, long deadlineMillis) {
+            // fails if a later write has replaced or removed the entry
+            if (!chm.remove(entry.key, entry)) return;
+            ExpirationListener listener = ExpiringChmWrapper.this.listener;
+            if (listener != null) {
+               listener.expired(entry.key, entry.value, deadlineMillis);
+            }
+         }
+      });
+      timerWheel.start("ChmWrapper-Expiration");
+   }
+
+   @Override
+   public void tearDown() throws Exception {
+      if (timerWheel != null) {
+         timerWheel.stop();
+         timerWheel = null;
+      }
+      super.tearDown();
+   }
+
+   /**
+    * @return the value of the stored object, null if it is null or has expired
+    */
+   private static Object live(Object stored) {
+      if (stored instanceof Expiring) {
+         Expiring entry = (Expiring) stored;
+         return entry.deadline <= System.currentTimeMillis() ? null : entry.value;
+      }
+      return stored;
+   }
+
+   @Override
+   public void put(String bucket, Object key, Object value, long lifespanMillis) throws Exception {
+      Expiring entry = new Expiring(key, value, System.currentTimeMillis() + lifespanMillis);
+      chm.put(key, entry);
+      timerWheel.schedule(entry, entry.deadline);
+   }
+
+   @Override
+   public Object get(String bucket, Object key) throws Exception {
+      return live(chm.get(key));
+   }
+
+   @Override
+   public Object remove(String bucket, Object key) throws Exception {
+      return live(chm.remove(key));
+   }
+
+   @Override
+   public boolean replace(String bucket, Object key, Object oldValue, Object newValue) throws Exception {
+      for (;;) {
+         Object stored = chm.get(key);
+         Object value = live(stored);
+         if (value == null || !value.equals(oldValue)) return false;
+         if (chm.replace(key, stored, newValue)) return true;
+      }
+   }
+
+   @Override
+   public Object putIfAbsent(String bucket, Object key, Object value) throws Exception {
+      for (;;) {
+         Object stored = chm.putIfAbsent(key, value);
+         if (stored == null) return null;
+         Object current = live(stored);
+         if (current != null) return current;
+         // the expired entry counts as absent
+         if (chm.replace(key, stored, value)) return null;
+      }
+   }
+
+   @Override
+   public boolean remove(String bucket, Object key, Object oldValue) throws Exception {
+      for (;;) {
+         Object stored = chm.get(key);
+         Object value = live(stored);
+         if (value == null || !value.equals(oldValue)) return false;
+         if (chm.remove(key, stored)) return true;
+      }
+   }
+
+   @Override
+   public Map<Object, Object> getAll(String bucket, Set<Object> keys, boolean preferAsyncOperations) throws Exception {
+      Map<Object, Object> values = new HashMap<Object, Object>(keys.size());
+      for (Object key : keys) {
+         values.put(key, live(chm.get(key)));
+      }
+      return values;
+   }
+
+   @Override
+   public Map<Object, Object> removeAll(String bucket, Set<Object> keys, boolean preferAsyncOperations) throws Exception {
+      Map<Object, Object> values = new HashMap<Object, Object>(keys.size());
+      for (Object key : keys) {
+         values.put(key, live(chm.remove(key)));
+      }
+      return values;
+   }
+
+   // putAll and the bulk async operations of ChmWrapper store plain values or delegate to the methods above
+
+   @Override
+   public NotifyingFuture<Object> getAsync(String bucket, Object key) throws Exception {
+      return SettableFuture.completed(get(bucket, key));
+   }
+
+   @Override
+   public NotifyingFuture<Object> removeAsync(String bucket, Object key) throws Exception {
+      return SettableFuture.completed(remove(bucket, key));
+   }
+
+   @Override
+   public Iterator<Map.Entry<Object, Object>> iterate(String bucket, final int partition, final int partitions,
+                                                     final boolean keysOnly) throws Exception {
+      final Iterator<Map.Entry<Object, Object>> entries = chm.entrySet().iterator();
+      return new PartitionedIterator<Map.Entry<Object, Object>>() {
+         @Override
+         protected Map.Entry<Object, Object> computeNext() {
+            while (entries.hasNext()) {
+               Map.Entry<Object, Object> entry = entries.next();
+               if (!PartitionedIterator.isInPartition(entry.getKey(), partition, partitions)) continue;
+               Object value = live(entry.getValue());
+               if (value == null) continue;
+               return new AbstractMap.SimpleImmutableEntry<Object, Object>(entry.getKey(), keysOnly ? null : value);
+            }
+            return null;
+         }
+      };
+   }
+
+   @Override
+   public void setExpirationListener(ExpirationListener listener) {
+      this.listener = listener;
+   }
+
+   @Override
+   public long getExpirationCpuNanos() {
+      return timerWheel == null ? -1 : timerWheel.getSweeperCpuNanos();
+   }
+
+   @Override
+   public String getInfo() {
+      return "Concurrent hash map wrapper with timer wheel expiration";
+   }
+}
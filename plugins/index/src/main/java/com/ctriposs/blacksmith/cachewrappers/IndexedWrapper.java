@@ -0,0 +1,341 @@
+package com.ctriposs.blacksmith.cachewrappers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctriposs.blacksmith.CacheWrapper;
+import com.ctriposs.blacksmith.features.Queryable;
+import com.ctriposs.blacksmith.features.StatisticsCapable;
+import com.ctriposs.blacksmith.utils.TypedProperties;
+import com.ctriposs.blacksmith.utils.Utils;
+
+/**
+ * Stores the entries in another cache wrapper (store.product, store.wrapper) and keeps inverted indexes over
+ * text fields of values which are maps (e.g. records from RecordValueGenerator). Each field has a sorted
+ * term -> keys index, so that keyword queries are a single lookup and wildcard queries scan only the range of terms
+ * sharing the prefix before the first wildcard.
+ * <p/>
+ * Configuration properties: store.product, store.wrapper, indexed_fields (comma separated, all string fields
+ * are indexed by default), lock_stripes. Properties prefixed with store. are passed to the store wrapper.
+ * The index ignores buckets.
+ *
+ * @author bulldog
+ */
+public class IndexedWrapper implements CacheWrapper, Queryable, StatisticsCapable {
+
+   private static Logger log = LoggerFactory.getLogger(IndexedWrapper.class);
+
+   private static final String[] NO_TERMS = new String[0];
+
+   private CacheWrapper store;
+   private Set<String> indexedFields;
+   private Object[] locks;
+
+   // field -> term -> keys
+   private final ConcurrentHashMap<String, ConcurrentSkipListMap<String, Set<Object>>> indexes
+         = new ConcurrentHashMap<String, ConcurrentSkipListMap<String, Set<Object>>>();
+   // key -> indexed (field, term) pairs, needed to remove stale postings
+   private final ConcurrentHashMap<Object, IndexedTerms> forwardIndex = new ConcurrentHashMap<Object, IndexedTerms>();
+
+   private final AtomicLong indexUpdates = new AtomicLong();
+   private final AtomicLong indexNanos = new AtomicLong();
+   private final AtomicLong postingsAdded = new AtomicLong();
+   private final AtomicLong postingsRemoved = new AtomicLong();
+   private final AtomicLong wildcardQueries = new AtomicLong();
+   private final AtomicLong termsScanned = new AtomicLong();
+
+   private static class IndexedTerms {
+      final String[] fields;
+      final String[] terms;
+
+      private IndexedTerms(String[] fields, String[] terms) {
+         this.fields = fields;
+         this.terms = terms;
+      }
+
+      boolean contains(String field, String term) {
+         for (int i = 0; i < fields.length; ++i) {
+            if (terms[i].equals(term) && fields[i].equals(field)) return true;
+         }
+         return false;
+      }
+   }
+
+   @Override
+   public void setUp(String config, boolean isLocal, int nodeIndex, TypedProperties confAttributes) throws Exception {
+      String product = confAttributes.getProperty("store.product", "chm");
+      store = Utils.createCacheWrapper(product, confAttributes.getProperty("store.wrapper"), CacheWrapper.class.getClassLoader());
+      store.setUp(config, isLocal, nodeIndex, confAttributes.subset("store."));
+      String fields = confAttributes.getProperty("indexed_fields");
+      if (fields != null && fields.trim().length() > 0) {
+         indexedFields = new HashSet<String>();
+         for (String field : fields.split(",")) {
+            indexedFields.add(field.trim());
+         }
+      }
+      locks = new Object[confAttributes.getIntProperty("lock_stripes", 1024)];
+      for (int i = 0; i < locks.length; ++i) {
+         locks[i] = new Object();
+      }
+      log.info(getInfo());
+   }
+
+   @Override
+   public void tearDown() throws Exception {
+      store.tearDown();
+   }
+
+   @Override
+   public boolean isRunning() {
+      return store.isRunning();
+   }
+
+   private Object lockFor(Object key) {
+      return locks[(key.hashCode() & Integer.MAX_VALUE) % locks.length];
+   }
+
+   @Override
+   public void put(String bucket, Object key, Object value) throws Exception {
+      IndexedTerms terms = extractTerms(value);
+      synchronized (lockFor(key)) {
+         store.put(bucket, key, value);
+         long start = System.nanoTime();
+         updateIndex(key, forwardIndex.put(key, terms), terms);
+         indexNanos.addAndGet(System.nanoTime() - start);
+      }
+      indexUpdates.incrementAndGet();
+   }
+
+   @Override
+   public Object get(String bucket, Object key) throws Exception {
+      return store.get(bucket, key);
+   }
+
+   @Override
+   public Object remove(String bucket, Object key) throws Exception {
+      Object previous;
+      synchronized (lockFor(key)) {
+         previous = store.remove(bucket, key);
+         long start = System.nanoTime();
+         updateIndex(key, forwardIndex.remove(key), null);
+         indexNanos.addAndGet(System.nanoTime() - start);
+      }
+      indexUpdates.incrementAndGet();
+      return previous;
+   }
+
+   private IndexedTerms extractTerms(Object value) {
+      if (!(value instanceof Map)) {
+         return new IndexedTerms(NO_TERMS, NO_TERMS);
+      }
+      List<String> fields = new ArrayList<String>();
+      List<String> terms = new ArrayList<String>();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+         if (!(entry.getKey() instanceof String) || !(entry.getValue() instanceof String)) continue;
+         String field = (String) entry.getKey();
+         if (indexedFields != null && !indexedFields.contains(field)) continue;
+         for (String term : ((String) entry.getValue()).split(" ")) {
+            if (term.length() > 0) {
+               fields.add(field);
+               terms.add(term);
+            }
+         }
+      }
+      return new IndexedTerms(fields.toArray(new String[fields.size()]), terms.toArray(new String[terms.size()]));
+   }
+
+   private void updateIndex(Object key, IndexedTerms oldTerms, IndexedTerms newTerms) {
+      if (oldTerms != null) {
+         for (int i = 0; i < oldTerms.fields.length; ++i) {
+            if (newTerms != null && newTerms.contains(oldTerms.fields[i], oldTerms.terms[i])) continue;
+            Set<Object> keys = getIndex(oldTerms.fields[i]).get(oldTerms.terms[i]);
+            // empty sets are kept, removing them would race with concurrent additions
+            if (keys != null && keys.remove(key)) {
+               postingsRemoved.incrementAndGet();
+            }
+         }
+      }
+      if (newTerms != null) {
+         for (int i = 0; i < newTerms.fields.length; ++i) {
+            ConcurrentSkipListMap<String, Set<Object>> index = getIndex(newTerms.fields[i]);
+            Set<Object> keys = index.get(newTerms.terms[i]);
+            if (keys == null) {
+               Set<Object> newKeys = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+               keys = index.putIfAbsent(newTerms.terms[i], newKeys);
+               if (keys == null) keys = newKeys;
+            }
+            if (keys.add(key)) {
+               postingsAdded.incrementAndGet();
+            }
+         }
+      }
+   }
+
+   private ConcurrentSkipListMap<String, Set<Object>> getIndex(String field) {
+      ConcurrentSkipListMap<String, Set<Object>> index = indexes.get(field);
+      if (index == null) {
+         ConcurrentSkipListMap<String, Set<Object>> newIndex = new ConcurrentSkipListMap<String, Set<Object>>();
+         index = indexes.putIfAbsent(field, newIndex);
+         if (index == null) index = newIndex;
+      }
+      return index;
+   }
+
+   @Override
+   public QueryResult executeQuery(Map<String, Object> queryParameters) {
+      String field = (String) queryParameters.get(QUERYABLE_FIELD);
+      String match = (String) queryParameters.get(MATCH_STRING);
+      Object wildcard = queryParameters.get(IS_WILDCARD);
+      ConcurrentSkipListMap<String, Set<Object>> index = indexes.get(field);
+      if (index == null || match == null) {
+         return new KeysResult(Collections.emptySet());
+      }
+      if (!Boolean.TRUE.equals(wildcard) && !"true".equals(wildcard)) {
+         Set<Object> keys = index.get(match);
+         return new KeysResult(keys == null ? Collections.emptySet() : keys);
+      }
+      int firstWildcard = indexOfWildcard(match);
+      String prefix = firstWildcard < 0 ? match : match.substring(0, firstWildcard);
+      // pattern prefix* matches the whole range, anything else is checked per term
+      Pattern pattern = firstWildcard == match.length() - 1 && match.charAt(firstWildcard) == '*' ? null : toPattern(match);
+      Set<Object> result = new HashSet<Object>();
+      long scanned = 0;
+      for (Map.Entry<String, Set<Object>> entry : index.tailMap(prefix).entrySet()) {
+         if (!entry.getKey().startsWith(prefix)) break;
+         scanned++;
+         if (pattern == null || pattern.matcher(entry.getKey()).matches()) {
+            result.addAll(entry.getValue());
+         }
+      }
+      wildcardQueries.incrementAndGet();
+      termsScanned.addAndGet(scanned);
+      return new KeysResult(result);
+   }
+
+   private static int indexOfWildcard(String match) {
+      for (int i = 0; i < match.length(); ++i) {
+         char c = match.charAt(i);
+         if (c == '*' || c == '?') return i;
+      }
+      return -1;
+   }
+
+   private static Pattern toPattern(String wildcard) {
+      StringBuilder regex = new StringBuilder();
+      int start = 0;
+      for (int i = 0; i < wildcard.length(); ++i) {
+         char c = wildcard.charAt(i);
+         if (c == '*' || c == '?') {
+            if (i > start) regex.append(Pattern.quote(wildcard.substring(start, i)));
+            regex.append(c == '*' ? ".*" : ".");
+            start = i + 1;
+         }
+      }
+      if (start < wildcard.length()) regex.append(Pattern.quote(wildcard.substring(start)));
+      return Pattern.compile(regex.toString());
+   }
+
+   private static class KeysResult implements QueryResult {
+      private final List<Object> keys;
+
+      private KeysResult(Set<?> keys) {
+         this.keys = new ArrayList<Object>(keys);
+      }
+
+      @Override
+      public int size() {
+         return keys.size();
+      }
+
+      @Override
+      public List<Object> list() {
+         return keys;
+      }
+   }
+
+   @Override
+   public void clear(boolean local) throws Exception {
+      store.clear(local);
+      indexes.clear();
+      forwardIndex.clear();
+   }
+
+   @Override
+   public Map<String, Object> getStatistics() {
+      Map<String, Object> stats = new LinkedHashMap<String, Object>();
+      long updates = indexUpdates.get();
+      long terms = 0;
+      for (ConcurrentSkipListMap<String, Set<Object>> index : indexes.values()) {
+         terms += index.size();
+      }
+      stats.put("INDEX_FIELDS", indexes.size());
+      stats.put("INDEX_TERMS", terms);
+      stats.put("INDEX_UPDATES", updates);
+      stats.put("INDEX_NANOS_PER_WRITE", updates == 0 ? 0d : (double) indexNanos.get() / updates);
+      stats.put("INDEX_POSTINGS_ADDED_PER_WRITE", updates == 0 ? 0d : (double) postingsAdded.get() / updates);
+      stats.put("INDEX_POSTINGS_REMOVED_PER_WRITE", updates == 0 ? 0d : (double) postingsRemoved.get() / updates);
+      stats.put("WILDCARD_TERMS_SCANNED", wildcardQueries.get() == 0 ? 0d : (double) termsScanned.get() / wildcardQueries.get());
+      return stats;
+   }
+
+   @Override
+   public void resetStatistics() {
+      indexUpdates.set(0);
+      indexNanos.set(0);
+      postingsAdded.set(0);
+      postingsRemoved.set(0);
+      wildcardQueries.set(0);
+      termsScanned.set(0);
+   }
+
+   @Override
+   public int getNumMembers() {
+      return 1;
+   }
+
+   @Override
+   public String getInfo() {
+      return "Indexed wrapper over " + store.getInfo() + ", indexed fields: " + (indexedFields == null ? "all" : indexedFields);
+   }
+
+   @Override
+   public Object getReplicatedData(String bucket, String key) throws Exception {
+      return null;
+   }
+
+   @Override
+   public boolean isTransactional(String bucket) {
+      return false;
+   }
+
+   @Override
+   public void startTransaction() {
+      throw new IllegalStateException("This is not transactional");
+   }
+
+   @Override
+   public void endTransaction(boolean successful) {
+   }
+
+   @Override
+   public int getLocalSize() {
+      return store.getLocalSize();
+   }
+
+   @Override
+   public int getTotalSize() {
+      return store.getTotalSize();
+   }
+}
@@ -0,0 +1,493 @@
+package com.ctriposs.blacksmith.cachewrappers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctriposs.blacksmith.CacheWrapper;
+import com.ctriposs.blacksmith.features.BulkOperationsCapable;
+import com.ctriposs.blacksmith.features.StatisticsCapable;
+import com.ctriposs.blacksmith.utils.TypedProperties;
+import com.ctriposs.blacksmith.utils.Utils;
+
+/**
+ * Stacks two cache wrappers: a small L1 (e.g. chm) in front of a bigger L2 (e.g. bigmap). Reads go through
+ * L1 and are populated from L2 on miss. Writes either go synchronously to both tiers (write_mode=through) or
+ * to L1 and a bounded queue, which is flushed in batches to L2 by a background thread (write_mode=behind).
+ * <p/>
+ * Configuration properties: l1.product, l1.wrapper, l1.max_entries, l2.product, l2.wrapper, write_mode,
+ * write_behind_queue, write_behind_batch, write_behind_delay, write_behind_clear_timeout. All other properties prefixed with l1. or l2.
+ * are passed (without the prefix) to the tier wrappers.
+ *
+ * @author bulldog
+ */
+public class LayeredWrapper implements CacheWrapper, BulkOperationsCapable, StatisticsCapable {
+
+   private static Logger log = LoggerFactory.getLogger(LayeredWrapper.class);
+
+   private static final Object TOMBSTONE = new Object();
+
+   public enum WriteMode {
+      THROUGH,
+      BEHIND
+   }
+
+   private CacheWrapper l1;
+   private CacheWrapper l2;
+   private WriteMode writeMode;
+
+   private int l1MaxEntries;
+   private final ConcurrentHashMap<BucketKey, Boolean> bucketKeys = new ConcurrentHashMap<BucketKey, Boolean>();
+   private final ConcurrentLinkedQueue<BucketKey> l1Order = new ConcurrentLinkedQueue<BucketKey>();
+   private final AtomicInteger l1Count = new AtomicInteger();
+
+   private final ConcurrentHashMap<BucketKey, PendingWrite> pending = new ConcurrentHashMap<BucketKey, PendingWrite>();
+   private BlockingQueue<BucketKey> writeBehindQueue;
+   private int writeBehindBatch;
+   private long writeBehindDelay;
+   private long writeBehindClearTimeout;
+   private volatile Thread flusher;
+   private volatile boolean running;
+
+   private final AtomicLong l1Hits = new AtomicLong();
+   private final AtomicLong l1Misses = new AtomicLong();
+   private final AtomicLong l2Hits = new AtomicLong();
+   private final AtomicLong l2Misses = new AtomicLong();
+   private final AtomicLong l1Evictions = new AtomicLong();
+   private final AtomicLong clientWrites = new AtomicLong();
+   private final AtomicLong l2Writes = new AtomicLong();
+   private final AtomicLong l2Batches = new AtomicLong();
+   private final AtomicLong queueFullStalls = new AtomicLong();
+   private final AtomicLong queueFullStallNanos = new AtomicLong();
+   private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+   /**
+    * Key with its bucket, so that an evicted or flushed entry goes to the bucket it was put into and equal keys in
+    * different buckets are kept apart.
+    */
+   private static class BucketKey {
+      final String bucket;
+      final Object key;
+
+      private BucketKey(String bucket, Object key) {
+         this.bucket = bucket;
+         this.key = key;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+         if (this == o) return true;
+         if (!(o instanceof BucketKey)) return false;
+         BucketKey other = (BucketKey) o;
+         return key.equals(other.key) && (bucket == null ? other.bucket == null : bucket.equals(other.bucket));
+      }
+
+      @Override
+      public int hashCode() {
+         return 31 * (bucket == null ? 0 : bucket.hashCode()) + key.hashCode();
+      }
+   }
+
+   private static class PendingWrite {
+      final Object value;
+
+      private PendingWrite(Object value) {
+         this.value = value;
+      }
+   }
+
+   @Override
+   public void setUp(String config, boolean isLocal, int nodeIndex, TypedProperties confAttributes) throws Exception {
+      l1 = createTier("l1", "chm", config, isLocal, nodeIndex, confAttributes);
+      l2 = createTier("l2", "bigmap", config, isLocal, nodeIndex, confAttributes);
+      l1MaxEntries = confAttributes.getIntProperty("l1.max_entries", 0);
+      writeMode = WriteMode.valueOf(confAttributes.getProperty("write_mode", "through").trim().toUpperCase());
+      if (writeMode == WriteMode.BEHIND) {
+         writeBehindQueue = new ArrayBlockingQueue<BucketKey>(confAttributes.getIntProperty("write_behind_queue", 10000));
+         writeBehindBatch = confAttributes.getIntProperty("write_behind_batch", 100);
+         writeBehindDelay = confAttributes.getLongProperty("write_behind_delay", 10, false);
+         writeBehindClearTimeout = confAttributes.getLongProperty("write_behind_clear_timeout", 60000, false);
+         running = true;
+         flusher = new Thread(new Flusher(), "LayeredWrapper-WriteBehind");
+         flusher.setDaemon(true);
+         flusher.start();
+      }
+      log.info(getInfo());
+   }
+
+   private CacheWrapper createTier(String tier, String defaultProduct, String config, boolean isLocal, int nodeIndex,
+                                   TypedProperties confAttributes) throws Exception {
+      String product = confAttributes.getProperty(tier + ".product", defaultProduct);
+      CacheWrapper wrapper = Utils.createCacheWrapper(product, confAttributes.getProperty(tier + ".wrapper"),
+            CacheWrapper.class.getClassLoader());
+      wrapper.setUp(config, isLocal, nodeIndex, confAttributes.subset(tier + "."));
+      return wrapper;
+   }
+
+   @Override
+   public void tearDown() throws Exception {
+      stopFlusher();
+      try {
+         l1.tearDown();
+      } finally {
+         l2.tearDown();
+      }
+   }
+
+   private void stopFlusher() throws InterruptedException {
+      if (flusher != null) {
+         running = false;
+         flusher.interrupt();
+         flusher.join();
+         flusher = null;
+      }
+   }
+
+   @Override
+   public boolean isRunning() {
+      return l1.isRunning() && l2.isRunning();
+   }
+
+   @Override
+   public void put(String bucket, Object key, Object value) throws Exception {
+      clientWrites.incrementAndGet();
+      if (writeMode == WriteMode.THROUGH) {
+         l2.put(bucket, key, value);
+         l2Writes.incrementAndGet();
+      } else {
+         enqueue(bucket, key, value);
+      }
+      putL1(bucket, key, value);
+   }
+
+   @Override
+   public Object get(String bucket, Object key) throws Exception {
+      Object value = l1.get(bucket, key);
+      if (value != null) {
+         l1Hits.incrementAndGet();
+         return value;
+      }
+      l1Misses.incrementAndGet();
+      if (writeMode == WriteMode.BEHIND) {
+         PendingWrite write = pending.get(new BucketKey(bucket, key));
+         if (write != null) {
+            // written recently but already evicted from L1
+            return write.value == TOMBSTONE ? null : write.value;
+         }
+      }
+      value = l2.get(bucket, key);
+      if (value != null) {
+         l2Hits.incrementAndGet();
+         putL1(bucket, key, value);
+      } else {
+         l2Misses.incrementAndGet();
+      }
+      return value;
+   }
+
+   @Override
+   public Object remove(String bucket, Object key) throws Exception {
+      clientWrites.incrementAndGet();
+      Object previous = l1.remove(bucket, key);
+      if (l1MaxEntries > 0 && bucketKeys.remove(new BucketKey(bucket, key)) != null) {
+         l1Count.decrementAndGet();
+      }
+      if (writeMode == WriteMode.THROUGH) {
+         Object l2Previous = l2.remove(bucket, key);
+         l2Writes.incrementAndGet();
+         return previous != null ? previous : l2Previous;
+      } else {
+         enqueue(bucket, key, TOMBSTONE);
+         return previous;
+      }
+   }
+
+   private void putL1(String bucket, Object key, Object value) throws Exception {
+      l1.put(bucket, key, value);
+      if (l1MaxEntries <= 0) return;
+      BucketKey bucketKey = new BucketKey(bucket, key);
+      if (bucketKeys.putIfAbsent(bucketKey, Boolean.TRUE) == null) {
+         l1Order.offer(bucketKey);
+         if (l1Count.incrementAndGet() > l1MaxEntries) {
+            BucketKey victim = l1Order.poll();
+            // the victim could be already removed by client
+            if (victim != null && bucketKeys.remove(victim) != null) {
+               l1.remove(victim.bucket, victim.key);
+               l1Count.decrementAndGet();
+               l1Evictions.incrementAndGet();
+            }
+         }
+      }
+   }
+
+   private void enqueue(String bucket, Object key, Object value) throws InterruptedException {
+      // if the key is already pending only the value is replaced, the write is coalesced
+      BucketKey bucketKey = new BucketKey(bucket, key);
+      if (pending.put(bucketKey, new PendingWrite(value)) == null) {
+         if (!writeBehindQueue.offer(bucketKey)) {
+            long start = System.nanoTime();
+            writeBehindQueue.put(bucketKey);
+            queueFullStalls.incrementAndGet();
+            queueFullStallNanos.addAndGet(System.nanoTime() - start);
+         }
+         int depth = writeBehindQueue.size();
+         for (;;) {
+            int max = maxQueueDepth.get();
+            if (depth <= max || maxQueueDepth.compareAndSet(max, depth)) break;
+         }
+      }
+   }
+
+   private class Flusher implements Runnable {
+      @Override
+      public void run() {
+         // keys which are still pending after a flush are retried in the next batch
+         List<BucketKey> keys = new ArrayList<BucketKey>(writeBehindBatch);
+         while (running || !writeBehindQueue.isEmpty() || !keys.isEmpty()) {
+            try {
+               if (keys.isEmpty()) {
+                  BucketKey first = writeBehindQueue.poll(writeBehindDelay, TimeUnit.MILLISECONDS);
+                  if (first == null) continue;
+                  keys.add(first);
+               }
+               writeBehindQueue.drainTo(keys, writeBehindBatch - keys.size());
+            } catch (InterruptedException e) {
+               // stopping, drain the rest of the queue
+               writeBehindQueue.drainTo(keys);
+            }
+            if (!flush(keys)) {
+               if (running) {
+                  try {
+                     Thread.sleep(writeBehindDelay);
+                  } catch (InterruptedException e) {
+                     // stopping, the next attempt is the last one
+                  }
+               } else {
+                  log.error("Dropping " + keys.size() + " writes which could not be written to L2");
+                  for (BucketKey key : keys) {
+                     pending.remove(key);
+                  }
+                  keys.clear();
+               }
+            }
+         }
+      }
+   }
+
+   /**
+    * Writes the pending values of the keys to L2. A key stays pending until its write has succeeded, so that reads
+    * do not fall through to the stale L2 value meanwhile. The keys which have failed or have been written again
+    * during the flush are left in the list.
+    *
+    * @return false if any write to L2 has failed
+    */
+   private boolean flush(List<BucketKey> keys) {
+      boolean success = true;
+      List<BucketKey> retry = new ArrayList<BucketKey>();
+      Map<String, Map<BucketKey, PendingWrite>> puts = new HashMap<String, Map<BucketKey, PendingWrite>>();
+      for (BucketKey key : keys) {
+         PendingWrite write = pending.get(key);
+         if (write == null) continue;
+         if (write.value != TOMBSTONE && l2 instanceof BulkOperationsCapable) {
+            Map<BucketKey, PendingWrite> batch = puts.get(key.bucket);
+            if (batch == null) {
+               batch = new HashMap<BucketKey, PendingWrite>();
+               puts.put(key.bucket, batch);
+            }
+            batch.put(key, write);
+            continue;
+         }
+         try {
+            if (write.value == TOMBSTONE) {
+               l2.remove(key.bucket, key.key);
+            } else {
+               l2.put(key.bucket, key.key, write.value);
+            }
+            l2Writes.incrementAndGet();
+            complete(key, write, retry);
+         } catch (Exception e) {
+            log.error("Failed to write " + key.key + " to L2", e);
+            retry.add(key);
+            success = false;
+         }
+      }
+      for (Map.Entry<String, Map<BucketKey, PendingWrite>> batch : puts.entrySet()) {
+         Map<Object, Object> values = new HashMap<Object, Object>(batch.getValue().size());
+         for (Map.Entry<BucketKey, PendingWrite> entry : batch.getValue().entrySet()) {
+            values.put(entry.getKey().key, entry.getValue().value);
+         }
+         try {
+            ((BulkOperationsCapable) l2).putAll(batch.getKey(), values, false);
+            l2Writes.addAndGet(values.size());
+            for (Map.Entry<BucketKey, PendingWrite> entry : batch.getValue().entrySet()) {
+               complete(entry.getKey(), entry.getValue(), retry);
+            }
+         } catch (Exception e) {
+            log.error("Failed to write " + values.size() + " entries to L2", e);
+            retry.addAll(batch.getValue().keySet());
+            success = false;
+         }
+      }
+      l2Batches.incrementAndGet();
+      keys.clear();
+      keys.addAll(retry);
+      return success;
+   }
+
+   private void complete(BucketKey key, PendingWrite write, List<BucketKey> retry) {
+      // a newer write coalesced into the pending one has not been queued, it goes with the next batch
+      if (!pending.remove(key, write)) {
+         retry.add(key);
+      }
+   }
+
+   @Override
+   public Map<Object, Object> getAll(String bucket, Set<Object> keys, boolean preferAsync) throws Exception {
+      Map<Object, Object> values = new HashMap<Object, Object>(keys.size());
+      for (Object key : keys) {
+         values.put(key, get(bucket, key));
+      }
+      return values;
+   }
+
+   @Override
+   public Map<Object, Object> putAll(String bucket, Map<Object, Object> entries, boolean preferAsync) throws Exception {
+      if (writeMode == WriteMode.THROUGH && l2 instanceof BulkOperationsCapable) {
+         clientWrites.addAndGet(entries.size());
+         ((BulkOperationsCapable) l2).putAll(bucket, entries, preferAsync);
+         l2Writes.addAndGet(entries.size());
+         l2Batches.incrementAndGet();
+         for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            putL1(bucket, entry.getKey(), entry.getValue());
+         }
+      } else {
+         for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            put(bucket, entry.getKey(), entry.getValue());
+         }
+      }
+      return null;
+   }
+
+   @Override
+   public Map<Object, Object> removeAll(String bucket, Set<Object> keys, boolean preferAsync) throws Exception {
+      Map<Object, Object> values = new HashMap<Object, Object>(keys.size());
+      for (Object key : keys) {
+         values.put(key, remove(bucket, key));
+      }
+      return values;
+   }
+
+   @Override
+   public void clear(boolean local) throws Exception {
+      if (writeMode == WriteMode.BEHIND) {
+         // let the flusher finish so that it does not resurrect cleared entries
+         long deadline = System.currentTimeMillis() + writeBehindClearTimeout;
+         while (!pending.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+         }
+         if (!pending.isEmpty()) {
+            log.error("L2 has not accepted the pending writes within " + writeBehindClearTimeout
+                  + " ms, dropping " + pending.size() + " writes");
+            writeBehindQueue.clear();
+            pending.clear();
+         }
+      }
+      l1.clear(local);
+      bucketKeys.clear();
+      l1Order.clear();
+      l1Count.set(0);
+      l2.clear(local);
+   }
+
+   @Override
+   public Map<String, Object> getStatistics() {
+      Map<String, Object> stats = new LinkedHashMap<String, Object>();
+      long gets = l1Hits.get() + l1Misses.get();
+      long l2Reads = l2Hits.get() + l2Misses.get();
+      long writes = clientWrites.get();
+      stats.put("L1_HITS", l1Hits.get());
+      stats.put("L1_HIT_RATIO", gets == 0 ? 0d : (double) l1Hits.get() / gets);
+      stats.put("L1_EVICTIONS", l1Evictions.get());
+      stats.put("L2_HITS", l2Hits.get());
+      stats.put("L2_HIT_RATIO", l2Reads == 0 ? 0d : (double) l2Hits.get() / l2Reads);
+      stats.put("TOTAL_HIT_RATIO", gets == 0 ? 0d : (double) (l1Hits.get() + l2Hits.get()) / gets);
+      stats.put("CLIENT_WRITES", writes);
+      stats.put("L2_WRITES", l2Writes.get());
+      stats.put("L2_WRITE_AMPLIFICATION", writes == 0 ? 0d : (double) l2Writes.get() / writes);
+      stats.put("L2_BATCHES", l2Batches.get());
+      if (writeMode == WriteMode.BEHIND) {
+         stats.put("WRITE_BEHIND_MAX_QUEUE", maxQueueDepth.get());
+         stats.put("WRITE_BEHIND_STALLS", queueFullStalls.get());
+         stats.put("WRITE_BEHIND_STALL_NANOS", queueFullStallNanos.get());
+      }
+      return stats;
+   }
+
+   @Override
+   public void resetStatistics() {
+      l1Hits.set(0);
+      l1Misses.set(0);
+      l2Hits.set(0);
+      l2Misses.set(0);
+      l1Evictions.set(0);
+      clientWrites.set(0);
+      l2Writes.set(0);
+      l2Batches.set(0);
+      queueFullStalls.set(0);
+      queueFullStallNanos.set(0);
+      maxQueueDepth.set(0);
+   }
+
+   @Override
+   public int getNumMembers() {
+      return 1;
+   }
+
+   @Override
+   public String getInfo() {
+      return "Layered wrapper: L1=" + l1.getInfo() + (l1MaxEntries > 0 ? " (max " + l1MaxEntries + " entries)" : "")
+            + ", L2=" + l2.getInfo() + ", write " + writeMode.name().toLowerCase();
+   }
+
+   @Override
+   public Object getReplicatedData(String bucket, String key) throws Exception {
+      return null;
+   }
+
+   @Override
+   public boolean isTransactional(String bucket) {
+      return false;
+   }
+
+   @Override
+   public void startTransaction() {
+      throw new IllegalStateException("This is not transactional");
+   }
+
+   @Override
+   public void endTransaction(boolean successful) {
+   }
+
+   @Override
+   public int getLocalSize() {
+      return l2.getLocalSize();
+   }
+
+   @Override
+   public int getTotalSize() {
+      return l2.getTotalSize();
+   }
+}
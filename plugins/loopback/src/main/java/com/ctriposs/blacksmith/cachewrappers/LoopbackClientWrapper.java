@@ -0,0 +1,393 @@
+package com.ctriposs.blacksmith.cachewrappers;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctriposs.blacksmith.CacheWrapper;
+import com.ctriposs.blacksmith.features.AsyncOperationsCapable;
+import com.ctriposs.blacksmith.features.BulkOperationsCapable;
+import com.ctriposs.blacksmith.features.StatisticsCapable;
+import com.ctriposs.blacksmith.utils.NotifyingFuture;
+import com.ctriposs.blacksmith.utils.SettableFuture;
+import com.ctriposs.blacksmith.utils.TypedProperties;
+import com.ctriposs.blacksmith.utils.Utils;
+
+/**
+ * Client for {@link LoopbackServer}. Keeps a pool of connections; each connection pipelines up to pipeline_depth
+ * requests and the responses are matched to requests in FIFO order. Bulk operations are sent as single frame.
+ * <p/>
+ * Configuration properties: host, port, connections, pipeline_depth. When port is not set the server is started
+ * in this JVM (still talking over the loopback interface), embedding wrapper of server.product (server.wrapper);
+ * properties prefixed with server. are passed to the embedded wrapper.
+ *
+ * @author bulldog
+ */
+public class LoopbackClientWrapper implements CacheWrapper, BulkOperationsCapable, AsyncOperationsCapable, StatisticsCapable {
+
+   private static Logger log = LoggerFactory.getLogger(LoopbackClientWrapper.class);
+
+   private CacheWrapper embeddedWrapper;
+   private LoopbackServer embeddedServer;
+   private String host;
+   private int port;
+   private int pipelineDepth;
+   private List<Connection> connections;
+   private final AtomicInteger nextConnection = new AtomicInteger();
+
+   private final AtomicLong requests = new AtomicLong();
+   private final AtomicLong bytesSent = new AtomicLong();
+   private final AtomicLong bytesReceived = new AtomicLong();
+   private final AtomicLong outstandingSum = new AtomicLong();
+   private final AtomicInteger maxOutstanding = new AtomicInteger();
+   private final AtomicLong pipelineStalls = new AtomicLong();
+
+   @Override
+   public void setUp(String config, boolean isLocal, int nodeIndex, TypedProperties confAttributes) throws Exception {
+      host = confAttributes.getProperty("host", "127.0.0.1");
+      port = confAttributes.getIntProperty("port", 0);
+      if (port == 0) {
+         String product = confAttributes.getProperty("server.product", "chm");
+         embeddedWrapper = Utils.createCacheWrapper(product, confAttributes.getProperty("server.wrapper"),
+               CacheWrapper.class.getClassLoader());
+         embeddedWrapper.setUp(config, isLocal, nodeIndex, confAttributes.subset("server."));
+         embeddedServer = new LoopbackServer(embeddedWrapper, host, 0);
+         embeddedServer.start();
+         port = embeddedServer.getPort();
+      }
+      pipelineDepth = confAttributes.getIntProperty("pipeline_depth", 16);
+      int numConnections = confAttributes.getIntProperty("connections", 4);
+      connections = new ArrayList<Connection>(numConnections);
+      for (int i = 0; i < numConnections; ++i) {
+         connections.add(new Connection(i));
+      }
+      log.info(getInfo());
+   }
+
+   @Override
+   public void tearDown() throws Exception {
+      for (Connection connection : connections) {
+         connection.close();
+      }
+      if (embeddedServer != null) {
+         embeddedServer.stop();
+         embeddedWrapper.tearDown();
+      }
+   }
+
+   @Override
+   public boolean isRunning() {
+      for (Connection connection : connections) {
+         if (connection.socket.isClosed()) return false;
+      }
+      return true;
+   }
+
+   private Connection connection() {
+      return connections.get((nextConnection.getAndIncrement() & Integer.MAX_VALUE) % connections.size());
+   }
+
+   @SuppressWarnings("unchecked")
+   private <T> NotifyingFuture<T> send(byte operation, String bucket, Object... arguments) throws IOException, InterruptedException {
+      return (NotifyingFuture<T>) connection().send(operation, bucket, arguments);
+   }
+
+   private static <T> T await(NotifyingFuture<T> future) throws Exception {
+      try {
+         return future.get();
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof Exception) {
+            throw (Exception) e.getCause();
+         }
+         throw e;
+      }
+   }
+
+   @Override
+   public void put(String bucket, Object key, Object value) throws Exception {
+      await(putAsync(bucket, key, value));
+   }
+
+   @Override
+   public Object get(String bucket, Object key) throws Exception {
+      return await(getAsync(bucket, key));
+   }
+
+   @Override
+   public Object remove(String bucket, Object key) throws Exception {
+      return await(removeAsync(bucket, key));
+   }
+
+   @Override
+   public Map<Object, Object> getAll(String bucket, Set<Object> keys, boolean preferAsync) throws Exception {
+      return await(getAllAsync(bucket, keys));
+   }
+
+   @Override
+   public Map<Object, Object> putAll(String bucket, Map<Object, Object> entries, boolean preferAsync) throws Exception {
+      return await(putAllAsync(bucket, entries));
+   }
+
+   @Override
+   public Map<Object, Object> removeAll(String bucket, Set<Object> keys, boolean preferAsync) throws Exception {
+      return await(removeAllAsync(bucket, keys));
+   }
+
+   @Override
+   public NotifyingFuture<Object> getAsync(String bucket, Object key) throws Exception {
+      return send(LoopbackCodec.OP_GET, bucket, key);
+   }
+
+   @Override
+   public NotifyingFuture<Void> putAsync(String bucket, Object key, Object value) throws Exception {
+      return send(LoopbackCodec.OP_PUT, bucket, key, value);
+   }
+
+   @Override
+   public NotifyingFuture<Object> removeAsync(String bucket, Object key) throws Exception {
+      return send(LoopbackCodec.OP_REMOVE, bucket, key);
+   }
+
+   @Override
+   public NotifyingFuture<Map<Object, Object>> getAllAsync(String bucket, Set<Object> keys) throws Exception {
+      return send(LoopbackCodec.OP_GET_ALL, bucket, keys);
+   }
+
+   @Override
+   public NotifyingFuture<Map<Object, Object>> putAllAsync(String bucket, Map<Object, Object> entries) throws Exception {
+      return send(LoopbackCodec.OP_PUT_ALL, bucket, entries);
+   }
+
+   @Override
+   public NotifyingFuture<Map<Object, Object>> removeAllAsync(String bucket, Set<Object> keys) throws Exception {
+      return send(LoopbackCodec.OP_REMOVE_ALL, bucket, keys);
+   }
+
+   @Override
+   public void clear(boolean local) throws Exception {
+      await(connection().send(LoopbackCodec.OP_CLEAR, null, local));
+   }
+
+   @Override
+   public Map<String, Object> getStatistics() {
+      Map<String, Object> stats = new LinkedHashMap<String, Object>();
+      long requestCount = requests.get();
+      stats.put("NET_REQUESTS", requestCount);
+      stats.put("NET_BYTES_SENT", bytesSent.get());
+      stats.put("NET_BYTES_RECEIVED", bytesReceived.get());
+      stats.put("NET_BYTES_PER_REQUEST", requestCount == 0 ? 0d : (double) (bytesSent.get() + bytesReceived.get()) / requestCount);
+      stats.put("NET_AVG_PIPELINE_DEPTH", requestCount == 0 ? 0d : (double) outstandingSum.get() / requestCount);
+      stats.put("NET_MAX_PIPELINE_DEPTH", maxOutstanding.get());
+      stats.put("NET_PIPELINE_STALLS", pipelineStalls.get());
+      return stats;
+   }
+
+   @Override
+   public void resetStatistics() {
+      requests.set(0);
+      bytesSent.set(0);
+      bytesReceived.set(0);
+      outstandingSum.set(0);
+      maxOutstanding.set(0);
+      pipelineStalls.set(0);
+   }
+
+   @Override
+   public int getNumMembers() {
+      return 1;
+   }
+
+   @Override
+   public String getInfo() {
+      return "Loopback client to " + host + ":" + port + (embeddedWrapper != null ? " (embedded " + embeddedWrapper.getInfo() + ")" : "")
+            + ", " + connections.size() + " connections, pipeline depth " + pipelineDepth;
+   }
+
+   @Override
+   public Object getReplicatedData(String bucket, String key) throws Exception {
+      return null;
+   }
+
+   @Override
+   public boolean isTransactional(String bucket) {
+      return false;
+   }
+
+   @Override
+   public void startTransaction() {
+      throw new IllegalStateException("This is not transactional");
+   }
+
+   @Override
+   public void endTransaction(boolean successful) {
+   }
+
+   @Override
+   public int getLocalSize() {
+      try {
+         return (Integer) await(connection().send(LoopbackCodec.OP_SIZE, null));
+      } catch (Exception e) {
+         log.warn("Failed to retrieve size", e);
+         return -1;
+      }
+   }
+
+   @Override
+   public int getTotalSize() {
+      return getLocalSize();
+   }
+
+   /**
+    * Requests are written by the calling threads, responses are read by a dedicated thread which completes
+    * the oldest outstanding request.
+    */
+   private class Connection implements Runnable {
+      private final Socket socket;
+      private final OutputStream output;
+      private final DataInputStream input;
+      private final LoopbackCodec.FrameOutput frames = new LoopbackCodec.FrameOutput(8192);
+      private final Semaphore pipeline = new Semaphore(pipelineDepth);
+      private final ConcurrentLinkedQueue<SettableFuture<Object>> outstanding = new ConcurrentLinkedQueue<SettableFuture<Object>>();
+      private final AtomicInteger outstandingCount = new AtomicInteger();
+      private final Thread reader;
+      // set when the reader has stopped, the connection cannot be used any more
+      private volatile IOException failure;
+
+      private Connection(int index) throws IOException {
+         socket = new Socket();
+         socket.setTcpNoDelay(true);
+         socket.connect(new InetSocketAddress(host, port));
+         output = socket.getOutputStream();
+         input = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+         reader = new Thread(this, "LoopbackClient-" + index);
+         reader.setDaemon(true);
+         reader.start();
+      }
+
+      NotifyingFuture<Object> send(byte operation, String bucket, Object... arguments) throws IOException, InterruptedException {
+         checkFailure();
+         if (!pipeline.tryAcquire()) {
+            pipelineStalls.incrementAndGet();
+            pipeline.acquire();
+         }
+         // once the request is queued, the permit is released by whoever takes it from the queue
+         boolean queued = false;
+         try {
+            // the permit could have been released by failed reader
+            checkFailure();
+            SettableFuture<Object> future = new SettableFuture<Object>();
+            synchronized (this) {
+               frames.reset();
+               DataOutputStream data = frames.beginFrame();
+               data.writeByte(operation);
+               LoopbackCodec.writeObject(data, bucket);
+               for (Object argument : arguments) {
+                  if (argument instanceof Boolean) {
+                     data.writeBoolean((Boolean) argument);
+                  } else {
+                     LoopbackCodec.writeObject(data, argument);
+                  }
+               }
+               frames.endFrame();
+               // the future must be queued before the request can be answered
+               outstanding.offer(future);
+               int depth = outstandingCount.incrementAndGet();
+               queued = true;
+               try {
+                  output.write(frames.array(), 0, frames.size());
+                  // the reader could have failed before the future was queued, nobody would complete it
+                  checkFailure();
+               } catch (IOException e) {
+                  // unless the reader has already failed the request
+                  if (outstanding.remove(future)) {
+                     outstandingCount.decrementAndGet();
+                     queued = false;
+                  }
+                  throw e;
+               }
+               bytesSent.addAndGet(frames.size());
+               requests.incrementAndGet();
+               outstandingSum.addAndGet(depth);
+               for (;;) {
+                  int max = maxOutstanding.get();
+                  if (depth <= max || maxOutstanding.compareAndSet(max, depth)) break;
+               }
+            }
+            return future;
+         } finally {
+            if (!queued) {
+               pipeline.release();
+            }
+         }
+      }
+
+      private void checkFailure() throws IOException {
+         IOException cause = failure;
+         if (cause != null) {
+            throw new IOException("Connection to " + host + ":" + port + " has failed", cause);
+         }
+      }
+
+      @Override
+      public void run() {
+         try {
+            for (;;) {
+               int length = input.readInt();
+               byte[] frame = new byte[length];
+               input.readFully(frame);
+               bytesReceived.addAndGet(length + 4);
+               SettableFuture<Object> future = outstanding.poll();
+               if (future == null) {
+                  // the responses are out of step with the requests, the connection cannot be used anymore
+                  throw new ProtocolException("Received response without outstanding request");
+               }
+               outstandingCount.decrementAndGet();
+               pipeline.release();
+               DataInputStream response = new DataInputStream(new ByteArrayInputStream(frame));
+               if (response.readByte() == LoopbackCodec.STATUS_OK) {
+                  future.set(LoopbackCodec.readObject(response));
+               } else {
+                  future.setException(new IllegalStateException("Server error: " + response.readUTF()));
+               }
+            }
+         } catch (IOException e) {
+            if (!socket.isClosed()) {
+               log.error("Connection to " + host + ":" + port + " failed", e);
+            }
+            // set before draining, so that the requests queued later are failed by the senders
+            failure = e;
+            SettableFuture<Object> future;
+            while ((future = outstanding.poll()) != null) {
+               outstandingCount.decrementAndGet();
+               // wakes up the senders blocked in the pipeline, they fail on the cause
+               pipeline.release();
+               future.setException(e);
+            }
+         }
+      }
+
+      void close() throws IOException, InterruptedException {
+         socket.close();
+         reader.join();
+      }
+   }
+}
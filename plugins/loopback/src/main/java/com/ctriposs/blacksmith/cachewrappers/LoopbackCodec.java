@@ -0,0 +1,206 @@
+package com.ctriposs.blacksmith.cachewrappers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.ctriposs.blacksmith.stressors.WrappedArrayValueGenerator.ByteArrayWrapper;
+
+/**
+ * Binary protocol shared by {@link LoopbackServer} and {@link LoopbackClientWrapper}.
+ * <p/>
+ * Each frame is prefixed by its length (int). Request frame contains the operation code followed by its arguments,
+ * response frame contains the status and the result (or error message). Responses are sent in the order of requests,
+ * so that the client can pipeline requests on one connection without request ids. Objects are type-tagged;
+ * common key and value types have compact encoding, anything else is Java-serialized.
+ *
+ * @author bulldog
+ */
+final class LoopbackCodec {
+
+   static final byte OP_GET = 1;
+   static final byte OP_PUT = 2;
+   static final byte OP_REMOVE = 3;
+   static final byte OP_GET_ALL = 4;
+   static final byte OP_PUT_ALL = 5;
+   static final byte OP_REMOVE_ALL = 6;
+   static final byte OP_CLEAR = 7;
+   static final byte OP_SIZE = 8;
+
+   static final byte STATUS_OK = 0;
+   static final byte STATUS_ERROR = 1;
+
+   private static final byte TYPE_NULL = 0;
+   private static final byte TYPE_BYTES = 1;
+   private static final byte TYPE_STRING = 2;
+   private static final byte TYPE_INT = 3;
+   private static final byte TYPE_LONG = 4;
+   private static final byte TYPE_MAP = 5;
+   private static final byte TYPE_SET = 6;
+   private static final byte TYPE_WRAPPED_BYTES = 7;
+   private static final byte TYPE_SERIALIZED = 8;
+
+   private LoopbackCodec() {}
+
+   static void writeObject(DataOutputStream out, Object o) throws IOException {
+      if (o == null) {
+         out.writeByte(TYPE_NULL);
+      } else if (o instanceof byte[]) {
+         out.writeByte(TYPE_BYTES);
+         writeBytes(out, (byte[]) o);
+      } else if (o instanceof String) {
+         out.writeByte(TYPE_STRING);
+         writeBytes(out, ((String) o).getBytes("UTF-8"));
+      } else if (o instanceof Integer) {
+         out.writeByte(TYPE_INT);
+         out.writeInt((Integer) o);
+      } else if (o instanceof Long) {
+         out.writeByte(TYPE_LONG);
+         out.writeLong((Long) o);
+      } else if (o instanceof ByteArrayWrapper) {
+         out.writeByte(TYPE_WRAPPED_BYTES);
+         writeBytes(out, ((ByteArrayWrapper) o).getBytes());
+      } else if (o instanceof Map) {
+         Map<?, ?> map = (Map<?, ?>) o;
+         out.writeByte(TYPE_MAP);
+         out.writeInt(map.size());
+         for (Map.Entry<?, ?> entry : map.entrySet()) {
+            writeObject(out, entry.getKey());
+            writeObject(out, entry.getValue());
+         }
+      } else if (o instanceof Set) {
+         Collection<?> collection = (Collection<?>) o;
+         out.writeByte(TYPE_SET);
+         out.writeInt(collection.size());
+         for (Object element : collection) {
+            writeObject(out, element);
+         }
+      } else {
+         out.writeByte(TYPE_SERIALIZED);
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         ObjectOutputStream oos = new ObjectOutputStream(bytes);
+         oos.writeObject(o);
+         oos.close();
+         writeBytes(out, bytes.toByteArray());
+      }
+   }
+
+   static Object readObject(DataInputStream in) throws IOException {
+      byte type = in.readByte();
+      switch (type) {
+         case TYPE_NULL:
+            return null;
+         case TYPE_BYTES:
+            return readBytes(in);
+         case TYPE_STRING:
+            return new String(readBytes(in), "UTF-8");
+         case TYPE_INT:
+            return in.readInt();
+         case TYPE_LONG:
+            return in.readLong();
+         case TYPE_WRAPPED_BYTES:
+            return new ByteArrayWrapper(readBytes(in));
+         case TYPE_MAP: {
+            int size = in.readInt();
+            Map<Object, Object> map = new HashMap<Object, Object>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; ++i) {
+               Object key = readObject(in);
+               map.put(key, readObject(in));
+            }
+            return map;
+         }
+         case TYPE_SET: {
+            int size = in.readInt();
+            Set<Object> set = new HashSet<Object>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; ++i) {
+               set.add(readObject(in));
+            }
+            return set;
+         }
+         case TYPE_SERIALIZED:
+            try {
+               return new LocalObjectInputStream(new ByteArrayInputStream(readBytes(in))).readObject();
+            } catch (ClassNotFoundException e) {
+               throw new IOException("Cannot deserialize object: " + e.getMessage());
+            }
+         default:
+            throw new IOException("Unknown type tag " + type);
+      }
+   }
+
+   private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+      out.writeInt(bytes.length);
+      out.write(bytes);
+   }
+
+   private static byte[] readBytes(DataInputStream in) throws IOException {
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      return bytes;
+   }
+
+   /**
+    * Buffer for building length-prefixed frames without copying.
+    */
+   static class FrameOutput extends ByteArrayOutputStream {
+      private final DataOutputStream data = new DataOutputStream(this);
+      private int frameStart = -1;
+
+      FrameOutput(int size) {
+         super(size);
+      }
+
+      DataOutputStream beginFrame() throws IOException {
+         frameStart = count;
+         data.writeInt(0);
+         return data;
+      }
+
+      void endFrame() {
+         int length = count - frameStart - 4;
+         buf[frameStart] = (byte) (length >>> 24);
+         buf[frameStart + 1] = (byte) (length >>> 16);
+         buf[frameStart + 2] = (byte) (length >>> 8);
+         buf[frameStart + 3] = (byte) length;
+         frameStart = -1;
+      }
+
+      byte[] array() {
+         return buf;
+      }
+
+      /**
+       * Discards first n bytes which were already written to the socket.
+       */
+      void consume(int n) {
+         System.arraycopy(buf, n, buf, 0, count - n);
+         count -= n;
+      }
+   }
+
+   private static class LocalObjectInputStream extends ObjectInputStream {
+      LocalObjectInputStream(InputStream in) throws IOException {
+         super(in);
+      }
+
+      @Override
+      protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+         try {
+            return Class.forName(desc.getName(), false, LoopbackCodec.class.getClassLoader());
+         } catch (ClassNotFoundException e) {
+            return super.resolveClass(desc);
+         }
+      }
+   }
+}
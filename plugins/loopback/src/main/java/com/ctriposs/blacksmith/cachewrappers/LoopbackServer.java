@@ -0,0 +1,262 @@
+package com.ctriposs.blacksmith.cachewrappers;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctriposs.blacksmith.CacheWrapper;
+import com.ctriposs.blacksmith.features.BulkOperationsCapable;
+import com.ctriposs.blacksmith.utils.TypedProperties;
+import com.ctriposs.blacksmith.utils.Utils;
+
+/**
+ * Single-threaded NIO server exposing a cache wrapper through the {@link LoopbackCodec} protocol. The requests are
+ * executed in the selector thread; responses to pipelined requests are written to the socket together.
+ * <p/>
+ * Usually it is started embedded by {@link LoopbackClientWrapper}, but it can be also run as standalone process:
+ * <code>LoopbackServer &lt;product&gt; &lt;port&gt; [wrapper class]</code>
+ *
+ * @author bulldog
+ */
+public class LoopbackServer implements Runnable {
+
+   private static Logger log = LoggerFactory.getLogger(LoopbackServer.class);
+
+   private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+   private final CacheWrapper wrapper;
+   private final ServerSocketChannel serverChannel;
+   private final Selector selector;
+   private final Thread thread;
+   private volatile boolean running;
+
+   public LoopbackServer(CacheWrapper wrapper, String host, int port) throws IOException {
+      this.wrapper = wrapper;
+      serverChannel = ServerSocketChannel.open();
+      serverChannel.socket().setReuseAddress(true);
+      serverChannel.socket().bind(new InetSocketAddress(host, port));
+      serverChannel.configureBlocking(false);
+      selector = Selector.open();
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+      thread = new Thread(this, "LoopbackServer-" + getPort());
+      thread.setDaemon(true);
+   }
+
+   public void start() {
+      running = true;
+      thread.start();
+      log.info("Loopback server listening on " + serverChannel.socket().getLocalSocketAddress());
+   }
+
+   public int getPort() {
+      return serverChannel.socket().getLocalPort();
+   }
+
+   public void stop() throws InterruptedException {
+      running = false;
+      selector.wakeup();
+      thread.join();
+   }
+
+   @Override
+   public void run() {
+      try {
+         while (running) {
+            selector.select();
+            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+               SelectionKey key = iterator.next();
+               iterator.remove();
+               try {
+                  if (!key.isValid()) {
+                     continue;
+                  }
+                  if (key.isAcceptable()) {
+                     accept();
+                  }
+                  if (key.isValid() && key.isReadable()) {
+                     ((Session) key.attachment()).read(key);
+                  }
+                  if (key.isValid() && key.isWritable()) {
+                     ((Session) key.attachment()).write(key);
+                  }
+               } catch (IOException e) {
+                  log.debug("Closing connection", e);
+                  close(key);
+               }
+            }
+         }
+      } catch (IOException e) {
+         log.error("Loopback server failed", e);
+      } finally {
+         for (SelectionKey key : selector.keys()) {
+            close(key);
+         }
+         try {
+            selector.close();
+         } catch (IOException e) {
+            log.warn("Failed to close selector", e);
+         }
+      }
+   }
+
+   private void accept() throws IOException {
+      SocketChannel channel = serverChannel.accept();
+      if (channel == null) return;
+      channel.configureBlocking(false);
+      channel.socket().setTcpNoDelay(true);
+      channel.register(selector, SelectionKey.OP_READ, new Session(channel));
+   }
+
+   private void close(SelectionKey key) {
+      key.cancel();
+      try {
+         key.channel().close();
+      } catch (IOException e) {
+         log.warn("Failed to close channel", e);
+      }
+   }
+
+   private class Session {
+      private final SocketChannel channel;
+      private ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+      private final LoopbackCodec.FrameOutput out = new LoopbackCodec.FrameOutput(INITIAL_BUFFER_SIZE);
+
+      private Session(SocketChannel channel) {
+         this.channel = channel;
+      }
+
+      void read(SelectionKey key) throws IOException {
+         if (channel.read(in) < 0) {
+            throw new IOException("Connection closed by client");
+         }
+         in.flip();
+         while (in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if (in.remaining() < length + 4) {
+               break;
+            }
+            DataInputStream frame = new DataInputStream(new ByteArrayInputStream(in.array(), in.arrayOffset() + in.position() + 4, length));
+            in.position(in.position() + length + 4);
+            execute(frame);
+         }
+         if (in.remaining() >= 4 && in.capacity() < in.getInt(in.position()) + 4) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(in.capacity() * 2, in.getInt(in.position()) + 4));
+            larger.put(in);
+            in = larger;
+         } else {
+            in.compact();
+         }
+         write(key);
+      }
+
+      void write(SelectionKey key) throws IOException {
+         if (out.size() > 0) {
+            int written = channel.write(ByteBuffer.wrap(out.array(), 0, out.size()));
+            out.consume(written);
+         }
+         key.interestOps(out.size() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+      }
+
+      private void execute(DataInputStream frame) throws IOException {
+         Object result;
+         try {
+            result = LoopbackServer.this.execute(frame);
+         } catch (Exception e) {
+            DataOutputStream data = out.beginFrame();
+            data.writeByte(LoopbackCodec.STATUS_ERROR);
+            data.writeUTF(String.valueOf(e));
+            out.endFrame();
+            return;
+         }
+         DataOutputStream data = out.beginFrame();
+         data.writeByte(LoopbackCodec.STATUS_OK);
+         LoopbackCodec.writeObject(data, result);
+         out.endFrame();
+      }
+   }
+
+   @SuppressWarnings("unchecked")
+   private Object execute(DataInputStream frame) throws Exception {
+      byte operation = frame.readByte();
+      String bucket = (String) LoopbackCodec.readObject(frame);
+      switch (operation) {
+         case LoopbackCodec.OP_GET:
+            return wrapper.get(bucket, LoopbackCodec.readObject(frame));
+         case LoopbackCodec.OP_PUT: {
+            Object key = LoopbackCodec.readObject(frame);
+            wrapper.put(bucket, key, LoopbackCodec.readObject(frame));
+            return null;
+         }
+         case LoopbackCodec.OP_REMOVE:
+            return wrapper.remove(bucket, LoopbackCodec.readObject(frame));
+         case LoopbackCodec.OP_GET_ALL: {
+            Set<Object> keys = (Set<Object>) LoopbackCodec.readObject(frame);
+            if (wrapper instanceof BulkOperationsCapable) {
+               return ((BulkOperationsCapable) wrapper).getAll(bucket, keys, false);
+            }
+            Map<Object, Object> values = new HashMap<Object, Object>(keys.size());
+            for (Object key : keys) {
+               values.put(key, wrapper.get(bucket, key));
+            }
+            return values;
+         }
+         case LoopbackCodec.OP_PUT_ALL: {
+            Map<Object, Object> entries = (Map<Object, Object>) LoopbackCodec.readObject(frame);
+            if (wrapper instanceof BulkOperationsCapable) {
+               return ((BulkOperationsCapable) wrapper).putAll(bucket, entries, false);
+            }
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+               wrapper.put(bucket, entry.getKey(), entry.getValue());
+            }
+            return null;
+         }
+         case LoopbackCodec.OP_REMOVE_ALL: {
+            Set<Object> keys = (Set<Object>) LoopbackCodec.readObject(frame);
+            if (wrapper instanceof BulkOperationsCapable) {
+               return ((BulkOperationsCapable) wrapper).removeAll(bucket, keys, false);
+            }
+            Map<Object, Object> values = new HashMap<Object, Object>(keys.size());
+            for (Object key : keys) {
+               values.put(key, wrapper.remove(bucket, key));
+            }
+            return values;
+         }
+         case LoopbackCodec.OP_CLEAR:
+            wrapper.clear(frame.readBoolean());
+            return null;
+         case LoopbackCodec.OP_SIZE:
+            return wrapper.getLocalSize();
+         default:
+            throw new IllegalArgumentException("Unknown operation " + operation);
+      }
+   }
+
+   public static void main(String[] args) throws Exception {
+      if (args.length < 2) {
+         System.err.println("Usage: LoopbackServer <product> <port> [wrapper class]");
+         System.exit(1);
+      }
+      CacheWrapper wrapper = Utils.createCacheWrapper(args[0], args.length > 2 ? args[2] : null,
+            LoopbackServer.class.getClassLoader());
+      Thread.currentThread().setContextClassLoader(wrapper.getClass().getClassLoader());
+      wrapper.setUp(args[0], true, -1, new TypedProperties());
+      LoopbackServer server = new LoopbackServer(wrapper, "0.0.0.0", Integer.parseInt(args[1]));
+      server.start();
+      server.thread.join();
+   }
+}
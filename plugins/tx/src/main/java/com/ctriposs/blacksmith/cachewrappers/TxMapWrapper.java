@@ -0,0 +1,387 @@
+package com.ctriposs.blacksmith.cachewrappers;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctriposs.blacksmith.CacheWrapper;
+import com.ctriposs.blacksmith.features.StatisticsCapable;
+import com.ctriposs.blacksmith.utils.TypedProperties;
+
+/**
+ * In-memory map with transactions bound to the calling thread. Writes are buffered in the transaction and applied
+ * on commit, under striped locks.
+ * <p/>
+ * With locking=optimistic the transaction does not lock anything until commit; then the written (and with
+ * serializable isolation also read) entries are validated against the versions the transaction has seen and the
+ * first committer wins. With locking=pessimistic the stripes are locked when the entry is written (and read, with
+ * repeatable_read or serializable isolation) and held until the end of transaction; lock_timeout resolves deadlocks.
+ * <p/>
+ * Configuration properties: locking (optimistic|pessimistic), isolation (read_committed|repeatable_read|serializable),
+ * lock_stripes, lock_timeout (ms). Operations outside of transaction are auto-committed. Buckets are ignored.
+ *
+ * @author bulldog
+ */
+public class TxMapWrapper implements CacheWrapper, StatisticsCapable {
+
+   private static Logger log = LoggerFactory.getLogger(TxMapWrapper.class);
+
+   private static final Object REMOVED = new Object();
+
+   public enum Locking {
+      OPTIMISTIC,
+      PESSIMISTIC
+   }
+
+   public enum Isolation {
+      READ_COMMITTED,
+      REPEATABLE_READ,
+      SERIALIZABLE
+   }
+
+   private final ConcurrentHashMap<Object, Versioned> map = new ConcurrentHashMap<Object, Versioned>();
+   private final AtomicLong versionCounter = new AtomicLong();
+   private final ThreadLocal<Transaction> transaction = new ThreadLocal<Transaction>();
+   private ReentrantLock[] locks;
+   private Locking locking;
+   private Isolation isolation;
+   private long lockTimeout;
+
+   private final AtomicLong commits = new AtomicLong();
+   private final AtomicLong rollbacks = new AtomicLong();
+   private final AtomicLong writeConflicts = new AtomicLong();
+   private final AtomicLong readConflicts = new AtomicLong();
+   private final AtomicLong lockTimeouts = new AtomicLong();
+   private final AtomicLong lockWaitNanos = new AtomicLong();
+   private final AtomicLong committedWrites = new AtomicLong();
+
+   private static class Versioned {
+      final Object value;
+      final long version;
+
+      private Versioned(Object value, long version) {
+         this.value = value;
+         this.version = version;
+      }
+   }
+
+   /**
+    * Thrown when the transaction cannot be committed or continue; the transaction is rolled back.
+    */
+   public static class RollbackException extends RuntimeException {
+      /** The serialVersionUID */
+      private static final long serialVersionUID = -3069483730265941872L;
+
+      public RollbackException(String message) {
+         super(message);
+      }
+   }
+
+   private class Transaction {
+      // key -> version seen by this transaction (-1 when the entry did not exist)
+      final Map<Object, Long> readVersions = new HashMap<Object, Long>();
+      final Map<Object, Object> readValues = new HashMap<Object, Object>();
+      final Map<Object, Object> writes = new LinkedHashMap<Object, Object>();
+      final Map<Object, Long> writeVersions = new HashMap<Object, Long>();
+      final TreeSet<Integer> heldStripes = new TreeSet<Integer>();
+      boolean rollbackOnly;
+
+      Object read(Object key) {
+         if (rollbackOnly) throw new RollbackException("Transaction is marked for rollback");
+         Object written = writes.get(key);
+         if (written != null) {
+            return written == REMOVED ? null : written;
+         }
+         if (isolation != Isolation.READ_COMMITTED) {
+            if (readVersions.containsKey(key)) {
+               return readValues.get(key);
+            }
+            if (locking == Locking.PESSIMISTIC) {
+               lock(key);
+            }
+         }
+         Versioned versioned = map.get(key);
+         if (isolation != Isolation.READ_COMMITTED) {
+            readVersions.put(key, versioned == null ? -1 : versioned.version);
+            readValues.put(key, versioned == null ? null : versioned.value);
+         }
+         return versioned == null ? null : versioned.value;
+      }
+
+      Object write(Object key, Object value) {
+         if (rollbackOnly) throw new RollbackException("Transaction is marked for rollback");
+         if (locking == Locking.PESSIMISTIC) {
+            lock(key);
+         }
+         Object previous = writes.put(key, value);
+         if (previous == null) {
+            // first write of this key, remember the version the write is based on
+            Long seen = readVersions.get(key);
+            Versioned current = map.get(key);
+            if (seen == null) {
+               seen = current == null ? -1 : current.version;
+            }
+            writeVersions.put(key, seen);
+            return current == null ? null : current.value;
+         }
+         return previous == REMOVED ? null : previous;
+      }
+
+      void lock(Object key) {
+         int stripe = stripe(key);
+         if (heldStripes.contains(stripe)) return;
+         long start = System.nanoTime();
+         boolean locked;
+         try {
+            locked = locks[stripe].tryLock(lockTimeout, TimeUnit.MILLISECONDS);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            locked = false;
+         }
+         lockWaitNanos.addAndGet(System.nanoTime() - start);
+         if (!locked) {
+            lockTimeouts.incrementAndGet();
+            rollbackOnly = true;
+            throw new RollbackException("Timed out acquiring lock for " + key);
+         }
+         heldStripes.add(stripe);
+      }
+
+      void commit() {
+         if (rollbackOnly) {
+            throw new RollbackException("Transaction is marked for rollback");
+         }
+         if (writes.isEmpty() && isolation != Isolation.SERIALIZABLE) {
+            return;
+         }
+         if (locking == Locking.OPTIMISTIC) {
+            // lock in stripe order to avoid deadlocks between committers
+            TreeSet<Integer> stripes = new TreeSet<Integer>();
+            for (Object key : writes.keySet()) {
+               stripes.add(stripe(key));
+            }
+            if (isolation == Isolation.SERIALIZABLE) {
+               for (Object key : readVersions.keySet()) {
+                  stripes.add(stripe(key));
+               }
+            }
+            for (Integer stripe : stripes) {
+               locks[stripe].lock();
+               heldStripes.add(stripe);
+            }
+            if (isolation != Isolation.READ_COMMITTED) {
+               for (Map.Entry<Object, Long> entry : writeVersions.entrySet()) {
+                  if (currentVersion(entry.getKey()) != entry.getValue()) {
+                     writeConflicts.incrementAndGet();
+                     throw new RollbackException("Write conflict on " + entry.getKey());
+                  }
+               }
+            }
+            if (isolation == Isolation.SERIALIZABLE) {
+               for (Map.Entry<Object, Long> entry : readVersions.entrySet()) {
+                  if (currentVersion(entry.getKey()) != entry.getValue()) {
+                     readConflicts.incrementAndGet();
+                     throw new RollbackException("Read entry " + entry.getKey() + " was modified");
+                  }
+               }
+            }
+         }
+         if (writes.isEmpty()) {
+            return;
+         }
+         long version = versionCounter.incrementAndGet();
+         for (Map.Entry<Object, Object> entry : writes.entrySet()) {
+            if (entry.getValue() == REMOVED) {
+               map.remove(entry.getKey());
+            } else {
+               map.put(entry.getKey(), new Versioned(entry.getValue(), version));
+            }
+         }
+         committedWrites.addAndGet(writes.size());
+      }
+
+      void release() {
+         for (Integer stripe : heldStripes) {
+            locks[stripe].unlock();
+         }
+         heldStripes.clear();
+      }
+   }
+
+   @Override
+   public void setUp(String config, boolean isLocal, int nodeIndex, TypedProperties confAttributes) throws Exception {
+      locking = Locking.valueOf(confAttributes.getProperty("locking", "optimistic").trim().toUpperCase());
+      isolation = Isolation.valueOf(confAttributes.getProperty("isolation", "repeatable_read").trim().toUpperCase());
+      lockTimeout = confAttributes.getLongProperty("lock_timeout", 1000, false);
+      locks = new ReentrantLock[confAttributes.getIntProperty("lock_stripes", 1024)];
+      for (int i = 0; i < locks.length; ++i) {
+         locks[i] = new ReentrantLock();
+      }
+      log.info(getInfo());
+   }
+
+   @Override
+   public void tearDown() throws Exception {
+      map.clear();
+   }
+
+   @Override
+   public boolean isRunning() {
+      return true;
+   }
+
+   private int stripe(Object key) {
+      return (key.hashCode() & Integer.MAX_VALUE) % locks.length;
+   }
+
+   private long currentVersion(Object key) {
+      Versioned versioned = map.get(key);
+      return versioned == null ? -1 : versioned.version;
+   }
+
+   @Override
+   public void put(String bucket, Object key, Object value) throws Exception {
+      Transaction tx = transaction.get();
+      if (tx != null) {
+         tx.write(key, value);
+      } else {
+         autoCommit(key, value);
+      }
+   }
+
+   @Override
+   public Object get(String bucket, Object key) throws Exception {
+      Transaction tx = transaction.get();
+      if (tx != null) {
+         return tx.read(key);
+      }
+      Versioned versioned = map.get(key);
+      return versioned == null ? null : versioned.value;
+   }
+
+   @Override
+   public Object remove(String bucket, Object key) throws Exception {
+      Transaction tx = transaction.get();
+      if (tx != null) {
+         return tx.write(key, REMOVED);
+      }
+      return autoCommit(key, REMOVED);
+   }
+
+   private Object autoCommit(Object key, Object value) {
+      ReentrantLock lock = locks[stripe(key)];
+      lock.lock();
+      try {
+         Versioned previous;
+         if (value == REMOVED) {
+            previous = map.remove(key);
+         } else {
+            previous = map.put(key, new Versioned(value, versionCounter.incrementAndGet()));
+         }
+         return previous == null ? null : previous.value;
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   @Override
+   public boolean isTransactional(String bucket) {
+      return true;
+   }
+
+   @Override
+   public void startTransaction() {
+      if (transaction.get() != null) {
+         throw new IllegalStateException("Transaction already started");
+      }
+      transaction.set(new Transaction());
+   }
+
+   @Override
+   public void endTransaction(boolean successful) {
+      Transaction tx = transaction.get();
+      if (tx == null) {
+         throw new IllegalStateException("No transaction in progress");
+      }
+      transaction.remove();
+      try {
+         if (successful) {
+            tx.commit();
+            commits.incrementAndGet();
+         } else {
+            rollbacks.incrementAndGet();
+         }
+      } catch (RollbackException e) {
+         rollbacks.incrementAndGet();
+         throw e;
+      } finally {
+         tx.release();
+      }
+   }
+
+   @Override
+   public void clear(boolean local) throws Exception {
+      map.clear();
+   }
+
+   @Override
+   public Map<String, Object> getStatistics() {
+      Map<String, Object> stats = new LinkedHashMap<String, Object>();
+      long committed = commits.get();
+      long total = committed + rollbacks.get();
+      stats.put("TX_COMMITS", committed);
+      stats.put("TX_ROLLBACKS", rollbacks.get());
+      stats.put("TX_ABORT_RATE", total == 0 ? 0d : (double) rollbacks.get() / total);
+      stats.put("TX_WRITE_CONFLICTS", writeConflicts.get());
+      stats.put("TX_READ_CONFLICTS", readConflicts.get());
+      stats.put("TX_LOCK_TIMEOUTS", lockTimeouts.get());
+      stats.put("TX_LOCK_WAIT_NANOS", lockWaitNanos.get());
+      stats.put("TX_WRITES_PER_COMMIT", committed == 0 ? 0d : (double) committedWrites.get() / committed);
+      return stats;
+   }
+
+   @Override
+   public void resetStatistics() {
+      commits.set(0);
+      rollbacks.set(0);
+      writeConflicts.set(0);
+      readConflicts.set(0);
+      lockTimeouts.set(0);
+      lockWaitNanos.set(0);
+      committedWrites.set(0);
+   }
+
+   @Override
+   public int getNumMembers() {
+      return 1;
+   }
+
+   @Override
+   public String getInfo() {
+      return "Transactional map, " + locking.name().toLowerCase() + " locking, " + isolation.name().toLowerCase()
+            + " isolation, " + locks.length + " lock stripes";
+   }
+
+   @Override
+   public Object getReplicatedData(String bucket, String key) throws Exception {
+      return null;
+   }
+
+   @Override
+   public int getLocalSize() {
+      return map.size();
+   }
+
+   @Override
+   public int getTotalSize() {
+      return map.size();
+   }
+}